@@ -40,11 +40,25 @@ import com.google.gson.Gson;
 public class DeployMessage implements BrokerMessage {
 
 	public enum DeployMessageType {
-		REQUEST_TO_INSTALL_PART, REQUEST_TO_UNINSTALL_PART, PART_NOTIFICATION;
+		REQUEST_TO_INSTALL_PART, REQUEST_TO_UNINSTALL_PART, PART_NOTIFICATION,
+		/**
+		 * Announces the chunked transfer of a part, see
+		 * {@link DeployTransferPayload}.
+		 */
+		PART_TRANSFER_START,
+		/**
+		 * One chunk of a part.
+		 */
+		PART_CHUNK,
+		/**
+		 * Acknowledges the received chunks of a part.
+		 */
+		PART_CHUNK_ACK;
 
 	}
 
 	private DeployPayload payload;
+	private DeployTransferPayload transfer;
 	private DeployMessageType deployMessageType;
 	public BrokerMessageTypes mType;
 
@@ -55,6 +69,22 @@ public class DeployMessage implements BrokerMessage {
 		this.mType = BrokerMessageTypes.DeployMessage;
 	}
 
+	/**
+	 * Create a message of the chunked transfer of a part.
+	 *
+	 * @param messageType
+	 *            {@link DeployMessageType#PART_TRANSFER_START},
+	 *            {@link DeployMessageType#PART_CHUNK} or
+	 *            {@link DeployMessageType#PART_CHUNK_ACK}.
+	 * @param transfer
+	 *            the transfer information.
+	 */
+	public DeployMessage(DeployMessageType messageType, DeployTransferPayload transfer) {
+		this.deployMessageType = messageType;
+		this.transfer = transfer;
+		this.mType = BrokerMessageTypes.DeployMessage;
+	}
+
 	public DeployMessage() {
 	}
 
@@ -86,6 +116,14 @@ public class DeployMessage implements BrokerMessage {
 
 	}
 
+	/**
+	 * @return the transfer information of a chunked transfer, or null if this
+	 *         message does not belong to a chunked transfer.
+	 */
+	public DeployTransferPayload getTransferPayload() {
+		return transfer;
+	}
+
 	public BrokerMessageTypes getMType() {
 		return mType;
 	}
@@ -0,0 +1,150 @@
+/*
+        Copyright 2007-2014 CNR-ISTI, http://isti.cnr.it
+        Institute of Information Science and Technologies
+        of the Italian National Research Council
+
+        See the NOTICE file distributed with this work for additional
+        information regarding copyright ownership
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+          http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+ */
+
+package org.universAAL.middleware.brokers.message.deploy;
+
+import org.universAAL.middleware.brokers.message.Payload;
+import org.universAAL.middleware.interfaces.mpa.UAPPCard;
+
+/**
+ * Payload for the chunked transfer of a part. A transfer is identified by the
+ * SHA-256 hash of the part, so that an interrupted transfer can be resumed. The
+ * messages of a transfer are:
+ * <ul>
+ * <li>{@link DeployMessage.DeployMessageType#PART_TRANSFER_START}: sent by the
+ * deploying node, with the card, size, chunk size and hash of the part. It is
+ * also sent again to resume a transfer.</li>
+ * <li>{@link DeployMessage.DeployMessageType#PART_CHUNK}: one chunk of the
+ * part, encoded with Base64. All chunks but the last have the chunk size.</li>
+ * <li>{@link DeployMessage.DeployMessageType#PART_CHUNK_ACK}: sent by the
+ * target node, with the index of the next chunk it expects and the status of
+ * the transfer.</li>
+ * </ul>
+ */
+public class DeployTransferPayload extends Payload {
+
+	private static final long serialVersionUID = -2417706617451340417L;
+
+	/**
+	 * The status of a transfer as seen by the target node.
+	 */
+	public enum TransferStatus {
+		IN_PROGRESS, COMPLETED, FAILED
+	}
+
+	private String transferID;
+	private UAPPCard uappCard;
+	private long size;
+	private int chunkSize;
+	private int index;
+	private String data;
+	private TransferStatus status;
+
+	public DeployTransferPayload() {
+	}
+
+	/**
+	 * Create the payload of a
+	 * {@link DeployMessage.DeployMessageType#PART_TRANSFER_START} message.
+	 */
+	public static DeployTransferPayload start(String transferID, UAPPCard card, long size, int chunkSize) {
+		DeployTransferPayload p = new DeployTransferPayload();
+		p.transferID = transferID;
+		p.uappCard = card;
+		p.size = size;
+		p.chunkSize = chunkSize;
+		return p;
+	}
+
+	/**
+	 * Create the payload of a {@link DeployMessage.DeployMessageType#PART_CHUNK}
+	 * message.
+	 */
+	public static DeployTransferPayload chunk(String transferID, int index, String data) {
+		DeployTransferPayload p = new DeployTransferPayload();
+		p.transferID = transferID;
+		p.index = index;
+		p.data = data;
+		return p;
+	}
+
+	/**
+	 * Create the payload of a
+	 * {@link DeployMessage.DeployMessageType#PART_CHUNK_ACK} message.
+	 *
+	 * @param next
+	 *            the index of the next chunk expected by the target node.
+	 */
+	public static DeployTransferPayload ack(String transferID, int next, TransferStatus status) {
+		DeployTransferPayload p = new DeployTransferPayload();
+		p.transferID = transferID;
+		p.index = next;
+		p.status = status;
+		return p;
+	}
+
+	/**
+	 * @return the SHA-256 hash of the part as hex string.
+	 */
+	public String getTransferID() {
+		return transferID;
+	}
+
+	public UAPPCard getuappCard() {
+		return uappCard;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * @return the index of the chunk, or for an acknowledgement the index of
+	 *         the next expected chunk.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the Base64 encoded content of the chunk.
+	 */
+	public String getData() {
+		return data;
+	}
+
+	public TransferStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the number of chunks of the part.
+	 */
+	public int getChunkCount() {
+		if (chunkSize <= 0)
+			return 0;
+		return (int) ((size + chunkSize - 1) / chunkSize);
+	}
+}
@@ -174,4 +174,28 @@ public class DeployMessageTest {
 
 	}
 
+	@Test
+	public void TransferMessageTest() throws Exception {
+		DeployTransferPayload start = DeployTransferPayload.start("abc", new UAPPCard("service id", "app id", "part id", "name", "description"),
+				200000, 65536);
+		assertEquals(4, start.getChunkCount());
+
+		DeployMessage sorgente = new DeployMessage(DeployMessageType.PART_TRANSFER_START, start);
+		BrokerMessage destinazione = GsonParserBuilder.getInstance().fromJson(sorgente.toString(),
+				BrokerMessage.class);
+		assertTrue(destinazione instanceof DeployMessage);
+		DeployTransferPayload parsed = ((DeployMessage) destinazione).getTransferPayload();
+		assertEquals(DeployMessageType.PART_TRANSFER_START, ((DeployMessage) destinazione).getMessageType());
+		assertEquals("abc", parsed.getTransferID());
+		assertEquals(200000, parsed.getSize());
+		assertEquals(65536, parsed.getChunkSize());
+		assertEquals("part id", parsed.getuappCard().getPartId());
+
+		DeployMessage ack = new DeployMessage(DeployMessageType.PART_CHUNK_ACK,
+				DeployTransferPayload.ack("abc", 3, DeployTransferPayload.TransferStatus.IN_PROGRESS));
+		parsed = GsonParserBuilder.getInstance().fromJson(ack.toString(), DeployMessage.class).getTransferPayload();
+		assertEquals(3, parsed.getIndex());
+		assertEquals(DeployTransferPayload.TransferStatus.IN_PROGRESS, parsed.getStatus());
+	}
+
 }
@@ -24,12 +24,14 @@ package org.universAAL.middleware.brokers.control;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.universAAL.middleware.brokers.Broker;
 import org.universAAL.middleware.brokers.message.BrokerMessage;
@@ -44,6 +46,8 @@ import org.universAAL.middleware.brokers.message.deploy.DeployMessageException;
 
 import org.universAAL.middleware.brokers.message.deploy.DeployNotificationPayload;
 import org.universAAL.middleware.brokers.message.deploy.DeployPayload;
+import org.universAAL.middleware.brokers.message.deploy.DeployTransferPayload;
+import org.universAAL.middleware.brokers.message.deploy.DeployTransferPayload.TransferStatus;
 import org.universAAL.middleware.brokers.message.distributedmw.DistributedMWMessage;
 import org.universAAL.middleware.brokers.message.gson.GsonParserBuilder;
 
@@ -70,6 +74,7 @@ import org.universAAL.middleware.modules.SpaceModule;
 import org.universAAL.middleware.modules.CommunicationModule;
 import org.universAAL.middleware.modules.ConfigurableCommunicationModule;
 import org.universAAL.middleware.modules.listener.MessageListener;
+import org.universAAL.middleware.xsd.util.Base64;
 
 import com.google.gson.Gson;
 
@@ -82,6 +87,28 @@ import com.google.gson.Gson;
  */
 public class ControlBroker implements SharedObjectListener, Broker, MessageListener {
 
+	/**
+	 * Property for the size in bytes of the chunks in which parts are sent to
+	 * other nodes. A value &lt;= 0 disables the chunked transfer, i.e. a part
+	 * is sent in one message. Default is 65536.
+	 */
+	public static final String PROP_DEPLOY_CHUNK_SIZE = "org.universaal.deploy.chunksize";
+
+	/**
+	 * Property for the maximum number of chunks that are sent without being
+	 * acknowledged by the target node. Default is 8.
+	 */
+	public static final String PROP_DEPLOY_WINDOW = "org.universaal.deploy.window";
+
+	/**
+	 * Property for the time in milliseconds to wait for an acknowledgement of
+	 * the target node before the transfer is announced again. Default is
+	 * 10000.
+	 */
+	public static final String PROP_DEPLOY_TIMEOUT = "org.universaal.deploy.timeout";
+
+	private static final int TRANSFER_RETRIES = 6;
+
 	private ModuleContext context;
 	private SpaceModule spaceModule;
 	private ConfigurableCommunicationModule communicationModule;
@@ -94,6 +121,10 @@ public class ControlBroker implements SharedObjectListener, Broker, MessageListe
 	private boolean initialized = false;
 	private HashMap<String, WaitForResponse> openTransaction = new HashMap<String, WaitForResponse>();
 	private List<ChannelMessage> cachedMessages = new ArrayList<ChannelMessage>();
+	// outgoing chunked transfers by target peer ID + "/" + transfer ID
+	private final Map<String, PartTransfer> transfers = new ConcurrentHashMap<String, PartTransfer>();
+	// incoming chunked transfers by transfer ID
+	private final ConcurrentHashMap<String, PartReception> receptions = new ConcurrentHashMap<String, PartReception>();
 
 	private static final String TMP_DEPLOY_FOLDER = "etc" + File.separatorChar + "tmp" + File.separatorChar + "installations"
 			+ File.separatorChar;
@@ -571,19 +602,103 @@ public class ControlBroker implements SharedObjectListener, Broker, MessageListe
 			file.delete();
 			file.deleteOnExit();
 			file = null;
+		} else if (getIntProperty(PROP_DEPLOY_CHUNK_SIZE, 65536) > 0) {
+			startTransfer(partAsZip, target, card);
 		} else {
-			// Send the message to the target node
+			sendInstallRequest(partAsZip, target, card);
+		}
+	}
 
-			DeployPayload payload = new DeployPayload(partAsZip, card);
-			DeployMessage deployMessage = new DeployMessage(DeployMessageType.REQUEST_TO_INSTALL_PART, payload);
+	/**
+	 * Send the whole part in one message.
+	 */
+	private void sendInstallRequest(byte[] partAsZip, PeerCard target, UAPPCard card) {
+		DeployPayload payload = new DeployPayload(partAsZip, card);
+		DeployMessage deployMessage = new DeployMessage(DeployMessageType.REQUEST_TO_INSTALL_PART, payload);
+		sendDeployMessage(target, deployMessage);
+	}
 
-			// ...and wrap it as ChannelMessage
-			List<String> channelName = new ArrayList<String>();
-			channelName.add(getBrokerName());
-			// TODO we should send a part in small pieces or by means of
-			// out-of-band protocol which support streaming
-			ChannelMessage channelMessage = new ChannelMessage(getmyPeerCard(), deployMessage.toString(), channelName);
-			communicationModule.send(channelMessage, this, target);
+	private void sendDeployMessage(PeerCard target, DeployMessage deployMessage) {
+		// ...and wrap it as ChannelMessage
+		List<String> channelName = new ArrayList<String>();
+		channelName.add(getBrokerName());
+		ChannelMessage channelMessage = new ChannelMessage(getmyPeerCard(), deployMessage.toString(), channelName);
+		communicationModule.send(channelMessage, this, target);
+	}
+
+	/**
+	 * Send the part in chunks (see {@link DeployTransferPayload}) in a
+	 * separate thread. If the target node never answers, e.g. because it does
+	 * not support the chunked transfer, the part is sent in one message.
+	 */
+	private void startTransfer(final byte[] partAsZip, final PeerCard target, final UAPPCard card) {
+		final String METHOD = "startTransfer";
+		final PartTransfer transfer;
+		try {
+			transfer = new PartTransfer(partAsZip, target, card, getIntProperty(PROP_DEPLOY_CHUNK_SIZE, 65536),
+					getIntProperty(PROP_DEPLOY_WINDOW, 8), getIntProperty(PROP_DEPLOY_TIMEOUT, 10000),
+					TRANSFER_RETRIES) {
+				@Override
+				protected void send(PeerCard target, DeployMessage message) {
+					sendDeployMessage(target, message);
+				}
+			};
+		} catch (NoSuchAlgorithmException e) {
+			LogUtils.logWarn(context, ControlBroker.class, METHOD,
+					new Object[] { "SHA-256 is not available, sending the part in one message" }, e);
+			sendInstallRequest(partAsZip, target, card);
+			return;
+		}
+
+		final String key = target.getPeerID() + "/" + transfer.getTransferID();
+		if (transfers.containsKey(key)) {
+			LogUtils.logDebug(context, ControlBroker.class, METHOD,
+					new Object[] { "The part is already being sent to ", target.getPeerID() }, null);
+			return;
+		}
+		transfers.put(key, transfer);
+		Thread t = new Thread("ControlBroker part transfer to " + target.getPeerID()) {
+			@Override
+			public void run() {
+				try {
+					TransferStatus status = transfer.transfer();
+					if (status == null) {
+						LogUtils.logWarn(context, ControlBroker.class, METHOD,
+								new Object[] { "No answer to the chunked transfer from ", target.getPeerID(),
+										", sending the part in one message" },
+								null);
+						sendInstallRequest(partAsZip, target, card);
+					} else if (status == TransferStatus.FAILED) {
+						LogUtils.logError(context, ControlBroker.class, METHOD,
+								new Object[] { "The transfer of the part ", transfer.getTransferID(), " to ",
+										target.getPeerID(), " failed" },
+								null);
+					} else {
+						LogUtils.logDebug(context, ControlBroker.class, METHOD, new Object[] { "The part ",
+								transfer.getTransferID(), " was transferred to ", target.getPeerID() }, null);
+					}
+				} catch (InterruptedException e) {
+					LogUtils.logWarn(context, ControlBroker.class, METHOD,
+							new Object[] { "Interrupted while transferring a part to ", target.getPeerID() }, null);
+				} finally {
+					transfers.remove(key);
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private int getIntProperty(String name, int def) {
+		Object o = context.getProperty(name);
+		if (o == null)
+			return def;
+		try {
+			return Integer.parseInt(o.toString().trim());
+		} catch (NumberFormatException e) {
+			LogUtils.logWarn(context, ControlBroker.class, "getIntProperty",
+					new Object[] { "Invalid value for ", name, ": ", o, "; using default value ", def }, null);
+			return def;
 		}
 	}
 
@@ -797,6 +912,22 @@ public class ControlBroker implements SharedObjectListener, Broker, MessageListe
 			}
 			break; // TODO Ask michele if it was missing by reason
 
+		case PART_TRANSFER_START:
+			handleTransferStart(sender, msg.getTransferPayload());
+			break;
+
+		case PART_CHUNK:
+			handleChunk(sender, msg.getTransferPayload());
+			break;
+
+		case PART_CHUNK_ACK: {
+			DeployTransferPayload ack = msg.getTransferPayload();
+			PartTransfer transfer = transfers.get(sender.getPeerID() + "/" + ack.getTransferID());
+			if (transfer != null)
+				transfer.acknowledge(ack.getIndex(), ack.getStatus());
+		}
+			break;
+
 		case PART_NOTIFICATION:
 			LogUtils.logDebug(context, ControlBroker.class, "handleDeployMessage",
 					new Object[] { "Notification of mpa appllication part. Notify the DeployManager" }, null);
@@ -815,6 +946,83 @@ public class ControlBroker implements SharedObjectListener, Broker, MessageListe
 		}
 	}
 
+	private void handleTransferStart(PeerCard sender, DeployTransferPayload start) {
+		PartReception reception;
+		synchronized (receptions) {
+			reception = receptions.get(start.getTransferID());
+			if (reception == null) {
+				try {
+					reception = new PartReception(new File(TMP_DEPLOY_FOLDER), start);
+				} catch (Exception e) {
+					LogUtils.logError(context, ControlBroker.class, "handleTransferStart",
+							new Object[] { "Unable to receive the part ", start.getTransferID() }, e);
+					sendTransferAck(sender, start.getTransferID(), 0, TransferStatus.FAILED);
+					return;
+				}
+				receptions.put(start.getTransferID(), reception);
+			}
+		}
+		LogUtils.logDebug(context, ControlBroker.class, "handleTransferStart", new Object[] { "Receiving the part ",
+				start.getTransferID(), " from ", sender.getPeerID(), ", starting at chunk ", reception.getNext() },
+				null);
+		acknowledgeReception(sender, reception);
+	}
+
+	private void handleChunk(PeerCard sender, DeployTransferPayload chunk) {
+		PartReception reception = receptions.get(chunk.getTransferID());
+		if (reception == null) {
+			// e.g. after a restart, the sender will announce the transfer again
+			LogUtils.logDebug(context, ControlBroker.class, "handleChunk",
+					new Object[] { "Ignoring a chunk of the unknown transfer ", chunk.getTransferID() }, null);
+			return;
+		}
+		synchronized (reception) {
+			try {
+				reception.write(chunk.getIndex(), Base64.decode(chunk.getData()));
+			} catch (IOException e) {
+				LogUtils.logError(context, ControlBroker.class, "handleChunk",
+						new Object[] { "Unable to write a chunk of the part ", chunk.getTransferID() }, e);
+				receptions.remove(chunk.getTransferID(), reception);
+				reception.getFile().delete();
+				sendTransferAck(sender, chunk.getTransferID(), 0, TransferStatus.FAILED);
+				return;
+			}
+		}
+		acknowledgeReception(sender, reception);
+	}
+
+	private void acknowledgeReception(PeerCard sender, PartReception reception) {
+		boolean complete;
+		int next;
+		synchronized (reception) {
+			complete = reception.isComplete() && receptions.remove(reception.getTransferID(), reception);
+			next = reception.getNext();
+		}
+		if (!complete) {
+			sendTransferAck(sender, reception.getTransferID(), next, TransferStatus.IN_PROGRESS);
+			return;
+		}
+
+		File file = reception.getFile();
+		if (!reception.verify()) {
+			LogUtils.logError(context, ControlBroker.class, "acknowledgeReception",
+					new Object[] { "The received part does not match its hash ", reception.getTransferID() }, null);
+			file.delete();
+			sendTransferAck(sender, reception.getTransferID(), 0, TransferStatus.FAILED);
+			return;
+		}
+		sendTransferAck(sender, reception.getTransferID(), next, TransferStatus.COMPLETED);
+		LogUtils.logDebug(context, ControlBroker.class, "acknowledgeReception",
+				new Object[] { "Part received. Passing it to the DeployConnector" }, null);
+		deployConnector.installPart(file, reception.getCard());
+		file.delete();
+	}
+
+	private void sendTransferAck(PeerCard target, String transferID, int next, TransferStatus status) {
+		sendDeployMessage(target, new DeployMessage(DeployMessageType.PART_CHUNK_ACK,
+				DeployTransferPayload.ack(transferID, next, status)));
+	}
+
 	/**
 	 * @param cm
 	 */
@@ -0,0 +1,160 @@
+/*
+        Copyright 2007-2014 CNR-ISTI, http://isti.cnr.it
+        Institute of Information Science and Technologies
+        of the Italian National Research Council
+
+        See the NOTICE file distributed with this work for additional
+        information regarding copyright ownership
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+          http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+ */
+package org.universAAL.middleware.brokers.control;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.universAAL.middleware.brokers.message.deploy.DeployTransferPayload;
+import org.universAAL.middleware.interfaces.mpa.UAPPCard;
+
+/**
+ * The receiving side of the chunked transfer of a part. The chunks are
+ * appended to a file named after the transfer ID as they arrive, so the part
+ * is never held in memory. If the file already exists when the transfer starts
+ * (e.g. after a reconnect), the whole chunks in it are kept and the transfer
+ * resumes after them.
+ */
+final class PartReception {
+
+	private final String transferID;
+	private final UAPPCard card;
+	private final long size;
+	private final int chunkSize;
+	private final int chunks;
+	private final File file;
+	private final MessageDigest digest;
+	private int next = 0;
+
+	/**
+	 * Create or resume a reception.
+	 *
+	 * @param folder
+	 *            the folder for the file.
+	 * @param start
+	 *            the payload of the message that announced the transfer.
+	 */
+	PartReception(File folder, DeployTransferPayload start) throws IOException, NoSuchAlgorithmException {
+		transferID = start.getTransferID();
+		if (transferID == null || !transferID.matches("[0-9a-fA-F]{64}"))
+			throw new IOException("Invalid transfer ID: " + transferID);
+		if (start.getSize() < 0 || start.getChunkSize() <= 0)
+			throw new IOException("Invalid size or chunk size of transfer " + transferID);
+		card = start.getuappCard();
+		size = start.getSize();
+		chunkSize = start.getChunkSize();
+		chunks = start.getChunkCount();
+		digest = MessageDigest.getInstance("SHA-256");
+		file = new File(folder, transferID + ".part");
+
+		if (file.exists()) {
+			// keep the whole chunks, but receive the last one again
+			next = (int) Math.min(file.length() / chunkSize, Math.max(chunks - 1, 0));
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength((long) next * chunkSize);
+			} finally {
+				raf.close();
+			}
+			InputStream in = new FileInputStream(file);
+			try {
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = in.read(buf)) > 0)
+					digest.update(buf, 0, n);
+			} finally {
+				in.close();
+			}
+		} else {
+			if (!folder.exists() && !folder.mkdirs())
+				throw new IOException("Unable to create the folder " + folder.getPath());
+			if (!file.createNewFile())
+				throw new IOException("Unable to create the file " + file.getPath());
+		}
+	}
+
+	String getTransferID() {
+		return transferID;
+	}
+
+	UAPPCard getCard() {
+		return card;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the index of the next expected chunk.
+	 */
+	int getNext() {
+		return next;
+	}
+
+	boolean isComplete() {
+		return next == chunks;
+	}
+
+	/**
+	 * Append a chunk to the file.
+	 *
+	 * @param index
+	 *            the index of the chunk.
+	 * @param data
+	 *            the content of the chunk.
+	 * @return false if the chunk is not the next expected one and was ignored.
+	 * @throws IOException
+	 *             if the chunk has a wrong size or could not be written.
+	 */
+	boolean write(int index, byte[] data) throws IOException {
+		if (index != next)
+			return false;
+		long expected = index == chunks - 1 ? size - (long) index * chunkSize : chunkSize;
+		if (data.length != expected)
+			throw new IOException(
+					"Chunk " + index + " of transfer " + transferID + " has " + data.length + " instead of "
+							+ expected + " bytes");
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		digest.update(data);
+		next++;
+		return true;
+	}
+
+	/**
+	 * @return true if the hash of the received content matches the transfer ID.
+	 *         Must only be called once the reception is complete.
+	 */
+	boolean verify() {
+		return PartTransfer.toHex(digest.digest()).equalsIgnoreCase(transferID);
+	}
+}
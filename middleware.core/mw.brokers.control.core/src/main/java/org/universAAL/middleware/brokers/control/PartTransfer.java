@@ -0,0 +1,203 @@
+/*
+        Copyright 2007-2014 CNR-ISTI, http://isti.cnr.it
+        Institute of Information Science and Technologies
+        of the Italian National Research Council
+
+        See the NOTICE file distributed with this work for additional
+        information regarding copyright ownership
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+          http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+ */
+package org.universAAL.middleware.brokers.control;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.universAAL.middleware.brokers.message.deploy.DeployMessage;
+import org.universAAL.middleware.brokers.message.deploy.DeployMessage.DeployMessageType;
+import org.universAAL.middleware.brokers.message.deploy.DeployTransferPayload;
+import org.universAAL.middleware.brokers.message.deploy.DeployTransferPayload.TransferStatus;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.mpa.UAPPCard;
+import org.universAAL.middleware.xsd.util.Base64;
+
+/**
+ * The sending side of the chunked transfer of a part. The part is sent in
+ * chunks of a fixed size; at most <tt>window</tt> chunks are sent that are not
+ * yet acknowledged by the target node. If the target does not acknowledge
+ * anything within the timeout, the transfer is announced again, which tells
+ * the sender where to resume.
+ */
+abstract class PartTransfer {
+
+	private final byte[] part;
+	private final PeerCard target;
+	private final UAPPCard card;
+	private final String transferID;
+	private final int chunkSize;
+	private final int chunks;
+	private final int window;
+	private final long timeout;
+	private final int maxRetries;
+
+	// the index of the next chunk expected by the target, -1 until the first
+	// acknowledgement
+	private int acked = -1;
+	private TransferStatus status = null;
+
+	/**
+	 * @param part
+	 *            the content of the part.
+	 * @param target
+	 *            the node into which to install the part.
+	 * @param card
+	 *            the card of the part.
+	 * @param chunkSize
+	 *            the size of a chunk in bytes.
+	 * @param window
+	 *            the maximum number of unacknowledged chunks.
+	 * @param timeout
+	 *            the time in milliseconds to wait for an acknowledgement.
+	 * @param maxRetries
+	 *            how often the transfer is announced again without progress
+	 *            before it fails.
+	 */
+	PartTransfer(byte[] part, PeerCard target, UAPPCard card, int chunkSize, int window, long timeout,
+			int maxRetries) throws NoSuchAlgorithmException {
+		this.part = part;
+		this.target = target;
+		this.card = card;
+		this.chunkSize = chunkSize;
+		this.window = Math.max(1, window);
+		this.timeout = timeout;
+		this.maxRetries = maxRetries;
+		this.transferID = toHex(MessageDigest.getInstance("SHA-256").digest(part));
+		this.chunks = (int) (((long) part.length + chunkSize - 1) / chunkSize);
+	}
+
+	/**
+	 * Send a message of this transfer to the target node.
+	 */
+	protected abstract void send(PeerCard target, DeployMessage message);
+
+	String getTransferID() {
+		return transferID;
+	}
+
+	PeerCard getTarget() {
+		return target;
+	}
+
+	/**
+	 * Called when the target node acknowledged the transfer.
+	 *
+	 * @param next
+	 *            the index of the next chunk expected by the target.
+	 * @param status
+	 *            the status of the transfer at the target.
+	 */
+	synchronized void acknowledge(int next, TransferStatus status) {
+		if (status != null && status != TransferStatus.IN_PROGRESS)
+			this.status = status;
+		// acknowledgements of a resumed transfer may go back
+		acked = next;
+		notifyAll();
+	}
+
+	/**
+	 * Transfer the part. Blocks until the target node has received and
+	 * verified the whole part, or until the transfer failed.
+	 *
+	 * @return {@link TransferStatus#COMPLETED} or {@link TransferStatus#FAILED}
+	 *         if the target node answered, null if the target node never
+	 *         answered.
+	 */
+	TransferStatus transfer() throws InterruptedException {
+		boolean answered = false;
+		int retries = 0;
+		int sent = 0;
+		int progress = -1;
+		int best = -1;
+		announce();
+		long deadline = System.currentTimeMillis() + timeout;
+		while (true) {
+			int from, to;
+			synchronized (this) {
+				while (status == null && acked == progress && !canSend(sent)) {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0)
+						break;
+					wait(wait);
+				}
+				if (status != null)
+					return status;
+				if (acked != progress) {
+					// progress, or the target resumed at another chunk
+					answered = true;
+					if (acked > best) {
+						best = acked;
+						retries = 0;
+					}
+					// the first answer to an announcement tells where to
+					// resume, later ones only move the window
+					sent = progress < 0 ? acked : Math.max(sent, acked);
+					progress = acked;
+					deadline = System.currentTimeMillis() + timeout;
+				}
+				if (!canSend(sent)) {
+					if (System.currentTimeMillis() < deadline)
+						continue;
+					// no answer: maybe chunks or acknowledgements were lost
+					if (++retries > maxRetries)
+						return answered ? TransferStatus.FAILED : null;
+					sent = Math.max(acked, 0);
+					progress = -1;
+					acked = -1;
+					announce();
+					deadline = System.currentTimeMillis() + timeout;
+					continue;
+				}
+				from = sent;
+				to = Math.min(chunks, acked + window);
+			}
+			for (int i = from; i < to; i++)
+				sendChunk(i);
+			sent = to;
+		}
+	}
+
+	private boolean canSend(int sent) {
+		return acked >= 0 && sent < chunks && sent < acked + window;
+	}
+
+	private void announce() {
+		send(target, new DeployMessage(DeployMessageType.PART_TRANSFER_START,
+				DeployTransferPayload.start(transferID, card, part.length, chunkSize)));
+	}
+
+	private void sendChunk(int index) {
+		int off = index * chunkSize;
+		int len = Math.min(chunkSize, part.length - off);
+		send(target, new DeployMessage(DeployMessageType.PART_CHUNK,
+				DeployTransferPayload.chunk(transferID, index, Base64.encodeBytes(part, off, len))));
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -128,7 +128,7 @@ public abstract class ContextSubscriber extends Subscriber {
 			ContextEvent ce = (ContextEvent) (m.getContent());
 			if (AccessControl.INSTANCE.checkPermission(owner, getURI(), ce)) {
 				LogUtils.logInfo(owner, ContextSubscriber.class, "handleEvent",
-						new Object[] { busResourceURI, " received context event:\n", m.getContentAsString() }, null);
+						new Object[] { busResourceURI, " received context event:\n", m.getContentForLogging() }, null);
 				try {
 					handleContextEvent((ContextEvent) m.getContent());
 				} catch (Exception e) {
@@ -20,13 +20,16 @@
  */
 package org.universAAL.middleware.context.data;
 
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Vector;
 
 import org.universAAL.middleware.context.ContextSubscriber;
 import org.universAAL.middleware.context.impl.ContextStrategy.ContextFilterer;
 
 /**
+ * Stores the filterers as copy-on-write array: adding and removing filterers
+ * (rare) copies the array, routing an event (frequent) just reads the current
+ * snapshot without locking.
  *
  * @author <a href="mailto:noamsh@il.ibm.com">noamsh </a>
  *
@@ -35,23 +38,45 @@ import org.universAAL.middleware.context.impl.ContextStrategy.ContextFilterer;
  */
 public class FiltererContainerData extends AbstractFiltererContainer {
 
-	private Vector filterers = new Vector();
+	private static final ContextFilterer[] EMPTY = new ContextFilterer[0];
+
+	private volatile ContextFilterer[] filterers = EMPTY;
 
 	public FiltererContainerData(String containerKey) {
 		super(containerKey);
 	}
 
-	public void addFilterer(ContextFilterer contextFilterer) {
-		filterers.add(contextFilterer);
+	public synchronized void addFilterer(ContextFilterer contextFilterer) {
+		ContextFilterer[] newFilterers = new ContextFilterer[filterers.length + 1];
+		System.arraycopy(filterers, 0, newFilterers, 0, filterers.length);
+		newFilterers[filterers.length] = contextFilterer;
+		filterers = newFilterers;
 	}
 
+	/**
+	 * @return a copy of the filterers of this container.
+	 */
 	public Vector getFilterers() {
+		return new Vector(Arrays.asList(filterers));
+	}
+
+	public ContextFilterer[] getFiltererArray() {
 		return filterers;
 	}
 
-	public void removeFilterers(ContextSubscriber subscriber) {
-		for (Iterator i = filterers.iterator(); i.hasNext();)
-			if (((ContextFilterer) i.next()).s == subscriber)
-				i.remove();
+	public synchronized void removeFilterers(ContextSubscriber subscriber) {
+		ContextFilterer[] old = filterers;
+		int remaining = 0;
+		for (int i = 0; i < old.length; i++)
+			if (old[i].s != subscriber)
+				remaining++;
+		if (remaining == old.length)
+			return;
+
+		ContextFilterer[] newFilterers = remaining == 0 ? EMPTY : new ContextFilterer[remaining];
+		for (int i = 0, j = 0; i < old.length; i++)
+			if (old[i].s != subscriber)
+				newFilterers[j++] = old[i];
+		filterers = newFilterers;
 	}
 }
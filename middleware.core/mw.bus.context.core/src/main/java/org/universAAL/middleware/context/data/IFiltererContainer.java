@@ -38,6 +38,13 @@ public interface IFiltererContainer {
 
 	Vector getFilterers();
 
+	/**
+	 * Get a snapshot of all filterers of this container. The returned array
+	 * must not be modified; it can be iterated without locking while other
+	 * threads add or remove filterers.
+	 */
+	ContextFilterer[] getFiltererArray();
+
 	// void removeFilterer(ContextFilterer contextFilterer);
 
 	void removeFilterers(ContextSubscriber subscriber);
@@ -31,7 +31,34 @@ import java.util.Collection;
  */
 public interface IPropsData {
 
+	/**
+	 * Get the container for the given key, creating it if it does not exist
+	 * yet. To be used when registering filterers.
+	 */
 	IFiltererContainer getFiltererContainer(String key);
 
+	/**
+	 * Get the container for the given compound key, creating it if it does not
+	 * exist yet. To be used when registering filterers.
+	 */
+	IFiltererContainer getFiltererContainer(String key1, String key2);
+
+	/**
+	 * Get the container for the given key without creating it. This method is
+	 * used for routing events and neither allocates nor modifies the index.
+	 *
+	 * @return the container, or null if there is none for the key.
+	 */
+	IFiltererContainer findFiltererContainer(String key);
+
+	/**
+	 * Get the container for the given compound key without creating it. This
+	 * method is used for routing events and neither allocates nor modifies the
+	 * index.
+	 *
+	 * @return the container, or null if there is none for the key.
+	 */
+	IFiltererContainer findFiltererContainer(String key1, String key2);
+
 	Collection getAllFiltererContainers();
 }
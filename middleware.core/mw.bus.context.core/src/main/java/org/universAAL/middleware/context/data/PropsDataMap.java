@@ -20,13 +20,19 @@
  */
 package org.universAAL.middleware.context.data;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.universAAL.middleware.context.data.factory.ContextStrategyDataFactory;
 
 /**
+ * Index of filterer containers for simple keys (e.g. a subject URI) and
+ * compound keys (e.g. subject URI and property URI). Compound keys are stored
+ * in a two-level map so that looking up a container while routing an event
+ * does not need to concatenate the keys. The maps can be read concurrently
+ * while subscriptions are added.
  *
  * @author <a href="mailto:noamsh@il.ibm.com">noamsh </a>
  *
@@ -35,21 +41,54 @@ import org.universAAL.middleware.context.data.factory.ContextStrategyDataFactory
  */
 public class PropsDataMap implements IPropsData {
 
-	private Map map = new HashMap();
+	private final ConcurrentHashMap<String, IFiltererContainer> map = new ConcurrentHashMap<String, IFiltererContainer>();
+
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, IFiltererContainer>> compoundMap = new ConcurrentHashMap<String, ConcurrentHashMap<String, IFiltererContainer>>();
+
+	private static IFiltererContainer getOrCreate(ConcurrentHashMap<String, IFiltererContainer> m, String key,
+			String containerKey) {
+		IFiltererContainer container = m.get(key);
+		if (container == null) {
+			IFiltererContainer newContainer = new ContextStrategyDataFactory().createFiltererContainer(containerKey);
+			container = m.putIfAbsent(key, newContainer);
+			if (container == null)
+				container = newContainer;
+		}
+		return container;
+	}
 
 	public IFiltererContainer getFiltererContainer(String key) {
-		IFiltererContainer container = null;
-		if (!map.containsKey(key)) {
-			container = new ContextStrategyDataFactory().createFiltererContainer(key);
-			map.put(key, container);
-		} else {
-			container = (IFiltererContainer) map.get(key);
+		return getOrCreate(map, key, key);
+	}
+
+	public IFiltererContainer getFiltererContainer(String key1, String key2) {
+		ConcurrentHashMap<String, IFiltererContainer> m = compoundMap.get(key1);
+		if (m == null) {
+			ConcurrentHashMap<String, IFiltererContainer> newMap = new ConcurrentHashMap<String, IFiltererContainer>();
+			m = compoundMap.putIfAbsent(key1, newMap);
+			if (m == null)
+				m = newMap;
 		}
+		return getOrCreate(m, key2, key1 + key2);
+	}
 
-		return container;
+	public IFiltererContainer findFiltererContainer(String key) {
+		return key == null ? null : map.get(key);
+	}
+
+	public IFiltererContainer findFiltererContainer(String key1, String key2) {
+		if (key1 == null || key2 == null)
+			return null;
+		ConcurrentHashMap<String, IFiltererContainer> m = compoundMap.get(key1);
+		return m == null ? null : m.get(key2);
 	}
 
 	public Collection getAllFiltererContainers() {
-		return map.values();
+		if (compoundMap.isEmpty())
+			return map.values();
+		ArrayList result = new ArrayList(map.values());
+		for (Iterator i = compoundMap.values().iterator(); i.hasNext();)
+			result.addAll(((ConcurrentHashMap) i.next()).values());
+		return result;
 	}
 }
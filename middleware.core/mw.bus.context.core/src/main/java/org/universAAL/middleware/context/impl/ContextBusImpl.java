@@ -52,22 +52,32 @@ public class ContextBusImpl extends AbstractBus implements ContextBus {
 	private static ContextBusImpl theContextBus;
 	private static ContextBusOntology contextBusOntology = null;
 
+	private final Object assessLock = new Object();
+
 	public static Object[] getContextBusFetchParams() {
 		return busFetchParams.clone();
 	}
 
-	public synchronized void assessContentSerialization(Resource content) {
+	/**
+	 * In debug mode, log the serialization of the given content and check that
+	 * it can be deserialized again. The lock is only taken in debug mode (to
+	 * keep the dumps of concurrent calls apart), so publishing is not
+	 * serialized in normal operation.
+	 */
+	public void assessContentSerialization(Resource content) {
 		if (Constants.debugMode()) {
-			LogUtils.logDebug(context, ContextBusImpl.class, "assessContentSerialization",
-					new Object[] { "Assessing message content serialization:" }, null);
-			// System.out.println(new RuntimeException().getStackTrace()[1]);
-
-			String str = BusMessage.trySerializationAsContent(content);
-			LogUtils.logDebug(context, ContextBusImpl.class, "assessContentSerialization",
-					new Object[] { "\n      1. serialization dump\n", str,
-							"\n      2. deserialize & compare with the original resource\n" },
-					null);
-			new ResourceComparator().printDiffs(content, (Resource) BusMessage.deserializeAsContent(str));
+			synchronized (assessLock) {
+				LogUtils.logDebug(context, ContextBusImpl.class, "assessContentSerialization",
+						new Object[] { "Assessing message content serialization:" }, null);
+				// System.out.println(new RuntimeException().getStackTrace()[1]);
+
+				String str = BusMessage.trySerializationAsContent(content);
+				LogUtils.logDebug(context, ContextBusImpl.class, "assessContentSerialization",
+						new Object[] { "\n      1. serialization dump\n", str,
+								"\n      2. deserialize & compare with the original resource\n" },
+						null);
+				new ResourceComparator().printDiffs(content, (Resource) BusMessage.deserializeAsContent(str));
+			}
 		}
 	}
 
@@ -86,6 +96,7 @@ public class ContextBusImpl extends AbstractBus implements ContextBus {
 		if (theContextBus != null) {
 			OntologyManagement.getInstance().unregister(theContextBus.context, contextBusOntology);
 			contextBusOntology = null;
+			((ContextStrategy) theContextBus.busStrategy).close();
 			theContextBus.dispose();
 			theContextBus = null;
 		}
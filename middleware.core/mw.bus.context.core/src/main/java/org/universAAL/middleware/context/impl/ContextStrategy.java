@@ -19,10 +19,15 @@
  */
 package org.universAAL.middleware.context.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
@@ -30,6 +35,7 @@ import org.universAAL.middleware.bus.model.AbstractBus;
 import org.universAAL.middleware.bus.model.BusStrategy;
 import org.universAAL.middleware.bus.msg.BusMessage;
 import org.universAAL.middleware.bus.msg.MessageType;
+import org.universAAL.middleware.container.SharedObjectListener;
 import org.universAAL.middleware.container.utils.LogUtils;
 import org.universAAL.middleware.context.ContextEvent;
 import org.universAAL.middleware.context.ContextEventPattern;
@@ -43,7 +49,13 @@ import org.universAAL.middleware.context.data.IPropsData;
 import org.universAAL.middleware.context.data.IProvisionsData;
 import org.universAAL.middleware.context.data.factory.ContextStrategyDataFactory;
 import org.universAAL.middleware.context.data.factory.IContextStrategyDataFactory;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.space.SpaceDescriptor;
+import org.universAAL.middleware.interfaces.space.SpaceStatus;
+import org.universAAL.middleware.managers.api.SpaceListener;
+import org.universAAL.middleware.managers.api.SpaceManager;
 import org.universAAL.middleware.modules.CommunicationModule;
+import org.universAAL.middleware.modules.ConfigurableCommunicationModule;
 import org.universAAL.middleware.owl.OntologyManagement;
 import org.universAAL.middleware.rdf.Resource;
 
@@ -52,9 +64,15 @@ import org.universAAL.middleware.rdf.Resource;
  *         Tazari</a>
  *
  */
-public class ContextStrategy extends BusStrategy {
+public class ContextStrategy extends BusStrategy implements SpaceListener, SharedObjectListener {
 
-	private static final String COMPOUND_INDEX_CONNECTOR = "";
+	/**
+	 * Property to disable sending context events only to the peers that have
+	 * a matching subscription (see {@link PeerInterests}). If set to
+	 * <tt>false</tt>, all events are broadcast to all peers. Default is
+	 * <tt>true</tt>.
+	 */
+	public static final String PROP_INTEREST_ROUTING = "org.universaal.context.interest.routing";
 
 	private static final String PROP_CONTEXT_PEER_PROVISIONS = Resource.VOCABULARY_NAMESPACE
 			+ "myContextProvisions";
@@ -67,6 +85,46 @@ public class ContextStrategy extends BusStrategy {
 		public ContextEventPattern f;
 	}
 
+	/**
+	 * Collects the subscribers of an event without duplicates. An instance is
+	 * reused by the same thread for all events, so that routing an event does
+	 * not need to create a new set. Small numbers of subscribers are compared
+	 * linearly, for larger numbers an identity set is used additionally.
+	 */
+	private static final class SubscriberCollector {
+		private static final int LINEAR_LIMIT = 8;
+		final ArrayList<ContextSubscriber> subscribers = new ArrayList<ContextSubscriber>();
+		private final IdentityHashMap<ContextSubscriber, Boolean> set = new IdentityHashMap<ContextSubscriber, Boolean>();
+
+		void add(ContextSubscriber s) {
+			int size = subscribers.size();
+			if (size < LINEAR_LIMIT) {
+				for (int i = 0; i < size; i++)
+					if (subscribers.get(i) == s)
+						return;
+			} else {
+				if (size == LINEAR_LIMIT)
+					for (int i = 0; i < size; i++)
+						set.put(subscribers.get(i), Boolean.TRUE);
+				if (set.put(s, Boolean.TRUE) != null)
+					return;
+			}
+			subscribers.add(s);
+		}
+
+		void clear() {
+			if (subscribers.size() >= LINEAR_LIMIT)
+				set.clear();
+			subscribers.clear();
+		}
+	}
+
+	/**
+	 * The collector of the current thread, null while it is in use (a
+	 * subscriber may publish a new event synchronously).
+	 */
+	private static final ThreadLocal<SubscriberCollector> collectors = new ThreadLocal<SubscriberCollector>();
+
 	private IProvisionsData provisions;
 	private INumCalledPeersData numCalledPeers;
 	private IPropsData allPropsOfDomain;
@@ -77,6 +135,20 @@ public class ContextStrategy extends BusStrategy {
 	private IPropsData notIndexedProps;
 	private IAllProvisionData allProvisions;
 
+	/**
+	 * For every subscriber, the filterer containers that hold its filterers,
+	 * together with the keys of the containers for the summary of the
+	 * subscriptions; also the lock for changes of the subscriptions.
+	 */
+	private final Map<ContextSubscriber, Map<IFiltererContainer, String>> subscriptions = new IdentityHashMap<ContextSubscriber, Map<IFiltererContainer, String>>();
+
+	/**
+	 * The subscriptions of the peers, null if events are broadcast.
+	 */
+	private volatile PeerInterests interests = null;
+
+	private volatile SpaceManager spaceManager = null;
+
 	public ContextStrategy(CommunicationModule cm) {
 		super(cm, "Context Bus Strategy");
 
@@ -98,6 +170,42 @@ public class ContextStrategy extends BusStrategy {
 		return new ContextStrategyDataFactory();
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public synchronized void start() {
+		super.start();
+		Object routing = busModule.getProperty(PROP_INTEREST_ROUTING);
+		if (routing != null && "false".equalsIgnoreCase(routing.toString().trim()))
+			return;
+
+		interests = new PeerInterests(busModule) {
+			@Override
+			protected void send(Resource r, PeerCard receiver) {
+				if (bus == null)
+					return;
+				BusMessage m = new BusMessage(MessageType.p2p_event, r, bus);
+				m.setReceiver(receiver);
+				ContextStrategy.this.send(m);
+			}
+		};
+		if (busModule.getContainer() != null) {
+			Object o = busModule.getContainer().fetchSharedObject(busModule,
+					new Object[] { SpaceManager.class.getName() }, this);
+			sharedObjectAdded(o, null);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setBus(AbstractBus bus) {
+		super.setBus(bus);
+		PeerInterests pi = interests;
+		if (pi != null) {
+			// tell the other peers about our subscriptions and ask for theirs
+			pi.sendComplete(null, true);
+		}
+	}
+
 	/**
 	 * Allows a Context Publisher to announce which events it is going to
 	 * publish during its membership at context bus.
@@ -130,19 +238,67 @@ public class ContextStrategy extends BusStrategy {
 		if (initialSubscriptions == null || subscriber == null)
 			return;
 
-		for (int i = 0; i < initialSubscriptions.length; i++) {
-			ContextFilterer filterer = new ContextFilterer();
-			filterer.s = subscriber;
-			filterer.f = initialSubscriptions[i];
-
-			Vector filterers = getFilterers(filterer.f);
-			for (int j = 0; j < filterers.size(); j++) {
-				IFiltererContainer container = (IFiltererContainer) filterers.get(j);
-				container.addFilterer(filterer);
+		synchronized (subscriptions) {
+			Map<IFiltererContainer, String> containers = subscriptions.get(subscriber);
+			if (containers == null) {
+				containers = new IdentityHashMap<IFiltererContainer, String>();
+				subscriptions.put(subscriber, containers);
+			}
+			List<IFiltererContainer> changed = new ArrayList<IFiltererContainer>();
+			for (int i = 0; i < initialSubscriptions.length; i++) {
+				ContextFilterer filterer = new ContextFilterer();
+				filterer.s = subscriber;
+				filterer.f = initialSubscriptions[i];
+
+				Vector filterers = getFilterers(filterer.f, containers);
+				for (int j = 0; j < filterers.size(); j++) {
+					IFiltererContainer container = (IFiltererContainer) filterers.get(j);
+					container.addFilterer(filterer);
+					changed.add(container);
+				}
 			}
+			updateInterests(changed, containers);
 		}
 	}
 
+	/**
+	 * Update the summary of the subscriptions of this peer after the given
+	 * containers have changed. Must be called while holding the lock on
+	 * {@link #subscriptions}.
+	 *
+	 * @param changed
+	 *            the containers that have changed.
+	 * @param keys
+	 *            the keys of the containers.
+	 */
+	private void updateInterests(Collection<IFiltererContainer> changed, Map<IFiltererContainer, String> keys) {
+		PeerInterests pi = interests;
+		if (pi == null)
+			return;
+		List<String> present = new ArrayList<String>();
+		List<String> absent = new ArrayList<String>();
+		for (IFiltererContainer container : changed) {
+			String key = keys.get(container);
+			if (key == null)
+				continue;
+			if (container.getFiltererArray().length > 0)
+				present.add(key);
+			else
+				absent.add(key);
+		}
+		pi.updateLocal(present, absent);
+	}
+
+	/**
+	 * Remember the key of the container for the summary of the
+	 * subscriptions.
+	 */
+	private static IFiltererContainer withKey(IFiltererContainer container, String key,
+			Map<IFiltererContainer, String> keys) {
+		keys.put(container, key);
+		return container;
+	}
+
 	ContextEventPattern[] getAllProvisions(ContextPublisher cs) {
 		if (cs == null)
 			return null;
@@ -213,7 +369,17 @@ public class ContextStrategy extends BusStrategy {
 		return (String[]) s.toArray(new String[] {});
 	}
 
-	private Vector getFilterers(ContextEventPattern f) {
+	/**
+	 * Get the filterer containers for a pattern.
+	 *
+	 * @param f
+	 *            the pattern.
+	 * @param keys
+	 *            the map to which the containers are added, together with
+	 *            their keys for the summary of the subscriptions.
+	 * @return the containers.
+	 */
+	private Vector getFilterers(ContextEventPattern f, Map<IFiltererContainer, String> keys) {
 		Vector result = new Vector();
 		String[] props = f.getIndices().getProperties();
 		String[] subjects = f.getIndices().getSubjects();
@@ -222,35 +388,38 @@ public class ContextStrategy extends BusStrategy {
 		if (subjects.length == 0) {
 			if (subjectTypes.length == 0) {
 				if (props.length == 0) {
-					result.add(notIndexedProps.getFiltererContainer(""));
+					result.add(withKey(notIndexedProps.getFiltererContainer(""), PeerInterests.NOT_INDEXED_KEY, keys));
 				} else {
 					for (int i = 0; i < props.length; i++) {
-						result.add(allSubjectsWithProp.getFiltererContainer(props[i]));
+						result.add(withKey(allSubjectsWithProp.getFiltererContainer(props[i]),
+								PeerInterests.propKey(props[i]), keys));
 					}
 				}
 			} else if (props.length == 0) {
 				String[] subjectTypesSubClasses = getSubClasses(subjectTypes);
 				for (int i = 0; i < subjectTypesSubClasses.length; i++) {
-					result.add(allPropsOfDomain.getFiltererContainer(subjectTypesSubClasses[i]));
+					result.add(withKey(allPropsOfDomain.getFiltererContainer(subjectTypesSubClasses[i]),
+							PeerInterests.domainKey(subjectTypesSubClasses[i]), keys));
 				}
 			} else {
 				String[] subjectTypesSubClasses = getSubClasses(subjectTypes);
 				for (int i = 0; i < subjectTypesSubClasses.length; i++) {
 					for (int j = 0; j < props.length; j++) {
-						result.add(specificDomainAndProp
-								.getFiltererContainer(subjectTypesSubClasses[i] + COMPOUND_INDEX_CONNECTOR + props[j]));
+						result.add(withKey(specificDomainAndProp.getFiltererContainer(subjectTypesSubClasses[i], props[j]),
+								PeerInterests.domainAndPropKey(subjectTypesSubClasses[i], props[j]), keys));
 					}
 				}
 			}
 		} else if (props.length == 0) {
 			for (int i = 0; i < subjects.length; i++) {
-				result.add(allPropsOfSubject.getFiltererContainer(subjects[i]));
+				result.add(withKey(allPropsOfSubject.getFiltererContainer(subjects[i]),
+						PeerInterests.subjectKey(subjects[i]), keys));
 			}
 		} else {
 			for (int i = 0; i < subjects.length; i++) {
 				for (int j = 0; j < props.length; j++) {
-					result.add(specificSubjectAndProp
-							.getFiltererContainer(subjects[i] + COMPOUND_INDEX_CONNECTOR + props[j]));
+					result.add(withKey(specificSubjectAndProp.getFiltererContainer(subjects[i], props[j]),
+							PeerInterests.subjectAndPropKey(subjects[i], props[j]), keys));
 				}
 			}
 		}
@@ -266,8 +435,7 @@ public class ContextStrategy extends BusStrategy {
 			handleEvent(message);
 			break;
 		case MessageType.P2P_EVENT:
-			LogUtils.logWarn(busModule, getClass(), "handle", new Object[] { "Unexpected P2P_EVENT message ignored!" },
-					null);
+			handleP2PEvent(message);
 			break;
 		case MessageType.P2P_REPLY:
 			handleP2PReply(message);
@@ -290,6 +458,18 @@ public class ContextStrategy extends BusStrategy {
 		}
 	}
 
+	private void handleP2PEvent(BusMessage message) {
+		Object content = message.getContent();
+		if (content instanceof Resource && PeerInterests.isInterestsMessage((Resource) content)) {
+			PeerInterests pi = interests;
+			if (pi != null)
+				pi.handle(message.getSender(), (Resource) content);
+		} else {
+			LogUtils.logWarn(busModule, getClass(), "handle", new Object[] { "Unexpected P2P_EVENT message ignored!" },
+					null);
+		}
+	}
+
 	private void handleP2PRequest(BusMessage message) {
 		Object content = message.getContent();
 		if (content instanceof Resource) {
@@ -351,58 +531,134 @@ public class ContextStrategy extends BusStrategy {
 		}
 
 		if (!message.senderResidesOnDifferentPeer())
-			send(message);
+			sendToInterestedPeers(message);
 		notifyAllLocalSubscribers(message);
 	}
 
+	/**
+	 * Send a local event to the peers that have subscribed to it. The event is
+	 * broadcast if the subscriptions of the other peers are not known.
+	 *
+	 * The peers are taken from the membership of the channel of the context
+	 * bus, because the peers of the space manager are updated later. If a
+	 * member of the channel is not known to the space manager yet, the event
+	 * is broadcast. If the membership of the channel is not available, the
+	 * event is broadcast as well, unless the peers of the space manager are
+	 * trusted (see {@link BusStrategy#PROP_LOCAL_BROADCAST}).
+	 */
+	private void sendToInterestedPeers(BusMessage message) {
+		PeerInterests pi = interests;
+		SpaceManager sm = spaceManager;
+		if (pi == null || sm == null) {
+			send(message);
+			return;
+		}
+
+		List<PeerCard> peers = new ArrayList<PeerCard>();
+		try {
+			Map<String, PeerCard> all = sm.getPeers();
+			if (all == null) {
+				send(message);
+				return;
+			}
+			Collection<String> members = getChannelMembers();
+			if (members == null) {
+				if (!isLocalBroadcast()) {
+					send(message);
+					return;
+				}
+				members = new ArrayList<String>(all.keySet());
+			}
+			String myID = bus.getPeerCard().getPeerID();
+			for (String id : members) {
+				if (id.equals(myID))
+					continue;
+				PeerCard peer = all.get(id);
+				if (peer == null) {
+					// the peer has joined the channel, but not the space yet
+					send(message);
+					return;
+				}
+				peers.add(peer);
+			}
+		} catch (ConcurrentModificationException e) {
+			// the peers have changed in the meantime
+			send(message);
+			return;
+		}
+
+		List<PeerCard> receivers = pi.getReceivers((ContextEvent) message.getContent(), peers);
+		if (receivers == null) {
+			send(message);
+		} else if (!receivers.isEmpty()) {
+			message.setReceivers(receivers);
+			send(message);
+		}
+	}
+
+	/**
+	 * Get the IDs of the peers that are members of the channel of the context
+	 * bus, according to the communication connector.
+	 *
+	 * @return the IDs, or null if the membership is not available.
+	 */
+	private List<String> getChannelMembers() {
+		if (!(commModule instanceof ConfigurableCommunicationModule) || bus == null)
+			return null;
+		List<String> members = ((ConfigurableCommunicationModule) commModule).getGroupMembers(bus.getBrokerName());
+		return members == null || members.isEmpty() ? null : members;
+	}
+
 	// the message content must be a ContextEvent
 	private void notifyAllLocalSubscribers(BusMessage message) {
 		ContextEvent event = (ContextEvent) message.getContent();
-		Set<ContextSubscriber> subscribers = getAllSubscribersOfEvent(event);
-		for (ContextSubscriber subscriber : subscribers)
-			subscriber.handleEvent(message);
-		if (subscribers.size() == 0) {
-			LogUtils.logDebug(busModule, ContextStrategy.class,
-					"notifyAllLocalSubscribers", new Object[] {
-							"No subscribers registered for received context event:\n", message.getContentAsString() },
-					null);
+		SubscriberCollector collector = collectors.get();
+		if (collector == null)
+			collector = new SubscriberCollector();
+		else
+			collectors.set(null);
+		try {
+			collectAllSubscribersOfEvent(event, collector);
+			ArrayList<ContextSubscriber> subscribers = collector.subscribers;
+			for (int i = 0; i < subscribers.size(); i++)
+				subscribers.get(i).handleEvent(message);
+			if (subscribers.size() == 0) {
+				LogUtils.logDebug(busModule, ContextStrategy.class, "notifyAllLocalSubscribers",
+						new Object[] { "No subscribers registered for received context event:\n",
+								message.getContentForLogging() },
+						null);
+			}
+		} finally {
+			collector.clear();
+			collectors.set(collector);
 		}
 	}
 
-	private Set<ContextSubscriber> getAllSubscribersOfEvent(ContextEvent event) {
-		Set<ContextSubscriber> subscribers = new HashSet<ContextSubscriber>();
-
+	private void collectAllSubscribersOfEvent(ContextEvent event, SubscriberCollector subscribers) {
 		String propertyURI = event.getRDFPredicate();
 		String subjectURI = event.getSubjectURI();
 		String subjectTypeURI = event.getSubjectTypeURI();
-		String specificSubjectProperty = subjectURI + COMPOUND_INDEX_CONNECTOR + propertyURI;
-		String specificDomainProperty = subjectTypeURI + COMPOUND_INDEX_CONNECTOR + propertyURI;
-
-		addSubscribersForFilter(specificSubjectAndProp, specificSubjectProperty, event, subscribers);
-		addSubscribersForFilter(specificDomainAndProp, specificDomainProperty, event, subscribers);
-		addSubscribersForFilter(allPropsOfSubject, subjectURI, event, subscribers);
-		addSubscribersForFilter(allPropsOfDomain, subjectTypeURI, event, subscribers);
-		addSubscribersForFilter(allSubjectsWithProp, propertyURI, event, subscribers);
-
-		List<ContextFilterer> notIndexedPropsFilterers = notIndexedProps.getFiltererContainer("").getFilterers();
-		addSubscribersForMatchingFilterers(notIndexedPropsFilterers, event, subscribers);
 
-		return subscribers;
+		addSubscribersForMatchingFilterers(specificSubjectAndProp.findFiltererContainer(subjectURI, propertyURI),
+				event, subscribers);
+		addSubscribersForMatchingFilterers(specificDomainAndProp.findFiltererContainer(subjectTypeURI, propertyURI),
+				event, subscribers);
+		addSubscribersForMatchingFilterers(allPropsOfSubject.findFiltererContainer(subjectURI), event, subscribers);
+		addSubscribersForMatchingFilterers(allPropsOfDomain.findFiltererContainer(subjectTypeURI), event,
+				subscribers);
+		addSubscribersForMatchingFilterers(allSubjectsWithProp.findFiltererContainer(propertyURI), event,
+				subscribers);
+		addSubscribersForMatchingFilterers(notIndexedProps.findFiltererContainer(""), event, subscribers);
 	}
 
-	private void addSubscribersForFilter(IPropsData propsData, String filter, ContextEvent event,
-			Set<ContextSubscriber> allSubscribers) {
-		IFiltererContainer filtererContainer = propsData.getFiltererContainer(filter);
-		if (filtererContainer != null) {
-			addSubscribersForMatchingFilterers(filtererContainer.getFilterers(), event, allSubscribers);
-		}
-	}
-
-	private void addSubscribersForMatchingFilterers(List<ContextFilterer> notIndexedPropsFilterers, ContextEvent event,
-			Set<ContextSubscriber> subscribers) {
-		for (ContextFilterer filterer : notIndexedPropsFilterers) {
-			if (filterer.f.matches(event)) { // NOTE
-				subscribers.add(filterer.s);
+	private void addSubscribersForMatchingFilterers(IFiltererContainer filtererContainer, ContextEvent event,
+			SubscriberCollector subscribers) {
+		if (filtererContainer == null)
+			return;
+		ContextFilterer[] filterers = filtererContainer.getFiltererArray();
+		for (int i = 0; i < filterers.length; i++) {
+			if (filterers[i].f.matches(event)) { // NOTE
+				subscribers.add(filterers[i].s);
 			}
 		}
 	}
@@ -422,16 +678,28 @@ public class ContextStrategy extends BusStrategy {
 		if (initialSubscriptions == null || subscriber == null)
 			return;
 
-		for (int i = 0; i < initialSubscriptions.length; i++) {
-			Vector filterers = getFilterers(initialSubscriptions[i]);
-			if (filterers == null)
-				continue;
-
-			for (Iterator j = filterers.iterator(); j.hasNext();) {
-				IFiltererContainer container = (IFiltererContainer) j.next();
-
-				container.removeFilterers(subscriber);
+		synchronized (subscriptions) {
+			Map<IFiltererContainer, String> containers = subscriptions.get(subscriber);
+			if (containers == null)
+				return;
+			Map<IFiltererContainer, String> changed = new IdentityHashMap<IFiltererContainer, String>();
+			for (int i = 0; i < initialSubscriptions.length; i++) {
+				Vector filterers = getFilterers(initialSubscriptions[i], changed);
+				if (filterers == null)
+					continue;
+
+				for (Iterator j = filterers.iterator(); j.hasNext();) {
+					IFiltererContainer container = (IFiltererContainer) j.next();
+
+					container.removeFilterers(subscriber);
+					// all filterers of the subscriber are removed from the
+					// container
+					containers.remove(container);
+				}
 			}
+			if (containers.isEmpty())
+				subscriptions.remove(subscriber);
+			updateInterests(changed.keySet(), changed);
 		}
 	}
 
@@ -443,13 +711,6 @@ public class ContextStrategy extends BusStrategy {
 		// TODO:
 	}
 
-	private void remove(ContextSubscriber subscriber, IPropsData propsData) {
-		for (Iterator i = propsData.getAllFiltererContainers().iterator(); i.hasNext();) {
-			IFiltererContainer container = (IFiltererContainer) i.next();
-			container.removeFilterers(subscriber);
-		}
-	}
-
 	/**
 	 * Remove ALL patterns of Context Events that a Context Subscriber is
 	 * interested in, so it no longer receives Events OF ANY KIND
@@ -461,16 +722,67 @@ public class ContextStrategy extends BusStrategy {
 		if (subscriber == null)
 			return;
 
-		remove(subscriber, notIndexedProps);
+		synchronized (subscriptions) {
+			// only the containers of this subscriber have to be changed
+			Map<IFiltererContainer, String> containers = subscriptions.remove(subscriber);
+			if (containers == null)
+				return;
+			for (IFiltererContainer container : containers.keySet())
+				container.removeFilterers(subscriber);
+			updateInterests(containers.keySet(), containers);
+		}
+	}
 
-		remove(subscriber, allSubjectsWithProp);
+	/** {@inheritDoc} */
+	public void spaceJoined(SpaceDescriptor spaceDescriptor) {
+	}
+
+	/** {@inheritDoc} */
+	public void spaceLost(SpaceDescriptor spaceDescriptor) {
+	}
+
+	/** {@inheritDoc} */
+	public void peerJoined(PeerCard peer) {
+		PeerInterests pi = interests;
+		if (pi != null && bus != null && !peer.equals(bus.getPeerCard())) {
+			// exchange the summaries of the subscriptions with the new peer
+			pi.sendComplete(peer, true);
+		}
+	}
+
+	/** {@inheritDoc} */
+	public void peerLost(PeerCard peer) {
+		PeerInterests pi = interests;
+		if (pi != null)
+			pi.peerLost(peer);
+	}
 
-		remove(subscriber, allPropsOfSubject);
+	/** {@inheritDoc} */
+	public void spaceStatusChanged(SpaceStatus status) {
+	}
 
-		remove(subscriber, specificSubjectAndProp);
+	/** {@inheritDoc} */
+	public void sharedObjectAdded(Object sharedObj, Object removeHook) {
+		if (sharedObj instanceof SpaceManager) {
+			spaceManager = (SpaceManager) sharedObj;
+			spaceManager.addSpaceListener(this);
+		}
+	}
 
-		remove(subscriber, allPropsOfDomain);
+	/** {@inheritDoc} */
+	public void sharedObjectRemoved(Object removeHook) {
+	}
 
-		remove(subscriber, specificDomainAndProp);
+	/**
+	 * Stop exchanging the summaries of the subscriptions with other peers.
+	 */
+	void close() {
+		SpaceManager sm = spaceManager;
+		if (sm != null)
+			sm.removeSpaceListener(this);
+		spaceManager = null;
+		PeerInterests pi = interests;
+		if (pi != null)
+			pi.close();
 	}
 }
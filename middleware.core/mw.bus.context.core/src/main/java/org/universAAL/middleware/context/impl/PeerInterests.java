@@ -0,0 +1,431 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.context.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.rdf.Resource;
+
+/**
+ * Summaries of the subscriptions on the peers of the space, used to send
+ * context events only to the peers that have a subscriber for them.
+ *
+ * The summary of a peer is the set of keys of the non-empty filterer
+ * containers in its {@link ContextStrategy}, i.e. the combinations of
+ * subject, subject type and predicate that its subscribers are registered
+ * for, plus a marker for subscriptions that are not indexed. A peer sends its
+ * complete summary when asked for it and the changes of the summary whenever
+ * subscribers register or unregister. The messages carry a version number so
+ * that lost or reordered changes can be detected; the summary of a peer is
+ * requested again in that case. The version numbers start again when the
+ * context bus of a peer is restarted, so the messages also carry the ID of
+ * the sending instance; the summary of a peer is reset when this ID changes.
+ *
+ * As long as the summary of a peer is not known (e.g. because it runs an
+ * older version of the middleware), all events are sent to it.
+ */
+abstract class PeerInterests {
+
+	static final String TYPE_CONTEXT_BUS_INTERESTS = Resource.VOCABULARY_NAMESPACE + "ContextInterests";
+
+	static final String PROP_INTERESTS_VERSION = Resource.VOCABULARY_NAMESPACE + "interestsVersion";
+
+	/**
+	 * The ID of the instance that created the summary; versions of different
+	 * instances are not comparable.
+	 */
+	static final String PROP_INTERESTS_INSTANCE = Resource.VOCABULARY_NAMESPACE + "interestsInstance";
+
+	/**
+	 * The keys added to the summary, or all keys for a complete summary.
+	 */
+	static final String PROP_INTERESTS_ADDED = Resource.VOCABULARY_NAMESPACE + "addedInterests";
+
+	static final String PROP_INTERESTS_REMOVED = Resource.VOCABULARY_NAMESPACE + "removedInterests";
+
+	/**
+	 * Boolean, true if the message contains the complete summary.
+	 */
+	static final String PROP_INTERESTS_COMPLETE = Resource.VOCABULARY_NAMESPACE + "completeInterests";
+
+	/**
+	 * Boolean, true if the receiver should send its complete summary.
+	 */
+	static final String PROP_INTERESTS_REQUEST = Resource.VOCABULARY_NAMESPACE + "requestInterests";
+
+	static final String NOT_INDEXED_KEY = "*";
+
+	/**
+	 * The maximum number of changes that are kept while waiting for a missing
+	 * earlier change.
+	 */
+	private static final int MAX_PENDING = 16;
+
+	static String subjectAndPropKey(String subject, String prop) {
+		return "sp " + subject + " " + prop;
+	}
+
+	static String domainAndPropKey(String domain, String prop) {
+		return "dp " + domain + " " + prop;
+	}
+
+	static String subjectKey(String subject) {
+		return "s " + subject;
+	}
+
+	static String domainKey(String domain) {
+		return "d " + domain;
+	}
+
+	static String propKey(String prop) {
+		return "p " + prop;
+	}
+
+	/**
+	 * The summary of a remote peer.
+	 */
+	private static final class Summary {
+		/**
+		 * The current keys, null if the summary is not known. The set is not
+		 * changed but replaced.
+		 */
+		volatile Set<String> keys = null;
+		long version;
+		/**
+		 * The instance of the peer that sent the summary.
+		 */
+		String instance = null;
+		/**
+		 * True, if the complete summary was requested and not received yet.
+		 */
+		boolean requested = false;
+		/**
+		 * Changes received before an earlier change, by version.
+		 */
+		final TreeMap<Long, Resource> pending = new TreeMap<Long, Resource>();
+	}
+
+	private final ModuleContext mc;
+
+	/**
+	 * The keys of this peer.
+	 */
+	private final Set<String> localKeys = new HashSet<String>();
+	private long localVersion = 0;
+	private final String localInstance = UUID.randomUUID().toString();
+
+	/**
+	 * The summaries of the remote peers, by peer ID.
+	 */
+	private final Map<String, Summary> summaries = new ConcurrentHashMap<String, Summary>();
+
+	private ExecutorService sender = null;
+
+	PeerInterests(ModuleContext mc) {
+		this.mc = mc;
+	}
+
+	/**
+	 * Send a message with a summary to other peers.
+	 *
+	 * @param r
+	 *            the message content.
+	 * @param receiver
+	 *            the receiver, or null for all peers.
+	 */
+	protected abstract void send(Resource r, PeerCard receiver);
+
+	/**
+	 * Determine the peers to which an event has to be sent.
+	 *
+	 * @param event
+	 *            the event.
+	 * @param peers
+	 *            all remote peers.
+	 * @return null if the event has to be sent to all peers, otherwise the
+	 *         list of peers that have to receive the event (which may be
+	 *         empty). If no remote peer is given, the event is sent to all
+	 *         peers.
+	 */
+	List<PeerCard> getReceivers(ContextEvent event, Collection<PeerCard> peers) {
+		String subject = event.getSubjectURI();
+		String domain = event.getSubjectTypeURI();
+		String prop = event.getRDFPredicate();
+		String[] eventKeys = new String[6];
+		int n = 0;
+		eventKeys[n++] = NOT_INDEXED_KEY;
+		if (prop != null) {
+			eventKeys[n++] = propKey(prop);
+			if (subject != null)
+				eventKeys[n++] = subjectAndPropKey(subject, prop);
+			if (domain != null)
+				eventKeys[n++] = domainAndPropKey(domain, prop);
+		}
+		if (subject != null)
+			eventKeys[n++] = subjectKey(subject);
+		if (domain != null)
+			eventKeys[n++] = domainKey(domain);
+
+		List<PeerCard> receivers = new ArrayList<PeerCard>(peers.size());
+		for (PeerCard peer : peers) {
+			Summary summary = summaries.get(peer.getPeerID());
+			Set<String> keys = summary == null ? null : summary.keys;
+			if (keys == null) {
+				receivers.add(peer);
+				continue;
+			}
+			for (int i = 0; i < n; i++) {
+				if (keys.contains(eventKeys[i])) {
+					receivers.add(peer);
+					break;
+				}
+			}
+		}
+		return receivers.size() == peers.size() ? null : receivers;
+	}
+
+	/**
+	 * Update the summary of this peer and send the changes to all peers. The
+	 * caller has to make sure that calls are not made concurrently with other
+	 * changes of the filterer containers.
+	 *
+	 * @param present
+	 *            the keys that have subscriptions now.
+	 * @param absent
+	 *            the keys that have no subscriptions anymore.
+	 */
+	synchronized void updateLocal(Collection<String> present, Collection<String> absent) {
+		List<String> added = new ArrayList<String>();
+		List<String> removed = new ArrayList<String>();
+		for (String key : present)
+			if (localKeys.add(key))
+				added.add(key);
+		for (String key : absent)
+			if (localKeys.remove(key))
+				removed.add(key);
+		if (added.isEmpty() && removed.isEmpty())
+			return;
+
+		Resource r = createMessage();
+		r.setProperty(PROP_INTERESTS_INSTANCE, localInstance);
+		r.setProperty(PROP_INTERESTS_VERSION, new Long(++localVersion));
+		if (!added.isEmpty())
+			r.setProperty(PROP_INTERESTS_ADDED, added);
+		if (!removed.isEmpty())
+			r.setProperty(PROP_INTERESTS_REMOVED, removed);
+		post(r, null);
+	}
+
+	/**
+	 * Send the complete summary of this peer.
+	 *
+	 * @param receiver
+	 *            the receiver, or null for all peers.
+	 * @param request
+	 *            true, if the receivers should send their complete summary
+	 *            in return.
+	 */
+	synchronized void sendComplete(PeerCard receiver, boolean request) {
+		Resource r = createMessage();
+		r.setProperty(PROP_INTERESTS_INSTANCE, localInstance);
+		r.setProperty(PROP_INTERESTS_VERSION, new Long(localVersion));
+		r.setProperty(PROP_INTERESTS_COMPLETE, Boolean.TRUE);
+		if (!localKeys.isEmpty())
+			r.setProperty(PROP_INTERESTS_ADDED, new ArrayList<String>(localKeys));
+		if (request)
+			r.setProperty(PROP_INTERESTS_REQUEST, Boolean.TRUE);
+		post(r, receiver);
+	}
+
+	/**
+	 * Ask a peer for its complete summary.
+	 */
+	private void sendRequest(PeerCard receiver) {
+		Resource r = createMessage();
+		r.setProperty(PROP_INTERESTS_REQUEST, Boolean.TRUE);
+		post(r, receiver);
+	}
+
+	private Resource createMessage() {
+		Resource r = new Resource();
+		r.addType(TYPE_CONTEXT_BUS_INTERESTS, true);
+		return r;
+	}
+
+	static boolean isInterestsMessage(Resource r) {
+		return TYPE_CONTEXT_BUS_INTERESTS.equals(r.getType());
+	}
+
+	/**
+	 * Handle a message from another peer.
+	 *
+	 * @param sender
+	 *            the peer that sent the message.
+	 * @param r
+	 *            the message content.
+	 */
+	void handle(PeerCard sender, Resource r) {
+		if (sender == null)
+			return;
+
+		Object version = r.getProperty(PROP_INTERESTS_VERSION);
+		if (version instanceof Long) {
+			Summary summary = summaries.get(sender.getPeerID());
+			if (summary == null) {
+				summary = new Summary();
+				summaries.put(sender.getPeerID(), summary);
+			}
+			boolean request = false;
+			synchronized (summary) {
+				long v = ((Long) version).longValue();
+				Object instance = r.getProperty(PROP_INTERESTS_INSTANCE);
+				String id = instance == null ? null : instance.toString();
+				if (summary.instance == null ? id != null : !summary.instance.equals(id)) {
+					// the context bus of the peer was restarted, its versions
+					// start again
+					summary.instance = id;
+					summary.keys = null;
+					summary.version = 0;
+					summary.pending.clear();
+					summary.requested = false;
+				}
+				if (Boolean.TRUE.equals(r.getProperty(PROP_INTERESTS_COMPLETE))) {
+					if (summary.keys == null || v >= summary.version) {
+						summary.keys = Collections.unmodifiableSet(new HashSet<String>(toList(r
+								.getProperty(PROP_INTERESTS_ADDED))));
+						summary.version = v;
+						summary.requested = false;
+						summary.pending.headMap(Long.valueOf(v + 1)).clear();
+						applyPending(summary);
+					}
+				} else if (summary.keys != null && v <= summary.version) {
+					// already known
+				} else if (summary.keys != null && v == summary.version + 1) {
+					apply(summary, r, v);
+					applyPending(summary);
+				} else {
+					// an earlier change is missing
+					summary.pending.put(Long.valueOf(v), r);
+					if (summary.keys == null || summary.pending.size() > MAX_PENDING) {
+						// send all events to the peer until we know its
+						// summary again
+						summary.keys = null;
+						summary.pending.clear();
+						request = !summary.requested;
+						summary.requested = true;
+					}
+				}
+			}
+			if (request)
+				sendRequest(sender);
+		}
+
+		if (Boolean.TRUE.equals(r.getProperty(PROP_INTERESTS_REQUEST)))
+			sendComplete(sender, false);
+	}
+
+	private void apply(Summary summary, Resource r, long v) {
+		Set<String> keys = new HashSet<String>(summary.keys);
+		keys.addAll(toList(r.getProperty(PROP_INTERESTS_ADDED)));
+		keys.removeAll(toList(r.getProperty(PROP_INTERESTS_REMOVED)));
+		summary.keys = Collections.unmodifiableSet(keys);
+		summary.version = v;
+	}
+
+	private void applyPending(Summary summary) {
+		while (!summary.pending.isEmpty() && summary.pending.firstKey().longValue() == summary.version + 1) {
+			Long v = summary.pending.firstKey();
+			apply(summary, summary.pending.remove(v), v.longValue());
+		}
+	}
+
+	private static List<String> toList(Object o) {
+		List<String> result = new ArrayList<String>();
+		if (o instanceof List) {
+			for (Iterator<?> i = ((List<?>) o).iterator(); i.hasNext();)
+				result.add(String.valueOf(i.next()));
+		} else if (o != null) {
+			// a list with a single element may be deserialized as the element
+			result.add(o.toString());
+		}
+		return result;
+	}
+
+	/**
+	 * Forget the summary of a peer that has left the space.
+	 */
+	void peerLost(PeerCard peer) {
+		summaries.remove(peer.getPeerID());
+	}
+
+	/**
+	 * Send the message asynchronously, so that registering subscribers does
+	 * not wait for the communication channel. The order of the messages is
+	 * kept.
+	 */
+	private synchronized void post(final Resource r, final PeerCard receiver) {
+		if (sender == null) {
+			sender = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable run) {
+					Thread t = new Thread(run, "Context Bus Interests Sender");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		sender.execute(new Runnable() {
+			public void run() {
+				try {
+					send(r, receiver);
+				} catch (RuntimeException e) {
+					LogUtils.logWarn(mc, PeerInterests.class, "post",
+							new Object[] { "Could not send the subscription summary." }, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stop sending messages.
+	 */
+	synchronized void close() {
+		if (sender != null) {
+			sender.shutdown();
+			sender = null;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.universAAL.middleware.context;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.context.data.IFiltererContainer;
+import org.universAAL.middleware.context.data.PropsDataMap;
+import org.universAAL.middleware.context.impl.ContextStrategy.ContextFilterer;
+
+public class PropsDataMapTest extends TestCase {
+
+	public static final String SUBJECT = "urn:org.universAAL.test:sensor";
+	public static final String PROP = "http://ontology.universAAL.org/fake.owl#hasValue";
+
+	public PropsDataMapTest(String name) {
+		super(name);
+	}
+
+	public void testLookupDoesNotInsert() {
+		PropsDataMap m = new PropsDataMap();
+		assertNull(m.findFiltererContainer(SUBJECT));
+		assertNull(m.findFiltererContainer(SUBJECT, PROP));
+		assertNull(m.findFiltererContainer(null));
+		assertNull(m.findFiltererContainer(null, PROP));
+		assertTrue(m.getAllFiltererContainers().isEmpty());
+
+		IFiltererContainer c1 = m.getFiltererContainer(SUBJECT);
+		IFiltererContainer c2 = m.getFiltererContainer(SUBJECT, PROP);
+		assertNotSame(c1, c2);
+		assertSame(c1, m.findFiltererContainer(SUBJECT));
+		assertSame(c2, m.findFiltererContainer(SUBJECT, PROP));
+		// compound keys are not mixed up with concatenated keys
+		assertNull(m.findFiltererContainer(SUBJECT + PROP));
+		assertNull(m.findFiltererContainer(SUBJECT + "#", PROP.substring(1)));
+		assertEquals(2, m.getAllFiltererContainers().size());
+	}
+
+	public void testSnapshot() {
+		IFiltererContainer c = new PropsDataMap().getFiltererContainer(SUBJECT);
+		ContextFilterer f1 = new ContextFilterer();
+		ContextFilterer f2 = new ContextFilterer();
+		c.addFilterer(f1);
+		ContextFilterer[] snapshot = c.getFiltererArray();
+		c.addFilterer(f2);
+		assertEquals(1, snapshot.length);
+		assertEquals(2, c.getFiltererArray().length);
+		c.removeFilterers(null);
+		assertEquals(0, c.getFiltererArray().length);
+		assertSame(f1, snapshot[0]);
+	}
+}
@@ -0,0 +1,209 @@
+package org.universAAL.middleware.context;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.bus.model.AbstractBus;
+import org.universAAL.middleware.bus.model.BusStrategy;
+import org.universAAL.middleware.bus.msg.BusMessage;
+import org.universAAL.middleware.container.JUnit.JUnitContainer;
+import org.universAAL.middleware.container.JUnit.JUnitModuleContext;
+import org.universAAL.middleware.container.JUnit.JUnitModuleContext.LogLevel;
+import org.universAAL.middleware.context.impl.ContextBusImpl;
+import org.universAAL.middleware.context.owl.ContextProvider;
+import org.universAAL.middleware.context.owl.ContextProviderType;
+import org.universAAL.middleware.datarep.SharedResources;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.PeerRole;
+import org.universAAL.middleware.interfaces.space.SpaceCard;
+import org.universAAL.middleware.interfaces.space.SpaceDescriptor;
+import org.universAAL.middleware.managers.api.SpaceManager;
+import org.universAAL.middleware.modules.CommunicationModule;
+import org.universAAL.middleware.owl.MergedRestriction;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.serialization.turtle.TurtleSerializer;
+
+/**
+ * Publishes context events on a single (not connected) context bus from a
+ * growing number of threads and prints the throughput for every number of
+ * threads. The publish path must not be serialized by a lock, so the
+ * throughput should grow with the number of available cores. Every run is done
+ * twice: once with a (fake) remote peer in the space, so that every event is
+ * serialized for the communication module, and once as single node, where the
+ * events are only delivered locally by reference.
+ */
+public class PublishBenchmarkTest extends TestCase {
+
+	public static final String SENSOR = "urn:org.universAAL.test:PublishBenchmark#sensor";
+	public static final String HAS_VALUE = "http://ontology.universAAL.org/fake.owl#hasValue";
+
+	private static final int EVENTS_PER_THREAD = 2000;
+
+	private static JUnitModuleContext mc;
+	private static final Map<String, PeerCard> peers = new HashMap<String, PeerCard>();
+
+	/**
+	 * The system properties set by this test and their previous values, which
+	 * are restored after every test so that the other tests in the same JVM
+	 * are not affected.
+	 */
+	private final Map<String, String> oldProperties = new HashMap<String, String>();
+
+	/**
+	 * Creates a dummy implementation of the given interface that returns
+	 * neutral values for all methods.
+	 */
+	private static Object createDummy(Class c, final PeerCard myCard) {
+		return Proxy.newProxyInstance(c.getClassLoader(), new Class[] { c }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("getMyPeerCard".equals(method.getName()))
+					return myCard;
+				if ("getSpaceDescriptor".equals(method.getName()))
+					return new SpaceDescriptor() {
+						private static final long serialVersionUID = 1L;
+
+						public SpaceCard getSpaceCard() {
+							SpaceCard sc = new SpaceCard();
+							sc.setSpaceID("TestSpaceID");
+							return sc;
+						}
+					};
+				if ("getPeers".equals(method.getName()))
+					return peers;
+				if (method.getReturnType() == boolean.class)
+					return Boolean.valueOf("hasChannel".equals(method.getName()));
+				return null;
+			}
+		});
+	}
+
+	private void setProperty(String key, String value) {
+		if (!oldProperties.containsKey(key))
+			oldProperties.put(key, System.getProperty(key));
+		System.setProperty(key, value);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		setProperty("org.universaal.bus.permission.mode", "none");
+		// only send events that are not explicitly addressed if there is a
+		// remote peer
+		setProperty(BusStrategy.PROP_LOCAL_BROADCAST, "true");
+		if (mc != null)
+			return;
+
+		mc = new JUnitModuleContext();
+		mc.setLogLevel(LogLevel.WARN);
+
+		SharedResources.moduleContext = mc;
+		SharedResources.loadReasoningEngine();
+		SharedResources.setMiddlewareProp(SharedResources.IS_COORDINATING_PEER, "true");
+		BusMessage.setMessageContentSerializer(new TurtleSerializer());
+
+		PeerCard myCard = new PeerCard(PeerRole.COORDINATOR, "", "");
+		peers.put(myCard.getPeerID(), myCard);
+		AbstractBus.initBrokerage(mc, (SpaceManager) createDummy(SpaceManager.class, myCard),
+				(CommunicationModule) createDummy(CommunicationModule.class, myCard));
+		BusMessage.setThisPeer(myCard);
+
+		Object[] busFetchParams = new Object[] { ContextBus.class.getName() };
+		ContextBusImpl.startModule(JUnitContainer.getInstance(), mc, busFetchParams, busFetchParams);
+	}
+
+	protected void tearDown() throws Exception {
+		for (Map.Entry<String, String> e : oldProperties.entrySet()) {
+			if (e.getValue() == null)
+				System.clearProperty(e.getKey());
+			else
+				System.setProperty(e.getKey(), e.getValue());
+		}
+		oldProperties.clear();
+		super.tearDown();
+	}
+
+	public void testConcurrentPublish() throws Exception {
+		final AtomicInteger received = new AtomicInteger();
+		ContextEventPattern cep = new ContextEventPattern();
+		cep.addRestriction(
+				MergedRestriction.getFixedValueRestriction(ContextEvent.PROP_RDF_SUBJECT, new Resource(SENSOR)));
+		ContextSubscriber subscriber = new ContextSubscriber(mc, new ContextEventPattern[] { cep }) {
+			public void communicationChannelBroken() {
+			}
+
+			public void handleContextEvent(ContextEvent event) {
+				received.incrementAndGet();
+			}
+		};
+
+		try {
+			PeerCard remote = new PeerCard(PeerRole.PEER, "", "");
+			int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+			for (int threads = 1; threads <= maxThreads; threads *= 2) {
+				peers.put(remote.getPeerID(), remote);
+				long withRemote = publish(threads, received);
+				peers.remove(remote.getPeerID());
+				long singleNode = publish(threads, received);
+				System.out.println("Context bus publishing with " + threads + " thread(s): " + withRemote
+						+ " events/s with a remote peer, " + singleNode + " events/s as single node");
+			}
+		} finally {
+			subscriber.close();
+		}
+	}
+
+	/**
+	 * Publishes events from the given number of threads and waits until all
+	 * of them are received.
+	 *
+	 * @return the number of published events per second.
+	 */
+	private long publish(int threads, AtomicInteger received) throws Exception {
+		received.set(0);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger errors = new AtomicInteger();
+
+		for (int t = 0; t < threads; t++) {
+			ContextProvider info = new ContextProvider("urn:org.universAAL.test:PublishBenchmark#provider"
+					+ threads + "_" + t + "_" + peers.size());
+			info.setType(ContextProviderType.gauge);
+			final ContextPublisher publisher = new DefaultContextPublisher(mc, info);
+			new Thread("PublishBenchmark " + t) {
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < EVENTS_PER_THREAD; i++)
+							publisher.publish(new ContextEvent(new Resource(SENSOR), HAS_VALUE, new Integer(i)));
+					} catch (Exception e) {
+						e.printStackTrace();
+						errors.incrementAndGet();
+					} finally {
+						publisher.close();
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		long time = System.nanoTime();
+		start.countDown();
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		time = System.nanoTime() - time;
+
+		int expected = threads * EVENTS_PER_THREAD;
+		for (int i = 0; i < 600 && received.get() < expected; i++)
+			Thread.sleep(100);
+
+		assertEquals("Errors with " + threads + " threads", 0, errors.get());
+		assertEquals("Events received with " + threads + " threads", expected, received.get());
+		return (long) expected * 1000000000L / time;
+	}
+}
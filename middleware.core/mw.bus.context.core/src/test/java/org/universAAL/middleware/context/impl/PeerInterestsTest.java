@@ -0,0 +1,167 @@
+package org.universAAL.middleware.context.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.container.JUnit.JUnitModuleContext;
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.PeerRole;
+import org.universAAL.middleware.rdf.Resource;
+
+public class PeerInterestsTest extends TestCase {
+
+	public static final String SENSOR = "urn:org.universAAL.test:PeerInterests#sensor";
+	public static final String OTHER_SENSOR = "urn:org.universAAL.test:PeerInterests#otherSensor";
+	public static final String HAS_VALUE = "http://ontology.universAAL.org/fake.owl#hasValue";
+
+	private static final List<String> NONE = Collections.emptyList();
+
+	private JUnitModuleContext mc = new JUnitModuleContext();
+
+	private PeerCard peerA = new PeerCard(PeerRole.PEER, "", "");
+	private PeerCard peerB = new PeerCard(PeerRole.PEER, "", "");
+	private PeerCard peerC = new PeerCard(PeerRole.PEER, "", "");
+
+	/**
+	 * Collects the messages sent by a {@link PeerInterests}.
+	 */
+	private class Sender extends PeerInterests {
+		final LinkedBlockingQueue<Object[]> sent = new LinkedBlockingQueue<Object[]>();
+
+		Sender() {
+			super(mc);
+		}
+
+		protected void send(Resource r, PeerCard receiver) {
+			sent.add(new Object[] { r, receiver });
+		}
+
+		Resource next() throws InterruptedException {
+			Object[] msg = sent.poll(5, TimeUnit.SECONDS);
+			assertNotNull("no message sent", msg);
+			return (Resource) msg[0];
+		}
+	}
+
+	private ContextEvent event(String subject) {
+		return new ContextEvent(new Resource(subject), HAS_VALUE, new Integer(1));
+	}
+
+	public void testUnknownPeerReceivesAll() {
+		Sender a = new Sender();
+		assertNull(a.getReceivers(event(SENSOR), Arrays.asList(peerB)));
+		// no peer is known, but the channel may have members
+		assertNull(a.getReceivers(event(SENSOR), new ArrayList<PeerCard>()));
+		a.close();
+	}
+
+	public void testExchange() throws Exception {
+		Sender a = new Sender();
+		Sender b = new Sender();
+
+		// B subscribes to all events of the sensor
+		b.updateLocal(Arrays.asList(PeerInterests.subjectKey(SENSOR)), NONE);
+		Resource delta = b.next();
+
+		// A does not know the summary of B yet and asks for it
+		a.handle(peerB, delta);
+		Resource request = a.next();
+		assertEquals(Boolean.TRUE, request.getProperty(PeerInterests.PROP_INTERESTS_REQUEST));
+		assertNull(a.getReceivers(event(SENSOR), Arrays.asList(peerB)));
+
+		b.handle(peerA, request);
+		a.handle(peerB, b.next());
+		assertNull(a.getReceivers(event(SENSOR), Arrays.asList(peerB)));
+		assertTrue(a.getReceivers(event(OTHER_SENSOR), Arrays.asList(peerB)).isEmpty());
+		// C has no subscriptions
+		Sender c = new Sender();
+		c.sendComplete(null, false);
+		a.handle(peerC, c.next());
+		c.close();
+		assertEquals(Arrays.asList(peerB), a.getReceivers(event(SENSOR), Arrays.asList(peerB, peerC)));
+
+		// changes received in the wrong order
+		b.updateLocal(Arrays.asList(PeerInterests.subjectKey(OTHER_SENSOR)), NONE);
+		Resource first = b.next();
+		b.updateLocal(NONE, Arrays.asList(PeerInterests.subjectKey(SENSOR)));
+		Resource second = b.next();
+		a.handle(peerB, second);
+		assertNull(a.getReceivers(event(SENSOR), Arrays.asList(peerB)));
+		a.handle(peerB, first);
+		assertTrue(a.getReceivers(event(SENSOR), Arrays.asList(peerB)).isEmpty());
+		assertNull(a.getReceivers(event(OTHER_SENSOR), Arrays.asList(peerB)));
+
+		// duplicates are ignored
+		a.handle(peerB, first);
+		assertTrue(a.getReceivers(event(SENSOR), Arrays.asList(peerB)).isEmpty());
+		assertTrue(a.sent.isEmpty());
+
+		// a lost peer is unknown again
+		a.peerLost(peerB);
+		assertNull(a.getReceivers(event(SENSOR), Arrays.asList(peerB)));
+
+		a.close();
+		b.close();
+	}
+
+	public void testRestartedPeer() throws Exception {
+		Sender a = new Sender();
+		Sender b = new Sender();
+		b.updateLocal(Arrays.asList(PeerInterests.subjectKey(SENSOR)), NONE);
+		b.next();
+		b.updateLocal(Arrays.asList(PeerInterests.subjectKey(OTHER_SENSOR)), NONE);
+		b.next();
+		b.sendComplete(null, false);
+		a.handle(peerB, b.next());
+		assertNull(a.getReceivers(event(SENSOR), Arrays.asList(peerB)));
+		b.close();
+
+		// the context bus of B is restarted without a peerLost, its version
+		// starts again with a single subscription
+		Sender restarted = new Sender();
+		restarted.updateLocal(Arrays.asList(PeerInterests.subjectKey(OTHER_SENSOR)), NONE);
+		Resource delta = restarted.next();
+		restarted.sendComplete(null, false);
+		Resource complete = restarted.next();
+
+		// the change is not mistaken for a known one, the summary is
+		// requested again
+		a.handle(peerB, delta);
+		assertEquals(Boolean.TRUE, a.next().getProperty(PeerInterests.PROP_INTERESTS_REQUEST));
+		assertNull(a.getReceivers(event(OTHER_SENSOR), Arrays.asList(peerB)));
+
+		// the complete summary with the lower version is accepted
+		a.handle(peerB, complete);
+		assertTrue(a.getReceivers(event(SENSOR), Arrays.asList(peerB)).isEmpty());
+		assertNull(a.getReceivers(event(OTHER_SENSOR), Arrays.asList(peerB)));
+
+		a.close();
+		restarted.close();
+	}
+
+	public void testNotIndexed() throws Exception {
+		Sender a = new Sender();
+		Sender b = new Sender();
+		b.sendComplete(null, false);
+		a.handle(peerB, b.next());
+		assertTrue(a.getReceivers(event(SENSOR), Arrays.asList(peerB)).isEmpty());
+
+		b.updateLocal(Arrays.asList(PeerInterests.NOT_INDEXED_KEY), NONE);
+		a.handle(peerB, b.next());
+		assertNull(a.getReceivers(event(SENSOR), Arrays.asList(peerB)));
+
+		// no message if nothing changes
+		b.updateLocal(Arrays.asList(PeerInterests.NOT_INDEXED_KEY), NONE);
+		assertNull(b.sent.poll(200, TimeUnit.MILLISECONDS));
+
+		a.close();
+		b.close();
+	}
+}
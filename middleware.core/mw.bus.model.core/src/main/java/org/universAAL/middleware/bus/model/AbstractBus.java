@@ -19,6 +19,8 @@
  */
 package org.universAAL.middleware.bus.model;
 
+import java.util.Map;
+
 import org.universAAL.middleware.brokers.Broker;
 import org.universAAL.middleware.brokers.message.BrokerMessage;
 import org.universAAL.middleware.bus.member.BusMember;
@@ -36,6 +38,8 @@ import org.universAAL.middleware.container.utils.StringUtils;
 import org.universAAL.middleware.interfaces.PeerCard;
 import org.universAAL.middleware.interfaces.space.SpaceCard;
 import org.universAAL.middleware.interfaces.space.SpaceDescriptor;
+import org.universAAL.middleware.interfaces.space.SpaceStatus;
+import org.universAAL.middleware.managers.api.SpaceListener;
 import org.universAAL.middleware.managers.api.SpaceManager;
 import org.universAAL.middleware.modules.CommunicationModule;
 import org.universAAL.middleware.modules.listener.MessageListener;
@@ -98,6 +102,29 @@ public abstract class AbstractBus implements Broker, MessageListener {
 	protected static CommunicationModule communicationModule;
 	private static ModuleContext myContext;
 
+	/**
+	 * Removes the capabilities of the peers that leave the space from
+	 * {@link BusMessage}.
+	 */
+	private static final SpaceListener peerListener = new SpaceListener() {
+		public void spaceJoined(SpaceDescriptor spaceDescriptor) {
+		}
+
+		public void spaceLost(SpaceDescriptor spaceDescriptor) {
+			BusMessage.peerLost(null);
+		}
+
+		public void peerJoined(PeerCard peer) {
+		}
+
+		public void peerLost(PeerCard peer) {
+			BusMessage.peerLost(peer);
+		}
+
+		public void spaceStatusChanged(SpaceStatus status) {
+		}
+	};
+
 	public static void initBrokerage(ModuleContext mc, SpaceManager spaceMgr, CommunicationModule commModule) {
 		if (myContext != null) {
 			// LogUtils.logError(
@@ -121,7 +148,13 @@ public abstract class AbstractBus implements Broker, MessageListener {
 
 		myContext = mc;
 
+		if (spaceManager != null) {
+			spaceManager.removeSpaceListener(peerListener);
+		}
 		spaceManager = spaceMgr;
+		if (spaceMgr != null) {
+			spaceMgr.addSpaceListener(peerListener);
+		}
 		communicationModule = commModule;
 
 		createURIs();
@@ -187,6 +220,26 @@ public abstract class AbstractBus implements Broker, MessageListener {
 		return spaceManager.getPeers().size();
 	}
 
+	/**
+	 * Determines whether other peers are known in the space, i.e. whether a
+	 * message without explicit receivers can be of interest to bus members on
+	 * a different peer.
+	 *
+	 * @return true, if there is at least one other peer, or if the peers are
+	 *         not yet known.
+	 */
+	public static boolean hasRemotePeers() {
+		SpaceManager sm = spaceManager;
+		if (sm == null)
+			return true;
+		PeerCard myCard = sm.getMyPeerCard();
+		Map<String, PeerCard> peers = sm.getPeers();
+		if (myCard == null || peers == null)
+			return true;
+		int n = peers.size();
+		return n > 1 || (n == 1 && !peers.containsKey(myCard.getPeerID()));
+	}
+
 	public static PeerCard getPeerFromBusResourceURI(String uri) {
 		if (uri == null) {
 			return null;
@@ -234,7 +287,7 @@ public abstract class AbstractBus implements Broker, MessageListener {
 					"Could not add Message Listener to Communication Module because Communication Module is null");
 		busStrategy = createBusStrategy(communicationModule);
 		registry = createRegistry();
-		busStrategy.start(module);
+		busStrategy.start(module, brokerName);
 	}
 
 	protected IRegistry createRegistry() {
@@ -376,9 +429,13 @@ public abstract class AbstractBus implements Broker, MessageListener {
 
 	public void messageReceived(ChannelMessage message) {
 		if (message != null) {
-			BusMessage busMessage = (BusMessage) unmarshall(message.getContent());
+			BusMessage busMessage;
+			if (message.hasBinaryContent())
+				busMessage = new BusMessage(message.getContentBytes(), this);
+			else
+				busMessage = (BusMessage) unmarshall(message.getContent());
 			LogUtils.logDebug(context, AbstractBus.class, "messageReceived", new Object[] { context.getID(),
-					" - Received message from peer ", message.getSender().getPeerID(), ":\n", message.toString() },
+					" - Received message from peer ", message.getSender().getPeerID(), ":\n", message },
 					null);
 			// sender ID is null for remote messages
 			busStrategy.handleMessage(busMessage, null);
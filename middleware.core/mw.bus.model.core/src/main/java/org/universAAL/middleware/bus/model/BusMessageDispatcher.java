@@ -0,0 +1,417 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.bus.model;
+
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.universAAL.middleware.bus.msg.BusMessage;
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.LogUtils;
+
+/**
+ * Dispatches the messages of a {@link BusStrategy} to a bounded pool of worker
+ * threads. Every remote peer gets its own FIFO lane: messages coming from the
+ * same peer are handled one after the other (ordered by their counter, as in
+ * the legacy queue of {@link BusStrategy}), while messages from different
+ * peers are handled in parallel.
+ * <p>
+ * Messages of local bus members are not put into a lane. Their handlers may
+ * block until another local message is handled, e.g. a callee that makes a
+ * nested synchronous call on the same node. Therefore, every local message is
+ * handled on its own thread, like in the <tt>thread</tt> mode of
+ * {@link BusStrategy}, but the threads are taken from an unbounded pool and
+ * reused.
+ * <p>
+ * The total number of queued messages can be bounded. If the bound is
+ * reached, the thread that hands over a new message is blocked until a worker
+ * has finished one of the queued messages (backpressure). Worker threads are
+ * never blocked this way, so a handler that itself brokers a message can not
+ * deadlock the dispatcher.
+ * <p>
+ * After {@link #shutdown()}, new messages are dropped, queued messages are
+ * discarded and threads waiting for a free slot in the queue return without
+ * queuing their message.
+ */
+public final class BusMessageDispatcher {
+
+	/**
+	 * Maximum number of messages that a worker handles from one lane before
+	 * giving other lanes the chance to be processed.
+	 */
+	private static final int LANE_BATCH = 16;
+
+	/**
+	 * Marks the threads of all dispatchers so that they are exempted from
+	 * backpressure.
+	 */
+	private static final ThreadLocal<Boolean> isWorker = new ThreadLocal<Boolean>();
+
+	/**
+	 * The FIFO queue of messages from one peer.
+	 */
+	private final class Lane implements Runnable {
+		private final String peerID;
+		private final LinkedList<Object[]> messages = new LinkedList<Object[]>();
+		private boolean scheduled = false;
+		private boolean retired = false;
+
+		Lane(String peerID) {
+			this.peerID = peerID;
+		}
+
+		/**
+		 * Inserts the message according to its counter. Messages usually
+		 * arrive in order, so the search starts at the end of the lane.
+		 */
+		void insert(Object[] m) {
+			long id = ((BusMessage) m[0]).getIDAsLong();
+			ListIterator<Object[]> it = messages.listIterator(messages.size());
+			while (it.hasPrevious()) {
+				if (((BusMessage) it.previous()[0]).getIDAsLong() <= id) {
+					it.next();
+					break;
+				}
+			}
+			it.add(m);
+		}
+
+		public void run() {
+			isWorker.set(Boolean.TRUE);
+			for (int i = 0; i < LANE_BATCH; i++) {
+				Object[] m;
+				synchronized (this) {
+					if (messages.isEmpty() || stopped) {
+						retire();
+						return;
+					}
+					m = messages.removeFirst();
+				}
+				process(m);
+			}
+			// give the other lanes a chance
+			synchronized (this) {
+				if (messages.isEmpty() || stopped) {
+					retire();
+					return;
+				}
+			}
+			schedule(this);
+		}
+
+		/**
+		 * Remove this lane; the remaining messages are discarded, which only
+		 * happens after {@link BusMessageDispatcher#shutdown()}. Has to be
+		 * called with the lock of this lane.
+		 */
+		void retire() {
+			for (Object[] m : messages)
+				discard(m);
+			messages.clear();
+			scheduled = false;
+			retired = true;
+			lanes.remove(peerID, this);
+		}
+	}
+
+	private final BusStrategy strategy;
+	private final ModuleContext context;
+	private final ThreadPoolExecutor executor;
+	private final ThreadPoolExecutor localExecutor;
+	private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+	private final Semaphore permits;
+	private volatile boolean stopped = false;
+
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicInteger peakQueueDepth = new AtomicInteger();
+	private final AtomicLong handledMessages = new AtomicLong();
+	private final AtomicLong handlingNanos = new AtomicLong();
+	private final AtomicLong maxHandlingNanos = new AtomicLong();
+	private final AtomicLong blockedSubmissions = new AtomicLong();
+
+	/**
+	 * Create a new dispatcher.
+	 *
+	 * @param strategy
+	 *            the strategy whose
+	 *            {@link BusStrategy#handle(BusMessage, String)} is called.
+	 * @param context
+	 *            the module context of the bus, used for logging.
+	 * @param name
+	 *            the prefix of the names of the worker threads.
+	 * @param threads
+	 *            the maximum number of worker threads. Threads are created on
+	 *            demand up to this number.
+	 * @param maxQueued
+	 *            the maximum number of messages waiting to be handled. A value
+	 *            &lt;= 0 means unbounded.
+	 */
+	BusMessageDispatcher(BusStrategy strategy, ModuleContext context, final String name, int threads,
+			int maxQueued) {
+		if (threads < 1)
+			throw new IllegalArgumentException("The number of worker threads must be positive.");
+		this.strategy = strategy;
+		this.context = context;
+		this.permits = maxQueued > 0 ? new Semaphore(maxQueued) : null;
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, name + " " + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		localExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, name + " Local " + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Queue the message in the lane of its sender peer, or hand it to a thread
+	 * of its own if it comes from a local bus member.
+	 *
+	 * @param m
+	 *            the message.
+	 * @param senderID
+	 *            sender (bus member) ID, null for remote messages.
+	 */
+	void dispatch(BusMessage m, String senderID) {
+		if (stopped)
+			return;
+
+		boolean acquired = false;
+		if (permits != null) {
+			acquired = permits.tryAcquire();
+			// workers may overdraw the queue, otherwise we would deadlock
+			if (!acquired && isWorker.get() == null) {
+				blockedSubmissions.incrementAndGet();
+				try {
+					permits.acquire();
+					acquired = true;
+				} catch (InterruptedException e) {
+					LogUtils.logWarn(context, BusMessageDispatcher.class, "dispatch",
+							new Object[] { "Interrupted while waiting for a free slot in the message queue, message ",
+									m.getID(), " is dropped." },
+							null);
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (stopped) {
+					// woken up by shutdown, pass the permit on to the next
+					// waiting thread
+					permits.release();
+					return;
+				}
+			}
+		}
+
+		int depth = queueDepth.incrementAndGet();
+		int peak = peakQueueDepth.get();
+		while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth))
+			peak = peakQueueDepth.get();
+
+		final Object[] toAdd = new Object[] { m, senderID, Boolean.valueOf(acquired) };
+		if (senderID != null) {
+			try {
+				localExecutor.execute(new Runnable() {
+					public void run() {
+						isWorker.set(Boolean.TRUE);
+						process(toAdd);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// only happens after shutdown
+				discard(toAdd);
+			}
+			return;
+		}
+
+		String peerID = m.getSender() == null ? "" : m.getSender().getPeerID();
+		while (true) {
+			Lane lane = lanes.get(peerID);
+			if (lane == null) {
+				Lane newLane = new Lane(peerID);
+				lane = lanes.putIfAbsent(peerID, newLane);
+				if (lane == null)
+					lane = newLane;
+			}
+			synchronized (lane) {
+				if (stopped) {
+					// shutdown has already discarded the queued messages
+					discard(toAdd);
+					return;
+				}
+				if (lane.retired)
+					// the lane was removed in the meantime
+					continue;
+				lane.insert(toAdd);
+				if (!lane.scheduled) {
+					lane.scheduled = true;
+					schedule(lane);
+				}
+			}
+			return;
+		}
+	}
+
+	private void schedule(Lane lane) {
+		try {
+			executor.execute(lane);
+		} catch (RejectedExecutionException e) {
+			// only happens after shutdown, which discards the messages of the
+			// lane
+		}
+	}
+
+	/**
+	 * Forget a message that will not be handled and release its slot in the
+	 * queue.
+	 */
+	private void discard(Object[] m) {
+		queueDepth.decrementAndGet();
+		if (m[2] == Boolean.TRUE)
+			permits.release();
+	}
+
+	private void process(Object[] m) {
+		long start = System.nanoTime();
+		try {
+			strategy.handle((BusMessage) m[0], (String) m[1]);
+		} catch (Throwable t) {
+			LogUtils.logError(context, BusMessageDispatcher.class, "process",
+					new Object[] { "Unhandled exception while handling message ", ((BusMessage) m[0]).getID() }, t);
+		} finally {
+			long time = System.nanoTime() - start;
+			queueDepth.decrementAndGet();
+			if (m[2] == Boolean.TRUE)
+				permits.release();
+			handledMessages.incrementAndGet();
+			handlingNanos.addAndGet(time);
+			long max = maxHandlingNanos.get();
+			while (time > max && !maxHandlingNanos.compareAndSet(max, time))
+				max = maxHandlingNanos.get();
+		}
+	}
+
+	/**
+	 * Stop all worker threads. Messages that are still queued are not handled
+	 * anymore. The slots of these messages are released, so that threads
+	 * waiting in {@link #dispatch(BusMessage, String)} return.
+	 */
+	void shutdown() {
+		stopped = true;
+		executor.shutdownNow();
+		localExecutor.shutdownNow();
+		for (Lane lane : lanes.values()) {
+			synchronized (lane) {
+				lane.retire();
+			}
+		}
+		if (permits != null)
+			// wake up the waiting threads, even if no slot was released
+			permits.release();
+	}
+
+	/**
+	 * @return true, if {@link #shutdown()} was called.
+	 */
+	public boolean isShutdown() {
+		return stopped;
+	}
+
+	/**
+	 * @return the number of messages that are currently waiting or being
+	 *         handled.
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * @return the highest value of {@link #getQueueDepth()} since the creation
+	 *         of this dispatcher.
+	 */
+	public int getPeakQueueDepth() {
+		return peakQueueDepth.get();
+	}
+
+	/**
+	 * @return the number of remote peers with messages currently waiting.
+	 */
+	public int getActiveLanes() {
+		return lanes.size();
+	}
+
+	/**
+	 * @return how often a thread had to wait because the queue was full.
+	 */
+	public long getBlockedSubmissions() {
+		return blockedSubmissions.get();
+	}
+
+	/**
+	 * @return the number of messages handled since the creation of this
+	 *         dispatcher.
+	 */
+	public long getHandledMessages() {
+		return handledMessages.get();
+	}
+
+	/**
+	 * @return the summed up handling time of all messages in nanoseconds.
+	 */
+	public long getTotalHandlingTime() {
+		return handlingNanos.get();
+	}
+
+	/**
+	 * @return the average handling time of a message in nanoseconds.
+	 */
+	public long getAverageHandlingTime() {
+		long n = handledMessages.get();
+		return n == 0 ? 0 : handlingNanos.get() / n;
+	}
+
+	/**
+	 * @return the longest handling time of a message in nanoseconds.
+	 */
+	public long getMaxHandlingTime() {
+		return maxHandlingNanos.get();
+	}
+}
@@ -26,6 +26,7 @@ import java.util.Vector;
 
 import org.universAAL.middleware.bus.member.BusMember;
 import org.universAAL.middleware.bus.msg.BusMessage;
+import org.universAAL.middleware.connectors.util.BinaryFrame;
 import org.universAAL.middleware.connectors.util.ChannelMessage;
 import org.universAAL.middleware.container.ModuleContext;
 import org.universAAL.middleware.container.utils.LogUtils;
@@ -41,6 +42,56 @@ import org.universAAL.middleware.modules.CommunicationModule;
  */
 public abstract class BusStrategy extends Thread {
 
+	/**
+	 * Property for the mode of dispatching messages to the handlers of the
+	 * strategy. Possible values are:
+	 * <ul>
+	 * <li><tt>thread</tt> (default): every message is handled in a new thread.
+	 * </li>
+	 * <li><tt>pool</tt>: messages are handled by a {@link BusMessageDispatcher}
+	 * , i.e. a bounded pool of worker threads with one FIFO lane per remote
+	 * peer; messages of local bus members are handled on a thread of their
+	 * own. This mode should only be used if the handlers of the bus never
+	 * block waiting for another message from the same remote peer.</li>
+	 * </ul>
+	 * This property and the other properties of the dispatcher can be set for
+	 * a single bus by appending a dot and the name of the bus, e.g.
+	 * <tt>org.universaal.bus.dispatcher.mode.mw.bus.context.osgi</tt>; the
+	 * value for the bus takes precedence over the value for all buses.
+	 */
+	public static final String PROP_DISPATCHER_MODE = "org.universaal.bus.dispatcher.mode";
+
+	/**
+	 * Property for the number of worker threads in <tt>pool</tt> mode. Default
+	 * is twice the number of available processors.
+	 */
+	public static final String PROP_DISPATCHER_THREADS = "org.universaal.bus.dispatcher.threads";
+
+	/**
+	 * Property for the maximum number of queued messages in <tt>pool</tt> mode;
+	 * a value &lt;= 0 means unbounded. Default is 10000.
+	 */
+	public static final String PROP_DISPATCHER_QUEUE_SIZE = "org.universaal.bus.dispatcher.queuesize";
+
+	/**
+	 * Property for the local delivery mode. If <tt>true</tt> (default), a
+	 * message with explicit receivers is only serialized and given to the
+	 * communication module if at least one of its receivers resides on a
+	 * different peer; bus members on this peer always get the content by
+	 * reference from the strategy. If <tt>false</tt>, every message is sent.
+	 */
+	public static final String PROP_LOCAL_DELIVERY = "org.universaal.bus.local.delivery";
+
+	/**
+	 * Property for the local delivery of broadcasts. If <tt>true</tt>, a
+	 * message without explicit receivers is only sent if other peers are known
+	 * in the space (see {@link AbstractBus#hasRemotePeers()}). The peers of the
+	 * space manager are updated later than the membership of the connector, so
+	 * a broadcast sent shortly after a peer joined may not reach that peer.
+	 * Default is <tt>false</tt>, i.e. broadcasts are always sent.
+	 */
+	public static final String PROP_LOCAL_BROADCAST = "org.universaal.bus.local.broadcast";
+
 	/**
 	 *
 	 * Private class that helps handling bus message by calling bus strategy
@@ -72,6 +123,15 @@ public abstract class BusStrategy extends Thread {
 	private Vector<Object[]> queue; // <Message>
 	private boolean stopped = false;
 	private String nameHandler = "";
+	private String busName = null;
+	private volatile BusMessageDispatcher dispatcher = null;
+	/**
+	 * True, when the messages queued before the start of the dispatcher have
+	 * been handed over to it; guarded by the lock of {@link #queue}.
+	 */
+	private volatile boolean handedOver = false;
+	private boolean localDelivery = true;
+	private boolean localBroadcast = false;
 
 	/**
 	 * Constructor receiving the {@link CommunicationModule} instance and
@@ -152,9 +212,16 @@ public abstract class BusStrategy extends Thread {
 		if (m == null) {
 			return;
 		}
+		if (handedOver) {
+			dispatcher.dispatch(m, senderID);
+			return;
+		}
 		Object[] toAdd = new Object[] { m, senderID };
 		synchronized (queue) {
-			if (queue.isEmpty()) {
+			if (handedOver) {
+				// the queue was handed over in the meantime
+				dispatcher.dispatch(m, senderID);
+			} else if (queue.isEmpty()) {
 				queue.add(toAdd);
 				queue.notify();
 			} else {
@@ -179,6 +246,20 @@ public abstract class BusStrategy extends Thread {
 	 */
 	@Override
 	public final void run() {
+		if (dispatcher != null) {
+			// hand over the messages that were queued before the dispatcher
+			// was available; from now on, all messages go to the dispatcher.
+			// New messages wait for the lock, so that they can not overtake
+			// the queued ones.
+			synchronized (queue) {
+				while (!queue.isEmpty()) {
+					Object[] m = queue.remove(0);
+					dispatcher.dispatch((BusMessage) m[0], (String) m[1]);
+				}
+				handedOver = true;
+			}
+			return;
+		}
 		while (!stopped) {
 			Object[] m = null;
 			try {
@@ -195,11 +276,70 @@ public abstract class BusStrategy extends Thread {
 		}
 	}
 
-	void start(ModuleContext mc) {
+	void start(ModuleContext mc, String busName) {
 		busModule = mc;
+		this.busName = busName;
+		localDelivery = !"false".equalsIgnoreCase(getStringProperty(PROP_LOCAL_DELIVERY, "true"));
+		localBroadcast = "true".equalsIgnoreCase(getStringProperty(PROP_LOCAL_BROADCAST, "false"));
+		if ("pool".equals(getBusProperty(PROP_DISPATCHER_MODE, "thread"))) {
+			int threads = getIntProperty(PROP_DISPATCHER_THREADS, 2 * Runtime.getRuntime().availableProcessors());
+			int queueSize = getIntProperty(PROP_DISPATCHER_QUEUE_SIZE, 10000);
+			dispatcher = new BusMessageDispatcher(this, mc, nameHandler, threads, queueSize);
+			LogUtils.logDebug(mc, BusStrategy.class, "start", new Object[] { "Using a pool of ", threads,
+					" threads with a maximum queue size of ", queueSize, " to dispatch messages of ", getName() },
+					null);
+		}
 		start();
 	}
 
+	private String getStringProperty(String name, String def) {
+		Object o = busModule.getProperty(name);
+		return o == null ? def : o.toString().trim();
+	}
+
+	/**
+	 * Get a property of the dispatcher, preferring the value for this bus
+	 * over the value for all buses (see {@link #PROP_DISPATCHER_MODE}).
+	 */
+	private String getBusProperty(String name, String def) {
+		String s = busName == null ? null : getStringProperty(name + "." + busName, null);
+		return s == null ? getStringProperty(name, def) : s;
+	}
+
+	private int getIntProperty(String name, int def) {
+		String s = getBusProperty(name, null);
+		if (s == null)
+			return def;
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			LogUtils.logWarn(busModule, BusStrategy.class, "getIntProperty",
+					new Object[] { "Invalid value for ", name, ": ", s, "; using default value ", def }, null);
+			return def;
+		}
+	}
+
+	/**
+	 * Get the dispatcher of this strategy, which provides some statistics
+	 * about the handling of messages, e.g. the queue depth and the handling
+	 * time.
+	 *
+	 * @return the dispatcher, or null if the strategy does not run in
+	 *         <tt>pool</tt> mode (see {@link #PROP_DISPATCHER_MODE}).
+	 */
+	public BusMessageDispatcher getMessageDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * @return true, if the peers of the space manager are trusted to decide
+	 *         whether a message has to be sent (see
+	 *         {@link #PROP_LOCAL_BROADCAST}).
+	 */
+	protected boolean isLocalBroadcast() {
+		return localBroadcast;
+	}
+
 	/**
 	 * Joins the bus and the BusStrategy.
 	 *
@@ -218,6 +358,8 @@ public abstract class BusStrategy extends Thread {
 	 */
 	public final void stopThread() {
 		stopped = true;
+		if (dispatcher != null)
+			dispatcher.shutdown();
 		synchronized (queue) {
 			queue.notify();
 		}
@@ -227,13 +369,22 @@ public abstract class BusStrategy extends Thread {
 		// ...and wrap it as ChannelMessage
 		List<String> channelName = new ArrayList<String>();
 		channelName.add(bus.getBrokerName());
-		ChannelMessage channelMessage = new ChannelMessage(bus.getPeerCard(), m.toString(), channelName);
+		ChannelMessage channelMessage;
+		if (BinaryFrame.isBinaryWireFormat())
+			channelMessage = new ChannelMessage(bus.getPeerCard(), m.toBytes(), channelName);
+		else
+			channelMessage = new ChannelMessage(bus.getPeerCard(), m.toString(), channelName);
 		return channelMessage;
 	}
 
 	protected void send(BusMessage message) {
 		PeerCard[] receivers = message.getReceivers();
 
+		// local receivers have already been served by reference, so the
+		// message is only serialized if there is a remote receiver
+		if (localDelivery && !hasRemoteReceiver(receivers))
+			return;
+
 		// wait until the communication connector has configured this channel
 		int cnt = -1;
 		while (!commModule.hasChannel(busModule.getID())) {
@@ -262,6 +413,18 @@ public abstract class BusStrategy extends Thread {
 		}
 	}
 
+	private boolean hasRemoteReceiver(PeerCard[] receivers) {
+		if (isBroadcast(receivers))
+			return !localBroadcast || AbstractBus.hasRemotePeers();
+		PeerCard myCard = bus.getPeerCard();
+		if (myCard == null)
+			return true;
+		for (PeerCard pc : receivers)
+			if (!myCard.getPeerID().equals(pc.getPeerID()))
+				return true;
+		return false;
+	}
+
 	private boolean isUnicast(PeerCard[] receivers) {
 		return receivers.length == 1;
 	}
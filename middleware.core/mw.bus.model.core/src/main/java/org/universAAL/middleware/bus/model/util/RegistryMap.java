@@ -20,11 +20,11 @@
  */
 package org.universAAL.middleware.bus.model.util;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.universAAL.middleware.bus.member.BusMember;
 import org.universAAL.middleware.rdf.Resource;
@@ -36,11 +36,15 @@ import org.universAAL.middleware.rdf.Resource;
  *         Apr 20, 2012
  *
  */
-// TODO: synchronize map and listener for concurrent access
+/*
+ * The map and the listeners can be read concurrently without locking (e.g.
+ * when checking the sender of every message); modifications are synchronized
+ * by AbstractBus.
+ */
 public class RegistryMap extends Object implements IRegistry {
 
-	protected Map<String, BusMember> map = new HashMap<String, BusMember>();
-	protected List<IRegistryListener> listeners = new ArrayList<IRegistryListener>();
+	protected Map<String, BusMember> map = new ConcurrentHashMap<String, BusMember>();
+	protected List<IRegistryListener> listeners = new CopyOnWriteArrayList<IRegistryListener>();
 
 	public void addBusMember(String memberID, BusMember busMember) {
 		map.put(memberID, busMember);
@@ -50,6 +54,8 @@ public class RegistryMap extends Object implements IRegistry {
 	}
 
 	public BusMember removeMemberByID(String memberID) {
+		if (memberID == null)
+			return null;
 		BusMember busMember = (BusMember) map.remove(memberID);
 		if (busMember != null) {
 			for (int i = 0; i < listeners.size(); i++) {
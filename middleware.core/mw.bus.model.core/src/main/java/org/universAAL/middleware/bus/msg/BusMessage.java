@@ -22,11 +22,17 @@ package org.universAAL.middleware.bus.msg;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.universAAL.middleware.brokers.message.BrokerMessage;
 import org.universAAL.middleware.bus.model.AbstractBus;
+import org.universAAL.middleware.connectors.util.BinaryFrame;
+import org.universAAL.middleware.container.utils.DeferredString;
 import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.PeerRole;
 import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.serialization.BinaryMessageContentSerializer;
 import org.universAAL.middleware.serialization.MessageContentSerializer;
 
 /**
@@ -38,8 +44,14 @@ public class BusMessage implements BrokerMessage {
 	/**
 	 *
 	 */
-	private static long counter = 0;
+	private static final AtomicLong counter = new AtomicLong();
 	private static MessageContentSerializer contentSerializer = null;
+	private static BinaryMessageContentSerializer binaryContentSerializer = null;
+	/**
+	 * The IDs of the peers that have announced that they can decode binary
+	 * content.
+	 */
+	private static final ConcurrentHashMap<String, Boolean> binaryContentPeers = new ConcurrentHashMap<String, Boolean>();
 	private static PeerCard thisPeer = null;
 	private PeerCard sender;
 	private List<PeerCard> receiver = new ArrayList<PeerCard>();
@@ -55,8 +67,8 @@ public class BusMessage implements BrokerMessage {
 		return UUID.randomUUID().toString();
 	}
 
-	private static synchronized String getLocalID() {
-		return Long.toHexString(counter++);
+	private static String getLocalID() {
+		return Long.toHexString(counter.getAndIncrement());
 	}
 
 	public static void setMessageContentSerializer(MessageContentSerializer mcs) {
@@ -65,10 +77,36 @@ public class BusMessage implements BrokerMessage {
 		}
 	}
 
+	/**
+	 * Set the serializer for the binary encoding of the content in the binary
+	 * wire format (see {@link BinaryFrame}).
+	 *
+	 * @param bmcs
+	 *            the serializer, or null if it is not available anymore.
+	 */
+	public static void setBinaryContentSerializer(BinaryMessageContentSerializer bmcs) {
+		binaryContentSerializer = bmcs;
+	}
+
 	public static void setThisPeer(PeerCard peer) {
 		thisPeer = peer;
 	}
 
+	/**
+	 * Forget the capabilities announced by a peer, e.g. when it has left the
+	 * space.
+	 *
+	 * @param peer
+	 *            the peer, or null to forget the capabilities of all peers.
+	 */
+	public static void peerLost(PeerCard peer) {
+		if (peer == null) {
+			binaryContentPeers.clear();
+		} else {
+			binaryContentPeers.remove(peer.getPeerID());
+		}
+	}
+
 	public void setReceivers(List<PeerCard> receivers) {
 		receiver = receivers;
 	}
@@ -93,6 +131,7 @@ public class BusMessage implements BrokerMessage {
 
 	private Object content;
 	private String contentStr = null;
+	private byte[] contentBytes = null;
 	private String id;
 	private String inReplyTo = null;
 	private MessageType type;
@@ -217,6 +256,97 @@ public class BusMessage implements BrokerMessage {
 		}
 	}
 
+	/**
+	 * Constructor - parses the binary frame created by {@link #toBytes()} and
+	 * creates a Message object.
+	 *
+	 * @param message
+	 *            the binary serialization of a message object.
+	 */
+	public BusMessage(byte[] message, AbstractBus creator) {
+		this(message, 0, message.length, creator);
+	}
+
+	/**
+	 * Constructor - parses the binary frame created by {@link #toBytes()} and
+	 * creates a Message object.
+	 *
+	 * @param message
+	 *            the buffer containing the binary serialization of a message
+	 *            object.
+	 * @param off
+	 *            the start of the frame in the buffer.
+	 * @param len
+	 *            the length of the frame.
+	 */
+	public BusMessage(byte[] message, int off, int len, AbstractBus creator) {
+		if (message == null) {
+			throw new NullPointerException();
+		}
+
+		BinaryFrame.Reader r = new BinaryFrame.Reader(message, off, len, BinaryFrame.TYPE_BUS_MESSAGE);
+		mType = BrokerMessageTypes.BusMessage;
+		id = r.readString();
+		type = MessageType.valueOf(r.readString());
+		inReplyTo = r.readString();
+		sender = readPeerCard(r);
+		if (sender == null) {
+			throw new RuntimeException("Message sender not found!");
+		}
+		int n = r.readVarInt();
+		if (n > 0) {
+			receiver = new ArrayList<PeerCard>(n);
+			for (int i = 0; i < n; i++) {
+				receiver.add(readPeerCard(r));
+			}
+		}
+		brokerName = r.readString();
+		if (brokerName == null) {
+			throw new RuntimeException("Bus name not found!");
+		}
+
+		byte encoding = r.readByte();
+		if (encoding == BinaryFrame.CONTENT_TEXT) {
+			contentStr = r.readString();
+			content = contentSerializer.deserialize(contentStr);
+		} else if (encoding == BinaryFrame.CONTENT_BINARY) {
+			BinaryMessageContentSerializer bmcs = binaryContentSerializer;
+			if (bmcs == null) {
+				throw new RuntimeException("No serializer available for binary message content!");
+			}
+			int length = r.readVarInt();
+			content = bmcs.deserializeFromBytes(message, r.position(), length, null);
+			r.skip(length);
+		} else {
+			throw new IllegalArgumentException("Unsupported content encoding");
+		}
+		// optional capabilities of the sender
+		if (r.remaining() > 0 && (r.readVarInt() & BinaryFrame.CAPABILITY_BINARY_CONTENT) != 0) {
+			binaryContentPeers.put(sender.getPeerID(), Boolean.TRUE);
+		}
+		if (content == null) {
+			throw new RuntimeException("Message content parsing failed!");
+		}
+	}
+
+	private static PeerCard readPeerCard(BinaryFrame.Reader r) {
+		String peerID = r.readString();
+		if (peerID == null) {
+			return null;
+		}
+		String role = r.readString();
+		return new PeerCard(peerID, role == null ? null : PeerRole.valueOf(role));
+	}
+
+	private static void writePeerCard(BinaryFrame.Writer w, PeerCard pc) {
+		if (pc == null) {
+			w.writeString(null);
+		} else {
+			w.writeString(pc.getPeerID());
+			w.writeString(pc.getRole() == null ? null : pc.getRole().name());
+		}
+	}
+
 	public void addReceiver(PeerCard pc) {
 		if (pc == null) {
 			return;
@@ -325,6 +455,24 @@ public class BusMessage implements BrokerMessage {
 		return contentStr;
 	}
 
+	/**
+	 * Get the content as String only when it is really needed. Use this method
+	 * to add the content to a log message, so that the content is only
+	 * serialized if the message is really logged.
+	 *
+	 * @return an object whose <code>toString()</code> returns
+	 *         {@link #getContentAsString()}.
+	 */
+	public Object getContentForLogging() {
+		if (contentStr != null)
+			return contentStr;
+		return new DeferredString() {
+			protected String create() {
+				return getContentAsString();
+			}
+		};
+	}
+
 	/**
 	 *
 	 * @return the unique ID of the message.
@@ -426,6 +574,87 @@ public class BusMessage implements BrokerMessage {
 		return sb.toString();
 	}
 
+	/**
+	 * Serialize the message with the binary wire format (see
+	 * {@link BinaryFrame}). It contains the same information as
+	 * {@link #toString()} but avoids the overhead of building and parsing the
+	 * text envelope. The content is encoded with the binary content serializer
+	 * if one is available and all receivers can decode it (see
+	 * {@link BinaryFrame#PROP_CONTENT_FORMAT}), otherwise as text.
+	 *
+	 * @return the serialized message.
+	 */
+	public byte[] toBytes() {
+		BinaryMessageContentSerializer bmcs = binaryContentSerializer;
+		byte[] b = null;
+		String c = null;
+		if (bmcs != null && useBinaryContent()) {
+			// the content is serialized at most once, even if the message is
+			// sent several times
+			if (contentBytes == null)
+				contentBytes = bmcs.serializeToBytes(content);
+			b = contentBytes;
+		}
+		if (b == null) {
+			// fall back to the text serializer
+			c = getContentAsString();
+		}
+		BinaryFrame.Writer w = new BinaryFrame.Writer(BinaryFrame.TYPE_BUS_MESSAGE,
+				128 + (b != null ? b.length : (c == null ? 0 : c.length())));
+		w.writeString(id);
+		w.writeString(type.name());
+		w.writeString(inReplyTo);
+		writePeerCard(w, sender);
+		if (receiver == null) {
+			w.writeVarInt(0);
+		} else {
+			w.writeVarInt(receiver.size());
+			for (PeerCard pc : receiver) {
+				writePeerCard(w, pc);
+			}
+		}
+		w.writeString(brokerName);
+		if (b != null) {
+			w.writeByte(BinaryFrame.CONTENT_BINARY);
+			w.writeBytes(b);
+		} else {
+			w.writeByte(BinaryFrame.CONTENT_TEXT);
+			w.writeString(c);
+		}
+		w.writeVarInt(bmcs == null ? 0 : BinaryFrame.CAPABILITY_BINARY_CONTENT);
+		return w.toByteArray();
+	}
+
+	/**
+	 * Determines whether the content should be encoded with the binary
+	 * serializer: always if configured so, and in the automatic mode if all
+	 * receivers have announced that they can decode binary content (messages
+	 * without explicit receivers go to all peers and are sent as text).
+	 */
+	private boolean useBinaryContent() {
+		String format = BinaryFrame.getContentFormat();
+		if (BinaryFrame.CONTENT_FORMAT_BINARY.equals(format)) {
+			return true;
+		}
+		if (BinaryFrame.CONTENT_FORMAT_TEXT.equals(format) || receiver == null || receiver.isEmpty()) {
+			return false;
+		}
+		for (PeerCard pc : receiver) {
+			if (pc == null || !binaryContentPeers.containsKey(pc.getPeerID())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the given data is a {@link BusMessage} serialized with the
+	 * binary wire format.
+	 */
+	public static boolean isBinary(byte[] data) {
+		return data != null && BinaryFrame.isFrame(data, 0, data.length, BinaryFrame.TYPE_BUS_MESSAGE);
+	}
+
 	public String marshall(BrokerMessage message) {
 		if (message instanceof BusMessage) {
 			return message.toString();
@@ -22,13 +22,20 @@ package org.universAAL.middleware.bus.permission;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.LinkedList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.universAAL.middleware.bus.member.BusMember;
 import org.universAAL.middleware.bus.member.BusMemberType;
 import org.universAAL.middleware.bus.model.matchable.Matchable;
+import org.universAAL.middleware.container.LogListener;
 import org.universAAL.middleware.container.ModuleContext;
 import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.owl.OntologyManagement;
 import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.util.OntologyListener;
 
 /**
  * Management of permissions of bus members.
@@ -42,6 +49,13 @@ public final class AccessControl {
 	public static final String PROP_MODE = "org.universaal.bus.permission.mode";
 	public static final String PROP_MODE_UPDATE = "org.universaal.bus.permission.modeupdate";
 
+	/**
+	 * The interval in milliseconds in which the property {@link #PROP_MODE} is
+	 * checked for changes if the mode update is
+	 * {@link AccessControlModeUpdate#always}.
+	 */
+	public static final long MODE_UPDATE_INTERVAL = 1000;
+
 	public enum AccessControlMode {
 		none, log, full;
 	}
@@ -50,7 +64,7 @@ public final class AccessControl {
 		always, never;
 	}
 
-	private AccessControlMode mode = AccessControlMode.log;
+	private volatile AccessControlMode mode = AccessControlMode.log;
 	private AccessControlModeUpdate modeUpdate = AccessControlModeUpdate.always;
 
 	private ModuleContext mc = null;
@@ -66,6 +80,14 @@ public final class AccessControl {
 
 	private Hashtable<String, ModuleContext> owners = new Hashtable<String, ModuleContext>();
 
+	/**
+	 * The results of matching the permissions of a bus member. Maps the URI of
+	 * a bus member to its cache.
+	 */
+	private Hashtable<String, DecisionCache> decisions = new Hashtable<String, DecisionCache>();
+
+	private ScheduledExecutorService modeWatcher = null;
+
 	// singleton
 	private AccessControl() {
 	}
@@ -88,6 +110,50 @@ public final class AccessControl {
 		LogUtils.logDebug(mc, AccessControl.class, "init", new Object[] { "Current mode for access control: ",
 				getModeName(mode), "  update: ", modeUpdate == AccessControlModeUpdate.always ? "always" : "never" },
 				null);
+
+		if (modeUpdate == AccessControlModeUpdate.always) {
+			// check for changes of the mode in the background instead of for
+			// every permission check
+			modeWatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "AccessControl Mode Watcher");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			modeWatcher.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					AccessControlMode old = mode;
+					updateMode();
+					if (old != mode)
+						LogUtils.logInfo(AccessControl.INSTANCE.mc, AccessControl.class, "updateMode", new Object[] {
+								"Mode for access control changed from ", getModeName(old), " to ", getModeName(mode) },
+								null);
+				}
+			}, MODE_UPDATE_INTERVAL, MODE_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+
+		// the result of matching can change with the class hierarchy
+		OntologyManagement.getInstance().addOntologyListener(mc, new OntologyListener() {
+			public void ontologyAdded(String ontURI) {
+				resetDecisions();
+			}
+
+			public void ontologyRemoved(String ontURI) {
+				resetDecisions();
+			}
+		});
+	}
+
+	/**
+	 * Forget all cached decisions. New caches are created, so that a check
+	 * that is still running can only add its result to the old cache.
+	 */
+	private void resetDecisions() {
+		synchronized (decisions) {
+			for (String uri : decisions.keySet())
+				decisions.put(uri, new DecisionCache());
+		}
 	}
 
 	private void updateMode() {
@@ -118,7 +184,8 @@ public final class AccessControl {
 	 * Get the current mode for access control. Values are from
 	 * {@link AccessControlMode}. If the update policy for this mode is set to
 	 * {@link AccessControlModeUpdate#always} then the property
-	 * {@link #PROP_MODE} is always updated and can be set via the container.
+	 * {@link #PROP_MODE} is checked every {@link #MODE_UPDATE_INTERVAL}
+	 * milliseconds and can be set via the container.
 	 *
 	 * @return the current mode for access control
 	 */
@@ -128,10 +195,8 @@ public final class AccessControl {
 		// for demo purposes, it could also be a security problem: who can make
 		// changes to the system property?
 		// Currently, the mode is determined at starting time (a command line
-		// parameter), and may be updated every time, but this depends on the
-		// AccessControlModeUpdate.
-		if (modeUpdate == AccessControlModeUpdate.always)
-			updateMode();
+		// parameter), and may be updated by the mode watcher, but this depends
+		// on the AccessControlModeUpdate.
 		return mode;
 	}
 
@@ -159,20 +224,46 @@ public final class AccessControl {
 		if (owner == null)
 			throw new NullPointerException("The owner cannot be null. Please provide a valid module context.");
 
-		if (getAccessControlMode() == AccessControlMode.none)
+		AccessControlMode currentMode = mode;
+		if (currentMode == AccessControlMode.none)
 			return true;
 
-		Permission[] perms = permsMember.get(busMemberURI);
+		boolean matched;
+		DecisionCache cache = decisions.get(busMemberURI);
+		String fingerprint = cache != null && cache.isEnabled() ? DecisionCache.fingerprint(m) : null;
+		Boolean cached = fingerprint == null ? null : cache.get(fingerprint);
+		if (cached != null) {
+			matched = cached.booleanValue();
+		} else {
+			matched = matches(owner, permsMember.get(busMemberURI), m);
+			if (fingerprint != null)
+				cache.put(fingerprint, matched);
+		}
+
+		if (matched) {
+			if (LogUtils.isLogEnabled(owner, LogListener.LOG_LEVEL_DEBUG))
+				LogUtils.logDebug(owner, AccessControl.class, "checkPermission",
+						new Object[] { "Permission granted for matchable ", m.getClass().getSimpleName(), ": ", m },
+						null);
+			return true;
+		}
+
+		if (LogUtils.isLogEnabled(owner, LogListener.LOG_LEVEL_DEBUG))
+			LogUtils.logDebug(owner, AccessControl.class, "checkPermission",
+					new Object[] { "Permission denied for Matchable: ", m.getClass().getSimpleName(), ": ", m }, null);
+
+		return currentMode != AccessControlMode.full;
+	}
+
+	/**
+	 * Determines whether one of the given permissions matches the matchable.
+	 */
+	private boolean matches(ModuleContext owner, Permission[] perms, Matchable m) {
 		if (perms != null) {
 			for (int i = 0; i < perms.length; i++) {
 				try {
-					if (perms[i].getMatchable().matches(m)) {
-						LogUtils.logDebug(owner,
-								AccessControl.class, "checkPermission", new Object[] {
-										"Permission granted for matchable ", m.getClass().getSimpleName(), ": ", m },
-								null);
+					if (perms[i].getMatchable().matches(m))
 						return true;
-					}
 				} catch (Exception e) {
 					Resource r1 = (Resource) (perms[i].getMatchable());
 					Resource r2 = (Resource) m;
@@ -183,13 +274,7 @@ public final class AccessControl {
 				}
 			}
 		}
-
-		LogUtils.logDebug(owner, AccessControl.class, "checkPermission",
-				new Object[] { "Permission denied for Matchable: ", m.getClass().getSimpleName(), ": ", m }, null);
-
-		if (getAccessControlMode() == AccessControlMode.full)
-			return false;
-		return true;
+		return false;
 	}
 
 	/**
@@ -229,7 +314,7 @@ public final class AccessControl {
 		}
 
 		T[] retval = l.toArray(m);
-		if (retval.length != m.length) {
+		if (retval.length != m.length && LogUtils.isLogEnabled(owner, LogListener.LOG_LEVEL_DEBUG)) {
 			String msg[] = new String[2 * retval.length + 2 * m.length + 2];
 			int x = 0;
 			msg[x++] = "You do not have permissions for all the matchables. The following matchables were requested:\n  ";
@@ -258,6 +343,7 @@ public final class AccessControl {
 				getAccessControlMode() != AccessControlMode.none);
 		permsMember.put(m.getURI(), p);
 		owners.put(m.getURI(), owner);
+		decisions.put(m.getURI(), new DecisionCache());
 
 		// log permissions
 		if (getAccessControlMode() != AccessControlMode.none) {
@@ -286,6 +372,7 @@ public final class AccessControl {
 			// remove
 			permsMember.remove(m.getURI());
 			owners.remove(m.getURI());
+			decisions.remove(m.getURI());
 			if (getAccessControlMode() != AccessControlMode.none) {
 				LogUtils.logDebug(owner, AccessControl.class, "unregisterBusMember",
 						new Object[] { "Bus member ", m.getURI(), " unregistered." }, null);
@@ -0,0 +1,176 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.bus.permission;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.universAAL.middleware.bus.model.matchable.Matchable;
+import org.universAAL.middleware.rdf.Resource;
+
+/**
+ * Cache for the results of matching the permissions of one bus member with
+ * the {@link Matchable}s that are checked by {@link AccessControl}. The key of
+ * the cache is a structural fingerprint of the matchable that contains the
+ * Java class, the types and all properties of the resource graph, but not the
+ * URI of the root resource or the URIs of anonymous resources, so that equal
+ * requests that are created again for every call share the same entry.
+ * <p>
+ * If only few lookups succeed after {@link #WARMUP} lookups, e.g. because the
+ * bus member publishes context events that all have a different timestamp,
+ * the cache is disabled to avoid the overhead of creating fingerprints.
+ */
+final class DecisionCache {
+
+	/** The maximum number of decisions per bus member. */
+	static final int MAX_ENTRIES = 256;
+
+	/**
+	 * The maximum length of a fingerprint; larger matchables are not cached.
+	 */
+	static final int MAX_FINGERPRINT_LENGTH = 4096;
+
+	/**
+	 * The number of lookups after which the cache is disabled if less than an
+	 * eighth of them have succeeded.
+	 */
+	static final int WARMUP = 256;
+
+	private final Map<String, Boolean> decisions = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private int lookups = 0;
+	private int hits = 0;
+	private volatile boolean enabled = true;
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get the cached result of matching the permissions with a matchable.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the matchable.
+	 * @return the cached result, or null if it is not known.
+	 */
+	synchronized Boolean get(String fingerprint) {
+		Boolean matched = decisions.get(fingerprint);
+		if (lookups < WARMUP) {
+			lookups++;
+			if (matched != null)
+				hits++;
+			if (lookups == WARMUP && 8 * hits < WARMUP) {
+				enabled = false;
+				decisions.clear();
+			}
+		}
+		return matched;
+	}
+
+	synchronized void put(String fingerprint, boolean matched) {
+		if (enabled)
+			decisions.put(fingerprint, Boolean.valueOf(matched));
+	}
+
+	/**
+	 * Create the structural fingerprint of a matchable.
+	 *
+	 * @param m
+	 *            the matchable.
+	 * @return the fingerprint, or null if the matchable is no
+	 *         {@link Resource} or its fingerprint would be too long.
+	 */
+	static String fingerprint(Matchable m) {
+		if (!(m instanceof Resource))
+			return null;
+		StringBuilder sb = new StringBuilder(256);
+		if (!append(sb, m, new IdentityHashMap<Object, Integer>(), true) || sb.length() > MAX_FINGERPRINT_LENGTH)
+			return null;
+		return sb.toString();
+	}
+
+	/**
+	 * Append a string with its length as prefix, so that the fingerprint is
+	 * unambiguous whatever characters the string contains.
+	 */
+	private static void append(StringBuilder sb, String s) {
+		sb.append(s.length()).append(':').append(s);
+	}
+
+	private static boolean append(StringBuilder sb, Object o, IdentityHashMap<Object, Integer> visited,
+			boolean root) {
+		if (sb.length() > MAX_FINGERPRINT_LENGTH)
+			return false;
+
+		if (o instanceof Resource) {
+			Resource r = (Resource) o;
+			Integer index = visited.get(r);
+			if (index != null) {
+				// already contained (cycle or shared node)
+				sb.append('#').append(index.intValue());
+				return true;
+			}
+			visited.put(r, Integer.valueOf(visited.size()));
+			sb.append(r.serializesAsXMLLiteral() ? 'X' : 'R');
+			append(sb, r.getClass().getName());
+			if (root || r.isAnon())
+				sb.append('_');
+			else
+				append(sb, r.getURI());
+
+			String[] props = new String[r.numberOfProperties()];
+			int n = 0;
+			for (Enumeration e = r.getPropertyURIs(); e.hasMoreElements() && n < props.length;)
+				props[n++] = (String) e.nextElement();
+			Arrays.sort(props, 0, n);
+			sb.append('[');
+			for (int i = 0; i < n; i++) {
+				append(sb, props[i]);
+				if (!append(sb, r.getProperty(props[i]), visited, false))
+					return false;
+			}
+			sb.append(']');
+		} else if (o instanceof List) {
+			sb.append('(');
+			for (Object element : (List<?>) o)
+				if (!append(sb, element, visited, false))
+					return false;
+			sb.append(')');
+		} else if (o != null) {
+			sb.append('L');
+			append(sb, o.getClass().getName());
+			append(sb, o.toString());
+		} else {
+			sb.append('N');
+		}
+		return true;
+	}
+}
@@ -0,0 +1,230 @@
+package org.universAAL.middleware.bus.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.bus.msg.BusMessage;
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.JUnit.JUnitModuleContext;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.PeerRole;
+
+public class BusMessageDispatcherTest extends TestCase {
+
+	private static final ModuleContext mc = new JUnitModuleContext();
+
+	private static class TestMessage extends BusMessage {
+		private final PeerCard sender;
+		private final long counter;
+
+		TestMessage(PeerCard sender, long counter) {
+			this.sender = sender;
+			this.counter = counter;
+		}
+
+		@Override
+		public PeerCard getSender() {
+			return sender;
+		}
+
+		@Override
+		public String getID() {
+			return Long.toHexString(counter);
+		}
+
+		@Override
+		public long getIDAsLong() {
+			return counter;
+		}
+	}
+
+	/**
+	 * Records the counters of the handled messages per peer. Every message
+	 * waits for the latch before it is handled.
+	 */
+	private static class TestStrategy extends BusStrategy {
+		final Map<String, List<Long>> handled = new HashMap<String, List<Long>>();
+		final CountDownLatch latch;
+
+		TestStrategy(CountDownLatch latch) {
+			super(null);
+			this.latch = latch;
+		}
+
+		@Override
+		protected void handle(BusMessage m, String senderID) {
+			try {
+				latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (handled) {
+				List<Long> l = handled.get(m.getSender().getPeerID());
+				if (l == null) {
+					l = new ArrayList<Long>();
+					handled.put(m.getSender().getPeerID(), l);
+				}
+				l.add(Long.valueOf(m.getIDAsLong()));
+			}
+		}
+	}
+
+	private static void waitFor(BusMessageDispatcher d, long handled) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while (d.getHandledMessages() < handled && System.currentTimeMillis() < end)
+			Thread.sleep(10);
+		assertEquals(handled, d.getHandledMessages());
+	}
+
+	private static Thread dispatchInThread(final BusMessageDispatcher d, final BusMessage m) {
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				d.dispatch(m, null);
+			}
+		};
+		t.start();
+		return t;
+	}
+
+	public void testPerPeerOrdering() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TestStrategy s = new TestStrategy(latch);
+		BusMessageDispatcher d = new BusMessageDispatcher(s, mc, "test", 4, 0);
+		PeerCard[] peers = new PeerCard[3];
+		for (int i = 0; i < peers.length; i++)
+			peers[i] = new PeerCard(PeerRole.PEER, "", "");
+
+		// the messages of every peer arrive partly out of order while the
+		// first message is handled
+		for (PeerCard peer : peers)
+			d.dispatch(new TestMessage(peer, 0), null);
+		for (int i = 1; i < 200; i += 2)
+			for (PeerCard peer : peers) {
+				d.dispatch(new TestMessage(peer, i + 1), null);
+				d.dispatch(new TestMessage(peer, i), null);
+			}
+		latch.countDown();
+		waitFor(d, 3 * 201);
+
+		for (PeerCard peer : peers) {
+			List<Long> l = s.handled.get(peer.getPeerID());
+			assertEquals(201, l.size());
+			for (int i = 0; i < l.size(); i++)
+				assertEquals(i, l.get(i).longValue());
+		}
+		assertEquals(0, d.getQueueDepth());
+		d.shutdown();
+	}
+
+	public void testBackPressure() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TestStrategy s = new TestStrategy(latch);
+		BusMessageDispatcher d = new BusMessageDispatcher(s, mc, "test", 1, 2);
+		PeerCard peer = new PeerCard(PeerRole.PEER, "", "");
+
+		d.dispatch(new TestMessage(peer, 0), null);
+		d.dispatch(new TestMessage(peer, 1), null);
+		// the queue is full, the third message has to wait
+		Thread t = dispatchInThread(d, new TestMessage(peer, 2));
+		t.join(200);
+		assertTrue(t.isAlive());
+		assertEquals(1, d.getBlockedSubmissions());
+
+		latch.countDown();
+		t.join(5000);
+		assertFalse(t.isAlive());
+		waitFor(d, 3);
+		assertEquals(3, s.handled.get(peer.getPeerID()).size());
+		d.shutdown();
+	}
+
+	public void testShutdown() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TestStrategy s = new TestStrategy(latch);
+		BusMessageDispatcher d = new BusMessageDispatcher(s, mc, "test", 1, 2);
+		PeerCard peer = new PeerCard(PeerRole.PEER, "", "");
+
+		d.dispatch(new TestMessage(peer, 0), null);
+		d.dispatch(new TestMessage(peer, 1), null);
+		Thread t = dispatchInThread(d, new TestMessage(peer, 2));
+		t.join(200);
+		assertTrue(t.isAlive());
+
+		// the waiting thread returns without queuing its message
+		d.shutdown();
+		t.join(5000);
+		assertFalse(t.isAlive());
+		assertTrue(d.isShutdown());
+
+		// new messages are dropped without an exception
+		d.dispatch(new TestMessage(peer, 3), null);
+		latch.countDown();
+		waitFor(d, 1);
+		Thread.sleep(100);
+		assertEquals(1, d.getHandledMessages());
+		assertEquals(0, d.getQueueDepth());
+		assertEquals(0, d.getActiveLanes());
+	}
+
+	/**
+	 * A local message whose handler waits for another local message, like a
+	 * callee that makes a nested synchronous call to a service on the same
+	 * node.
+	 */
+	public void testNestedLocalCall() throws Exception {
+		final PeerCard peer = new PeerCard(PeerRole.PEER, "", "");
+		final CountDownLatch nestedHandled = new CountDownLatch(1);
+		final boolean[] outerDone = new boolean[1];
+		final BusMessageDispatcher[] d = new BusMessageDispatcher[1];
+		BusStrategy s = new BusStrategy(null) {
+			@Override
+			protected void handle(BusMessage m, String senderID) {
+				if ("caller".equals(senderID)) {
+					d[0].dispatch(new TestMessage(peer, m.getIDAsLong() + 1), "callee");
+					try {
+						outerDone[0] = nestedHandled.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				} else {
+					nestedHandled.countDown();
+				}
+			}
+		};
+		d[0] = new BusMessageDispatcher(s, mc, "test", 1, 1);
+
+		d[0].dispatch(new TestMessage(peer, 0), "caller");
+		waitFor(d[0], 2);
+		assertTrue(outerDone[0]);
+		assertEquals(0, d[0].getQueueDepth());
+		d[0].shutdown();
+	}
+
+	public void testModePerBus() throws Exception {
+		String prop = BusStrategy.PROP_DISPATCHER_MODE + ".test.pool.bus";
+		String old = System.getProperty(prop);
+		System.setProperty(prop, "pool");
+		try {
+			TestStrategy pool = new TestStrategy(new CountDownLatch(0));
+			pool.start(mc, "test.pool.bus");
+			TestStrategy thread = new TestStrategy(new CountDownLatch(0));
+			thread.start(mc, "test.thread.bus");
+			assertNotNull(pool.getMessageDispatcher());
+			assertNull(thread.getMessageDispatcher());
+			pool.stopThread();
+			thread.stopThread();
+		} finally {
+			if (old == null)
+				System.clearProperty(prop);
+			else
+				System.setProperty(prop, old);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package org.universAAL.middleware.bus.permission;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.bus.model.matchable.Matchable;
+import org.universAAL.middleware.rdf.Resource;
+
+public class DecisionCacheTest extends TestCase {
+
+	private static final String NS = "http://ontology.universAAL.org/test.owl#";
+
+	private static class TestMatchable extends Resource implements Matchable {
+		TestMatchable(String uri) {
+			super(uri);
+		}
+
+		public boolean matches(Matchable subset) {
+			return true;
+		}
+	}
+
+	private static class OtherMatchable extends TestMatchable {
+		OtherMatchable(String uri) {
+			super(uri);
+		}
+	}
+
+	private static TestMatchable create(String uri, Object value) {
+		TestMatchable m = new TestMatchable(uri);
+		m.addType(NS + "Request", true);
+		Resource r = new Resource();
+		r.setProperty(NS + "value", value);
+		List<Object> l = new ArrayList<Object>();
+		l.add(new Resource(NS + "a"));
+		l.add(r);
+		m.setProperty(NS + "list", l);
+		m.setProperty(NS + "child", r);
+		return m;
+	}
+
+	public void testFingerprint() {
+		String fp = DecisionCache.fingerprint(create(null, "x"));
+		assertNotNull(fp);
+		// the URI of the root and anonymous URIs are ignored
+		assertEquals(fp, DecisionCache.fingerprint(create(NS + "request1", "x")));
+		assertEquals(fp, DecisionCache.fingerprint(create(NS + "request2", "x")));
+
+		// values, datatypes, types and classes are not ignored
+		assertFalse(fp.equals(DecisionCache.fingerprint(create(null, "y"))));
+		assertFalse(fp.equals(DecisionCache.fingerprint(create(null, new Resource(NS + "x")))));
+		TestMatchable m = create(null, "x");
+		m.setProperty(NS + "other", new Integer(1));
+		String fp1 = DecisionCache.fingerprint(m);
+		m.setProperty(NS + "other", "1");
+		assertFalse(fp1.equals(DecisionCache.fingerprint(m)));
+		OtherMatchable o = new OtherMatchable(null);
+		o.addType(NS + "Request", true);
+		assertFalse(DecisionCache.fingerprint(new TestMatchable(null)).equals(DecisionCache.fingerprint(o)));
+
+		// cycles
+		m = new TestMatchable(null);
+		m.setProperty(NS + "self", m);
+		assertNotNull(DecisionCache.fingerprint(m));
+
+		// too large
+		m = new TestMatchable(null);
+		StringBuffer sb = new StringBuffer();
+		while (sb.length() <= DecisionCache.MAX_FINGERPRINT_LENGTH)
+			sb.append("0123456789");
+		m.setProperty(NS + "value", sb.toString());
+		assertNull(DecisionCache.fingerprint(m));
+	}
+
+	public void testCache() {
+		DecisionCache c = new DecisionCache();
+		assertNull(c.get("a"));
+		c.put("a", true);
+		c.put("b", false);
+		assertEquals(Boolean.TRUE, c.get("a"));
+		assertEquals(Boolean.FALSE, c.get("b"));
+		for (int i = 0; i < DecisionCache.WARMUP; i++)
+			c.get("a");
+		assertTrue(c.isEnabled());
+
+		// the number of entries is bounded
+		for (int i = 0; i < DecisionCache.MAX_ENTRIES; i++)
+			c.put("x" + i, true);
+		assertNull(c.get("b"));
+	}
+
+	public void testDisabled() {
+		DecisionCache c = new DecisionCache();
+		for (int i = 0; i < DecisionCache.WARMUP; i++) {
+			assertNull(c.get("event" + i));
+			c.put("event" + i, true);
+		}
+		assertFalse(c.isEnabled());
+		assertNull(c.get("event0"));
+	}
+}
@@ -25,7 +25,10 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
 import org.universAAL.middleware.api.annotation.ChangeEffect;
 import org.universAAL.middleware.api.annotation.Input;
 import org.universAAL.middleware.api.annotation.Output;
@@ -45,55 +48,35 @@ public class DynamicServiceProxy implements InvocationHandler {
 
 	private Class<?> serviceClass;
 
-	public DynamicServiceProxy(ServiceCaller caller, Class<?> intefaceClazz)
-			throws SimplifiedRegistrationException, InstantiationException, IllegalAccessException {
-		this.caller = caller;
-		scanner = new AnnotationScanner(intefaceClazz);
-		scanner.scan();
+	/**
+	 * The request templates for the methods of the interface, created once
+	 * from the annotations.
+	 */
+	private Map<Method, RequestTemplate> templates = new HashMap<Method, RequestTemplate>();
 
-		Class<?>[] rscClasses = scanner.getResourceClasses().value();
-		Service service = null;
-		for (int i = 0; i < rscClasses.length; i++) {
-			if (Service.class.isAssignableFrom(rscClasses[i])) {
-				serviceClass = rscClasses[i];
-				service = (Service) serviceClass.newInstance();
-				break;
-			}
-		}
-		if (service == null) {
-			throw new SimplifiedRegistrationException("Cannot find subclass of Service in @ResourceClasses");
-		}
-	}
-
-	private ServiceOperation.MatchMakingType inferMatchMakingType(List<Output> outputs, List<Input> inputs,
-			List<ChangeEffect> changeEffects) {
-		ServiceOperation.MatchMakingType inferredType = MatchMakingType.BY_URI;
-		for (Output output : outputs) {
-			if (output.propertyPaths().length > 0) {
-				inferredType = MatchMakingType.ONTOLOGICAL;
-			}
-		}
-		for (Input input : inputs) {
-			if (input.propertyPaths().length > 0) {
-				inferredType = MatchMakingType.ONTOLOGICAL;
-			}
-		}
-		if (changeEffects.size() > 0) {
-			inferredType = MatchMakingType.ONTOLOGICAL;
-		}
-		return inferredType;
-	}
-
-	public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
-		try {
-			ServiceOperation so = scanner.getMethodServiceOperation().get(m.getName());
+	/**
+	 * Everything needed to create the {@link AapiServiceRequest} for a method
+	 * and to convert the response, resolved from the annotations of the
+	 * method. Only the input values are bound when the method is called.
+	 */
+	private final class RequestTemplate {
+		private final boolean byUri;
+		private Constructor<?> serviceByUriConstructor = null;
+		private final String serviceURI;
+		private final String[][] outputPaths;
+		private final String[] outputURIs;
+		private final String[][] inputPaths;
+		private final String[] inputURIs;
+		private final String[][] changeEffectPaths;
+		private final Object[] changeEffectValues;
+		private final Class<?> returnType;
 
+		RequestTemplate(Method m, ServiceOperation so) {
 			String serviceName = so.value();
 			if ("".equals(serviceName)) {
 				serviceName = m.getName();
 			}
-			String serviceURI = AnnotationScanner.createServiceUri(scanner.getNamespace(), scanner.getName(),
-					serviceName);
+			serviceURI = AnnotationScanner.createServiceUri(scanner.getNamespace(), scanner.getName(), serviceName);
 
 			List<Output> outputs = scanner.getMethodOutputs().get(serviceURI);
 			List<Input> inputs = scanner.getMethodInputs().get(serviceURI);
@@ -103,91 +86,180 @@ public class DynamicServiceProxy implements InvocationHandler {
 			if (matchMakingType == MatchMakingType.NOT_SPECIFIED) {
 				matchMakingType = inferMatchMakingType(outputs, inputs, changeEffects);
 			}
-
-			AapiServiceRequest request = null;
 			switch (matchMakingType) {
 			case ONTOLOGICAL:
-				request = new AapiServiceRequest((Service) serviceClass.newInstance(), null);
+				byUri = false;
 				break;
 			case BY_URI:
-				Constructor<?> serviceClassConstructor = serviceClass.getConstructor(String.class);
-				Service serviceByUri = (Service) serviceClassConstructor.newInstance(serviceURI);
-				request = new AapiServiceRequest(serviceByUri, null);
+				byUri = true;
+				try {
+					serviceByUriConstructor = serviceClass.getConstructor(String.class);
+				} catch (NoSuchMethodException e) {
+					// reported when the method is called
+				}
 				break;
 			default:
 				throw new IllegalArgumentException();
 			}
+
+			outputPaths = new String[outputs.size()][];
+			outputURIs = new String[outputs.size()];
 			for (int i = 0; i < outputs.size(); i++) {
 				Output output = outputs.get(i);
 				if (output.propertyPaths().length > 0) {
-					request.addRequiredOutput("output" + i, output.propertyPaths());
+					outputPaths[i] = output.propertyPaths();
+					outputURIs[i] = "output" + i;
+				} else {
+					outputURIs[i] = AnnotationScanner.createParameterUri(scanner.getNamespace(), null, output.name());
 				}
 			}
+
+			inputPaths = new String[inputs.size()][];
+			inputURIs = new String[inputs.size()];
 			for (int i = 0; i < inputs.size(); i++) {
 				Input input = inputs.get(i);
 				if (input.propertyPaths().length > 0) {
-					request.addValueFilter(input.propertyPaths(), args[i]);
+					inputPaths[i] = input.propertyPaths();
 				} else {
-					request.addInput(AnnotationScanner.createParameterUri(scanner.getNamespace(), null, input.name()),
-							args[i]);
+					inputURIs[i] = AnnotationScanner.createParameterUri(scanner.getNamespace(), null, input.name());
 				}
 			}
+
+			changeEffectPaths = new String[changeEffects.size()][];
+			changeEffectValues = new Object[changeEffects.size()];
 			for (int i = 0; i < changeEffects.size(); i++) {
 				ChangeEffect ceAnnotation = changeEffects.get(i);
-				request.addChangeEffect(ceAnnotation.propertyPaths(), TypeMapper.getJavaInstance(ceAnnotation.value(),
-						TypeMapper.getDatatypeURI(ceAnnotation.valueType())));
-			}
-			ServiceResponse response = caller.call(request);
-			if (!void.class.equals(m.getReturnType())) {
-				if (outputs.size() > 1) {
-					Object[] retObj = new Object[outputs.size()];
-					for (int i = 0; i < outputs.size(); i++) {
-						Output outputAnnotation = outputs.get(i);
-						List<?> output = null;
-						if (outputAnnotation.propertyPaths().length > 0) {
-							output = response.getOutput("output" + i, true);
-						} else {
-							output = response.getOutput(AnnotationScanner.createParameterUri(scanner.getNamespace(),
-									null, outputAnnotation.name()), true);
-						}
-						if (output.size() == 1) {
-							retObj[i] = output.get(0);
-						} else {
-							retObj[i] = output;
-						}
-					}
-					return retObj;
+				changeEffectPaths[i] = ceAnnotation.propertyPaths();
+				changeEffectValues[i] = TypeMapper.getJavaInstance(ceAnnotation.value(),
+						TypeMapper.getDatatypeURI(ceAnnotation.valueType()));
+			}
+
+			returnType = m.getReturnType();
+		}
+
+		/**
+		 * Create the request for a call of the method with the given
+		 * arguments.
+		 */
+		AapiServiceRequest createRequest(Object[] args) throws Exception {
+			AapiServiceRequest request;
+			if (!byUri) {
+				request = new AapiServiceRequest((Service) serviceClass.newInstance(), null);
+			} else {
+				if (serviceByUriConstructor == null) {
+					throw new NoSuchMethodException(serviceClass.getName() + ".<init>(java.lang.String)");
+				}
+				request = new AapiServiceRequest((Service) serviceByUriConstructor.newInstance(serviceURI), null);
+			}
+			for (int i = 0; i < outputPaths.length; i++) {
+				if (outputPaths[i] != null) {
+					request.addRequiredOutput(outputURIs[i], outputPaths[i]);
+				}
+			}
+			for (int i = 0; i < inputURIs.length; i++) {
+				if (inputPaths[i] != null) {
+					request.addValueFilter(inputPaths[i], args[i]);
 				} else {
-					Output outputAnnotation = outputs.get(0);
-					// List<?> output = null;
-					Object resObj = null;
-					if (outputAnnotation.propertyPaths().length > 0) {
-						resObj = response.getOutput("output0", true);
-					} else {
-						resObj = response.getOutput(AnnotationScanner.createParameterUri(scanner.getNamespace(), null,
-								outputAnnotation.name()), true);
-					}
-					if (resObj == null) {
-						return null;
-					}
-					List<?> temp = ((List<?>) resObj);
-					if (Object[].class.isAssignableFrom(m.getReturnType())) {
-						return temp.toArray(
-								(Object[]) Array.newInstance(m.getReturnType().getComponentType(), temp.size()));
-					} else if (List.class.isAssignableFrom(m.getReturnType())) {
-						return temp;
+					request.addInput(inputURIs[i], args[i]);
+				}
+			}
+			for (int i = 0; i < changeEffectPaths.length; i++) {
+				request.addChangeEffect(changeEffectPaths[i], changeEffectValues[i]);
+			}
+			return request;
+		}
+
+		/**
+		 * Convert the response to the return value of the method.
+		 */
+		Object getResult(ServiceResponse response) {
+			if (void.class.equals(returnType)) {
+				return null;
+			}
+			if (outputURIs.length > 1) {
+				Object[] retObj = new Object[outputURIs.length];
+				for (int i = 0; i < outputURIs.length; i++) {
+					List<?> output = response.getOutput(outputURIs[i], true);
+					if (output.size() == 1) {
+						retObj[i] = output.get(0);
 					} else {
-						if (temp.size() == 0) {
-							return null;
-						}
-						return temp.get(0);
+						retObj[i] = output;
 					}
 				}
+				return retObj;
+			}
+			Object resObj = response.getOutput(outputURIs[0], true);
+			if (resObj == null) {
+				return null;
+			}
+			List<?> temp = ((List<?>) resObj);
+			if (Object[].class.isAssignableFrom(returnType)) {
+				return temp.toArray((Object[]) Array.newInstance(returnType.getComponentType(), temp.size()));
+			} else if (List.class.isAssignableFrom(returnType)) {
+				return temp;
+			} else {
+				if (temp.size() == 0) {
+					return null;
+				}
+				return temp.get(0);
+			}
+		}
+	}
+
+	public DynamicServiceProxy(ServiceCaller caller, Class<?> intefaceClazz)
+			throws SimplifiedRegistrationException, InstantiationException, IllegalAccessException {
+		this.caller = caller;
+		scanner = new AnnotationScanner(intefaceClazz);
+		scanner.scan();
+
+		Class<?>[] rscClasses = scanner.getResourceClasses().value();
+		Service service = null;
+		for (int i = 0; i < rscClasses.length; i++) {
+			if (Service.class.isAssignableFrom(rscClasses[i])) {
+				serviceClass = rscClasses[i];
+				service = (Service) serviceClass.newInstance();
+				break;
+			}
+		}
+		if (service == null) {
+			throw new SimplifiedRegistrationException("Cannot find subclass of Service in @ResourceClasses");
+		}
+
+		for (Method m : intefaceClazz.getMethods()) {
+			ServiceOperation so = scanner.getMethodServiceOperation().get(m.getName());
+			if (so == null) {
+				continue;
 			}
-			return null;
-		} catch (Exception e) {
-			throw e;
+			templates.put(m, new RequestTemplate(m, so));
+		}
+	}
+
+	private ServiceOperation.MatchMakingType inferMatchMakingType(List<Output> outputs, List<Input> inputs,
+			List<ChangeEffect> changeEffects) {
+		ServiceOperation.MatchMakingType inferredType = MatchMakingType.BY_URI;
+		for (Output output : outputs) {
+			if (output.propertyPaths().length > 0) {
+				inferredType = MatchMakingType.ONTOLOGICAL;
+			}
+		}
+		for (Input input : inputs) {
+			if (input.propertyPaths().length > 0) {
+				inferredType = MatchMakingType.ONTOLOGICAL;
+			}
+		}
+		if (changeEffects.size() > 0) {
+			inferredType = MatchMakingType.ONTOLOGICAL;
+		}
+		return inferredType;
+	}
+
+	public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+		RequestTemplate template = templates.get(m);
+		if (template == null) {
+			throw new IllegalArgumentException("No @ServiceOperation annotation for method " + m.getName());
 		}
+		ServiceResponse response = caller.call(template.createRequest(args));
+		return template.getResult(response);
 	}
 
 	public static Object newInstance(Class<?> interfaceClazz, ServiceCaller caller) throws IllegalArgumentException,
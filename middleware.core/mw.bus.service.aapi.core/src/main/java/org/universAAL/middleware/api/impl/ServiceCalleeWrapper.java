@@ -22,6 +22,7 @@ package org.universAAL.middleware.api.impl;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -53,15 +54,67 @@ public class ServiceCalleeWrapper extends ServiceCallee {
 
 	private Object wrappedObject;
 
-	private Map<String, Method> annotatedMethods;
-	private Map<String, List<String>> annotatedOutputNames;
-	private Map<String, List<Output>> annotatedOutputs;
-	private Map<String, List<String>> annotatedMethodsParametersNames;
-	private Map<String, List<Input>> annotatedMethodsParameters;
+	/**
+	 * The operations of the wrapped object, by the URI of their process.
+	 */
+	private Map<String, Operation> operations = new HashMap<String, Operation>();
 
 	// private String namespace;
 	// private String serviceURI;
 
+	/**
+	 * A method of the wrapped object together with everything needed to call
+	 * it, resolved from the annotations once at registration.
+	 */
+	private static final class Operation {
+		private final Method method;
+		private final String[] parameterNames;
+		private final Class<?>[] parameterTypes;
+		/**
+		 * Whether the inputs have property paths, i.e. are given as filters.
+		 */
+		private final boolean[] filtering;
+		/**
+		 * For inputs with property paths: the datatype URI of the parameter
+		 * type, null otherwise.
+		 */
+		private final String[] parameterDatatypes;
+		private final String[] outputNames;
+		private final boolean isVoid;
+		private final boolean allowUnbound;
+
+		Operation(Method m, List<String> parameterNames, List<Input> parameters, List<String> outputNames,
+				List<Output> outputs) {
+			method = m;
+			try {
+				// skip the access checks on every call
+				method.setAccessible(true);
+			} catch (SecurityException e) {
+				// the checks are done on every call then
+			}
+			this.parameterNames = parameterNames.toArray(new String[parameterNames.size()]);
+			parameterTypes = m.getParameterTypes();
+			filtering = new boolean[this.parameterNames.length];
+			parameterDatatypes = new String[this.parameterNames.length];
+			for (int i = 0; i < this.parameterNames.length; i++) {
+				if (parameters.get(i).propertyPaths().length > 0) {
+					filtering[i] = true;
+					parameterDatatypes[i] = TypeMapper.getDatatypeURI(parameterTypes[i]);
+				}
+			}
+			this.outputNames = outputNames.toArray(new String[outputNames.size()]);
+			isVoid = void.class.equals(m.getReturnType());
+			boolean unbound = false;
+			for (Output output : outputs) {
+				if (output.propertyPaths().length == 0) {
+					unbound = true;
+					break;
+				}
+			}
+			allowUnbound = unbound;
+		}
+	}
+
 	public ServiceCalleeWrapper(ModuleContext context, ServiceProfile[] realizedServices, Object wrappedObject,
 			String namespace, String serviceURI, Map<String, Method> annotatedMethods,
 			Map<String, List<String>> annotatedOutputNames, Map<String, List<Output>> annotatedOutputs,
@@ -71,13 +124,28 @@ public class ServiceCalleeWrapper extends ServiceCallee {
 
 		this.profiles = realizedServices;
 		this.wrappedObject = wrappedObject;
-		this.annotatedMethods = annotatedMethods;
-		this.annotatedOutputNames = annotatedOutputNames;
-		this.annotatedOutputs = annotatedOutputs;
-		this.annotatedMethodsParametersNames = annotatedMethodsParametersNames;
-		this.annotatedMethodsParameters = annotatedMethodsParameters;
 		// this.namespace = namespace;
 		// this.serviceURI = serviceURI;
+
+		Map<String, Operation> byServiceURI = new HashMap<String, Operation>();
+		for (Map.Entry<String, Method> e : annotatedMethods.entrySet()) {
+			String s = e.getKey();
+			byServiceURI.put(s, new Operation(e.getValue(), annotatedMethodsParametersNames.get(s),
+					annotatedMethodsParameters.get(s), annotatedOutputNames.get(s), annotatedOutputs.get(s)));
+		}
+		// the process URI of a profile starts with the URI of its service
+		for (ServiceProfile profile : realizedServices) {
+			String processURI = profile.getProcessURI();
+			String match = null;
+			for (String s : byServiceURI.keySet()) {
+				if (processURI.startsWith(s) && (match == null || s.length() > match.length())) {
+					match = s;
+				}
+			}
+			if (match != null) {
+				operations.put(processURI, byServiceURI.get(match));
+			}
+		}
 	}
 
 	private ServiceCalleeWrapper(ModuleContext context, ServiceProfile[] realizedServices) {
@@ -107,103 +175,77 @@ public class ServiceCalleeWrapper extends ServiceCallee {
 		if (operation == null)
 			return null;
 
-		Method m = null;
-
 		AapiServiceResponse sr = new AapiServiceResponse(CallStatus.succeeded);
+		Operation op = operations.get(operation);
+		if (op == null)
+			return sr;
+
 		try {
-			for (String s : annotatedMethods.keySet()) {
-				if (operation.startsWith(s)) {
-					m = annotatedMethods.get(s);
-					List<String> methodParametersNames = annotatedMethodsParametersNames.get(s);
-					Class<?>[] methodParametersTypes = m.getParameterTypes();
-					Object[] inputs = new Object[methodParametersNames.size()];
-					List<String> conversionErrors = new ArrayList<String>();
-					for (int i = 0; i < methodParametersNames.size(); i++) {
-						Input inputAnnotation = annotatedMethodsParameters.get(s).get(i);
-						Object input = null;
-						input = call.getInputValue(methodParametersNames.get(i));
-
-						if (input == null) {
-							conversionErrors
-									.add(methodParametersNames.get(i) + " not found in incoming ServiceRequest;");
+			Object[] inputs = new Object[op.parameterNames.length];
+			List<String> conversionErrors = new ArrayList<String>();
+			for (int i = 0; i < op.parameterNames.length; i++) {
+				Object input = call.getInputValue(op.parameterNames[i]);
+
+				if (input == null) {
+					conversionErrors.add(op.parameterNames[i] + " not found in incoming ServiceRequest;");
+				} else {
+					try {
+						if (op.filtering[i] && !(input instanceof Resource)) {
+							inputs[i] = TypeMapper.getJavaInstance(input.toString(), op.parameterDatatypes[i]);
 						} else {
-							try {
-								if (inputAnnotation.propertyPaths().length > 0) {
-									if (input instanceof Resource) {
-										inputs[i] = input;
-									} else {
-										inputs[i] = TypeMapper.getJavaInstance(input.toString(),
-												TypeMapper.getDatatypeURI(methodParametersTypes[i]));
-									}
-								} else {
-									inputs[i] = input;
-								}
-
-							} catch (ClassCastException cce) {
-								cce.printStackTrace();
-								conversionErrors.add(methodParametersNames.get(i) + " cannot be casted as "
-										+ methodParametersTypes[i].getName() + ";");
-							}
+							inputs[i] = input;
 						}
+					} catch (ClassCastException cce) {
+						cce.printStackTrace();
+						conversionErrors.add(op.parameterNames[i] + " cannot be casted as "
+								+ op.parameterTypes[i].getName() + ";");
 					}
+				}
+			}
 
-					if (conversionErrors.size() > 0) {
-						StringBuffer sb = new StringBuffer();
-						for (int i = 0; i < conversionErrors.size(); i++) {
-							sb.append(conversionErrors.get(i) + "\n");
-						}
-						return prepareErrorResponse(
-								"Error during ServiceRequest parameters lookup: \n" + sb.toString());
-					}
+			if (conversionErrors.size() > 0) {
+				StringBuffer sb = new StringBuffer();
+				for (int i = 0; i < conversionErrors.size(); i++) {
+					sb.append(conversionErrors.get(i) + "\n");
+				}
+				return prepareErrorResponse("Error during ServiceRequest parameters lookup: \n" + sb.toString());
+			}
 
-					Object retObj = m.invoke(wrappedObject, inputs);
-					// if method is void then skip adding output
-					if (!void.class.equals(m.getReturnType())) {
-						List<String> outputs = annotatedOutputNames.get(s);
-
-						if (outputs.size() > 1) {
-							// that means that the return object should be an
-							// object array and
-							// each of its elements are single output sequenced
-							if (retObj instanceof Object[]) {
-								Object[] tempObjArray = (Object[]) retObj;
-								if (tempObjArray.length != outputs.size()) {
-									return prepareErrorResponse(
-											"Different @Output annotations numbers than returned array lenght:\n"
-													+ "@Output size: " + outputs.size() + " , returned array lenght : "
-													+ tempObjArray.length);
-								}
-								for (int i = 0; i < outputs.size(); i++) {
-									sr.addOutput(
-											new ProcessOutput(outputs.get(i), convertArrayToList(tempObjArray[i])));
-								}
-
-							} else {
-								return prepareErrorResponse(
-										"Error during ServiceRequest outputs and results processing:\n"
-												+ "If multiple @Output are provided then method should return Object[]");
-							}
-						} else {
-							// we have only single output
-							// fixing issue with converting arrays into RDF
-							// (TypeMapper.asLiteral does not support it)
-							retObj = convertArrayToList(retObj);
-							String outVal = outputs.get(0);
-							sr.addOutput(new ProcessOutput(outVal, retObj));
-						}
+			Object retObj = op.method.invoke(wrappedObject, inputs);
+			// if method is void then skip adding output
+			if (!op.isVoid) {
+				String[] outputs = op.outputNames;
 
-					}
-					boolean allowUnbound = false;
-					for (Output output : annotatedOutputs.get(s)) {
-						if (output.propertyPaths().length == 0) {
-							allowUnbound = true;
-							break;
+				if (outputs.length > 1) {
+					// that means that the return object should be an
+					// object array and
+					// each of its elements are single output sequenced
+					if (retObj instanceof Object[]) {
+						Object[] tempObjArray = (Object[]) retObj;
+						if (tempObjArray.length != outputs.length) {
+							return prepareErrorResponse("Different @Output annotations numbers than returned array lenght:\n"
+									+ "@Output size: " + outputs.length + " , returned array lenght : "
+									+ tempObjArray.length);
 						}
+						for (int i = 0; i < outputs.length; i++) {
+							sr.addOutput(new ProcessOutput(outputs[i], convertArrayToList(tempObjArray[i])));
+						}
+
+					} else {
+						return prepareErrorResponse("Error during ServiceRequest outputs and results processing:\n"
+								+ "If multiple @Output are provided then method should return Object[]");
 					}
-					if (allowUnbound) {
-						sr.allowUnboundOutput();
-					}
+				} else {
+					// we have only single output
+					// fixing issue with converting arrays into RDF
+					// (TypeMapper.asLiteral does not support it)
+					retObj = convertArrayToList(retObj);
+					sr.addOutput(new ProcessOutput(outputs[0], retObj));
 				}
+
+			}
+			if (op.allowUnbound) {
+				sr.allowUnboundOutput();
 			}
 			return sr;
 		} catch (Exception e) {
@@ -0,0 +1,25 @@
+package org.universAAL.middleware.api.impl;
+
+import org.universAAL.middleware.api.annotation.Input;
+import org.universAAL.middleware.api.annotation.OntologyClasses;
+import org.universAAL.middleware.api.annotation.ServiceOperation;
+import org.universAAL.middleware.api.annotation.UniversAALService;
+
+/**
+ * An annotated service whose operation "add" is a prefix of the operation
+ * "addTwice".
+ */
+@UniversAALService(namespace = Counter.NAMESPACE, name = "Counter")
+@OntologyClasses(value = { CounterService.class })
+public interface Counter {
+	String NAMESPACE = "http://ontology.universAAL.org/AapiTest.owl#";
+
+	@ServiceOperation
+	void add(@Input(name = "amount") int amount);
+
+	@ServiceOperation
+	void addTwice(@Input(name = "amount") int amount);
+
+	@ServiceOperation
+	int getValue();
+}
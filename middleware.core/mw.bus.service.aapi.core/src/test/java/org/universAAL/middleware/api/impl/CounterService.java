@@ -0,0 +1,38 @@
+package org.universAAL.middleware.api.impl;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.owl.OntologyManagement;
+import org.universAAL.middleware.owl.SimpleOntology;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.rdf.ResourceFactory;
+import org.universAAL.middleware.service.owl.Service;
+
+public class CounterService extends Service {
+	public static final String MY_URI = Counter.NAMESPACE + "CounterService";
+
+	private static boolean registered = false;
+
+	public CounterService() {
+		super();
+	}
+
+	public CounterService(String uri) {
+		super(uri);
+	}
+
+	@Override
+	public String getClassURI() {
+		return MY_URI;
+	}
+
+	public static synchronized void register(ModuleContext mc) {
+		if (registered)
+			return;
+		registered = true;
+		OntologyManagement.getInstance().register(mc, new SimpleOntology(MY_URI, Service.MY_URI, new ResourceFactory() {
+			public Resource createInstance(String classURI, String instanceURI, int factoryIndex) {
+				return new CounterService(instanceURI);
+			}
+		}));
+	}
+}
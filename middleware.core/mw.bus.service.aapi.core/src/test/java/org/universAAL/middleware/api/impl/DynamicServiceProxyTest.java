@@ -0,0 +1,70 @@
+package org.universAAL.middleware.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.universAAL.middleware.bus.junit.BusTestCase;
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.DefaultServiceCaller;
+import org.universAAL.middleware.service.ServiceRequest;
+import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.aapi.AapiServiceRequest;
+
+public class DynamicServiceProxyTest extends BusTestCase {
+
+	/**
+	 * Records the requests and answers them with a fixed value.
+	 */
+	private static class RecordingCaller extends DefaultServiceCaller {
+		final List<AapiServiceRequest> requests = new ArrayList<AapiServiceRequest>();
+
+		RecordingCaller() {
+			super(mc);
+		}
+
+		@Override
+		public ServiceResponse call(ServiceRequest request) {
+			requests.add((AapiServiceRequest) request);
+			ServiceResponse response = new ServiceResponse(CallStatus.succeeded);
+			response.addOutput(Counter.NAMESPACE + "value", Integer.valueOf(42));
+			return response;
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		CounterService.register(mc);
+	}
+
+	public void testInvocation() throws Exception {
+		RecordingCaller caller = new RecordingCaller();
+		try {
+			Counter counter = (Counter) DynamicServiceProxy.newInstance(Counter.class, caller);
+
+			counter.add(3);
+			counter.addTwice(4);
+			assertEquals(42, counter.getValue());
+			assertEquals(3, caller.requests.size());
+
+			// every method has its own request template
+			AapiServiceRequest add = caller.requests.get(0);
+			assertEquals(Counter.NAMESPACE + "add", add.getRequestedService().getURI());
+			assertEquals(Integer.valueOf(3), add.getInput().get(Counter.NAMESPACE + "amount"));
+			AapiServiceRequest addTwice = caller.requests.get(1);
+			assertEquals(Counter.NAMESPACE + "addTwice", addTwice.getRequestedService().getURI());
+			assertEquals(Integer.valueOf(4), addTwice.getInput().get(Counter.NAMESPACE + "amount"));
+			assertEquals(Counter.NAMESPACE + "getValue", caller.requests.get(2).getRequestedService().getURI());
+			assertNull(caller.requests.get(2).getInput());
+
+			// the templates are not modified by a call
+			counter.add(5);
+			AapiServiceRequest add2 = caller.requests.get(3);
+			assertNotSame(add, add2);
+			assertEquals(1, add2.getInput().size());
+			assertEquals(Integer.valueOf(5), add2.getInput().get(Counter.NAMESPACE + "amount"));
+		} finally {
+			caller.close();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.universAAL.middleware.api.impl;
+
+import org.universAAL.middleware.api.SimpleServiceLocator;
+import org.universAAL.middleware.api.SimpleServiceRegistrator;
+import org.universAAL.middleware.bus.junit.BusTestCase;
+
+public class ServiceCalleeWrapperTest extends BusTestCase {
+
+	private static class CounterImpl implements Counter {
+		int value = 0;
+		int addCalls = 0;
+		int addTwiceCalls = 0;
+
+		public void add(int amount) {
+			addCalls++;
+			value += amount;
+		}
+
+		public void addTwice(int amount) {
+			addTwiceCalls++;
+			value += 2 * amount;
+		}
+
+		public int getValue() {
+			return value;
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		CounterService.register(mc);
+	}
+
+	public void testPrefixDispatch() throws Exception {
+		CounterImpl impl = new CounterImpl();
+		SimpleServiceRegistrator registrator = new SimpleServiceRegistrator(mc);
+		registrator.registerService(impl);
+		try {
+			Counter counter = (Counter) new SimpleServiceLocator(mc).lookupService(Counter.class);
+
+			counter.add(1);
+			assertEquals(1, impl.addCalls);
+			assertEquals(0, impl.addTwiceCalls);
+			assertEquals(1, impl.value);
+
+			// only the operation with the longest matching name is invoked
+			counter.addTwice(2);
+			assertEquals(1, impl.addCalls);
+			assertEquals(1, impl.addTwiceCalls);
+			assertEquals(5, impl.value);
+
+			assertEquals(5, counter.getValue());
+		} finally {
+			registrator.unregisterAll();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+	Copyright 2008-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an asynchronous service call, as returned by
+ * {@link ServiceCaller#callAsync(ServiceRequest, long, TimeUnit)}. The future
+ * is completed exactly once: either with the response that was sent by the
+ * bus, or with a {@link ServiceResponse} with status
+ * {@link CallStatus#responseTimedOut} if no response has arrived within the
+ * timeout of the call.
+ * <p>
+ * Only the threads waiting for this call are woken up when the response
+ * arrives, so an arbitrary number of calls can be pending at the same time.
+ */
+public final class ServiceCallFuture implements Future<ServiceResponse> {
+
+	/**
+	 * The caller that is waiting for the response.
+	 */
+	private final ServiceCaller caller;
+
+	/**
+	 * The ID of the request message, null if the request was not sent.
+	 */
+	private final String callID;
+
+	private ServiceResponse response = null;
+	private boolean cancelled = false;
+
+	/**
+	 * The task that completes this future when the timeout has expired.
+	 */
+	private ScheduledFuture<?> timeoutTask = null;
+
+	ServiceCallFuture(ServiceCaller caller, String callID) {
+		this.caller = caller;
+		this.callID = callID;
+	}
+
+	/**
+	 * Creates a future that is already completed with the given response.
+	 */
+	ServiceCallFuture(ServiceResponse response) {
+		this(null, null);
+		this.response = response;
+	}
+
+	/**
+	 * @return the ID of the request message that is also passed as
+	 *         <code>reqID</code> to
+	 *         {@link ServiceCaller#handleResponse(String, ServiceResponse)}.
+	 *         Null, if the request was not sent at all, e.g. because the
+	 *         caller does not have the permission.
+	 */
+	public String getCallID() {
+		return callID;
+	}
+
+	synchronized void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+		if (isDone())
+			timeoutTask.cancel(false);
+		else
+			this.timeoutTask = timeoutTask;
+	}
+
+	/**
+	 * Completes this future with the given response.
+	 *
+	 * @return false, if this future was already completed or cancelled.
+	 */
+	synchronized boolean complete(ServiceResponse response) {
+		if (isDone())
+			return false;
+		this.response = response;
+		if (timeoutTask != null) {
+			timeoutTask.cancel(false);
+			timeoutTask = null;
+		}
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Cancels the call: a response arriving later is ignored and also not
+	 * handed over to {@link ServiceCaller#handleResponse(String,
+	 * ServiceResponse)}. Note that the request has already been sent and the
+	 * service may have been executed anyway.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this) {
+			if (isDone())
+				return false;
+			cancelled = true;
+			if (timeoutTask != null) {
+				timeoutTask.cancel(false);
+				timeoutTask = null;
+			}
+			notifyAll();
+		}
+		if (caller != null)
+			caller.removePendingCall(callID, this);
+		return true;
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	public synchronized boolean isDone() {
+		return cancelled || response != null;
+	}
+
+	/**
+	 * Waits until the response has arrived or the call has timed out.
+	 *
+	 * @return the response of the call. If the call has timed out, the
+	 *         returned response has the status
+	 *         {@link CallStatus#responseTimedOut}.
+	 * @throws CancellationException
+	 *             if the call was cancelled.
+	 */
+	public synchronized ServiceResponse get() throws InterruptedException {
+		while (!isDone())
+			wait();
+		return getResult();
+	}
+
+	/**
+	 * Waits at most the given time for the response of the call.
+	 *
+	 * @throws TimeoutException
+	 *             if the response has not arrived within the given time. The
+	 *             call is still pending afterwards.
+	 * @see #get()
+	 */
+	public synchronized ServiceResponse get(long timeout, TimeUnit unit)
+			throws InterruptedException, TimeoutException {
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+		while (!isDone()) {
+			if (nanos <= 0)
+				throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait(this, nanos);
+			nanos = deadline - System.nanoTime();
+		}
+		return getResult();
+	}
+
+	private ServiceResponse getResult() {
+		if (cancelled)
+			throw new CancellationException();
+		return response;
+	}
+
+	/**
+	 * Waits until the call is done, ignoring interruptions. The interrupted
+	 * status of the thread is restored before returning.
+	 *
+	 * @return the response, or null if the call was cancelled.
+	 */
+	ServiceResponse getUninterruptibly() {
+		boolean interrupted = false;
+		try {
+			synchronized (this) {
+				while (!isDone()) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				return response;
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -183,7 +183,7 @@ public abstract class ServiceCallee extends Callee {
 	public void handleRequest(BusMessage m) {
 		if (m != null && m.getContent() instanceof ServiceCall) {
 			LogUtils.logDebug(owner, ServiceCallee.class, "handleRequest",
-					new Object[] { busResourceURI, " received service call:\n", m.getContentAsString() }, null);
+					new Object[] { busResourceURI, " received service call:\n", m.getContentForLogging() }, null);
 			ServiceResponse sr = null;
 			try {
 				sr = handleCall((ServiceCall) m.getContent());
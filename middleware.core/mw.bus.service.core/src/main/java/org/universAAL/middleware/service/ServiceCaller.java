@@ -19,7 +19,13 @@
  */
 package org.universAAL.middleware.service;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.universAAL.middleware.bus.model.AbstractBus;
 import org.universAAL.middleware.bus.member.BusMember;
@@ -46,8 +52,44 @@ import org.universAAL.middleware.service.owls.profile.ServiceProfile;
  * @author Carsten Stockloew
  */
 public abstract class ServiceCaller extends Caller {
-	private HashMap<String, ServiceCaller> waitingCalls;
-	private HashMap<String, Object> readyResponses;
+	/**
+	 * Property for the timeout, in milliseconds, of the synchronous methods
+	 * {@link #call(ServiceRequest)} and {@link #inject(ServiceCall, PeerCard)}
+	 * , so that a caller does not wait forever if the callee or its node dies.
+	 * A value of 0 or less waits for the response without timeout. Default is
+	 * 60000.
+	 */
+	public static final String PROP_CALL_TIMEOUT = "org.universAAL.middleware.service.call.timeout";
+
+	private static final long DEFAULT_CALL_TIMEOUT = 60000;
+
+	/**
+	 * Maximum number of timed out or cancelled calls that are remembered to
+	 * drop late responses.
+	 */
+	private static final int MAX_EXPIRED_CALLS = 256;
+
+	private static ScheduledExecutorService timeoutScheduler = null;
+
+	/**
+	 * The calls waiting for a response, indexed by the ID of the request
+	 * message.
+	 */
+	private final ConcurrentHashMap<String, ServiceCallFuture> pendingCalls = new ConcurrentHashMap<String, ServiceCallFuture>();
+
+	/**
+	 * IDs of the last calls that have timed out or were cancelled. Responses
+	 * to these calls are dropped instead of being passed to
+	 * {@link #handleResponse(String, ServiceResponse)}.
+	 */
+	private final Map<String, String> expiredCalls = new LinkedHashMap<String, String>() {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_EXPIRED_CALLS;
+		}
+	};
+
 	private CallInjector injector = null;
 
 	/**
@@ -61,8 +103,6 @@ public abstract class ServiceCaller extends Caller {
 	 */
 	protected ServiceCaller(ModuleContext context) {
 		super(context, ServiceBusImpl.getServiceBusFetchParams());
-		waitingCalls = new HashMap<String, ServiceCaller>();
-		readyResponses = new HashMap<String, Object>();
 		injector = (CallInjector) context.getContainer().fetchSharedObject(context,
 				ServiceBusImpl.getServiceBusInjectFetchParams());
 	}
@@ -77,30 +117,64 @@ public abstract class ServiceCaller extends Caller {
 
 	/**
 	 * The "normal" (synchronous) way of calling a service. Use
+	 * {@link #callAsync(ServiceRequest, long, TimeUnit)} or
 	 * {@link #sendRequest(ServiceRequest)}, if you want to handle the response
-	 * asynchronously in another thread.
+	 * asynchronously in another thread. The maximum waiting time can be set
+	 * with the property {@link #PROP_CALL_TIMEOUT}; if it expires, a response
+	 * with status {@link CallStatus#responseTimedOut} is returned.
 	 *
 	 * @throws NullPointerException
 	 *             if request is null
 	 */
 	public ServiceResponse call(ServiceRequest request) {
-		if (AccessControl.INSTANCE.checkPermission(owner, getURI(), request)) {
-			ServiceResponse sr = null;
-			synchronized (waitingCalls) {
-				String callID = sendRequest(request);
-				waitingCalls.put(callID, this);
-				while (sr == null) {
-					try {
-						waitingCalls.wait();
-						sr = (ServiceResponse) readyResponses.remove(callID);
-					} catch (InterruptedException e) {
-					}
-				}
-			}
-			return sr;
-		} else {
-			return new ServiceResponse(CallStatus.denied);
-		}
+		return callAsync(request, getCallTimeout(), TimeUnit.MILLISECONDS).getUninterruptibly();
+	}
+
+	/**
+	 * Calls a service without blocking the calling thread. The returned future
+	 * is completed as soon as the response has arrived. If no response has
+	 * arrived within the given timeout, the future is completed with a
+	 * response with status {@link CallStatus#responseTimedOut} and a response
+	 * that arrives later is dropped.
+	 *
+	 * @param request
+	 *            the request.
+	 * @param timeout
+	 *            the maximum time to wait for the response; a value &lt;= 0
+	 *            means no time limit.
+	 * @param unit
+	 *            the unit of the timeout.
+	 * @return the future for the response. If this caller does not have the
+	 *         permission for the given request, the future is already
+	 *         completed with a response with status {@link CallStatus#denied}.
+	 * @throws NullPointerException
+	 *             if the request is null
+	 */
+	public ServiceCallFuture callAsync(ServiceRequest request, long timeout, TimeUnit unit) {
+		return brokerRequest(request, true, timeout, unit);
+	}
+
+	/**
+	 * Sends a request to the bus if this caller has the permission for it.
+	 *
+	 * @param pending
+	 *            true, if the response is passed to the returned future;
+	 *            otherwise it is passed to
+	 *            {@link #handleResponse(String, ServiceResponse)} and the
+	 *            returned future only provides the ID of the request.
+	 * @return the future for the response, see
+	 *         {@link #callAsync(ServiceRequest, long, TimeUnit)}.
+	 */
+	private ServiceCallFuture brokerRequest(ServiceRequest request, boolean pending, long timeout, TimeUnit unit) {
+		request.setProperty(ServiceRequest.PROP_SERVICE_CALLER, busResourceURI);
+		if (!AccessControl.INSTANCE.checkPermission(owner, getURI(), request))
+			return new ServiceCallFuture(new ServiceResponse(CallStatus.denied));
+		BusMessage reqMsg = new BusMessage(MessageType.request, request, theBus);
+		// register before sending, the response may arrive immediately
+		ServiceCallFuture f = pending ? addPendingCall(reqMsg.getID(), timeout, unit)
+				: new ServiceCallFuture(this, reqMsg.getID());
+		((ServiceBus) theBus).brokerRequest(busResourceURI, reqMsg);
+		return f;
 	}
 
 	/**
@@ -132,20 +206,87 @@ public abstract class ServiceCaller extends Caller {
 	 *            hosts the callee is used from the bus member URI.
 	 */
 	public ServiceResponse inject(ServiceCall call, PeerCard receiver) {
+		return injectAsync(call, receiver, getCallTimeout(), TimeUnit.MILLISECONDS).getUninterruptibly();
+	}
+
+	/**
+	 * Asynchronous version of {@link #inject(ServiceCall, PeerCard)}, see
+	 * {@link #callAsync(ServiceRequest, long, TimeUnit)} for the handling of
+	 * the timeout. This method should NOT be used directly by applications.
+	 */
+	public ServiceCallFuture injectAsync(ServiceCall call, PeerCard receiver, long timeout, TimeUnit unit) {
+		return brokerCall(call, receiver, true, timeout, unit);
+	}
+
+	/**
+	 * Sends a call directly to the given node, see
+	 * {@link #brokerRequest(ServiceRequest, boolean, long, TimeUnit)}.
+	 */
+	private ServiceCallFuture brokerCall(ServiceCall call, PeerCard receiver, boolean pending, long timeout,
+			TimeUnit unit) {
 		// TODO: AccessControl
-		ServiceResponse sr = null;
-		synchronized (waitingCalls) {
-			String callID = sendCall(call, receiver);
-			waitingCalls.put(callID, this);
-			while (sr == null) {
-				try {
-					waitingCalls.wait();
-					sr = (ServiceResponse) readyResponses.remove(callID);
-				} catch (InterruptedException e) {
+		BusMessage callMsg = new BusMessage(MessageType.p2p_request, call, theBus);
+		ServiceCallFuture f = pending ? addPendingCall(callMsg.getID(), timeout, unit)
+				: new ServiceCallFuture(this, callMsg.getID());
+		injector.brokerCall(busResourceURI, receiver, callMsg);
+		return f;
+	}
+
+	private long getCallTimeout() {
+		Object o = owner == null ? null : owner.getProperty(PROP_CALL_TIMEOUT);
+		if (o == null)
+			return DEFAULT_CALL_TIMEOUT;
+		try {
+			return Long.parseLong(o.toString().trim());
+		} catch (NumberFormatException e) {
+			LogUtils.logWarn(owner, ServiceCaller.class, "getCallTimeout", new Object[] { "Invalid value for ",
+					PROP_CALL_TIMEOUT, ": ", o, "; using default value ", DEFAULT_CALL_TIMEOUT }, null);
+			return DEFAULT_CALL_TIMEOUT;
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getTimeoutScheduler() {
+		if (timeoutScheduler == null)
+			timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ServiceCaller timeouts");
+					t.setDaemon(true);
+					return t;
 				}
-			}
+			});
+		return timeoutScheduler;
+	}
+
+	private ServiceCallFuture addPendingCall(final String callID, long timeout, TimeUnit unit) {
+		final ServiceCallFuture f = new ServiceCallFuture(this, callID);
+		pendingCalls.put(callID, f);
+		if (timeout > 0)
+			f.setTimeoutTask(getTimeoutScheduler().schedule(new Runnable() {
+				public void run() {
+					if (pendingCalls.remove(callID, f) && f.complete(new ServiceResponse(CallStatus.responseTimedOut))) {
+						addExpiredCall(callID);
+						LogUtils.logWarn(owner, ServiceCaller.class, "callAsync",
+								new Object[] { busResourceURI, " did not receive a response for call ", callID,
+										" within the timeout." },
+								null);
+					}
+				}
+			}, timeout, unit));
+		return f;
+	}
+
+	/**
+	 * Called by {@link ServiceCallFuture#cancel(boolean)}.
+	 */
+	void removePendingCall(String callID, ServiceCallFuture f) {
+		if (pendingCalls.remove(callID, f))
+			addExpiredCall(callID);
+	}
+
+	private void addExpiredCall(String callID) {
+		synchronized (expiredCalls) {
+			expiredCalls.put(callID, callID);
 		}
-		return sr;
 	}
 
 	/**
@@ -171,16 +312,21 @@ public abstract class ServiceCaller extends Caller {
 	public final void handleReply(BusMessage m) {
 		if (m.getType() == MessageType.reply && (m.getContent() instanceof ServiceResponse)) {
 			LogUtils.logDebug(owner, ServiceCaller.class, "handleReply",
-					new Object[] { busResourceURI, " received service response:\n", m.getContentAsString() }, null);
+					new Object[] { busResourceURI, " received service response:\n", m.getContentForLogging() }, null);
 			String reqID = m.getInReplyTo();
-			synchronized (waitingCalls) {
-				if (waitingCalls.remove(reqID) == null)
-					handleResponse(reqID, (ServiceResponse) m.getContent());
-				else {
-					readyResponses.put(reqID, m.getContent());
-					waitingCalls.notifyAll();
+			ServiceCallFuture f = pendingCalls.remove(reqID);
+			if (f != null) {
+				f.complete((ServiceResponse) m.getContent());
+				return;
+			}
+			synchronized (expiredCalls) {
+				if (expiredCalls.remove(reqID) != null) {
+					LogUtils.logDebug(owner, ServiceCaller.class, "handleReply",
+							new Object[] { "Dropping the late response for call ", reqID }, null);
+					return;
 				}
 			}
+			handleResponse(reqID, (ServiceResponse) m.getContent());
 		}
 	}
 
@@ -211,21 +357,11 @@ public abstract class ServiceCaller extends Caller {
 	 *             if the request is null
 	 */
 	public final String sendRequest(ServiceRequest request) {
-		request.setProperty(ServiceRequest.PROP_SERVICE_CALLER, busResourceURI);
-		if (AccessControl.INSTANCE.checkPermission(owner, getURI(), request)) {
-			BusMessage reqMsg = new BusMessage(MessageType.request, request, theBus);
-			((ServiceBus) theBus).brokerRequest(busResourceURI, reqMsg);
-			return reqMsg.getID();
-		} else {
-			return null;
-		}
+		return brokerRequest(request, false, 0, null).getCallID();
 	}
 
 	public final String sendCall(ServiceCall call, PeerCard receiver) {
-		// TODO: AccessControl
-		BusMessage callMsg = new BusMessage(MessageType.p2p_request, call, theBus);
-		injector.brokerCall(busResourceURI, receiver, callMsg);
-		return callMsg.getID();
+		return brokerCall(call, receiver, false, 0, null).getCallID();
 	}
 
 	public final String sendCall(ServiceCall call, String receiver) {
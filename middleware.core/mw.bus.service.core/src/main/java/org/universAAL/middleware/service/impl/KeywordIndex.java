@@ -0,0 +1,159 @@
+/*
+	Copyright 2008-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.universAAL.middleware.service.owls.profile.ServiceProfile;
+
+/**
+ * An inverted index over the names and descriptions of the
+ * {@link ServiceRealization}s registered at the coordinator, used to search
+ * services by keywords. A keyword matches a service if it is contained in the
+ * name or in the description of its profile, ignoring the case (see
+ * {@link ServiceRealization#matchesAll(String[])}). As a keyword can match in
+ * the middle of a word, the index maps all substrings of length
+ * {@link #GRAM_LENGTH} (trigrams) of the lowercased texts to the realizations
+ * containing them. The candidates for a search are the intersection of the
+ * posting lists of the trigrams of all keywords; they are then checked with
+ * {@link ServiceRealization#matchesAll(String[])}. Shorter keywords do not
+ * restrict the candidates.
+ */
+final class KeywordIndex {
+
+	static final int GRAM_LENGTH = 3;
+
+	/** The posting lists: maps a trigram to the realizations containing it. */
+	private final Map<String, IdentityHashMap<ServiceRealization, Boolean>> postings = new HashMap<String, IdentityHashMap<ServiceRealization, Boolean>>();
+
+	/**
+	 * All indexed realizations with the trigrams under which they are
+	 * indexed.
+	 */
+	private final Map<ServiceRealization, Set<String>> grams = new IdentityHashMap<ServiceRealization, Set<String>>();
+
+	/** The order of registration, to return the results in that order. */
+	private final Map<ServiceRealization, Long> order = new IdentityHashMap<ServiceRealization, Long>();
+	private long counter = 0;
+
+	private static void addGrams(String text, Set<String> result) {
+		if (text == null)
+			return;
+		text = text.toLowerCase();
+		for (int i = 0; i + GRAM_LENGTH <= text.length(); i++)
+			result.add(text.substring(i, i + GRAM_LENGTH));
+	}
+
+	/**
+	 * Add a realization to the index; nothing happens if it is already
+	 * contained.
+	 */
+	synchronized void add(ServiceRealization sr) {
+		if (grams.containsKey(sr))
+			return;
+		Set<String> g = new HashSet<String>();
+		ServiceProfile prof = (ServiceProfile) sr.getProperty(ServiceRealization.SERVICE_PROFILE);
+		if (prof != null) {
+			addGrams(prof.getServiceName(), g);
+			addGrams(prof.getServiceDescription(), g);
+		}
+		for (String gram : g) {
+			IdentityHashMap<ServiceRealization, Boolean> posting = postings.get(gram);
+			if (posting == null) {
+				// identity based, as Resource.equals can be expensive
+				posting = new IdentityHashMap<ServiceRealization, Boolean>();
+				postings.put(gram, posting);
+			}
+			posting.put(sr, Boolean.TRUE);
+		}
+		grams.put(sr, g);
+		order.put(sr, Long.valueOf(counter++));
+	}
+
+	/** Remove a realization from the index. */
+	synchronized void remove(ServiceRealization sr) {
+		Set<String> g = grams.remove(sr);
+		if (g == null)
+			return;
+		order.remove(sr);
+		for (String gram : g) {
+			IdentityHashMap<ServiceRealization, Boolean> posting = postings.get(gram);
+			if (posting != null) {
+				posting.remove(sr);
+				if (posting.isEmpty())
+					postings.remove(gram);
+			}
+		}
+	}
+
+	synchronized int size() {
+		return grams.size();
+	}
+
+	/**
+	 * Get the realizations that match all the given keywords.
+	 *
+	 * @param keywords
+	 *            the keywords, null elements are ignored.
+	 * @return the matching realizations in the order of their registration.
+	 */
+	synchronized List<ServiceRealization> search(String[] keywords) {
+		IdentityHashMap<ServiceRealization, Boolean> candidates = null;
+		if (keywords != null) {
+			for (int i = 0; i < keywords.length; i++) {
+				if (keywords[i] == null || keywords[i].length() < GRAM_LENGTH)
+					continue;
+				Set<String> g = new HashSet<String>();
+				addGrams(keywords[i], g);
+				for (String gram : g) {
+					IdentityHashMap<ServiceRealization, Boolean> posting = postings.get(gram);
+					if (posting == null)
+						return new ArrayList<ServiceRealization>(0);
+					if (candidates == null)
+						candidates = new IdentityHashMap<ServiceRealization, Boolean>(posting);
+					else
+						candidates.keySet().retainAll(posting.keySet());
+					if (candidates.isEmpty())
+						return new ArrayList<ServiceRealization>(0);
+				}
+			}
+		}
+
+		List<ServiceRealization> result = new ArrayList<ServiceRealization>(
+				candidates == null ? grams.keySet() : candidates.keySet());
+		for (int i = result.size() - 1; i >= 0; i--)
+			if (!result.get(i).matchesAll(keywords))
+				result.remove(i);
+		Collections.sort(result, new Comparator<ServiceRealization>() {
+			public int compare(ServiceRealization o1, ServiceRealization o2) {
+				return order.get(o1).compareTo(order.get(o2));
+			}
+		});
+		return result;
+	}
+}
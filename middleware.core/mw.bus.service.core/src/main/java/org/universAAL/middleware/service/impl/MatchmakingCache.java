@@ -0,0 +1,242 @@
+/*
+	Copyright 2008-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.rdf.Variable;
+
+/**
+ * A bounded cache for the results of the matchmaking in the
+ * {@link ServiceStrategy} of the coordinator. For a given caller and a given
+ * structure of a service request it stores the {@link ServiceRealization}s
+ * that have matched the request, so that the matchmaking of a repeated
+ * request only has to be done for these realizations instead of for all
+ * realizations of the requested service class. The matchmaking for the
+ * cached realizations is still done to create the call context.
+ * <p>
+ * The entries for a service class are removed whenever a realization of that
+ * class is registered or unregistered, and all entries are removed whenever
+ * an ontology is registered or unregistered, as the class hierarchy is used
+ * in the matchmaking. To not store a result that was computed from an
+ * outdated list of realizations, every change increments a version number;
+ * results computed for an older version are not stored. Results that depend
+ * on the current time are not stored at all (see {@link Context}).
+ */
+final class MatchmakingCache {
+
+	/**
+	 * The context for matching one realization. It records whether the
+	 * matchmaking has read the current time, which is different for every
+	 * request. Clones of the context, which are created during the
+	 * matchmaking, share this information with the original.
+	 */
+	static final class Context extends HashMap<String, Object> {
+		private static final long serialVersionUID = 1L;
+
+		private final boolean[] timeDependent = new boolean[1];
+
+		@Override
+		public Object get(Object key) {
+			if (Variable.VAR_CURRENT_DATETIME.equals(key))
+				timeDependent[0] = true;
+			return super.get(key);
+		}
+
+		/**
+		 * @return true, if the result of the matchmaking depends on the
+		 *         current time and must not be cached.
+		 */
+		boolean isTimeDependent() {
+			return timeDependent[0];
+		}
+	}
+
+	private static final class Entry {
+		final String serviceURI;
+		final ServiceRealization[] matched;
+
+		Entry(String serviceURI, ServiceRealization[] matched) {
+			this.serviceURI = serviceURI;
+			this.matched = matched;
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> entries;
+
+	private long version = 0;
+
+	private long hits = 0;
+
+	/**
+	 * Create a new cache.
+	 *
+	 * @param maxSize
+	 *            the maximum number of cached requests.
+	 */
+	MatchmakingCache(final int maxSize) {
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return the current version of the index; to be called while holding
+	 *         the lock of the index.
+	 */
+	synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get the realizations that have matched a request.
+	 *
+	 * @return the realizations, or null if the request is not in the cache.
+	 */
+	synchronized ServiceRealization[] get(String key) {
+		Entry e = entries.get(key);
+		if (e == null)
+			return null;
+		hits++;
+		return e.matched;
+	}
+
+	/**
+	 * @return the number of requests that were found in the cache.
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of cached requests.
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Stores the realizations that have matched a request.
+	 *
+	 * @param version
+	 *            the version of the index from which the list of candidates
+	 *            was taken.
+	 */
+	synchronized void put(String key, String serviceURI, ServiceRealization[] matched, long version) {
+		if (version == this.version)
+			entries.put(key, new Entry(serviceURI, matched));
+	}
+
+	/**
+	 * Removes all entries of a service class; to be called while holding the
+	 * lock of the index.
+	 */
+	synchronized void invalidate(String serviceURI) {
+		version++;
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();)
+			if (serviceURI.equals(i.next().serviceURI))
+				i.remove();
+	}
+
+	/**
+	 * Removes all entries, e.g. because the class hierarchy has changed.
+	 */
+	synchronized void clear() {
+		version++;
+		entries.clear();
+	}
+
+	/**
+	 * Creates a key for a request that is independent of the URIs of anonymous
+	 * resources and of the order of the properties. The URI of the request
+	 * itself is ignored, too. All strings are prefixed with their length, so
+	 * that different requests cannot have the same key whatever characters
+	 * their literals contain.
+	 */
+	static String createKey(String callerID, Resource request) {
+		StringBuilder sb = new StringBuilder(512);
+		append(sb, callerID);
+		appendResource(sb, request, true, new IdentityHashMap<Object, Integer>());
+		return sb.toString();
+	}
+
+	private static void append(StringBuilder sb, String s) {
+		sb.append(s.length()).append(':').append(s);
+	}
+
+	private static void append(StringBuilder sb, Object o, IdentityHashMap<Object, Integer> visited) {
+		if (o instanceof Resource) {
+			appendResource(sb, (Resource) o, false, visited);
+		} else if (o instanceof List) {
+			List<?> l = (List<?>) o;
+			sb.append('(').append(l.size()).append(':');
+			for (Object elem : l)
+				append(sb, elem, visited);
+			sb.append(')');
+		} else if (o != null) {
+			sb.append('L');
+			append(sb, o.getClass().getName());
+			append(sb, o.toString());
+		} else {
+			sb.append('N');
+		}
+	}
+
+	private static void appendResource(StringBuilder sb, Resource r, boolean isRoot,
+			IdentityHashMap<Object, Integer> visited) {
+		Integer ref = visited.get(r);
+		if (ref != null) {
+			sb.append('#').append(ref);
+			return;
+		}
+		visited.put(r, Integer.valueOf(visited.size()));
+
+		sb.append(r.serializesAsXMLLiteral() ? 'X' : 'R');
+		append(sb, r.getClass().getName());
+		if (isRoot || r.isAnon())
+			sb.append('_');
+		else
+			append(sb, r.getURI());
+		List<String> props = new ArrayList<String>(r.numberOfProperties());
+		for (Enumeration<?> e = r.getPropertyURIs(); e.hasMoreElements();)
+			props.add((String) e.nextElement());
+		String[] sorted = props.toArray(new String[props.size()]);
+		Arrays.sort(sorted);
+		sb.append('[').append(sorted.length).append(':');
+		for (String prop : sorted) {
+			append(sb, prop);
+			append(sb, r.getProperty(prop), visited);
+		}
+		sb.append(']');
+	}
+}
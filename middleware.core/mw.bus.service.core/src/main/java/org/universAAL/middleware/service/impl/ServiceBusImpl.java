@@ -61,6 +61,8 @@ public final class ServiceBusImpl extends AbstractBus implements ServiceBus {
 	private static ServiceBusOntology serviceOntology = null;
 	private static ModuleContext mc;
 
+	private final Object assessLock = new Object();
+
 	public static class CallInjectorImpl implements CallInjector {
 		ServiceStrategy busStrategy;
 
@@ -91,17 +93,25 @@ public final class ServiceBusImpl extends AbstractBus implements ServiceBus {
 		return busInjectFetchParams.clone();
 	}
 
-	public synchronized void assessContentSerialization(Resource content) {
+	/**
+	 * In debug mode, log the serialization of the given content and check that
+	 * it can be deserialized again. The lock is only taken in debug mode (to
+	 * keep the dumps of concurrent calls apart), so publishing is not
+	 * serialized in normal operation.
+	 */
+	public void assessContentSerialization(Resource content) {
 		if (Constants.debugMode()) {
-			LogUtils.logDebug(context, ServiceBusImpl.class, "assessContentSerialization",
-					new Object[] { "Assessing message content serialization:" }, null);
-
-			String str = BusMessage.trySerializationAsContent(content);
-			LogUtils.logDebug(context, ServiceBusImpl.class, "assessContentSerialization",
-					new Object[] { "\n      1. serialization dump\n", str,
-							"\n      2. deserialize & compare with the original resource\n" },
-					null);
-			new ResourceComparator().printDiffs(content, (Resource) BusMessage.deserializeAsContent(str));
+			synchronized (assessLock) {
+				LogUtils.logDebug(context, ServiceBusImpl.class, "assessContentSerialization",
+						new Object[] { "Assessing message content serialization:" }, null);
+
+				String str = BusMessage.trySerializationAsContent(content);
+				LogUtils.logDebug(context, ServiceBusImpl.class, "assessContentSerialization",
+						new Object[] { "\n      1. serialization dump\n", str,
+								"\n      2. deserialize & compare with the original resource\n" },
+						null);
+				new ResourceComparator().printDiffs(content, (Resource) BusMessage.deserializeAsContent(str));
+			}
 		}
 	}
 
@@ -125,6 +135,7 @@ public final class ServiceBusImpl extends AbstractBus implements ServiceBus {
 
 	public static void stopModule() {
 		if (theServiceBus != null) {
+			((ServiceStrategy) theServiceBus.busStrategy).removeOntologyListener();
 			OntologyManagement.getInstance().unregister(mc, serviceOntology);
 			mc.getContainer().removeSharedObject(mc, theServiceBus, busRemoveParams);
 			mc.getContainer().removeSharedObject(mc, theCallInjector, busInjectRemoveParams);
@@ -203,8 +214,7 @@ public final class ServiceBusImpl extends AbstractBus implements ServiceBus {
 	 * @see ServiceBus#getMatchingServices(String, String[])
 	 */
 	public ServiceProfile[] getMatchingServices(String callerID, String[] keywords) {
-		// TODO Auto-generated method stub
-		return null;
+		return ((ServiceStrategy) busStrategy).getAllServiceProfiles(keywords);
 	}
 
 	/**
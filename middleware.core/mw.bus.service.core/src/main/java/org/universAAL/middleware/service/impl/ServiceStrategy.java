@@ -27,11 +27,18 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.universAAL.middleware.bus.model.AbstractBus;
 import org.universAAL.middleware.bus.model.BusStrategy;
 import org.universAAL.middleware.bus.msg.BusMessage;
 import org.universAAL.middleware.bus.msg.MessageType;
+import org.universAAL.middleware.container.LogListener;
 import org.universAAL.middleware.container.utils.LogUtils;
 import org.universAAL.middleware.container.utils.StringUtils;
 import org.universAAL.middleware.interfaces.PeerCard;
@@ -57,6 +64,7 @@ import org.universAAL.middleware.service.ServiceCallee;
 import org.universAAL.middleware.service.ServiceCaller;
 import org.universAAL.middleware.service.ServiceRequest;
 import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.aapi.AapiServiceRequest;
 import org.universAAL.middleware.service.data.ILocalServiceSearchResultsData;
 import org.universAAL.middleware.service.data.ILocalServicesIndexData;
 import org.universAAL.middleware.service.data.ILocalWaitingCallersData;
@@ -68,6 +76,7 @@ import org.universAAL.middleware.service.owls.process.OutputBinding;
 import org.universAAL.middleware.service.owls.process.ProcessOutput;
 import org.universAAL.middleware.service.owls.profile.ServiceProfile;
 import org.universAAL.middleware.util.Constants;
+import org.universAAL.middleware.util.OntologyListener;
 
 /**
  * This class implements the BusStrategy for the ServiceBus
@@ -88,6 +97,7 @@ public class ServiceStrategy extends BusStrategy {
 			+ "theRequest";
 	private static final String PROP_SERVICE_SUBSCRIBER = Resource.VOCABULARY_NAMESPACE + "theSubscriber";
 	private static final String PROP_SERVICE_TYPE = Resource.VOCABULARY_NAMESPACE + "serviceType";
+	private static final String PROP_SERVICE_KEYWORDS = Resource.VOCABULARY_NAMESPACE + "keywords";
 	private static final Resource RES_STATUS_DEREGISTERED = new Resource(
 			Resource.VOCABULARY_NAMESPACE + "deregistered");
 	private static final Resource RES_STATUS_REGISTERED = new Resource(
@@ -101,10 +111,25 @@ public class ServiceStrategy extends BusStrategy {
 			+ "ServiceSubscription";
 	private static final String TYPE_SERVICE_PROFILE_INFORMATION = Resource.VOCABULARY_NAMESPACE
 			+ "ProfileInformation";
+	private static final String TYPE_SERVICE_KEYWORD_SEARCH = Resource.VOCABULARY_NAMESPACE + "KeywordSearch";
 	private static final String CONTEXT_REQUEST_MESSAGE = Resource.VOCABULARY_NAMESPACE + "requestMessage";
 	private static final String CONTEXT_RESPONSE_MESSAGE = Resource.VOCABULARY_NAMESPACE + "responseMessage";
 	private static final String CONTEXT_INJECT_CALLER = Resource.VOCABULARY_NAMESPACE + "injectCaller";
 
+	/**
+	 * Property for the maximum number of requests for which the coordinator
+	 * caches the matching service realizations (see {@link MatchmakingCache}
+	 * ); a value &lt;= 0 disables the cache. Default is 256.
+	 */
+	public static final String PROP_MATCHMAKING_CACHE_SIZE = "org.universaal.bus.service.matchmaking.cachesize";
+
+	/**
+	 * Property for the minimum number of service realizations of a service
+	 * class for which the matchmaking is split among several threads; a value
+	 * &lt;= 0 disables parallel matchmaking. Default is 32.
+	 */
+	public static final String PROP_MATCHMAKING_PARALLEL_THRESHOLD = "org.universaal.bus.service.matchmaking.parallelthreshold";
+
 	private class AvailabilitySubscription {
 		String id;
 		String callerID;
@@ -171,6 +196,44 @@ public class ServiceStrategy extends BusStrategy {
 	private boolean isCoordinator;
 	protected PeerCard theCoordinator = null;
 
+	/**
+	 * The cache for the results of the matchmaking, null if disabled or if
+	 * this instance is not the coordinator.
+	 */
+	private MatchmakingCache matchmakingCache = null;
+
+	/**
+	 * The index of the names and descriptions of all service realizations for
+	 * searching services by keywords, null if this instance is not the
+	 * coordinator.
+	 */
+	private KeywordIndex keywordIndex = null;
+
+	/**
+	 * The results of keyword searches sent to the coordinator. Maps the ID of
+	 * the request message to the list of profiles, or to null while the reply
+	 * is pending.
+	 */
+	private final HashMap<String, List<?>> keywordSearchResults = new HashMap<String, List<?>>();
+
+	/**
+	 * The threads for parallel matchmaking, null if disabled or if this
+	 * instance is not the coordinator.
+	 */
+	private ThreadPoolExecutor matchmakingExecutor = null;
+	private int matchmakingThreads;
+	private int parallelThreshold;
+
+	private final OntologyListener ontologyListener = new OntologyListener() {
+		public void ontologyAdded(String ontURI) {
+			matchmakingCache.clear();
+		}
+
+		public void ontologyRemoved(String ontURI) {
+			matchmakingCache.clear();
+		}
+	};
+
 	public ServiceStrategy(CommunicationModule commModule) {
 		super(commModule, "Service Bus Strategy");
 
@@ -195,6 +258,52 @@ public class ServiceStrategy extends BusStrategy {
 			allSubscriptionsIndex = new HashMap<String, ArrayList<AvailabilitySubscription>>();
 			startDialogs = new HashMap<String, ArrayList<ServiceRealization>>();
 			allWaitingRequests = new Hashtable<String, WaitingRequest>();
+			keywordIndex = new KeywordIndex();
+
+			int cacheSize = getIntProperty(PROP_MATCHMAKING_CACHE_SIZE, 256);
+			if (cacheSize > 0) {
+				matchmakingCache = new MatchmakingCache(cacheSize);
+				// the result of matching can change with the class hierarchy
+				OntologyManagement.getInstance().addOntologyListener(ServiceBusImpl.getModuleContext(),
+						ontologyListener);
+			}
+			parallelThreshold = getIntProperty(PROP_MATCHMAKING_PARALLEL_THRESHOLD, 32);
+			matchmakingThreads = Runtime.getRuntime().availableProcessors();
+			if (parallelThreshold > 0 && matchmakingThreads > 1)
+				// if all threads are busy, the calling thread does the work
+				matchmakingExecutor = new ThreadPoolExecutor(0, matchmakingThreads - 1, 60, TimeUnit.SECONDS,
+						new SynchronousQueue<Runnable>(), new ThreadFactory() {
+							private final AtomicInteger count = new AtomicInteger();
+
+							public Thread newThread(Runnable r) {
+								Thread t = new Thread(r, "Service Bus Matchmaking " + count.incrementAndGet());
+								t.setDaemon(true);
+								return t;
+							}
+						}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+	}
+
+	/**
+	 * Stop listening for changes of the ontologies, to be called when the bus
+	 * is stopped.
+	 */
+	void removeOntologyListener() {
+		if (matchmakingCache != null)
+			OntologyManagement.getInstance().removeOntologyListener(ServiceBusImpl.getModuleContext(),
+					ontologyListener);
+	}
+
+	private static int getIntProperty(String name, int def) {
+		Object o = ServiceBusImpl.getModuleContext().getProperty(name);
+		if (o == null)
+			return def;
+		try {
+			return Integer.parseInt(o.toString().trim());
+		} catch (NumberFormatException e) {
+			LogUtils.logWarn(ServiceBusImpl.getModuleContext(), ServiceStrategy.class, "getIntProperty",
+					new Object[] { "Invalid value for ", name, ": ", o, "; using default value ", def }, null);
+			return def;
 		}
 	}
 
@@ -1124,6 +1233,15 @@ public class ServiceStrategy extends BusStrategy {
 
 					notifyAll();
 				}
+			} else if (res.getType().equals(TYPE_SERVICE_KEYWORD_SEARCH)) {
+				synchronized (this) {
+					List<?> profiles = (List<?>) res.getProperty(PROP_SERVICE_REGISTERED_PROFILE);
+					// ignore replies for searches that have timed out
+					if (keywordSearchResults.containsKey(msg.getInReplyTo()))
+						keywordSearchResults.put(msg.getInReplyTo(),
+								profiles == null ? new ArrayList<ServiceProfile>(0) : profiles);
+					notifyAll();
+				}
 			}
 			break;
 		case MessageType.P2P_REQUEST:
@@ -1159,6 +1277,18 @@ public class ServiceStrategy extends BusStrategy {
 
 				((ServiceBusImpl) bus).assessContentSerialization(r);
 
+				send(msg.createReply(r));
+			} else if (isCoordinator && res.getType().equals(TYPE_SERVICE_KEYWORD_SEARCH)) {
+				List<?> keywords = (List<?>) res.getProperty(PROP_SERVICE_KEYWORDS);
+				Resource r = new Resource();
+				r.addType(TYPE_SERVICE_KEYWORD_SEARCH, true);
+				ServiceProfile[] profiles = getCoordinatorServices(
+						keywords == null ? null : keywords.toArray(new String[keywords.size()]));
+				if (profiles.length > 0)
+					r.setProperty(PROP_SERVICE_REGISTERED_PROFILE, Arrays.asList(profiles));
+
+				((ServiceBusImpl) bus).assessContentSerialization(r);
+
 				send(msg.createReply(r));
 			}
 			break;
@@ -1201,43 +1331,39 @@ public class ServiceStrategy extends BusStrategy {
 				// start the logging with trace messages about matchmaking
 				// the logID as last parameter in each message is used to
 				// identify different log messages that belong to each other
-				// TODO: make this configurable
-				Long logID = Long.valueOf(Thread.currentThread().getId());
+				// no trace messages at all if they would not be logged anyway
+				Long logID = LogUtils.isLogEnabled(ServiceBusImpl.getModuleContext(), LogListener.LOG_LEVEL_TRACE)
+						? Long.valueOf(Thread.currentThread().getId()) : null;
+				// take a snapshot of the candidates and do the matchmaking
+				// without holding the lock of the index
+				ServiceRealization[] candidates = null;
+				long indexVersion = 0;
 				synchronized (allServicesIndex) {
-					LogUtils.logTrace(
-							ServiceBusImpl.getModuleContext(), ServiceStrategy.class, "handle", new Object[] {
-									ServiceBus.LOG_MATCHING_START, new UnmodifiableResource(request), " ", logID },
-							null);
+					if (logID != null)
+						LogUtils.logTrace(ServiceBusImpl.getModuleContext(), ServiceStrategy.class, "handle",
+								new Object[] { ServiceBus.LOG_MATCHING_START, new UnmodifiableResource(request), " ",
+										logID },
+								null);
 
 					ArrayList<ServiceRealization> arrServices = allServicesIndex.get(serviceURI);
-					if (arrServices == null) {
-						logTrace("handle",
-								new Object[] { ServiceBus.LOG_MATCHING_END, " No service available. ",
-										ServiceBus.LOG_MATCHING_MISMATCH_CODE, Integer.valueOf(1030),
-										ServiceBus.LOG_MATCHING_MISMATCH_DETAILS,
-										" No service has registered for the requested serviceURI.", logID });
-						logID = null; // no more trace log messages
-						sendNoMatchingFound(msg);
-					} else {
-						String caller = request.getProperty(ServiceRequest.PROP_SERVICE_CALLER).toString();
-
-						for (ServiceRealization sr : arrServices) {
-							Service profileService = ((ServiceProfile) sr
-									.getProperty(ServiceRealization.SERVICE_PROFILE)).getTheService();
-							String profileServiceURI = profileService.getURI();
-							String profileProviderURI = (String) sr.getProvider();
-
-							logTrace("handle", new Object[] { ServiceBus.LOG_MATCHING_PROFILE, profileService.getType(),
-									profileServiceURI, profileProviderURI, logID });
-							HashMap<String, Object> context = matches(caller, request, sr, logID);
-							if (context != null) {
-								matches.add(context);
-								logTrace("handle", new Object[] { ServiceBus.LOG_MATCHING_SUCCESS, logID });
-							} else
-								logTrace("handle", new Object[] { ServiceBus.LOG_MATCHING_NOSUCCESS, logID });
-						}
+					if (arrServices != null) {
+						candidates = arrServices.toArray(new ServiceRealization[arrServices.size()]);
+						if (matchmakingCache != null)
+							indexVersion = matchmakingCache.getVersion();
 					}
 				}
+				if (candidates == null) {
+					logTrace("handle",
+							new Object[] { ServiceBus.LOG_MATCHING_END, " No service available. ",
+									ServiceBus.LOG_MATCHING_MISMATCH_CODE, Integer.valueOf(1030),
+									ServiceBus.LOG_MATCHING_MISMATCH_DETAILS,
+									" No service has registered for the requested serviceURI.", logID });
+					logID = null; // no more trace log messages
+					sendNoMatchingFound(msg);
+				} else {
+					String caller = request.getProperty(ServiceRequest.PROP_SERVICE_CALLER).toString();
+					matches = matchCandidates(caller, request, serviceURI, candidates, indexVersion, logID);
+				}
 				int matchesFound = 0;
 				HashMap<String, HashMap<String, Object>> auxMap = new HashMap<String, HashMap<String, Object>>();
 				for (HashMap<String, Object> match : matches) {
@@ -1708,12 +1834,15 @@ public class ServiceStrategy extends BusStrategy {
 			List<String> serviceURIs = getNonAbstractSuperClasses(theService);
 			synchronized (allServicesIndex) {
 				for (String serviceURI : serviceURIs) {
+					if (matchmakingCache != null)
+						matchmakingCache.invalidate(serviceURI);
 					ArrayList<ServiceRealization> arrsr = allServicesIndex.get(serviceURI);
 					if (arrsr == null) {
 						arrsr = new ArrayList<ServiceRealization>();
 						allServicesIndex.put(serviceURI, arrsr);
 					}
 					arrsr.add(registration);
+					keywordIndex.add(registration);
 					ArrayList<AvailabilitySubscription> subscribers = allSubscriptionsIndex.get(serviceURI);
 					if (subscribers != null) {
 						for (AvailabilitySubscription as : subscribers) {
@@ -1747,6 +1876,109 @@ public class ServiceStrategy extends BusStrategy {
 			return true;
 	}
 
+	/**
+	 * Find the candidates that match a request. If the request was already
+	 * matched before, only the realizations that matched at that time are
+	 * tested. If there are many candidates, the matchmaking is split among
+	 * several threads.
+	 *
+	 * @param callerID
+	 *            the caller ID of the ServiceRequest
+	 * @param request
+	 *            the ServiceRequest
+	 * @param serviceURI
+	 *            the URI of the requested service class
+	 * @param candidates
+	 *            a snapshot of the realizations of the service class
+	 * @param indexVersion
+	 *            the version of the cache when the snapshot was taken
+	 * @param logID
+	 *            an id to be used for logging, may be null
+	 * @return the context of each match, in the order of the candidates.
+	 */
+	@SuppressWarnings("unchecked")
+	private Vector<HashMap<String, Object>> matchCandidates(final String callerID, final ServiceRequest request,
+			String serviceURI, ServiceRealization[] candidates, long indexVersion, final Long logID) {
+		String key = null;
+		if (matchmakingCache != null && !(request instanceof AapiServiceRequest)) {
+			key = MatchmakingCache.createKey(callerID, request);
+			ServiceRealization[] cached = matchmakingCache.get(key);
+			if (cached != null) {
+				candidates = cached;
+				key = null;
+			}
+		}
+
+		final ServiceRealization[] offers = candidates;
+		final Object[] results = new Object[offers.length];
+		final boolean[] timeDependent = new boolean[offers.length];
+		if (matchmakingExecutor != null && offers.length >= parallelThreshold) {
+			int chunk = (offers.length + matchmakingThreads - 1) / matchmakingThreads;
+			List<Future<?>> tasks = new ArrayList<Future<?>>(matchmakingThreads);
+			for (int from = chunk; from < offers.length; from += chunk) {
+				final int start = from;
+				final int end = Math.min(from + chunk, offers.length);
+				tasks.add(matchmakingExecutor.submit(new Runnable() {
+					public void run() {
+						matchRange(callerID, request, offers, results, timeDependent, start, end, logID);
+					}
+				}));
+			}
+			matchRange(callerID, request, offers, results, timeDependent, 0, chunk, logID);
+			for (int i = 0; i < tasks.size(); i++) {
+				try {
+					tasks.get(i).get();
+				} catch (Exception e) {
+					LogUtils.logError(ServiceBusImpl.getModuleContext(), ServiceStrategy.class, "matchCandidates",
+							new Object[] { "Parallel matchmaking failed, continuing in the calling thread." }, e);
+					if (e instanceof InterruptedException)
+						Thread.currentThread().interrupt();
+					int start = (i + 1) * chunk;
+					matchRange(callerID, request, offers, results, timeDependent, start,
+							Math.min(start + chunk, offers.length), logID);
+				}
+			}
+		} else {
+			matchRange(callerID, request, offers, results, timeDependent, 0, offers.length, logID);
+		}
+
+		Vector<HashMap<String, Object>> matches = new Vector<HashMap<String, Object>>();
+		ArrayList<ServiceRealization> matched = new ArrayList<ServiceRealization>();
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null) {
+				matches.add((HashMap<String, Object>) results[i]);
+				matched.add(offers[i]);
+			}
+			// a realization that did (not) match at this time may (not) match
+			// at another time
+			if (timeDependent[i])
+				key = null;
+		}
+		if (key != null)
+			matchmakingCache.put(key, serviceURI, matched.toArray(new ServiceRealization[matched.size()]),
+					indexVersion);
+		return matches;
+	}
+
+	private void matchRange(String callerID, ServiceRequest request, ServiceRealization[] offers, Object[] results,
+			boolean[] timeDependent, int from, int to, Long logID) {
+		for (int i = from; i < to; i++) {
+			ServiceRealization sr = offers[i];
+			Service profileService = ((ServiceProfile) sr.getProperty(ServiceRealization.SERVICE_PROFILE))
+					.getTheService();
+			logTrace("matchCandidates", new Object[] { ServiceBus.LOG_MATCHING_PROFILE, profileService.getType(),
+					profileService.getURI(), sr.getProvider(), logID });
+			MatchmakingCache.Context matchContext = new MatchmakingCache.Context();
+			HashMap<String, Object> context = matches(callerID, request, sr, matchContext, logID);
+			results[i] = context;
+			timeDependent[i] = matchContext.isTimeDependent();
+			if (context != null)
+				logTrace("matchCandidates", new Object[] { ServiceBus.LOG_MATCHING_SUCCESS, logID });
+			else
+				logTrace("matchCandidates", new Object[] { ServiceBus.LOG_MATCHING_NOSUCCESS, logID });
+		}
+	}
+
 	/**
 	 * Returns true iff a ServiceRealization passed as a parameter matches the
 	 * ServiceRequest
@@ -1781,7 +2013,28 @@ public class ServiceStrategy extends BusStrategy {
 	 */
 	private HashMap<String, Object> matches(String callerID, ServiceRequest request, ServiceRealization offer,
 			Long logID) {
-		HashMap<String, Object> context = new HashMap<String, Object>();
+		return matches(callerID, request, offer, new HashMap<String, Object>(), logID);
+	}
+
+	/**
+	 * Returns true iff a ServiceRealization passed as a parameter matches the
+	 * ServiceRequest
+	 *
+	 * @param callerID
+	 *            the caller ID of the ServiceRequest
+	 * @param request
+	 *            the ServiceRequest
+	 * @param offer
+	 *            the Service Realization being matched
+	 * @param context
+	 *            an empty map to be filled with the context of the matching
+	 * @param logID
+	 *            an id to be used for logging, may be null
+	 * @return the context or null if the ServiceRealization does not match the
+	 *         ServiceRequest
+	 */
+	private HashMap<String, Object> matches(String callerID, ServiceRequest request, ServiceRealization offer,
+			HashMap<String, Object> context, Long logID) {
 		context.put(Variable.VAR_ACCESSING_BUS_MEMBER, callerID);
 		context.put(Variable.VAR_CURRENT_DATETIME, TypeMapper.getCurrentDateTime());
 		context.put(Variable.VAR_SERVICE_TO_SELECT, offer);
@@ -2007,7 +2260,8 @@ public class ServiceStrategy extends BusStrategy {
 	private void unindexServices(String calleeID, String processURI) {
 		boolean deleteAll = (processURI == null);
 		synchronized (allServicesIndex) {
-			for (ArrayList<ServiceRealization> i : allServicesIndex.values()) {
+			for (Map.Entry<String, ArrayList<ServiceRealization>> entry : allServicesIndex.entrySet()) {
+				ArrayList<ServiceRealization> i = entry.getValue();
 				for (Iterator<ServiceRealization> j = i.iterator(); j.hasNext();) {
 					ServiceRealization reg = j.next();
 					if (calleeID.equals(reg.getProperty(ServiceRealization.SERVICE_PROVIDER))) {
@@ -2020,6 +2274,9 @@ public class ServiceStrategy extends BusStrategy {
 							continue;
 
 						j.remove();
+						keywordIndex.remove(reg);
+						if (matchmakingCache != null)
+							matchmakingCache.invalidate(entry.getKey());
 						String serviceURI = ((ServiceProfile) reg.getProperty(ServiceRealization.SERVICE_PROFILE))
 								.getTheService().getClassURI();
 						ArrayList<AvailabilitySubscription> subscribers = allSubscriptionsIndex.get(serviceURI);
@@ -2074,6 +2331,62 @@ public class ServiceStrategy extends BusStrategy {
 		return profileListToArray(profiles);
 	}
 
+	/**
+	 * This method returns all the globally registered Service Profiles whose
+	 * name or description contains all the given keywords (ignoring the
+	 * case).
+	 *
+	 * @param keywords
+	 *            the keywords to search for
+	 * @return the service profiles that match all keywords
+	 */
+	public ServiceProfile[] getAllServiceProfiles(String[] keywords) {
+		if (this.isCoordinator)
+			return getCoordinatorServices(keywords);
+
+		List<String> l = new ArrayList<String>();
+		if (keywords != null)
+			for (int i = 0; i < keywords.length; i++)
+				if (keywords[i] != null && keywords[i].length() > 0)
+					l.add(keywords[i]);
+		Resource r = new Resource();
+		r.addType(TYPE_SERVICE_KEYWORD_SEARCH, true);
+		if (!l.isEmpty())
+			r.setProperty(PROP_SERVICE_KEYWORDS, l);
+		((ServiceBusImpl) bus).assessContentSerialization(r);
+		BusMessage m = new BusMessage(MessageType.p2p_request, r, bus);
+		m.setReceiver(theCoordinator);
+
+		int msTimeout = 1000;
+		int maxRetry = 5;
+		int retryCount = 0;
+
+		List<?> profiles;
+		synchronized (this) {
+			keywordSearchResults.put(m.getID(), null);
+		}
+		// sending may wait for the channel, the reply handlers must not be
+		// blocked meanwhile
+		send(m);
+		synchronized (this) {
+			while (keywordSearchResults.get(m.getID()) == null && maxRetry > retryCount) {
+				try {
+					wait(msTimeout);
+					retryCount++;
+				} catch (InterruptedException e) {
+					LogUtils.logWarn(ServiceBusImpl.getModuleContext(), ServiceStrategy.class,
+							"getAllServiceProfiles",
+							new Object[] { "Interrupted while waiting for the result of a keyword search." }, null);
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			profiles = keywordSearchResults.remove(m.getID());
+		}
+
+		return profileListToArray(profiles);
+	}
+
 	public HashMap<String, List<ServiceProfile>> getAllServiceProfilesWithCalleeIDs(String serviceURI) {
 		return getCoordinatorServicesWithCalleeIDs(serviceURI);
 	}
@@ -2127,6 +2440,28 @@ public class ServiceStrategy extends BusStrategy {
 		return profileListToArray(profiles);
 	}
 
+	/**
+	 * Return the profiles whose name or description contains all the given
+	 * keywords, only if this peer is a coordinator. Otherwise, an empty list
+	 * is returned.
+	 *
+	 * @param keywords
+	 *            the keywords to search for
+	 * @return the profiles that match all keywords
+	 */
+	private ServiceProfile[] getCoordinatorServices(String[] keywords) {
+		ArrayList<ServiceProfile> profiles = new ArrayList<ServiceProfile>();
+		if (this.isCoordinator) {
+			for (ServiceRealization reg : keywordIndex.search(keywords)) {
+				ServiceProfile profile = (ServiceProfile) reg.getProperty(ServiceRealization.SERVICE_PROFILE);
+				if (profile != null)
+					profiles.add(profile);
+			}
+		}
+
+		return profileListToArray(profiles);
+	}
+
 	/**
 	 * This method translates a List of ServiceProfiles into an array of
 	 * ServiceProfiles
@@ -0,0 +1,93 @@
+package org.universAAL.middleware.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.rdf.Variable;
+
+public class MatchmakingCacheTest extends TestCase {
+
+	private static final String P1 = "urn:test#p1";
+	private static final String P2 = "urn:test#p2";
+
+	public void testKeyIgnoresAnonymousURIsAndOrder() {
+		Resource r1 = new Resource("urn:test#request1");
+		r1.setProperty(P1, "v");
+		r1.setProperty(P2, new Resource());
+		Resource r2 = new Resource("urn:test#request2");
+		r2.setProperty(P2, new Resource());
+		r2.setProperty(P1, "v");
+		assertEquals(MatchmakingCache.createKey("caller", r1), MatchmakingCache.createKey("caller", r2));
+		assertFalse(MatchmakingCache.createKey("caller", r1).equals(MatchmakingCache.createKey("caller2", r1)));
+	}
+
+	public void testKeyIsUnambiguous() {
+		// a literal that looks like the encoding of another property
+		Resource r1 = new Resource("urn:test#request");
+		r1.setProperty(P1, "v\"^java.lang.String;" + P2 + "=\"w");
+		Resource r2 = new Resource("urn:test#request");
+		r2.setProperty(P1, "v");
+		r2.setProperty(P2, "w");
+		assertFalse(MatchmakingCache.createKey("caller", r1).equals(MatchmakingCache.createKey("caller", r2)));
+
+		// a caller ID that looks like the beginning of a request
+		Resource r3 = new Resource("urn:test#request");
+		r3.setProperty(P1, "v");
+		assertFalse(MatchmakingCache.createKey("a|[", r3).equals(MatchmakingCache.createKey("a", r3)));
+
+		// a list element that looks like two elements
+		List<Object> l1 = new ArrayList<Object>();
+		l1.add("a\"^java.lang.String \"b");
+		List<Object> l2 = new ArrayList<Object>();
+		l2.add("a");
+		l2.add("b");
+		r1 = new Resource("urn:test#request");
+		r1.setProperty(P1, l1);
+		r2 = new Resource("urn:test#request");
+		r2.setProperty(P1, l2);
+		assertFalse(MatchmakingCache.createKey("caller", r1).equals(MatchmakingCache.createKey("caller", r2)));
+	}
+
+	public void testInvalidation() {
+		MatchmakingCache cache = new MatchmakingCache(16);
+		ServiceRealization[] matched = new ServiceRealization[0];
+		cache.put("k1", "urn:test#Service1", matched, cache.getVersion());
+		cache.put("k2", "urn:test#Service2", matched, cache.getVersion());
+		assertSame(matched, cache.get("k1"));
+		assertEquals(1, cache.getHits());
+
+		// only the entries of the given service class are removed
+		long version = cache.getVersion();
+		cache.invalidate("urn:test#Service1");
+		assertNull(cache.get("k1"));
+		assertSame(matched, cache.get("k2"));
+		assertEquals(2, cache.getHits());
+
+		// results computed before a change are not stored
+		cache.put("k1", "urn:test#Service1", matched, version);
+		assertNull(cache.get("k1"));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		cache.put("k2", "urn:test#Service2", matched, version + 1);
+		assertNull(cache.get("k2"));
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testTimeDependentContext() {
+		MatchmakingCache.Context context = new MatchmakingCache.Context();
+		context.put(Variable.VAR_CURRENT_DATETIME, "now");
+		context.put(Variable.VAR_ACCESSING_BUS_MEMBER, "caller");
+		context.get(Variable.VAR_ACCESSING_BUS_MEMBER);
+		assertFalse(context.isTimeDependent());
+
+		// the time is read from a clone that was created during matchmaking
+		HashMap<String, Object> cloned = (HashMap<String, Object>) context.clone();
+		assertEquals("now", cloned.get(Variable.VAR_CURRENT_DATETIME));
+		assertTrue(context.isTimeDependent());
+	}
+}
@@ -1,12 +1,17 @@
 package org.universAAL.middleware.service.test;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.universAAL.middleware.container.JUnit.JUnitModuleContext.LogLevel;
+import org.universAAL.middleware.owl.Ontology;
+import org.universAAL.middleware.owl.OntologyManagement;
 import org.universAAL.middleware.rdf.Resource;
 import org.universAAL.middleware.service.CallStatus;
 import org.universAAL.middleware.service.ProfileExistsException;
 import org.universAAL.middleware.service.ServiceCall;
+import org.universAAL.middleware.service.ServiceCallFuture;
 import org.universAAL.middleware.service.ServiceResponse;
 import org.universAAL.middleware.service.owls.profile.ServiceProfile;
 import org.universAAL.middleware.service.test.ontology.Room;
@@ -294,4 +299,109 @@ public class DistributedTest extends ServiceBusTestCase {
 				new ArrayListCallHandler(ProfileUtil.OUTPUT_CONTROLLED_LAMPS, lamp1),
 				new ServiceCall(new Resource(profile.getProcessURI())), checker);
 	}
+
+	public void testCallAsync() throws Exception {
+		// scenario: getLamps, 1 callee on node1, caller on coord
+		reset();
+		deployProfiles(NODE1, ProfileUtil.create_getControlledLamps(true));
+		setHandler(NODE1, new ArrayListCallHandler(ProfileUtil.OUTPUT_CONTROLLED_LAMPS, lamp1));
+
+		ServiceCallFuture f = getCaller(COORD).callAsync(RequestUtil.getAllLampsRequest(true), 10, TimeUnit.SECONDS);
+		checkResponse(f.get());
+		assertTrue(f.isDone());
+		assertFalse(f.isCancelled());
+	}
+
+	public void testCallAsyncTimeout() throws Exception {
+		// scenario: getLamps, 1 callee on node1 that does not answer in time,
+		// caller on coord
+		reset();
+		deployProfiles(NODE1, ProfileUtil.create_getControlledLamps(true));
+		final CallHandler handler = new ArrayListCallHandler(ProfileUtil.OUTPUT_CONTROLLED_LAMPS, lamp1);
+		final CountDownLatch release = new CountDownLatch(1);
+		setHandler(NODE1, new CallHandler() {
+			public ServiceResponse handleCall(ServiceCall call) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+				}
+				return handler.handleCall(call);
+			}
+		});
+
+		ServiceCallFuture f = getCaller(COORD).callAsync(RequestUtil.getAllLampsRequest(true), 200,
+				TimeUnit.MILLISECONDS);
+		ServiceResponse sr = f.get(10, TimeUnit.SECONDS);
+		release.countDown();
+		assertTrue(sr.getCallStatus() == CallStatus.responseTimedOut);
+	}
+
+	public void testCachedMatchmaking() {
+		// scenario: getLamps, called repeatedly while a second callee is added
+		reset();
+		deployProfiles(COORD, ProfileUtil.create_getControlledLamps(true, 0));
+		setHandler(COORD, new ArrayListCallHandler(ProfileUtil.OUTPUT_CONTROLLED_LAMPS, lamp1));
+		long hits = getMatchmakingCacheStatistic("getHits");
+		checkResponse(call(NODE1, RequestUtil.getAllLampsRequest(true)));
+		assertEquals(hits, getMatchmakingCacheStatistic("getHits"));
+		// the second call is answered with the cached matchmaking result
+		checkResponse(call(NODE1, RequestUtil.getAllLampsRequest(true)));
+		assertEquals(hits + 1, getMatchmakingCacheStatistic("getHits"));
+
+		// a new profile must invalidate the cached result
+		deployProfiles(NODE2, ProfileUtil.create_getControlledLamps(true, 1));
+		setHandler(NODE2, new ArrayListCallHandler(ProfileUtil.OUTPUT_CONTROLLED_LAMPS, lamp2));
+		checkResponse2(call(NODE1, RequestUtil.getAllLampsRequest(true)));
+		assertEquals(hits + 1, getMatchmakingCacheStatistic("getHits"));
+		checkResponse2(call(NODE1, RequestUtil.getAllLampsRequest(true)));
+		assertEquals(hits + 2, getMatchmakingCacheStatistic("getHits"));
+
+		// a new ontology can change the class hierarchy and must invalidate
+		// all cached results
+		Ontology ont = new Ontology("http://ontology.universaal.org/MatchmakingCacheTest.owl#") {
+			public void create() {
+				getInfo().setResourceLabel("Matchmaking cache test ontology");
+			}
+		};
+		assertTrue(getMatchmakingCacheStatistic("size") > 0);
+		OntologyManagement.getInstance().register(mc, ont);
+		assertEquals(0, getMatchmakingCacheStatistic("size"));
+		checkResponse2(call(NODE1, RequestUtil.getAllLampsRequest(true)));
+		assertEquals(hits + 2, getMatchmakingCacheStatistic("getHits"));
+		OntologyManagement.getInstance().unregister(mc, ont);
+		assertEquals(0, getMatchmakingCacheStatistic("size"));
+	}
+
+	private static ServiceProfile named(ServiceProfile prof, String name, String text) {
+		assertTrue(prof.setProperty(ServiceProfile.PROP_OWLS_PROFILE_SERVICE_NAME, name));
+		assertTrue(prof.setProperty(ServiceProfile.PROP_OWLS_PROFILE_TEXT_DESCRIPTION, text));
+		return prof;
+	}
+
+	public void testKeywordSearch() {
+		// scenario: two profiles with different names on two nodes, searched
+		// from the coordinator and from a remote node
+		reset();
+		deployProfiles(COORD, named(ProfileUtil.create_getControlledLamps(true, 0), "Kitchen Lamps",
+				"Returns all lamps in the kitchen"));
+		deployProfiles(NODE2, named(ProfileUtil.create_getControlledLamps(true, 1), "Living Room Lamps",
+				"Returns all lamps in the living room"));
+
+		for (int node : new int[] { COORD, NODE1 }) {
+			ServiceProfile[] res = getCaller(node).getMatchingService(new String[] { "lamps" });
+			assertEquals(2, res.length);
+			// infix and case insensitive matching, all keywords must match
+			res = getCaller(node).getMatchingService(new String[] { "KITCH", "lamp" });
+			assertEquals(1, res.length);
+			assertEquals("Kitchen Lamps", res[0].getServiceName());
+			res = getCaller(node).getMatchingService(new String[] { "iving" });
+			assertEquals(1, res.length);
+			assertEquals("Living Room Lamps", res[0].getServiceName());
+			// short keywords are matched without the index
+			res = getCaller(node).getMatchingService(new String[] { "in", "room" });
+			assertEquals(1, res.length);
+			res = getCaller(node).getMatchingService(new String[] { "kitchen", "room" });
+			assertEquals(0, res.length);
+		}
+	}
 }
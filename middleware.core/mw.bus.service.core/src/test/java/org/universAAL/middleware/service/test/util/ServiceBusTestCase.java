@@ -321,6 +321,30 @@ public abstract class ServiceBusTestCase extends TestCase {
 		} while (map.keySet().size() != 0);
 	}
 
+	/**
+	 * Get a statistic of the matchmaking cache of the coordinator.
+	 *
+	 * @param method
+	 *            the name of the method of the cache that returns the
+	 *            statistic, e.g. getHits or size.
+	 * @return the value of the statistic.
+	 */
+	public long getMatchmakingCacheStatistic(String method) {
+		try {
+			Field f = AbstractBus.class.getDeclaredField("busStrategy");
+			f.setAccessible(true);
+			Object strategy = f.get(lstBus.get(0));
+			f = ServiceStrategy.class.getDeclaredField("matchmakingCache");
+			f.setAccessible(true);
+			Object cache = f.get(strategy);
+			Method m = cache.getClass().getDeclaredMethod(method);
+			m.setAccessible(true);
+			return ((Number) m.invoke(cache)).longValue();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * Get the number of registered profiles.
 	 *
@@ -176,7 +176,7 @@ public abstract class UIHandler extends Callee {
 	public final void handleRequest(BusMessage msg) {
 		if (msg.getContent() instanceof UIRequest) {
 			LogUtils.logInfo(owner, UIHandler.class, "handleRequest",
-					new Object[] { busResourceURI, " received UI request:\n", msg.getContentAsString() }, null);
+					new Object[] { busResourceURI, " received UI request:\n", msg.getContentForLogging() }, null);
 			handleUICall((UIRequest) msg.getContent());
 		}
 	}
@@ -157,6 +157,7 @@ public class UIHandlerProfile extends FinalizedResource implements UtilityAdvert
 				}
 			} else {
 				if (UIRequest.PROP_PRESENTATION_MODALITY.equals(r.getOnProperty())
+						&& (uiRequest.getProperty(UIRequest.PROP_PRESENTATION_MODALITY_ALT) != null)
 						&& r.copyOnNewProperty(UIRequest.PROP_PRESENTATION_MODALITY_ALT).hasMember(uiRequest))
 				/*
 				 * if the restriction r is about the modality property of
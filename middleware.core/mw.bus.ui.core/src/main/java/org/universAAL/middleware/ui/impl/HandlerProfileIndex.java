@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright 2013 Universidad Politécnica de Madrid
+ * Copyright 2013 Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.universAAL.middleware.ui.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.universAAL.middleware.owl.MergedRestriction;
+import org.universAAL.middleware.owl.TypeExpression;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.ui.UIHandlerProfile;
+import org.universAAL.middleware.ui.UIRequest;
+
+/**
+ * Index of the {@link UIHandlerProfile}s registered at the coordinator, used
+ * to select the best handler for a {@link UIRequest} without evaluating every
+ * restriction of every profile. <br>
+ * The restrictions of a profile on the addressed user, the presentation
+ * modality and the presentation location are indexed by the value they are
+ * checked against: for each (named) value the set of profiles accepting it is
+ * computed once and kept, so a request only needs to evaluate the remaining,
+ * low weighted restrictions of the profiles that can still beat the best
+ * matching degree found so far. The resulting matching degree is the one
+ * computed by {@link UIHandlerProfile#getMatchingDegree(UIRequest)}, plus the
+ * bonus for the last used handler.
+ */
+public class HandlerProfileIndex {
+
+	/**
+	 * Maximum number of distinct values kept per indexed property.
+	 */
+	private static final int MAX_CACHED_VALUES = 512;
+
+	/**
+	 * Key used for requests without value for an indexed property, URIs are
+	 * never empty.
+	 */
+	private static final String NULL_KEY = "";
+
+	private static final int USER = 0;
+	private static final int MODALITY = 1;
+	private static final int ALT_MODALITY = 2;
+	private static final int LOCATION = 3;
+
+	private static final String[] INDEXED_PROPS = { UIRequest.PROP_ADDRESSED_USER,
+			UIRequest.PROP_PRESENTATION_MODALITY, UIRequest.PROP_PRESENTATION_MODALITY_ALT,
+			UIRequest.PROP_PRESENTATION_LOCATION };
+
+	private static final String[] OTHER_PROPS = { UIRequest.PROP_HAS_ACCESS_IMPAIRMENT,
+			UIRequest.PROP_DIALOG_PRIVACY_LEVEL, UIRequest.PROP_DIALOG_LANGUAGE, UIRequest.PROP_DIALOG_FORM };
+
+	private static final int[] OTHER_WEIGHTS = { UIHandlerProfile.MATCH_USER_IMPAIRMENTS,
+			UIHandlerProfile.MATCH_DIALOG_PRIVACY, UIHandlerProfile.MATCH_DIALOG_LANGUAGE,
+			UIHandlerProfile.MATCH_DIALOG_FORM };
+
+	/**
+	 * Highest degree a profile can get from the non indexed restrictions.
+	 */
+	private static final int MAX_OTHER_DEGREE = UIHandlerProfile.MATCH_USER_IMPAIRMENTS
+			+ UIHandlerProfile.MATCH_DIALOG_PRIVACY + UIHandlerProfile.MATCH_DIALOG_LANGUAGE
+			+ UIHandlerProfile.MATCH_DIALOG_FORM;
+
+	/**
+	 * The result of a selection.
+	 */
+	public static final class Selection {
+		private final String handlerID;
+		private final int matchingDegree;
+
+		private Selection(String handlerID, int matchingDegree) {
+			this.handlerID = handlerID;
+			this.matchingDegree = matchingDegree;
+		}
+
+		/**
+		 * @return the ID of the selected handler, null if no handler matched.
+		 */
+		public String getHandlerID() {
+			return handlerID;
+		}
+
+		/**
+		 * @return the matching degree of the selected handler, including the
+		 *         bonus for being the last used handler.
+		 */
+		public int getMatchingDegree() {
+			return matchingDegree;
+		}
+	}
+
+	/**
+	 * A registered profile with its restrictions split by property.
+	 */
+	private static final class Entry {
+		private final String id;
+		private final long order;
+		private final MergedRestriction[] indexed = new MergedRestriction[INDEXED_PROPS.length];
+		private final MergedRestriction[] others = new MergedRestriction[OTHER_PROPS.length];
+
+		private Entry(String id, UIHandlerProfile profile, long order) {
+			this.id = id;
+			this.order = order;
+			Object o = profile.getProperty(TypeExpression.PROP_RDFS_SUB_CLASS_OF);
+			if (!(o instanceof List)) {
+				return;
+			}
+			for (Object r : (List<?>) o) {
+				if (!(r instanceof MergedRestriction)) {
+					continue;
+				}
+				MergedRestriction mr = (MergedRestriction) r;
+				String prop = mr.getOnProperty();
+				if (UIRequest.PROP_ADDRESSED_USER.equals(prop)) {
+					indexed[USER] = mr;
+				} else if (UIRequest.PROP_PRESENTATION_MODALITY.equals(prop)) {
+					indexed[MODALITY] = mr;
+					indexed[ALT_MODALITY] = mr.copyOnNewProperty(UIRequest.PROP_PRESENTATION_MODALITY_ALT);
+				} else if (UIRequest.PROP_PRESENTATION_LOCATION.equals(prop)) {
+					indexed[LOCATION] = mr;
+				} else {
+					for (int i = 0; i < OTHER_PROPS.length; i++) {
+						if (OTHER_PROPS[i].equals(prop)) {
+							others[i] = mr;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the highest degree this profile can get from the non indexed
+		 *         restrictions for the given request.
+		 */
+		private int otherBound(UIRequest request) {
+			int bound = 0;
+			for (int i = 0; i < others.length; i++) {
+				if (others[i] != null && request.getProperty(OTHER_PROPS[i]) != null) {
+					bound += OTHER_WEIGHTS[i];
+				}
+			}
+			return bound;
+		}
+
+		/**
+		 * @return the degree this profile gets from the non indexed
+		 *         restrictions for the given request.
+		 */
+		private int otherDegree(UIRequest request) {
+			int degree = 0;
+			for (int i = 0; i < others.length; i++) {
+				if (others[i] != null && request.getProperty(OTHER_PROPS[i]) != null
+						&& others[i].hasMember(request)) {
+					degree += OTHER_WEIGHTS[i];
+				}
+			}
+			return degree;
+		}
+	}
+
+	/**
+	 * The set of profiles accepting a given value of an indexed property,
+	 * together with a probe holding the value, to test profiles registered
+	 * later.
+	 */
+	private static final class Members {
+		private final Resource probe;
+		private final Set<Entry> entries = new HashSet<Entry>();
+
+		private Members(Resource probe) {
+			this.probe = probe;
+		}
+	}
+
+	/**
+	 * The index of one property.
+	 */
+	private static final class PropertyIndex {
+		private final int dimension;
+		private final Set<Entry> restricted = new HashSet<Entry>();
+		private final Map<String, Members> byValue = new LinkedHashMap<String, Members>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Members> eldest) {
+				return size() > MAX_CACHED_VALUES;
+			}
+		};
+
+		private PropertyIndex(int dimension) {
+			this.dimension = dimension;
+		}
+
+		private void add(Entry e) {
+			MergedRestriction r = e.indexed[dimension];
+			if (r == null) {
+				return;
+			}
+			restricted.add(e);
+			for (Members m : byValue.values()) {
+				if (r.hasMember(m.probe)) {
+					m.entries.add(e);
+				}
+			}
+		}
+
+		private void remove(Entry e) {
+			if (restricted.remove(e)) {
+				for (Members m : byValue.values()) {
+					m.entries.remove(e);
+				}
+			}
+		}
+
+		/**
+		 * Get the profiles whose restriction on this property accepts the
+		 * given value.
+		 */
+		private Set<Entry> members(Object value) {
+			String key = keyOf(value);
+			Members m = key == null ? null : byValue.get(key);
+			if (m != null) {
+				return m.entries;
+			}
+			Resource probe = new Resource();
+			if (value != null) {
+				probe.setProperty(INDEXED_PROPS[dimension], value);
+			}
+			m = new Members(probe);
+			for (Entry e : restricted) {
+				if (e.indexed[dimension].hasMember(probe)) {
+					m.entries.add(e);
+				}
+			}
+			if (key != null) {
+				byValue.put(key, m);
+			}
+			return m.entries;
+		}
+
+		/**
+		 * Only named resources are indexed, as their URI identifies them;
+		 * other values are evaluated on each request.
+		 */
+		private static String keyOf(Object value) {
+			if (value == null) {
+				return NULL_KEY;
+			}
+			if (value instanceof Resource && !((Resource) value).isAnon()) {
+				return ((Resource) value).getURI();
+			}
+			return null;
+		}
+	}
+
+	private static final Comparator<Map.Entry<Entry, Integer>> BY_DEGREE = new Comparator<Map.Entry<Entry, Integer>>() {
+		public int compare(Map.Entry<Entry, Integer> o1, Map.Entry<Entry, Integer> o2) {
+			int c = o2.getValue().compareTo(o1.getValue());
+			if (c != 0) {
+				return c;
+			}
+			return o1.getKey().order < o2.getKey().order ? -1 : (o1.getKey().order == o2.getKey().order ? 0 : 1);
+		}
+	};
+
+	private final Map<UIHandlerProfile, Entry> entries = new HashMap<UIHandlerProfile, Entry>();
+
+	private final PropertyIndex[] indexes = new PropertyIndex[INDEXED_PROPS.length];
+
+	private final int lastUsedBonus;
+
+	private long order = 0;
+
+	/**
+	 * @param lastUsedBonus
+	 *            the degree added to the last handler used by the addressed
+	 *            user.
+	 */
+	public HandlerProfileIndex(int lastUsedBonus) {
+		this.lastUsedBonus = lastUsedBonus;
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = new PropertyIndex(i);
+		}
+	}
+
+	/**
+	 * Add a profile to the index, replacing any previous registration of it.
+	 *
+	 * @param id
+	 *            the ID of the handler realizing the profile.
+	 * @param profile
+	 *            the profile.
+	 */
+	public synchronized void add(String id, UIHandlerProfile profile) {
+		remove(profile);
+		Entry e = new Entry(id, profile, order++);
+		entries.put(profile, e);
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i].add(e);
+		}
+	}
+
+	/**
+	 * Remove a profile from the index.
+	 *
+	 * @param profile
+	 *            the profile.
+	 */
+	public synchronized void remove(UIHandlerProfile profile) {
+		Entry e = entries.remove(profile);
+		if (e != null) {
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i].remove(e);
+			}
+		}
+	}
+
+	/**
+	 * Remove all profiles.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = new PropertyIndex(i);
+		}
+	}
+
+	/**
+	 * @return the number of profiles in the index.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Select the handler whose profile best matches the request.
+	 *
+	 * @param request
+	 *            the request to be handled.
+	 * @param lastUsedID
+	 *            the ID of the last handler used by the addressed user, may
+	 *            be null.
+	 * @return the selection, with null handler ID if no profile matched.
+	 */
+	public synchronized Selection select(UIRequest request, String lastUsedID) {
+		Map<Entry, Integer> degrees = new HashMap<Entry, Integer>();
+		if (request.getProperty(UIRequest.PROP_ADDRESSED_USER) != null) {
+			addDegree(degrees, members(USER, request), UIHandlerProfile.MATCH_ADDRESED_USER, null);
+		}
+		Set<Entry> mainModality = members(MODALITY, request);
+		if (request.getProperty(UIRequest.PROP_PRESENTATION_MODALITY) != null) {
+			addDegree(degrees, mainModality, UIHandlerProfile.MATCH_MAIN_MODALITY, null);
+		}
+		if (request.getProperty(UIRequest.PROP_PRESENTATION_MODALITY_ALT) != null) {
+			// the alternative modality is only checked if the main one failed
+			addDegree(degrees, members(ALT_MODALITY, request), UIHandlerProfile.MATCH_ALT_MODALITY, mainModality);
+		}
+		if (request.getProperty(UIRequest.PROP_PRESENTATION_LOCATION) != null) {
+			addDegree(degrees, members(LOCATION, request), UIHandlerProfile.MATCH_USER_LOCATION, null);
+		}
+
+		Entry selected = null;
+		int max = UIHandlerProfile.MATCH_LEVEL_FAILED;
+
+		// candidates, by descending partial degree
+		List<Map.Entry<Entry, Integer>> candidates = new ArrayList<Map.Entry<Entry, Integer>>(degrees.entrySet());
+		Collections.sort(candidates, BY_DEGREE);
+		for (Map.Entry<Entry, Integer> c : candidates) {
+			Entry e = c.getKey();
+			int bonus = e.id.equals(lastUsedID) ? lastUsedBonus : 0;
+			int partial = c.getValue().intValue();
+			if (partial + MAX_OTHER_DEGREE + lastUsedBonus <= max) {
+				// no remaining candidate can beat the selected one
+				break;
+			}
+			if (partial + e.otherBound(request) + bonus <= max) {
+				continue;
+			}
+			int degree = partial + e.otherDegree(request) + bonus;
+			if (degree > max) {
+				max = degree;
+				selected = e;
+			}
+		}
+
+		// profiles without match on the indexed properties
+		if (max < MAX_OTHER_DEGREE + lastUsedBonus && degrees.size() < entries.size()) {
+			for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+				Entry e = it.next();
+				if (degrees.containsKey(e)) {
+					continue;
+				}
+				int bonus = e.id.equals(lastUsedID) ? lastUsedBonus : 0;
+				if (e.otherBound(request) + bonus <= max) {
+					continue;
+				}
+				int degree = e.otherDegree(request);
+				if (degree > UIHandlerProfile.MATCH_LEVEL_FAILED && degree + bonus > max) {
+					max = degree + bonus;
+					selected = e;
+				}
+			}
+		}
+		return new Selection(selected == null ? null : selected.id, max);
+	}
+
+	private Set<Entry> members(int dimension, UIRequest request) {
+		return indexes[dimension].members(request.getProperty(INDEXED_PROPS[dimension]));
+	}
+
+	private static void addDegree(Map<Entry, Integer> degrees, Set<Entry> members, int weight, Set<Entry> except) {
+		for (Entry e : members) {
+			if (except != null && except.contains(e)) {
+				continue;
+			}
+			Integer d = degrees.get(e);
+			degrees.put(e, Integer.valueOf(d == null ? weight : d.intValue() + weight));
+		}
+	}
+}
@@ -63,21 +63,31 @@ public class UIBusImpl extends AbstractBus implements IUIBus {
 	private static UIBusOntology uiBusOntology = null;
 	private static ModuleContext mc;
 
+	private final Object assessLock = new Object();
+
 	public static Object[] getUIBusFetchParams() {
 		return busFetchParams.clone();
 	}
 
-	public synchronized void assessContentSerialization(Resource content) {
+	/**
+	 * In debug mode, log the serialization of the given content and check that
+	 * it can be deserialized again. The lock is only taken in debug mode (to
+	 * keep the dumps of concurrent calls apart), so publishing is not
+	 * serialized in normal operation.
+	 */
+	public void assessContentSerialization(Resource content) {
 		if (org.universAAL.middleware.util.Constants.debugMode()) {
-			LogUtils.logDebug(context, UIBusImpl.class, "assessContentSerialization",
-					new Object[] { "Assessing message content serialization:" }, null);
-
-			String str = BusMessage.trySerializationAsContent(content);
-			LogUtils.logDebug(context, UIBusImpl.class, "assessContentSerialization",
-					new Object[] { "\n      1. serialization dump\n", str,
-							"\n      2. deserialize & compare with the original resource\n" },
-					null);
-			new ResourceComparator().printDiffs(content, (Resource) BusMessage.deserializeAsContent(str));
+			synchronized (assessLock) {
+				LogUtils.logDebug(context, UIBusImpl.class, "assessContentSerialization",
+						new Object[] { "Assessing message content serialization:" }, null);
+
+				String str = BusMessage.trySerializationAsContent(content);
+				LogUtils.logDebug(context, UIBusImpl.class, "assessContentSerialization",
+						new Object[] { "\n      1. serialization dump\n", str,
+								"\n      2. deserialize & compare with the original resource\n" },
+						null);
+				new ResourceComparator().printDiffs(content, (Resource) BusMessage.deserializeAsContent(str));
+			}
 		}
 	}
 
@@ -29,6 +29,7 @@ import org.universAAL.middleware.bus.member.BusMember;
 import org.universAAL.middleware.bus.model.AbstractBus;
 import org.universAAL.middleware.bus.model.matchable.Matchable;
 import org.universAAL.middleware.bus.msg.BusMessage;
+import org.universAAL.middleware.container.LogListener;
 import org.universAAL.middleware.container.utils.LogUtils;
 import org.universAAL.middleware.interfaces.PeerCard;
 import org.universAAL.middleware.modules.CommunicationModule;
@@ -266,6 +267,12 @@ public abstract class UIStrategyHandler extends UIStrategyCoordinatorMng {
 	 */
 	protected RunningDialogsManager runningDialogs;
 
+	/**
+	 * The {@link UIHandlerProfile}s registered in the coordinator, indexed for
+	 * handler selection.
+	 */
+	private final HandlerProfileIndex handlerIndex = new HandlerProfileIndex(LAST_USED_HANDLER_MATCH_LEVEL_ADDITION);
+
 	private Ontology ont;
 
 	/**
@@ -414,7 +421,7 @@ public abstract class UIStrategyHandler extends UIStrategyCoordinatorMng {
 				}
 				return data;
 			} catch (InterruptedException e) {
-				LogUtils.logError(busModule, getClass(), "CutDialog", "Cut Call to move dialog was aborted.");
+				LogUtils.logError(busModule, getClass(), "CutDialog", "Cut Call to move dialog was aborted or timed out.");
 			}
 		}
 		return null;
@@ -452,58 +459,45 @@ public abstract class UIStrategyHandler extends UIStrategyCoordinatorMng {
 		}
 	}
 
+	/** {@ inheritDoc} */
+	protected void registrationAdded(String id, Matchable registration) {
+		if (registration instanceof UIHandlerProfile) {
+			handlerIndex.add(id, (UIHandlerProfile) registration);
+		}
+	}
+
+	/** {@ inheritDoc} */
+	protected void registrationRemoved(String id, Matchable registration) {
+		if (registration instanceof UIHandlerProfile) {
+			handlerIndex.remove((UIHandlerProfile) registration);
+		}
+	}
+
 	/**
-	 * @return
+	 * Select the {@link UIHandler} best matching the request, the last handler
+	 * used by the addressed user gets
+	 * {@link #LAST_USED_HANDLER_MATCH_LEVEL_ADDITION} extra weight.
+	 *
+	 * @return the ID of the selected handler, null if none matches.
 	 */
 	private String selectHandler(UIRequest uiRequest) {
-		String selectedHandler = null;
-		int maxMatchDegree = UIHandlerProfile.MATCH_LEVEL_FAILED;
-		// iterate through all UIHandlers
-		for (Iterator<Matchable> it = registryIterator(); it.hasNext();) {
-			UIHandlerProfile prof = (UIHandlerProfile) it.next();
-			String profId = getRegistryID(prof);
-			int tempMatchingDegree = prof.getMatchingDegree(uiRequest);
+		Resource user = uiRequest.getAddressedUser();
+		String lastUsed = (user == null || lastUsedHandler == null) ? null : lastUsedHandler.get(user.getURI());
+		HandlerProfileIndex.Selection selection = handlerIndex.select(uiRequest, lastUsed);
+		String selectedHandler = selection.getHandlerID();
+		int maxMatchDegree = selection.getMatchingDegree();
+		if (LogUtils.isLogEnabled(busModule, LogListener.LOG_LEVEL_DEBUG)) {
 			LogUtils.logDebug(busModule, getClass(), "selectHandler",
-					new Object[] {
-							"\n START+++++++++++++++++++++++++++++++++++++++++++++++\n Handler with subscription id: "
-									+ profId + "\nhas matching degree: " + tempMatchingDegree + " \n in binary is: \n  "
-									+ String.format("%8s", Integer.toBinaryString(tempMatchingDegree)).replace(' ', '0')
-											.replaceAll("(\\d)", "$1\t")
-									+ " \n [Usr,\tMod,\tAltMod,\tLoc,\tImpair,\tPriv,\tLang,\tForm]"
-									+ "\n 2+++++++++++++++++++++++++++++++++++++++++++++++"
-									// + "\n UIHandler profile:\n "
-									// + prof.toStringRecursive()
-									// +
-									// "\n
-									// 3+++++++++++++++++++++++++++++++++++++++++++++++"
-									+ "\n uiRequest that is getting matched.\n Addressed user: "
-									+ uiRequest.getAddressedUser().getURI() + "\n Modality: "
-									+ uiRequest.getProperty(UIRequest.PROP_PRESENTATION_MODALITY)
-									+ "\n Presentation location: " + uiRequest.getPresentationLocation()
-									+ "\n STOP+++++++++++++++++++++++++++++++++++++++++++++++\n " },
+					new Object[] { "Handler with id: ", selectedHandler, ", and matching degree: ",
+							Integer.valueOf(maxMatchDegree), " (binary: ", Integer.toBinaryString(maxMatchDegree),
+							" [Usr,Mod,AltMod,Loc,Impair,Priv,Lang,Form]) was selected as best out of ",
+							Integer.valueOf(handlerIndex.size()), " profiles for addressed user: ",
+							user == null ? null : user.getURI(), ", modality: ",
+							uiRequest.getProperty(UIRequest.PROP_PRESENTATION_MODALITY), ", presentation location: ",
+							uiRequest.getPresentationLocation(), ". Note: last used handler (", lastUsed,
+							") additional weight= ", Integer.valueOf(LAST_USED_HANDLER_MATCH_LEVEL_ADDITION) },
 					null);
-
-			if (tempMatchingDegree > UIHandlerProfile.MATCH_LEVEL_FAILED) {
-
-				if (profId.equals(lastUsedHandler.get(uiRequest.getAddressedUser().getURI()))) {
-					// if currently observed handler also the one last
-					// used by the user then increase his matching
-					// degree a bit
-					tempMatchingDegree += LAST_USED_HANDLER_MATCH_LEVEL_ADDITION;
-					LogUtils.logDebug(busModule, getClass(), "selectHandler",
-							"last profile has been bonified for being last handler used by user.");
-				}
-				if (tempMatchingDegree > maxMatchDegree) {
-					maxMatchDegree = tempMatchingDegree;
-					selectedHandler = profId;
-				}
-			}
 		}
-		LogUtils.logDebug(busModule, getClass(), "selectHandler",
-				new Object[] { "Handler with id: " + selectedHandler + ", and matching degree: " + maxMatchDegree
-						+ " was selected as best. Note: last used handler additional weight= "
-						+ LAST_USED_HANDLER_MATCH_LEVEL_ADDITION },
-				null);
 		return selectedHandler;
 	}
 
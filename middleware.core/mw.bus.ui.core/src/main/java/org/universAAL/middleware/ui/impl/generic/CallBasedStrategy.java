@@ -17,20 +17,31 @@
 
 package org.universAAL.middleware.ui.impl.generic;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.universAAL.middleware.bus.model.AbstractBus;
 import org.universAAL.middleware.bus.model.BusStrategy;
 import org.universAAL.middleware.bus.msg.BusMessage;
 import org.universAAL.middleware.bus.msg.MessageType;
+import org.universAAL.middleware.container.utils.LogUtils;
 import org.universAAL.middleware.interfaces.PeerCard;
 import org.universAAL.middleware.modules.CommunicationModule;
 import org.universAAL.middleware.ui.impl.UIBusImpl;
 
 /**
  * A set of methods to place calls and responses, both for synchronous and
- * asynchronous calls.
+ * asynchronous calls. <br>
+ * Synchronous calls are tracked as {@link Future}s until their response
+ * arrives, they time out, they are {@link #abortCall(String) aborted} or the
+ * peer they were sent to is {@link #abortCalls(PeerCard) lost}.
  *
  * @author amedrano
  *
@@ -38,29 +49,99 @@ import org.universAAL.middleware.ui.impl.UIBusImpl;
 public class CallBasedStrategy extends EventBasedStrategy {
 
 	/**
-	 * A class to store the status of any given call.
-	 *
-	 * @author amedrano
-	 *
+	 * Property for the default timeout, in milliseconds, of synchronous calls.
+	 * A value of 0 or less waits for the response without timeout. Default is
+	 * 30000.
 	 */
-	private static class CallStatus {
-		Object output = null;
-		boolean returned = false;
-		boolean purged = false;
-
-		void setResutlt(Object o) {
-			synchronized (this) {
-				returned = true;
-				output = o;
-				notifyAll();
+	public static final String PROP_CALL_TIMEOUT = "org.universaal.ui.call.timeout";
+
+	private static final long DEFAULT_CALL_TIMEOUT = 30000;
+
+	/**
+	 * The status of any given call.
+	 */
+	private class PendingCall implements Future<Object> {
+		private final String id;
+		private final PeerCard peer;
+		private final long started = System.nanoTime();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Object output = null;
+		private volatile boolean purged = false;
+
+		PendingCall(String id, PeerCard peer) {
+			this.id = id;
+			this.peer = peer;
+		}
+
+		void setResult(Object o) {
+			output = o;
+			callLatency.record(System.nanoTime() - started);
+			done.countDown();
+		}
+
+		void purge() {
+			purged = true;
+			abortedCalls.incrementAndGet();
+			done.countDown();
+		}
+
+		/** {@ inheritDoc} */
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (syncCalls.remove(id, this)) {
+				purge();
+				return true;
+			}
+			return false;
+		}
+
+		/** {@ inheritDoc} */
+		public boolean isCancelled() {
+			return purged;
+		}
+
+		/** {@ inheritDoc} */
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		/** {@ inheritDoc} */
+		public Object get() throws InterruptedException, ExecutionException {
+			done.await();
+			return result();
+		}
+
+		/** {@ inheritDoc} */
+		public Object get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			if (!done.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return result();
+		}
+
+		private Object result() throws ExecutionException {
+			if (purged) {
+				throw new ExecutionException("Call " + id + " was aborted.", null);
 			}
+			return output;
 		}
 	}
 
 	/**
 	 * The status of all pending syncronous calls.
 	 */
-	private Map<String, CallStatus> syncCalls;
+	private final ConcurrentMap<String, PendingCall> syncCalls = new ConcurrentHashMap<String, PendingCall>();
+
+	/**
+	 * The latencies of the answered synchronous calls.
+	 */
+	private final LatencyHistogram callLatency = new LatencyHistogram();
+
+	private final AtomicLong timedOutCalls = new AtomicLong();
+
+	private final AtomicLong abortedCalls = new AtomicLong();
+
+	private long callTimeout = DEFAULT_CALL_TIMEOUT;
 
 	/**
 	 * @param commModule
@@ -68,9 +149,6 @@ public class CallBasedStrategy extends EventBasedStrategy {
 	 */
 	public CallBasedStrategy(CommunicationModule commModule, String name) {
 		super(commModule, name);
-		syncCalls = new HashMap<String, CallBasedStrategy.CallStatus>();
-		// TODO monitor peers and abort all synchronous call to a peer when this
-		// disconnects form the space.
 	}
 
 	/**
@@ -80,6 +158,20 @@ public class CallBasedStrategy extends EventBasedStrategy {
 		super(commModule);
 	}
 
+	/** {@ inheritDoc} */
+	public synchronized void start() {
+		super.start();
+		Object o = busModule == null ? null : busModule.getProperty(PROP_CALL_TIMEOUT);
+		if (o != null) {
+			try {
+				callTimeout = Long.parseLong(o.toString().trim());
+			} catch (NumberFormatException e) {
+				LogUtils.logWarn(busModule, CallBasedStrategy.class, "start", new Object[] { "Invalid value for ",
+						PROP_CALL_TIMEOUT, ": ", o, "; using default value ", DEFAULT_CALL_TIMEOUT }, null);
+			}
+		}
+	}
+
 	/** {@ inheritDoc} */
 	protected void handle(BusMessage m, String senderID) {
 		super.handle(m, senderID);
@@ -87,21 +179,43 @@ public class CallBasedStrategy extends EventBasedStrategy {
 		// Collect response from synchronous call
 		if (m.getType().equals(MessageType.p2p_reply)) {
 			String id = m.getInReplyTo();
-			synchronized (syncCalls) {
-				CallStatus st = syncCalls.remove(id);
-				if (st != null) {
-					st.setResutlt(m.getContent());
-				}
+			PendingCall call = id == null ? null : syncCalls.remove(id);
+			if (call != null) {
+				call.setResult(m.getContent());
 			}
 		}
 	}
 
+	/**
+	 * Send a request and track its response. The returned {@link Future}
+	 * completes with the content of the response, and fails with an
+	 * {@link ExecutionException} if the call is aborted. Callers waiting with
+	 * a timeout should {@link Future#cancel(boolean) cancel} the call when the
+	 * timeout expires.
+	 *
+	 * @param peer
+	 *            The recipient of the request
+	 * @param callMessage
+	 *            The Message to send.
+	 * @return the pending response.
+	 */
+	protected Future<Object> placeRequest(PeerCard peer, CallMessage<? extends CallBasedStrategy> callMessage) {
+		((UIBusImpl) bus).assessContentSerialization(callMessage);
+		BusMessage m = new BusMessage(MessageType.p2p_request, callMessage, bus);
+		m.setReceiver(peer);
+		PendingCall call = new PendingCall(m.getID(), peer);
+		syncCalls.put(m.getID(), call);
+		send(m);
+		return call;
+	}
+
 	/**
 	 * Place a Synchronous request, The {@link CallMessage} is sent and the
 	 * message is anotated as waiting for response, the calling thread will be
 	 * set in a waiting state until either a response to the message is
-	 * received, or the call is {@link CallBasedStrategy#abortCall(String)
-	 * aborted}.
+	 * received, the call is {@link CallBasedStrategy#abortCall(String)
+	 * aborted}, or the default timeout (see {@link #PROP_CALL_TIMEOUT})
+	 * expires.
 	 *
 	 * @param memberID
 	 *            The recipient of the request
@@ -109,31 +223,11 @@ public class CallBasedStrategy extends EventBasedStrategy {
 	 *            The Message to send.
 	 * @return the response to the message
 	 * @throws InterruptedException
-	 *             if the call was aborted.
+	 *             if the call was aborted or timed out.
 	 */
 	protected Object placeSynchronousRequest(String memberID, CallMessage<? extends CallBasedStrategy> callMessage)
 			throws InterruptedException {
-		CallStatus status = new CallStatus();
-		((UIBusImpl) bus).assessContentSerialization(callMessage);
-		BusMessage m = new BusMessage(MessageType.p2p_request, callMessage, bus);
-		m.setReceiver(AbstractBus.getPeerFromBusResourceURI(memberID));
-		synchronized (syncCalls) {
-			syncCalls.put(m.getID(), status);
-		}
-		send(m);
-		// synchronize
-		synchronized (status) {
-			while (!status.returned) {
-				try {
-					status.wait();
-				} catch (InterruptedException e) {
-				}
-			}
-		}
-		if (status.purged) {
-			throw new InterruptedException();
-		}
-		return status.output;
+		return placeSynchronousRequest(AbstractBus.getPeerFromBusResourceURI(memberID), callMessage, callTimeout);
 	}
 
 	/**
@@ -158,40 +252,58 @@ public class CallBasedStrategy extends EventBasedStrategy {
 	 * Place a Synchronous request, The {@link CallMessage} is sent and the
 	 * message is anotated as waiting for response, the calling thread will be
 	 * set in a waiting state until either a response to the message is
-	 * received, or the call is {@link CallBasedStrategy#abortCall(String)
-	 * aborted}.
+	 * received, the call is {@link CallBasedStrategy#abortCall(String)
+	 * aborted}, or the default timeout (see {@link #PROP_CALL_TIMEOUT})
+	 * expires.
 	 *
-	 * @param memberID
+	 * @param peer
 	 *            The recipient of the request
 	 * @param callMessage
 	 *            The Message to send.
 	 * @return the response to the message
 	 * @throws InterruptedException
-	 *             if the call was aborted.
+	 *             if the call was aborted or timed out.
 	 */
 	protected Object placeSynchronousRequest(PeerCard peer, CallMessage<? extends CallBasedStrategy> callMessage)
 			throws InterruptedException {
-		CallStatus status = new CallStatus();
-		((UIBusImpl) bus).assessContentSerialization(callMessage);
-		BusMessage m = new BusMessage(MessageType.p2p_request, callMessage, bus);
-		m.setReceiver(peer);
-		synchronized (syncCalls) {
-			syncCalls.put(m.getID(), status);
-		}
-		send(m);
-		// synchronize
-		synchronized (status) {
-			while (!status.returned) {
-				try {
-					status.wait();
-				} catch (InterruptedException e) {
-				}
+		return placeSynchronousRequest(peer, callMessage, callTimeout);
+	}
+
+	/**
+	 * Place a Synchronous request with a specific timeout.
+	 *
+	 * @param peer
+	 *            The recipient of the request
+	 * @param callMessage
+	 *            The Message to send.
+	 * @param timeout
+	 *            the maximum time to wait for the response in milliseconds,
+	 *            0 or less to wait without timeout.
+	 * @return the response to the message
+	 * @throws InterruptedException
+	 *             if the call was aborted or timed out, or the calling thread
+	 *             was interrupted.
+	 */
+	protected Object placeSynchronousRequest(PeerCard peer, CallMessage<? extends CallBasedStrategy> callMessage,
+			long timeout) throws InterruptedException {
+		Future<Object> call = placeRequest(peer, callMessage);
+		try {
+			if (timeout > 0) {
+				return call.get(timeout, TimeUnit.MILLISECONDS);
 			}
+			return call.get();
+		} catch (ExecutionException e) {
+			throw new InterruptedException(e.getMessage());
+		} catch (TimeoutException e) {
+			timedOutCalls.incrementAndGet();
+			call.cancel(false);
+			LogUtils.logWarn(busModule, CallBasedStrategy.class, "placeSynchronousRequest",
+					new Object[] { "No response from ", peer, " after ", timeout, " ms, call aborted." }, null);
+			throw new InterruptedException("Call timed out.");
+		} catch (InterruptedException e) {
+			call.cancel(false);
+			throw e;
 		}
-		if (status.purged) {
-			throw new InterruptedException();
-		}
-		return status.output;
 	}
 
 	/**
@@ -214,18 +326,34 @@ public class CallBasedStrategy extends EventBasedStrategy {
 
 	/**
 	 * Abort the call with the given ID. it unblocks the call and the
-	 * {@link CallSynchronizer#performCall(Object, Object)} will throw a
-	 * {@link InterruptedException}.
+	 * {@link CallBasedStrategy#placeSynchronousRequest(PeerCard, CallMessage)}
+	 * will throw a {@link InterruptedException}.
 	 *
 	 * @param msgId
 	 *            the messageId of the call that should be aborted.
 	 */
 	public void abortCall(String msgId) {
-		synchronized (syncCalls) {
-			CallStatus st = syncCalls.remove(msgId);
-			if (st != null) {
-				st.purged = true;
-				st.setResutlt(null);
+		PendingCall call = syncCalls.remove(msgId);
+		if (call != null) {
+			call.purge();
+		}
+	}
+
+	/**
+	 * Abort all pending calls to the given peer, for example because it has
+	 * left the space and will never answer.
+	 *
+	 * @param peer
+	 *            the peer.
+	 */
+	public void abortCalls(PeerCard peer) {
+		if (peer == null) {
+			return;
+		}
+		for (Iterator<PendingCall> it = syncCalls.values().iterator(); it.hasNext();) {
+			PendingCall call = it.next();
+			if (peer.equals(call.peer) && syncCalls.remove(call.id, call)) {
+				call.purge();
 			}
 		}
 	}
@@ -233,12 +361,42 @@ public class CallBasedStrategy extends EventBasedStrategy {
 	/**
 	 * Abort all pending calls,
 	 */
-	public synchronized void abortAll() {
-		for (CallStatus st : syncCalls.values()) {
-			st.purged = true;
-			st.setResutlt(null);
+	public void abortAll() {
+		for (Iterator<PendingCall> it = syncCalls.values().iterator(); it.hasNext();) {
+			PendingCall call = it.next();
+			if (syncCalls.remove(call.id, call)) {
+				call.purge();
+			}
 		}
-		syncCalls.clear();
+	}
+
+	/**
+	 * @return the number of synchronous calls waiting for their response.
+	 */
+	public int getPendingCallCount() {
+		return syncCalls.size();
+	}
+
+	/**
+	 * @return the latencies of the answered synchronous calls.
+	 */
+	public LatencyHistogram getCallLatency() {
+		return callLatency;
+	}
+
+	/**
+	 * @return the number of synchronous calls that timed out.
+	 */
+	public long getTimedOutCallCount() {
+		return timedOutCalls.get();
+	}
+
+	/**
+	 * @return the number of synchronous calls that were aborted, including
+	 *         the ones that timed out.
+	 */
+	public long getAbortedCallCount() {
+		return abortedCalls.get();
 	}
 
 	/**
@@ -204,7 +204,11 @@ public class CoordinatedRegistrationManagement extends CoordinatedStrategy {
 			return;
 
 		if (iAmCoordinator()) {
-			getRegistrationMap().put(registration, id);
+			String old = getRegistrationMap().put(registration, id);
+			if (old != null) {
+				registrationRemoved(old, registration);
+			}
+			registrationAdded(id, registration);
 		} else {
 			// Send Message
 			sendEventToRemoteBusMember(getCoordinator(), new RegistrationMessage(id, registration));
@@ -222,7 +226,9 @@ public class CoordinatedRegistrationManagement extends CoordinatedStrategy {
 				}
 			}
 			for (Matchable resource : remove) {
-				getRegistrationMap().remove(resource);
+				if (getRegistrationMap().remove(resource) != null) {
+					registrationRemoved(id, resource);
+				}
 			}
 		} else {
 			// Send Message
@@ -242,7 +248,9 @@ public class CoordinatedRegistrationManagement extends CoordinatedStrategy {
 				}
 			}
 			for (Matchable resource : remove) {
-				getRegistrationMap().remove(resource);
+				if (getRegistrationMap().remove(resource) != null) {
+					registrationRemoved(id, resource);
+				}
 			}
 		} else {
 			// Send Message
@@ -250,6 +258,28 @@ public class CoordinatedRegistrationManagement extends CoordinatedStrategy {
 		}
 	}
 
+	/**
+	 * Called in the coordinator when a registration has been added.
+	 *
+	 * @param id
+	 *            the id of the registration.
+	 * @param registration
+	 *            the registration added.
+	 */
+	protected void registrationAdded(String id, Matchable registration) {
+	}
+
+	/**
+	 * Called in the coordinator when a registration has been removed.
+	 *
+	 * @param id
+	 *            the id of the registration.
+	 * @param registration
+	 *            the registration removed.
+	 */
+	protected void registrationRemoved(String id, Matchable registration) {
+	}
+
 	protected final Iterator<Matchable> registryIterator() {
 		return new HashSet<Matchable>(getRegistrationMap().keySet()).iterator();
 	}
@@ -270,6 +300,9 @@ public class CoordinatedRegistrationManagement extends CoordinatedStrategy {
 	public void close() {
 		super.close();
 		if (registrationMap != null) {
+			for (Entry<Matchable, String> ent : new HashSet<Entry<Matchable, String>>(registrationMap.entrySet())) {
+				registrationRemoved(ent.getValue(), ent.getKey());
+			}
 			registrationMap.clear();
 		}
 		OntologyManagement.getInstance().unregister(busModule, ontology);
@@ -367,6 +367,8 @@ public class CoordinatedStrategy extends CallBasedStrategy implements SpaceListe
 
 	/** {@ inheritDoc} */
 	public void peerLost(PeerCard peer) {
+		// the lost peer will never answer pending calls
+		abortCalls(peer);
 		/*
 		 * If the lost peer is the coordinator, well have to wait for a new one
 		 */
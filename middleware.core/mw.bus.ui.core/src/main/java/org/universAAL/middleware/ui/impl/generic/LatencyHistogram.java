@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2013 Universidad Politécnica de Madrid
+ * Copyright 2013 Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.universAAL.middleware.ui.impl.generic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, with buckets of exponentially growing
+ * width: bucket <tt>i</tt> counts the latencies below <tt>2^i</tt>
+ * milliseconds (and not counted in a previous bucket), the last bucket
+ * counts all latencies above the biggest bound.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of buckets with an upper bound, the biggest bound is
+	 * <tt>2^(BOUNDED_BUCKETS-1)</tt> ms, i.e. about 65 seconds.
+	 */
+	private static final int BOUNDED_BUCKETS = 17;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BOUNDED_BUCKETS + 1);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(bucketOf(nanos / 1000000L));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	private static int bucketOf(long millis) {
+		int i = 0;
+		while (i < BOUNDED_BUCKETS && millis >= (1L << i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the number of recorded latencies.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the mean of the recorded latencies in milliseconds, 0 if none
+	 *         was recorded.
+	 */
+	public double getMeanMillis() {
+		long c = count.get();
+		return c == 0 ? 0 : totalNanos.get() / 1000000.0 / c;
+	}
+
+	/**
+	 * @return the biggest recorded latency in milliseconds.
+	 */
+	public double getMaxMillis() {
+		return maxNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * @return the upper bounds, in milliseconds, of all buckets but the last
+	 *         one, which has no bound.
+	 */
+	public long[] getBucketBounds() {
+		long[] bounds = new long[BOUNDED_BUCKETS];
+		for (int i = 0; i < BOUNDED_BUCKETS; i++) {
+			bounds[i] = 1L << i;
+		}
+		return bounds;
+	}
+
+	/**
+	 * @return the number of latencies counted in each bucket.
+	 */
+	public long[] getBucketCounts() {
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Estimate a percentile of the recorded latencies.
+	 *
+	 * @param percentile
+	 *            the percentile, between 0 and 100.
+	 * @return the upper bound, in milliseconds, of the bucket containing the
+	 *         percentile, {@link Long#MAX_VALUE} if it is in the last bucket
+	 *         and 0 if no latency was recorded.
+	 */
+	public long getPercentileMillis(double percentile) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BOUNDED_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return 1L << i;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Forget all recorded latencies.
+	 */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	/** {@ inheritDoc} */
+	public String toString() {
+		return "count: " + getCount() + ", mean: " + getMeanMillis() + " ms, p50: <" + getPercentileMillis(50)
+				+ " ms, p99: <" + getPercentileMillis(99) + " ms, max: " + getMaxMillis() + " ms";
+	}
+}
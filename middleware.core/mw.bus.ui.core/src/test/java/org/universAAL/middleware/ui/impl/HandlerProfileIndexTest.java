@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2013 Universidad Politécnica de Madrid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.universAAL.middleware.ui.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.container.JUnit.JUnitModuleContext;
+import org.universAAL.middleware.owl.DataRepOntology;
+import org.universAAL.middleware.owl.MergedRestriction;
+import org.universAAL.middleware.owl.OntologyManagement;
+import org.universAAL.middleware.owl.supply.LevelRating;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.ui.UIHandlerProfile;
+import org.universAAL.middleware.ui.UIRequest;
+import org.universAAL.middleware.ui.owl.Modality;
+import org.universAAL.middleware.ui.owl.PrivacyLevel;
+import org.universAAL.middleware.ui.owl.UIBusOntology;
+import org.universAAL.middleware.ui.rdf.Form;
+
+public class HandlerProfileIndexTest extends TestCase {
+
+	private static final int BONUS = UIStrategyHandler.LAST_USED_HANDLER_MATCH_LEVEL_ADDITION;
+
+	private static JUnitModuleContext mc;
+
+	static {
+		mc = new JUnitModuleContext();
+		OntologyManagement.getInstance().register(mc, new DataRepOntology());
+		OntologyManagement.getInstance().register(mc, new UIBusOntology());
+	}
+
+	private Modality[] modalities = { Modality.gui, Modality.voice, Modality.sms };
+
+	private PrivacyLevel[] privacy = { PrivacyLevel.personal, PrivacyLevel.insensible };
+
+	private Resource[] users = { new Resource("urn:test#user0"), new Resource("urn:test#user1"),
+			new Resource("urn:test#user2") };
+
+	private Random random = new Random(42);
+
+	private List<UIHandlerProfile> profiles = new ArrayList<UIHandlerProfile>();
+
+	private List<String> ids = new ArrayList<String>();
+
+	private UIHandlerProfile newProfile() {
+		UIHandlerProfile prof = new UIHandlerProfile();
+		if (random.nextBoolean()) {
+			prof.addRestriction(MergedRestriction.getFixedValueRestriction(UIRequest.PROP_ADDRESSED_USER,
+					users[random.nextInt(users.length)]));
+		}
+		if (random.nextBoolean()) {
+			prof.setSupportedInputModalities(random.nextBoolean()
+					? new Modality[] { modalities[random.nextInt(modalities.length)] }
+					: new Modality[] { modalities[0], modalities[1] });
+		}
+		if (random.nextBoolean()) {
+			prof.addRestriction(MergedRestriction.getFixedValueRestriction(UIRequest.PROP_DIALOG_PRIVACY_LEVEL,
+					privacy[random.nextInt(privacy.length)]));
+		}
+		return prof;
+	}
+
+	private UIRequest newRequest() {
+		UIRequest req = new UIRequest(users[random.nextInt(users.length)], Form.newDialog("test", new Resource()),
+				LevelRating.low, Locale.ENGLISH, privacy[random.nextInt(privacy.length)]);
+		if (random.nextBoolean()) {
+			req.setPresentationModality(modalities[random.nextInt(modalities.length)]);
+		}
+		if (random.nextBoolean()) {
+			req.setAltPresentationModality(modalities[random.nextInt(modalities.length)]);
+		}
+		return req;
+	}
+
+	private int expectedDegree(UIRequest req, String lastUsed) {
+		int max = UIHandlerProfile.MATCH_LEVEL_FAILED;
+		for (int i = 0; i < profiles.size(); i++) {
+			int degree = profiles.get(i).getMatchingDegree(req);
+			if (degree > UIHandlerProfile.MATCH_LEVEL_FAILED && ids.get(i).equals(lastUsed)) {
+				degree += BONUS;
+			}
+			max = Math.max(max, degree);
+		}
+		return max;
+	}
+
+	private void checkSelection(HandlerProfileIndex index) {
+		for (int i = 0; i < 200; i++) {
+			UIRequest req = newRequest();
+			String lastUsed = ids.isEmpty() ? null : ids.get(random.nextInt(ids.size()));
+			HandlerProfileIndex.Selection sel = index.select(req, lastUsed);
+			int expected = expectedDegree(req, lastUsed);
+			assertEquals(expected, sel.getMatchingDegree());
+			if (expected == UIHandlerProfile.MATCH_LEVEL_FAILED) {
+				assertNull(sel.getHandlerID());
+			} else {
+				int p = ids.indexOf(sel.getHandlerID());
+				int degree = profiles.get(p).getMatchingDegree(req);
+				assertEquals(expected, sel.getHandlerID().equals(lastUsed) ? degree + BONUS : degree);
+			}
+		}
+	}
+
+	public void testSelection() {
+		HandlerProfileIndex index = new HandlerProfileIndex(BONUS);
+		for (int i = 0; i < 40; i++) {
+			UIHandlerProfile prof = newProfile();
+			profiles.add(prof);
+			ids.add("urn:test#handler" + i);
+			index.add(ids.get(i), prof);
+		}
+		checkSelection(index);
+
+		// values already indexed must be updated on changes
+		for (int i = 0; i < 10; i++) {
+			UIHandlerProfile prof = newProfile();
+			profiles.add(prof);
+			ids.add("urn:test#late" + i);
+			index.add(ids.get(ids.size() - 1), prof);
+		}
+		for (int i = 0; i < 25; i++) {
+			int p = random.nextInt(profiles.size());
+			index.remove(profiles.remove(p));
+			ids.remove(p);
+		}
+		assertEquals(profiles.size(), index.size());
+		checkSelection(index);
+
+		index.clear();
+		profiles.clear();
+		ids.clear();
+		assertNull(index.select(newRequest(), null).getHandlerID());
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2013 Universidad Politécnica de Madrid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.universAAL.middleware.ui.impl.generic;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+	private static final long MS = 1000000L;
+
+	public void testHistogram() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getPercentileMillis(50));
+
+		// 90 fast calls, 9 slower ones and one that took very long
+		for (int i = 0; i < 90; i++) {
+			h.record(MS / 2);
+		}
+		for (int i = 0; i < 9; i++) {
+			h.record(100 * MS);
+		}
+		h.record(100000 * MS);
+
+		assertEquals(100, h.getCount());
+		assertEquals(1, h.getPercentileMillis(50));
+		assertEquals(128, h.getPercentileMillis(99));
+		assertEquals(Long.MAX_VALUE, h.getPercentileMillis(100));
+		assertEquals(100000.0, h.getMaxMillis(), 0.001);
+
+		long[] counts = h.getBucketCounts();
+		assertEquals(h.getBucketBounds().length + 1, counts.length);
+		assertEquals(90, counts[0]);
+		assertEquals(9, counts[7]);
+		assertEquals(1, counts[counts.length - 1]);
+
+		h.reset();
+		assertEquals(0, h.getCount());
+		assertEquals(0.0, h.getMeanMillis(), 0.0);
+	}
+}
@@ -0,0 +1,403 @@
+/*
+        Copyright 2007-2014 CNR-ISTI, http://isti.cnr.it
+        Institute of Information Science and Technologies
+        of the Italian National Research Council
+
+        See the NOTICE file distributed with this work for additional
+        information regarding copyright ownership
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+          http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+ */
+package org.universAAL.middleware.connectors.util;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Helper for the compact binary wire format of the messages exchanged between
+ * peers. Every frame starts with a two byte magic number followed by the type
+ * of the frame and the version of the format, so that a receiver can
+ * distinguish binary frames from the legacy text format (that always starts
+ * with a printable character) and reject frames of an unknown version.
+ * <p>
+ * The header fields are written as length-prefixed values: integers as
+ * variable length unsigned integers (7 bits per byte, least significant group
+ * first), strings as UTF-8 bytes prefixed with their length plus one (0 stands
+ * for <code>null</code>) and byte arrays prefixed with their length.
+ * <p>
+ * The binary format is used for sending if the system property
+ * {@value #PROP_WIRE_FORMAT} is set to {@value #WIRE_FORMAT_BINARY}; the
+ * default is the text format to stay compatible with older peers. Incoming
+ * messages are always accepted in both formats.
+ * <p>
+ * Within a binary frame, the content of a bus message can be encoded as text
+ * or with a binary RDF serializer, depending on the system property
+ * {@value #PROP_CONTENT_FORMAT}: {@value #CONTENT_FORMAT_TEXT},
+ * {@value #CONTENT_FORMAT_BINARY} or {@value #CONTENT_FORMAT_AUTO} (default).
+ * In the automatic mode, every frame announces whether its sender can decode
+ * binary content ({@link #CAPABILITY_BINARY_CONTENT}) and binary content is
+ * only sent to peers that have announced this capability.
+ */
+public final class BinaryFrame {
+
+	/**
+	 * System property to choose the format of outgoing messages, either
+	 * {@value #WIRE_FORMAT_TEXT} (default) or {@value #WIRE_FORMAT_BINARY}.
+	 */
+	public static final String PROP_WIRE_FORMAT = "universaal.wireformat";
+	public static final String WIRE_FORMAT_TEXT = "text";
+	public static final String WIRE_FORMAT_BINARY = "binary";
+
+	/**
+	 * System property to choose the encoding of the content of outgoing bus
+	 * messages in binary frames, either {@value #CONTENT_FORMAT_TEXT},
+	 * {@value #CONTENT_FORMAT_BINARY} or {@value #CONTENT_FORMAT_AUTO}
+	 * (default).
+	 */
+	public static final String PROP_CONTENT_FORMAT = "universaal.wireformat.content";
+	public static final String CONTENT_FORMAT_TEXT = "text";
+	public static final String CONTENT_FORMAT_BINARY = "binary";
+	public static final String CONTENT_FORMAT_AUTO = "auto";
+
+	/**
+	 * First byte of every binary frame. It is not a valid first byte of a
+	 * UTF-8 encoded text message.
+	 */
+	public static final byte MAGIC_0 = (byte) 0xB5;
+	/**
+	 * Second byte of every binary frame.
+	 */
+	public static final byte MAGIC_1 = (byte) 0xAA;
+
+	/**
+	 * Current version of the binary format.
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * Frame type of a {@link ChannelMessage}.
+	 */
+	public static final byte TYPE_CHANNEL_MESSAGE = 1;
+	/**
+	 * Frame type of a bus message.
+	 */
+	public static final byte TYPE_BUS_MESSAGE = 2;
+	/**
+	 * Frame type of an encrypted frame, the payload is the encrypted frame of
+	 * another type.
+	 */
+	public static final byte TYPE_ENCRYPTED = 3;
+	/**
+	 * Frame type of a batch, the payload is a sequence of
+	 * {@link ChannelMessage} frames for the same receivers.
+	 */
+	public static final byte TYPE_BATCH = 4;
+
+	/**
+	 * Encoding of a content: UTF-8 encoded text.
+	 */
+	public static final byte CONTENT_TEXT = 0;
+	/**
+	 * Encoding of a content: raw bytes (e.g. binary RDF).
+	 */
+	public static final byte CONTENT_BINARY = 1;
+
+	/**
+	 * Capability flag: the sender of the frame can decode binary content.
+	 */
+	public static final int CAPABILITY_BINARY_CONTENT = 1;
+
+	private static final int HEADER_LENGTH = 4;
+
+	private BinaryFrame() {
+	}
+
+	/**
+	 * @return true if the binary format should be used for outgoing messages.
+	 */
+	public static boolean isBinaryWireFormat() {
+		return WIRE_FORMAT_BINARY.equalsIgnoreCase(System.getProperty(PROP_WIRE_FORMAT, WIRE_FORMAT_TEXT));
+	}
+
+	/**
+	 * @return the value of the property {@value #PROP_CONTENT_FORMAT}, one of
+	 *         {@value #CONTENT_FORMAT_TEXT}, {@value #CONTENT_FORMAT_BINARY} or
+	 *         {@value #CONTENT_FORMAT_AUTO}.
+	 */
+	public static String getContentFormat() {
+		String format = System.getProperty(PROP_CONTENT_FORMAT, CONTENT_FORMAT_AUTO).toLowerCase();
+		if (CONTENT_FORMAT_TEXT.equals(format) || CONTENT_FORMAT_BINARY.equals(format))
+			return format;
+		return CONTENT_FORMAT_AUTO;
+	}
+
+	/**
+	 * Checks if the given data starts with the header of a binary frame of the
+	 * given type.
+	 *
+	 * @param data
+	 *            the buffer.
+	 * @param off
+	 *            the start of the frame in the buffer.
+	 * @param len
+	 *            the length of the frame.
+	 * @param type
+	 *            the expected frame type.
+	 * @return true if the data is a binary frame of the given type, regardless
+	 *         of its version.
+	 */
+	public static boolean isFrame(byte[] data, int off, int len, byte type) {
+		return data != null && len >= HEADER_LENGTH && data[off] == MAGIC_0 && data[off + 1] == MAGIC_1
+				&& data[off + 2] == type;
+	}
+
+	/**
+	 * Writes a binary frame into a growing buffer.
+	 */
+	public static final class Writer {
+		private byte[] buf;
+		private int count = 0;
+
+		/**
+		 * Create a new Writer and write the frame header.
+		 *
+		 * @param type
+		 *            the frame type.
+		 * @param sizeHint
+		 *            the expected size of the frame.
+		 */
+		public Writer(byte type, int sizeHint) {
+			buf = new byte[Math.max(64, sizeHint)];
+			buf[count++] = MAGIC_0;
+			buf[count++] = MAGIC_1;
+			buf[count++] = type;
+			buf[count++] = VERSION;
+		}
+
+		private void ensure(int n) {
+			if (count + n > buf.length) {
+				byte[] newBuf = new byte[Math.max(buf.length << 1, count + n)];
+				System.arraycopy(buf, 0, newBuf, 0, count);
+				buf = newBuf;
+			}
+		}
+
+		public Writer writeByte(int b) {
+			ensure(1);
+			buf[count++] = (byte) b;
+			return this;
+		}
+
+		public Writer writeVarInt(int v) {
+			if (v < 0)
+				throw new IllegalArgumentException("Negative length or count: " + v);
+			ensure(5);
+			while ((v & ~0x7F) != 0) {
+				buf[count++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[count++] = (byte) v;
+			return this;
+		}
+
+		/**
+		 * Writes a string as UTF-8 directly into the buffer, without creating
+		 * an intermediate byte array.
+		 */
+		public Writer writeString(String s) {
+			if (s == null)
+				return writeVarInt(0);
+
+			int len = s.length();
+			int utfLen = 0;
+			for (int i = 0; i < len; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80)
+					utfLen++;
+				else if (c < 0x800)
+					utfLen += 2;
+				else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+					utfLen += 4;
+					i++;
+				} else
+					utfLen += 3;
+			}
+
+			writeVarInt(utfLen + 1);
+			ensure(utfLen);
+			for (int i = 0; i < len; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					buf[count++] = (byte) c;
+				} else if (c < 0x800) {
+					buf[count++] = (byte) (0xC0 | (c >> 6));
+					buf[count++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					buf[count++] = (byte) (0xF0 | (cp >> 18));
+					buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					buf[count++] = (byte) (0x80 | (cp & 0x3F));
+				} else {
+					// unpaired surrogates are written as is, as the JDK
+					// decoder will replace them anyway
+					buf[count++] = (byte) (0xE0 | (c >> 12));
+					buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buf[count++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			return this;
+		}
+
+		public Writer writeBytes(byte[] b) {
+			return writeBytes(b, 0, b.length);
+		}
+
+		public Writer writeBytes(byte[] b, int off, int len) {
+			writeVarInt(len);
+			ensure(len);
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+			return this;
+		}
+
+		/**
+		 * @return the number of bytes written so far.
+		 */
+		public int size() {
+			return count;
+		}
+
+		/**
+		 * @return a copy of the frame with the exact length.
+		 */
+		public byte[] toByteArray() {
+			byte[] result = new byte[count];
+			System.arraycopy(buf, 0, result, 0, count);
+			return result;
+		}
+	}
+
+	/**
+	 * Reads the fields of a binary frame.
+	 */
+	public static final class Reader {
+		private final byte[] buf;
+		private final int end;
+		private int pos;
+		private final byte version;
+
+		/**
+		 * Create a new Reader and check the frame header.
+		 *
+		 * @param data
+		 *            the buffer containing the frame.
+		 * @param off
+		 *            the start of the frame in the buffer.
+		 * @param len
+		 *            the length of the frame.
+		 * @param type
+		 *            the expected frame type.
+		 * @throws IllegalArgumentException
+		 *             if the data is not a frame of the given type or if the
+		 *             version is not supported.
+		 */
+		public Reader(byte[] data, int off, int len, byte type) {
+			if (!isFrame(data, off, len, type))
+				throw new IllegalArgumentException("Not a binary frame of type " + type);
+			version = data[off + 3];
+			if (version < 1 || version > VERSION)
+				throw new IllegalArgumentException("Unsupported version of binary frame: " + version);
+			buf = data;
+			pos = off + HEADER_LENGTH;
+			end = off + len;
+		}
+
+		/**
+		 * @return the version of the frame.
+		 */
+		public byte getVersion() {
+			return version;
+		}
+
+		private void check(int n) {
+			if (n < 0 || n > end - pos)
+				throw new IllegalArgumentException("Truncated binary frame");
+		}
+
+		public byte readByte() {
+			check(1);
+			return buf[pos++];
+		}
+
+		public int readVarInt() {
+			int v = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				byte b = readByte();
+				v |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return v;
+			}
+			throw new IllegalArgumentException("Malformed variable length integer in binary frame");
+		}
+
+		public String readString() {
+			int len = readVarInt();
+			if (len == 0)
+				return null;
+			if (len < 0)
+				throw new IllegalArgumentException("Negative string length in binary frame");
+			len--;
+			check(len);
+			try {
+				String s = new String(buf, pos, len, "UTF-8");
+				pos += len;
+				return s;
+			} catch (UnsupportedEncodingException e) {
+				// UTF-8 is always supported
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * @return the position in the buffer of the next byte to read.
+		 */
+		public int position() {
+			return pos;
+		}
+
+		/**
+		 * Skips the given number of bytes, e.g. after reading them directly
+		 * from the buffer at {@link #position()}.
+		 */
+		public void skip(int n) {
+			check(n);
+			pos += n;
+		}
+
+		public byte[] readBytes() {
+			int len = readVarInt();
+			check(len);
+			byte[] b = new byte[len];
+			System.arraycopy(buf, pos, b, 0, len);
+			pos += len;
+			return b;
+		}
+
+		/**
+		 * @return the number of bytes that have not been read yet.
+		 */
+		public int remaining() {
+			return end - pos;
+		}
+	}
+}
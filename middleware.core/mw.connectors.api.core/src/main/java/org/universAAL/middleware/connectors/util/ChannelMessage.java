@@ -20,9 +20,11 @@
  */
 package org.universAAL.middleware.connectors.util;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.PeerRole;
 
 import com.google.gson.Gson;
 
@@ -45,6 +47,11 @@ public class ChannelMessage {
 	 */
 	private PeerCard sender;
 	private String content;
+	/**
+	 * Binary content, only used by the binary wire format (see
+	 * {@link BinaryFrame}) and therefore ignored by the text format.
+	 */
+	private transient byte[] binaryContent;
 
 	/*
 	 * private ChannelMessage() { }
@@ -56,6 +63,16 @@ public class ChannelMessage {
 		this.channelNames = channelNames;
 	}
 
+	/**
+	 * Create a message with binary content. Such a message can only be sent
+	 * with the binary wire format (see {@link #toBytes()}).
+	 */
+	public ChannelMessage(PeerCard sender, byte[] content, List channelNames) {
+		this.sender = sender;
+		this.binaryContent = content;
+		this.channelNames = channelNames;
+	}
+
 	public ChannelMessage() {
 
 	}
@@ -82,6 +99,23 @@ public class ChannelMessage {
 
 	public void setContent(String content) {
 		this.content = content;
+		this.binaryContent = null;
+	}
+
+	/**
+	 * @return true if the content of this message is binary, in which case
+	 *         {@link #getContent()} returns null.
+	 */
+	public boolean hasBinaryContent() {
+		return binaryContent != null;
+	}
+
+	/**
+	 * @return the binary content of this message, or null if the content is a
+	 *         String.
+	 */
+	public byte[] getContentBytes() {
+		return binaryContent;
 	}
 
 	public String toString() {
@@ -98,6 +132,148 @@ public class ChannelMessage {
 		return serializedMessage;
 	}
 
+	/**
+	 * Serialize this message with the binary wire format. The result can be
+	 * parsed with {@link #fromBytes(byte[], int, int)}.
+	 *
+	 * @return the binary frame.
+	 */
+	public byte[] toBytes() {
+		int size = 128 + (binaryContent != null ? binaryContent.length : (content != null ? content.length() : 0));
+		BinaryFrame.Writer w = new BinaryFrame.Writer(BinaryFrame.TYPE_CHANNEL_MESSAGE, size);
+		if (sender == null) {
+			w.writeByte(0);
+		} else {
+			w.writeByte(1);
+			w.writeString(sender.getPeerID());
+			w.writeString(sender.getRole() == null ? null : sender.getRole().name());
+			w.writeString(sender.getCONTAINER_UNIT());
+			w.writeString(sender.getPLATFORM_UNIT());
+			w.writeString(sender.getOS());
+		}
+		if (channelNames == null) {
+			w.writeVarInt(0);
+		} else {
+			w.writeVarInt(channelNames.size());
+			for (Object name : channelNames)
+				w.writeString(name == null ? null : name.toString());
+		}
+		if (binaryContent != null) {
+			w.writeByte(BinaryFrame.CONTENT_BINARY);
+			w.writeBytes(binaryContent);
+		} else {
+			w.writeByte(BinaryFrame.CONTENT_TEXT);
+			w.writeString(content);
+		}
+		return w.toByteArray();
+	}
+
+	/**
+	 * Checks if the given data is a {@link ChannelMessage} serialized with the
+	 * binary wire format.
+	 */
+	public static boolean isBinary(byte[] data, int off, int len) {
+		return BinaryFrame.isFrame(data, off, len, BinaryFrame.TYPE_CHANNEL_MESSAGE);
+	}
+
+	public static ChannelMessage fromBytes(byte[] data) throws Exception {
+		return fromBytes(data, 0, data.length);
+	}
+
+	/**
+	 * Parse a message serialized with {@link #toBytes()}.
+	 *
+	 * @param data
+	 *            the buffer containing the binary frame.
+	 * @param off
+	 *            the start of the frame in the buffer.
+	 * @param len
+	 *            the length of the frame.
+	 * @return the parsed message.
+	 * @throws Exception
+	 *             if the data is not a valid binary {@link ChannelMessage}.
+	 */
+	public static ChannelMessage fromBytes(byte[] data, int off, int len) throws Exception {
+		try {
+			BinaryFrame.Reader r = new BinaryFrame.Reader(data, off, len, BinaryFrame.TYPE_CHANNEL_MESSAGE);
+			ChannelMessage ch = new ChannelMessage();
+			if (r.readByte() != 0) {
+				String peerID = r.readString();
+				String role = r.readString();
+				ch.sender = new PeerCard(peerID, role == null ? null : PeerRole.valueOf(role), r.readString(),
+						r.readString(), r.readString());
+			}
+			int n = r.readVarInt();
+			ch.channelNames = new ArrayList(n);
+			for (int i = 0; i < n; i++)
+				ch.channelNames.add(r.readString());
+			if (r.readByte() == BinaryFrame.CONTENT_BINARY)
+				ch.binaryContent = r.readBytes();
+			else
+				ch.content = r.readString();
+			return ch;
+		} catch (Exception e) {
+			throw new Exception("Unable to unmarshall binary ChannelMessage of " + len + " bytes. Full Stack: "
+					+ e.toString());
+		}
+	}
+
+	/**
+	 * Create a message that carries several messages in one binary frame, so
+	 * that they can be handed over to the communication connector at once. The
+	 * messages must have the same channel names; the sender and the channel
+	 * names of the batch are those of the first message. Batches can only be
+	 * sent with the binary wire format.
+	 *
+	 * @param messages
+	 *            the messages, at least one.
+	 * @return the batch.
+	 */
+	public static ChannelMessage createBatch(List<ChannelMessage> messages) {
+		byte[][] frames = new byte[messages.size()][];
+		int size = 8;
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = messages.get(i).toBytes();
+			size += frames[i].length + 5;
+		}
+		BinaryFrame.Writer w = new BinaryFrame.Writer(BinaryFrame.TYPE_BATCH, size);
+		w.writeVarInt(frames.length);
+		for (byte[] frame : frames)
+			w.writeBytes(frame);
+		ChannelMessage first = messages.get(0);
+		return new ChannelMessage(first.sender, w.toByteArray(), first.channelNames);
+	}
+
+	/**
+	 * @return true if this message was created by {@link #createBatch(List)}.
+	 */
+	public boolean isBatch() {
+		return binaryContent != null
+				&& BinaryFrame.isFrame(binaryContent, 0, binaryContent.length, BinaryFrame.TYPE_BATCH);
+	}
+
+	/**
+	 * Get the messages of a batch created by {@link #createBatch(List)}.
+	 *
+	 * @return the messages in the order of the batch.
+	 * @throws Exception
+	 *             if this message is not a valid batch.
+	 */
+	public List<ChannelMessage> getBatch() throws Exception {
+		if (binaryContent == null)
+			throw new Exception("The message is not a batch");
+		BinaryFrame.Reader r = new BinaryFrame.Reader(binaryContent, 0, binaryContent.length,
+				BinaryFrame.TYPE_BATCH);
+		int n = r.readVarInt();
+		List<ChannelMessage> messages = new ArrayList<ChannelMessage>(n);
+		for (int i = 0; i < n; i++) {
+			int len = r.readVarInt();
+			messages.add(fromBytes(binaryContent, r.position(), len));
+			r.skip(len);
+		}
+		return messages;
+	}
+
 	public static ChannelMessage unmarshall(String message) throws Exception {
 
 		ChannelMessage ch = null;
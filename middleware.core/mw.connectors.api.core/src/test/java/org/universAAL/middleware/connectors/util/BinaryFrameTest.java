@@ -0,0 +1,50 @@
+package org.universAAL.middleware.connectors.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BinaryFrameTest {
+
+	private static BinaryFrame.Reader read(BinaryFrame.Writer w) {
+		byte[] frame = w.toByteArray();
+		return new BinaryFrame.Reader(frame, 0, frame.length, BinaryFrame.TYPE_CHANNEL_MESSAGE);
+	}
+
+	@Test
+	public void testStrings() {
+		BinaryFrame.Writer w = new BinaryFrame.Writer(BinaryFrame.TYPE_CHANNEL_MESSAGE, 16);
+		w.writeString(null).writeString("").writeString("abc");
+		BinaryFrame.Reader r = read(w);
+		assertNull(r.readString());
+		assertEquals("", r.readString());
+		assertEquals("abc", r.readString());
+		assertEquals(0, r.remaining());
+	}
+
+	@Test
+	public void testInvalidLengths() {
+		// -1 as variable length integer
+		BinaryFrame.Writer w = new BinaryFrame.Writer(BinaryFrame.TYPE_CHANNEL_MESSAGE, 16);
+		w.writeByte(0xff).writeByte(0xff).writeByte(0xff).writeByte(0xff).writeByte(0x0f);
+		try {
+			read(w).readString();
+			fail("Negative string length was accepted");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			read(w).readBytes();
+			fail("Negative length was accepted");
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Integer.MAX_VALUE, which overflows the position in the buffer
+		w = new BinaryFrame.Writer(BinaryFrame.TYPE_CHANNEL_MESSAGE, 16);
+		w.writeVarInt(Integer.MAX_VALUE).writeByte(0);
+		try {
+			read(w).readBytes();
+			fail("Length beyond the frame was accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
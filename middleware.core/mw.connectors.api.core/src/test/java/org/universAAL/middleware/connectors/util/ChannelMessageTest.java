@@ -8,6 +8,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 import org.junit.internal.runners.statements.Fail;
@@ -36,6 +39,69 @@ public class ChannelMessageTest {
 		assertEquals("Comparing JSon(s)", json, parsed.toString());
 	}
 
+	@Test
+	public void testBinary() throws Exception {
+		List<String> channels = new ArrayList<String>();
+		channels.add("mw.bus.context.osgi");
+		channels.add("\u00e4\u20ac\ud83d\ude00");
+
+		ChannelMessage msg = new ChannelMessage(card, "[ 3, 4, 5 ] \u00e4\u20ac\ud83d\ude00", channels);
+		byte[] frame = msg.toBytes();
+		assertTrue(ChannelMessage.isBinary(frame, 0, frame.length));
+		// also parse from the middle of a buffer
+		byte[] buf = new byte[frame.length + 10];
+		System.arraycopy(frame, 0, buf, 5, frame.length);
+		ChannelMessage parsed = ChannelMessage.fromBytes(buf, 5, frame.length);
+		assertEquals("Problem serializing/deserializing PeerCard", card, parsed.getSender());
+		assertEquals(card.getRole(), parsed.getSender().getRole());
+		assertEquals(card.getCONTAINER_UNIT(), parsed.getSender().getCONTAINER_UNIT());
+		assertEquals(card.getOS(), parsed.getSender().getOS());
+		assertEquals("Problem serializing/deserializing Content", msg.getContent(), parsed.getContent());
+		assertEquals(channels, parsed.getChannelNames());
+		assertFalse(parsed.hasBinaryContent());
+
+		byte[] content = new byte[] { 0, 1, 2, (byte) 0xff };
+		msg = new ChannelMessage(card, content, channels);
+		parsed = ChannelMessage.fromBytes(msg.toBytes());
+		assertTrue(parsed.hasBinaryContent());
+		assertNull(parsed.getContent());
+		assertTrue(Arrays.equals(content, parsed.getContentBytes()));
+
+		// the text format is not mistaken for a binary frame
+		byte[] text = new ChannelMessage(card, "[ 3, 4, 5 ]", channels).toString().getBytes("UTF-8");
+		assertFalse(ChannelMessage.isBinary(text, 0, text.length));
+		try {
+			ChannelMessage.fromBytes(frame, 0, frame.length - 1);
+			fail("Truncated frame was accepted");
+		} catch (Exception e) {
+		}
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		List<String> channels = new ArrayList<String>();
+		channels.add("mw.bus.context.osgi");
+		List<ChannelMessage> messages = new ArrayList<ChannelMessage>();
+		messages.add(new ChannelMessage(card, "first", channels));
+		messages.add(new ChannelMessage(card, new byte[] { 1, 2, 3 }, channels));
+		messages.add(new ChannelMessage(card, "third", channels));
+
+		ChannelMessage batch = ChannelMessage.createBatch(messages);
+		assertTrue(batch.isBatch());
+		assertFalse(messages.get(1).isBatch());
+		assertEquals(channels, batch.getChannelNames());
+
+		// the batch is sent as a frame like any other binary message
+		byte[] frame = batch.toBytes();
+		List<ChannelMessage> parsed = ChannelMessage.fromBytes(frame).getBatch();
+		assertEquals(3, parsed.size());
+		assertEquals("first", parsed.get(0).getContent());
+		assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, parsed.get(1).getContentBytes()));
+		assertEquals("third", parsed.get(2).getContent());
+		assertEquals(card, parsed.get(2).getSender());
+		assertEquals(channels, parsed.get(2).getChannelNames());
+	}
+
 	@Test
 	public void unmarhallJSonFromFile() {
 		String JSonDump = "./ChannelMeessage.dump.json";
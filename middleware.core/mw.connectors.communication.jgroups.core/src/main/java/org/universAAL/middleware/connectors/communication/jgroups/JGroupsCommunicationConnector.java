@@ -28,10 +28,12 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Dictionary;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jgroups.Address;
 import org.jgroups.JChannel;
@@ -52,6 +54,7 @@ import org.universAAL.middleware.connectors.communication.jgroups.util.Consts;
 import org.universAAL.middleware.connectors.communication.jgroups.util.CryptUtil;
 import org.universAAL.middleware.connectors.exception.CommunicationConnectorErrorCode;
 import org.universAAL.middleware.connectors.exception.CommunicationConnectorException;
+import org.universAAL.middleware.connectors.util.BinaryFrame;
 import org.universAAL.middleware.connectors.util.ChannelMessage;
 import org.universAAL.middleware.connectors.util.ExceptionUtils;
 import org.universAAL.middleware.container.ModuleContext;
@@ -83,8 +86,17 @@ public class JGroupsCommunicationConnector
 	// maps the channel name with the channel instance
 	// The prefix of the channel name is in the XXX.space configuration file
 	// (ex. Home.space)
-	private final Map<String, JChannel> channelMap = new HashMap<String, JChannel>();
-	private MessageDispatcher disp;
+	private final Map<String, JChannel> channelMap = new ConcurrentHashMap<String, JChannel>();
+	// one dispatcher per channel for sending to a subset of the members,
+	// created when it is needed for the first time
+	private final Map<JChannel, MessageDispatcher> dispatchers = new ConcurrentHashMap<JChannel, MessageDispatcher>();
+	// statistics about sent messages
+	private final AtomicLong sentMessages = new AtomicLong();
+	private final AtomicLong sentBytes = new AtomicLong();
+	private final AtomicLong sendErrors = new AtomicLong();
+	private final AtomicLong sendNanos = new AtomicLong();
+	private final AtomicLong maxSendNanos = new AtomicLong();
+	private final long startTime = System.currentTimeMillis();
 	// Security stuff
 	private boolean security = false;
 	// private String key;
@@ -126,7 +138,7 @@ public class JGroupsCommunicationConnector
 			// It returns true if File or directory exists
 			// init the cryptoUtil
 			try {
-				CryptUtil.init(fileName, new Codec() {
+				String msg = CryptUtil.init(fileName, new Codec() {
 					public byte[] encode(byte[] data) {
 						return org.bouncycastle.util.encoders.Base64.encode(data);
 					}
@@ -135,6 +147,8 @@ public class JGroupsCommunicationConnector
 						return org.bouncycastle.util.encoders.Base64.decode(data);
 					}
 				});
+				if (CryptUtil.hasShortKey())
+					LogUtils.logWarn(context, JGroupsCommunicationConnector.class, METHOD, msg);
 			} catch (Exception ex) {
 				LogUtils.logError(context, JGroupsCommunicationConnector.class, METHOD,
 						new Object[] { "Error while initializing the CryptoUtil: ", ex.toString() }, ex);
@@ -297,7 +311,9 @@ public class JGroupsCommunicationConnector
 				}
 			}
 			for (ChannelDescriptor channelDesc : channels) {
-				channelMap.remove(channelDesc.getChannelName());
+				JChannel ch = channelMap.remove(channelDesc.getChannelName());
+				if (ch != null)
+					stopDispatcher(ch);
 			}
 		}
 		LogUtils.logDebug(context, JGroupsCommunicationConnector.class, "JGroupsCommunicationConnector",
@@ -321,6 +337,9 @@ public class JGroupsCommunicationConnector
 					new Object[] { "Error while resetting the Communication connector: " + e.toString() }, null);
 		} finally {
 			channelMap.clear();
+			for (MessageDispatcher d : dispatchers.values())
+				d.stop();
+			dispatchers.clear();
 		}
 		LogUtils.logDebug(context, JGroupsCommunicationConnector.class, "JGroupsCommunicationConnector",
 				new Object[] { "JGroupCommunicationConnector reset" }, null);
@@ -386,7 +405,7 @@ public class JGroupsCommunicationConnector
 		return selectedJChannels;
 	}
 
-	public synchronized void unicast(ChannelMessage message, String receiver) throws CommunicationConnectorException {
+	public void unicast(ChannelMessage message, String receiver) throws CommunicationConnectorException {
 		final String METHOD = "unicast";
 		if (message.getChannelNames() == null || message.getChannelNames().isEmpty()) {
 			logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.NO_CHANNEL_SPECIFIED,
@@ -413,7 +432,7 @@ public class JGroupsCommunicationConnector
 			return;
 		}
 		Address dst = null;
-		final Message msg;
+		final Object payload;
 		/*
 		 * //FIX The android peer is not shown as member of the channel thus
 		 * joining fails
@@ -429,25 +448,24 @@ public class JGroupsCommunicationConnector
 					+ receiver + " but it is not a memeber of " + ch.getName() + "/" + ch.getClusterName());
 			return;
 		}
-		if (security) {
-			try {
-				msg = new Message(dst, null, CryptUtil.encrypt(message.toString()));
-			} catch (Throwable t) {
-				logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
-						"Failed to encrypt the message due to internal exception", t);
-				return;
-			}
-		} else {
-			msg = new Message(dst, null, message.toString());
+		try {
+			payload = createPayload(message);
+		} catch (Throwable t) {
+			logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
+					"Failed to encrypt the message due to internal exception", t);
+			return;
 		}
 
+		long start = System.nanoTime();
 		try {
-			ch.send(msg);
+			ch.send(createMessage(dst, payload));
 		} catch (Exception t) {
+			sendErrors.incrementAndGet();
 			logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
 					"Error sending unicast message " + message + " due to internal exception", t);
 			return;
 		}
+		recordSend(start, payload);
 	}
 
 	private void logAndThrowComExec(String method, CommunicationConnectorErrorCode code, String msg, Throwable t) {
@@ -461,7 +479,7 @@ public class JGroupsCommunicationConnector
 		throw new CommunicationConnectorException(CommunicationConnectorErrorCode.NO_CHANNEL_SPECIFIED, msg);
 	}
 
-	public synchronized void multicast(ChannelMessage message) throws CommunicationConnectorException {
+	public void multicast(ChannelMessage message) throws CommunicationConnectorException {
 		final String METHOD = "multicast";
 
 		if (message.getChannelNames() == null) {
@@ -470,35 +488,33 @@ public class JGroupsCommunicationConnector
 			return;
 		}
 		// send message to all brokers of any kind
-		List selectedChannel = selectJChannels(message.getChannelNames());
-		for (int i = 0; i < selectedChannel.size(); i++) {
-			JChannel channel = (JChannel) selectedChannel.get(i);
-			Message msg = null;
-
-			try {
-				if (security) {
-					msg = new Message(null, null, CryptUtil.encrypt(message.toString()));
-				} else {
-					msg = new Message(null, null, message.toString());
-				}
-			} catch (Throwable e) {
-				logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
-						"Error during cretaion of multicast message", e);
-				return;
-			}
+		List<JChannel> selectedChannel = selectJChannels(message.getChannelNames());
+		if (selectedChannel.isEmpty())
+			return;
+		Object payload;
+		try {
+			payload = createPayload(message);
+		} catch (Throwable e) {
+			logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
+					"Error during cretaion of multicast message", e);
+			return;
+		}
+		for (JChannel channel : selectedChannel) {
+			Message msg = createMessage(null, payload);
+			long start = System.nanoTime();
 			try {
 				channel.send(msg);
 			} catch (Throwable e) {
+				sendErrors.incrementAndGet();
 				logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
 						"Sending broadcast message " + msg.toString(), e);
 				return;
 			}
+			recordSend(start, payload);
 		}
-
 	}
 
-	public synchronized void multicast(ChannelMessage message, List<PeerCard> receivers)
-			throws CommunicationConnectorException {
+	public void multicast(ChannelMessage message, List<PeerCard> receivers) throws CommunicationConnectorException {
 		final String METHOD = "multicast";
 		final List channels = message.getChannelNames();
 		if (channels == null) {
@@ -507,7 +523,7 @@ public class JGroupsCommunicationConnector
 			return;
 		}
 
-		List selectedChannel = selectJChannels(channels);
+		List<JChannel> selectedChannel = selectJChannels(channels);
 
 		if (selectedChannel == null || selectedChannel.isEmpty()) {
 			logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.CHANNEL_NOT_FOUND,
@@ -516,61 +532,211 @@ public class JGroupsCommunicationConnector
 			return;
 		}
 
-		// TODO Add log message or error if some of the destination does not
-		// exists on the channels
+		Set<String> receiverIDs = new HashSet<String>();
+		for (PeerCard receiver : receivers)
+			receiverIDs.add(receiver.getPeerID());
 
-		// Send the message to the selected channels and selected
-		// receivers
-		for (int i = 0; i < selectedChannel.size(); i++) {
-			JChannel channel = (JChannel) selectedChannel.get(i);
-			Message msg = null;
-			View view = channel.getView();
-			List<Address> list = view.getMembers();
+		Object payload;
+		try {
+			payload = createPayload(message);
+		} catch (Throwable t) {
+			logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
+					"Failed to encrypt the message due to internal exception", t);
+			return;
+		}
 
-			// creation of the list of address to be excluded from
-			// broadcast
-			List<String> removeList = new ArrayList<String>();
-			for (Address address : list) {
-				removeList.add(channel.getName(address));
-			}
-			List<String> nodeIDsAsString = new ArrayList<String>();
-			for (PeerCard nodeID : receivers) {
-				nodeIDsAsString.add(nodeID.getPeerID());
-			}
-			removeList.removeAll(nodeIDsAsString);
-			List<Address> removeAddressList = new ArrayList<Address>();
-			for (Address address : list) {
-				for (String removeAdressString : removeList) {
-					if (channel.getName(address).equals(removeAdressString))
-						removeAddressList.add(address);
-				}
+		// Send the message to the selected receivers on the selected channels
+		for (JChannel channel : selectedChannel) {
+			View view = channel.getView();
+			if (view == null)
+				continue;
+			List<Address> destinations = new ArrayList<Address>(receiverIDs.size());
+			for (Address address : view.getMembers()) {
+				if (receiverIDs.contains(channel.getName(address)))
+					destinations.add(address);
 			}
-			//
-			if (security) {
-				try {
-					msg = new Message(null, null, CryptUtil.encrypt(message.toString()));
-				} catch (Throwable t) {
-					logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
-							"Failed to encrypt the message due to internal exception", t);
-					return;
-				}
-			} else {
-				msg = new Message(null, null, message.toString());
+			if (destinations.isEmpty()) {
+				LogUtils.logDebug(context, JGroupsCommunicationConnector.class, METHOD,
+						new Object[] { "None of the receivers is a member of ", channel.getClusterName() }, null);
+				continue;
 			}
 
-			RequestOptions opts = new RequestOptions();
-			opts.setExclusionList((Address[]) removeAddressList.toArray(new Address[removeAddressList.size()]));
-			disp = new MessageDispatcher(channel, null, null, this);
-
+			long start = System.nanoTime();
 			try {
-				disp.sendMessage(msg, opts);
+				// anycasting: the message is only sent to the destinations
+				getDispatcher(channel).castMessage(destinations, createMessage(null, payload),
+						RequestOptions.ASYNC().setAnycasting(true));
 			} catch (Throwable e) {
+				sendErrors.incrementAndGet();
 				logAndThrowComExec(METHOD, CommunicationConnectorErrorCode.SEND_MESSAGE_ERROR,
 						"Unable to broadcast the message:" + message.toString(), e);
 				return;
 			}
+			recordSend(start, payload);
+		}
+	}
+
+	/**
+	 * Get the dispatcher for the given channel. The dispatcher is created
+	 * only once per channel; messages that are not sent by a dispatcher are
+	 * forwarded to {@link #receive(Message)}.
+	 */
+	private MessageDispatcher getDispatcher(JChannel channel) {
+		MessageDispatcher d = dispatchers.get(channel);
+		if (d == null) {
+			synchronized (dispatchers) {
+				d = dispatchers.get(channel);
+				if (d == null) {
+					d = new MessageDispatcher(channel, this, this, this);
+					dispatchers.put(channel, d);
+				}
+			}
 		}
+		return d;
+	}
 
+	private void stopDispatcher(JChannel channel) {
+		MessageDispatcher d = dispatchers.remove(channel);
+		if (d != null)
+			d.stop();
+	}
+
+	private void recordSend(long start, Object payload) {
+		long time = System.nanoTime() - start;
+		sentMessages.incrementAndGet();
+		sentBytes.addAndGet(payload instanceof byte[] ? ((byte[]) payload).length : ((String) payload).length());
+		sendNanos.addAndGet(time);
+		long max = maxSendNanos.get();
+		while (time > max && !maxSendNanos.compareAndSet(max, time))
+			max = maxSendNanos.get();
+	}
+
+	/**
+	 * @return the number of messages sent since the creation of this
+	 *         connector. A message sent to several channels is counted once
+	 *         per channel.
+	 */
+	public long getSentMessages() {
+		return sentMessages.get();
+	}
+
+	/**
+	 * @return the number of payload bytes (or characters for messages in the
+	 *         String format) sent since the creation of this connector.
+	 */
+	public long getSentBytes() {
+		return sentBytes.get();
+	}
+
+	/**
+	 * @return the number of messages that could not be sent.
+	 */
+	public long getSendErrors() {
+		return sendErrors.get();
+	}
+
+	/**
+	 * @return the average time in nanoseconds needed to hand over a message
+	 *         to JGroups.
+	 */
+	public long getAverageSendTime() {
+		long n = sentMessages.get();
+		return n == 0 ? 0 : sendNanos.get() / n;
+	}
+
+	/**
+	 * @return the longest time in nanoseconds needed to hand over a message
+	 *         to JGroups.
+	 */
+	public long getMaxSendTime() {
+		return maxSendNanos.get();
+	}
+
+	/**
+	 * @return the average number of messages sent per second since the
+	 *         creation of this connector.
+	 */
+	public double getSendThroughput() {
+		long millis = System.currentTimeMillis() - startTime;
+		return millis <= 0 ? 0 : sentMessages.get() * 1000.0 / millis;
+	}
+
+	/**
+	 * Create the payload for the given {@link ChannelMessage}. With the binary
+	 * wire format (or if the message has binary content) the payload is the
+	 * binary frame of the message, otherwise the payload is the serialized
+	 * String of the message as expected by older peers. If security is enabled,
+	 * the payload is encrypted. The payload is created once and can be sent to
+	 * several channels.
+	 *
+	 * @param message
+	 *            the message to send.
+	 * @return the payload, either a byte[] or a String.
+	 */
+	private Object createPayload(ChannelMessage message) throws Exception {
+		if (message.hasBinaryContent() || BinaryFrame.isBinaryWireFormat()) {
+			byte[] frame = message.toBytes();
+			if (security) {
+				byte[] encrypted = CryptUtil.encrypt(frame);
+				frame = new BinaryFrame.Writer(BinaryFrame.TYPE_ENCRYPTED, encrypted.length + 8).writeBytes(encrypted)
+						.toByteArray();
+			}
+			return frame;
+		}
+		if (security) {
+			return CryptUtil.encrypt(message.toString());
+		}
+		return message.toString();
+	}
+
+	/**
+	 * Create the JGroups message for a payload created by
+	 * {@link #createPayload(ChannelMessage)}.
+	 *
+	 * @param dst
+	 *            the destination, or null for all members of the channel.
+	 * @param payload
+	 *            the payload.
+	 * @return the JGroups message.
+	 */
+	private Message createMessage(Address dst, Object payload) {
+		if (payload instanceof byte[])
+			return new Message(dst, null, (byte[]) payload);
+		return new Message(dst, null, payload);
+	}
+
+	/**
+	 * Parse the {@link ChannelMessage} contained in the given JGroups message.
+	 * Both the binary wire format and the String serialization of older peers
+	 * are accepted.
+	 *
+	 * @param msg
+	 *            the received message.
+	 * @return the parsed message.
+	 */
+	private ChannelMessage parseMessage(Message msg) throws Exception {
+		byte[] buf = msg.getRawBuffer();
+		int off = msg.getOffset();
+		int len = msg.getLength();
+		if (BinaryFrame.isFrame(buf, off, len, BinaryFrame.TYPE_ENCRYPTED)) {
+			if (!security)
+				throw new Exception("Received an encrypted message but security is not enabled");
+			BinaryFrame.Reader r = new BinaryFrame.Reader(buf, off, len, BinaryFrame.TYPE_ENCRYPTED);
+			int cipherLen = r.readVarInt();
+			byte[] frame = CryptUtil.decrypt(buf, r.position(), cipherLen);
+			return ChannelMessage.fromBytes(frame);
+		}
+		if (ChannelMessage.isBinary(buf, off, len)) {
+			if (security)
+				throw new Exception("Received a message that is not encrypted but security is enabled");
+			return ChannelMessage.fromBytes(buf, off, len);
+		}
+
+		String msgBuffer = (String) msg.getObject();
+		if (security) {
+			msgBuffer = CryptUtil.decrypt(msgBuffer);
+		}
+		return ChannelMessage.unmarshall(msgBuffer);
 	}
 
 	public void loadConfigurations(Dictionary configurations) {
@@ -642,12 +808,7 @@ public class JGroupsCommunicationConnector
 			 * LogUtils.logWarn(context, JGroupsCommunicationConnector.class,
 			 * METHOD, "Skipping internal JGroups packet"); return; }
 			 */
-			String msgBuffer = (String) msg.getObject();
-
-			if (security) {
-				msgBuffer = CryptUtil.decrypt((String) msg.getObject());
-			}
-			ChannelMessage channelMessage = ChannelMessage.unmarshall(msgBuffer);
+			ChannelMessage channelMessage = parseMessage(msg);
 			communicationModule.messageReceived(channelMessage);
 		} catch (Exception ex) {
 			LogUtils.logDebug(context, JGroupsCommunicationConnector.class, METHOD,
@@ -685,7 +846,12 @@ public class JGroupsCommunicationConnector
 	}
 
 	public Object handle(Message msg) throws Exception {
-		ChannelMessage channelMessage = ChannelMessage.unmarshall(new String(msg.getBuffer()));
+		ChannelMessage channelMessage;
+		if (BinaryFrame.isFrame(msg.getRawBuffer(), msg.getOffset(), msg.getLength(), BinaryFrame.TYPE_ENCRYPTED)
+				|| ChannelMessage.isBinary(msg.getRawBuffer(), msg.getOffset(), msg.getLength()))
+			channelMessage = parseMessage(msg);
+		else
+			channelMessage = ChannelMessage.unmarshall(new String(msg.getBuffer()));
 		communicationModule.messageReceived(channelMessage);
 		return null;
 	}
@@ -25,19 +25,34 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.DESKeySpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 /**
  * A utility class for managing private/public keys and encrypting/decrypting
- * strings
+ * strings and byte arrays.
+ * <p>
+ * Strings are encrypted with DES and encoded with the codec, as expected by
+ * older peers. Byte arrays are encrypted with AES in counter mode and
+ * authenticated with an HMAC-SHA256 tag (encrypt-then-MAC); the keys for both
+ * are derived from the shared key. The ciphers are cached per thread.
+ * <p>
+ * The derived keys are not stronger than the shared key: the key files of
+ * older versions contain only a DES key, i.e. 56 bits, which can be found by
+ * brute force. New key files contain 256 bits. Use {@link #hasShortKey()} to
+ * detect an old key file; it should be replaced on all peers by a newly
+ * generated one.
  *
  * @author mtazari - <a href="mailto:Saied.Tazari@igd.fraunhofer.de">Saied
  *         Tazari</a>
@@ -50,8 +65,100 @@ public class CryptUtil {
 	private static final String randomizationAlgorithm = "SHA1PRNG";
 	private static final String secretKeyAlgorithm = "DES";
 
+	private static final String aeadTransformation = "AES/CTR/NoPadding";
+	private static final String macAlgorithm = "HmacSHA256";
+	/**
+	 * First byte of an encrypted byte array, identifies the algorithm.
+	 */
+	private static final byte AES_CTR_HMAC_SHA256 = 1;
+	private static final int IV_LENGTH = 16;
+	private static final int TAG_LENGTH = 16;
+	/**
+	 * Length of a generated key file: a DES key followed by random bytes, so
+	 * that the key file can still be read by older peers.
+	 */
+	private static final int KEY_FILE_LENGTH = 32;
+	/**
+	 * Minimum length of the shared key for a strength of 128 bits.
+	 */
+	private static final int MIN_KEY_LENGTH = 16;
+
+	/**
+	 * The keys derived from the shared key.
+	 */
+	private static final class Keys {
+		final SecretKey des;
+		final SecretKeySpec aes;
+		final SecretKeySpec mac;
+
+		Keys(byte[] rawkey) throws Exception {
+			des = SecretKeyFactory.getInstance(secretKeyAlgorithm).generateSecret(new DESKeySpec(rawkey));
+			byte[] aesKey = new byte[16];
+			System.arraycopy(derive(rawkey, "encryption"), 0, aesKey, 0, aesKey.length);
+			aes = new SecretKeySpec(aesKey, "AES");
+			mac = new SecretKeySpec(derive(rawkey, "authentication"), macAlgorithm);
+		}
+
+		private static byte[] derive(byte[] rawkey, String label) throws Exception {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(label.getBytes("UTF-8"));
+			md.update(rawkey);
+			return md.digest();
+		}
+	}
+
+	/**
+	 * The ciphers of one thread, initialized with the current keys.
+	 */
+	private static final class CipherState {
+		final Keys keys;
+		final Cipher desEncrypt;
+		final Cipher desDecrypt;
+		final Cipher aes;
+		final Mac mac;
+		// random prefix of the IVs of this thread, followed by a message
+		// counter and the block counter of the counter mode
+		final byte[] iv = new byte[IV_LENGTH];
+		int counter = 0;
+
+		CipherState(Keys keys) throws Exception {
+			this.keys = keys;
+			desEncrypt = Cipher.getInstance(cipherTransformation);
+			desEncrypt.init(Cipher.ENCRYPT_MODE, keys.des);
+			desDecrypt = Cipher.getInstance(cipherTransformation);
+			desDecrypt.init(Cipher.DECRYPT_MODE, keys.des);
+			aes = Cipher.getInstance(aeadTransformation);
+			mac = Mac.getInstance(macAlgorithm);
+			mac.init(keys.mac);
+			newPrefix();
+		}
+
+		private void newPrefix() {
+			byte[] prefix = new byte[8];
+			random.nextBytes(prefix);
+			System.arraycopy(prefix, 0, iv, 0, prefix.length);
+		}
+
+		/**
+		 * Writes a new IV that was never used before to the given buffer.
+		 */
+		void nextIV(byte[] buf, int off) {
+			if (++counter == 0)
+				newPrefix();
+			iv[8] = (byte) (counter >>> 24);
+			iv[9] = (byte) (counter >>> 16);
+			iv[10] = (byte) (counter >>> 8);
+			iv[11] = (byte) counter;
+			System.arraycopy(iv, 0, buf, off, IV_LENGTH);
+		}
+	}
+
+	private static final SecureRandom random = new SecureRandom();
+	private static final ThreadLocal<CipherState> states = new ThreadLocal<CipherState>();
+
 	// private static boolean tryMore = true;
-	private static SecretKey skey = null;
+	private static volatile Keys keys = null;
+	private static volatile boolean shortKey = false;
 	private static Codec codec = null;
 
 	/**
@@ -71,51 +178,66 @@ public class CryptUtil {
 		File keyFile = new File(dir + System.getProperty("file.separator") + keyFileName);
 
 		boolean newKey = false;
+		byte[] rawkey;
 		try {
-			skey = readKey(keyFile);
+			rawkey = readKey(keyFile);
 		} catch (Exception e) {
-			skey = generateKey(keyFile);
+			rawkey = generateKey(keyFile);
 			newKey = true;
 		}
 
-		if (skey == null)
+		if (rawkey == null)
 			throw new SecurityException("Missing the secret key for message exchange!");
+		keys = new Keys(rawkey);
+		shortKey = rawkey.length < MIN_KEY_LENGTH;
 
 		if (newKey)
 			return "New Key generated. Please copy " + keyFile.getAbsolutePath()
 					+ " to the confadmin folder of all the other instances of sodapop in your ensemble!";
+		else if (shortKey)
+			return "Cryptography utils initialized, but the key in " + keyFile.getAbsolutePath() + " has only "
+					+ rawkey.length * 8 + " bits. Please replace it on all instances by a new key with at least "
+					+ MIN_KEY_LENGTH * 8 + " bits!";
 		else
 			return "Cryptography utils initialized successfully!";
 	}
 
 	/**
-	 * decrypt the parameter string with the shared key read during
-	 * initialization
-	 *
-	 * @param String
-	 *            chiper - the string to decrypt
-	 * @return the decrypted string
-	 *
+	 * @return true, if the shared key is shorter than 128 bits, e.g. a key
+	 *         file created by an older version that contains only a DES key.
+	 *         Such a key limits the strength of the encryption of byte arrays
+	 *         to its own length.
 	 */
-	public static String decrypt(String cipher) throws Exception {
-		return decrypt(cipher, skey);
+	public static boolean hasShortKey() {
+		return shortKey;
 	}
 
 	/**
-	 * decrypt the first parameter string with the shared key received as the
-	 * second parameter
+	 * @return the ciphers of the current thread.
+	 */
+	private static CipherState getState() throws Exception {
+		Keys k = keys;
+		if (k == null)
+			throw new SecurityException("Missing the secret key for message exchange!");
+		CipherState s = states.get();
+		if (s == null || s.keys != k) {
+			s = new CipherState(k);
+			states.set(s);
+		}
+		return s;
+	}
+
+	/**
+	 * decrypt the parameter string with the shared key read during
+	 * initialization
 	 *
 	 * @param String
 	 *            chiper - the string to decrypt
-	 * @param SecretKey
-	 *            skey - the shared key
 	 * @return the decrypted string
 	 *
 	 */
-	private static String decrypt(String cipher, SecretKey skey) throws Exception {
-		Cipher desCipher = Cipher.getInstance(cipherTransformation);
-		desCipher.init(Cipher.DECRYPT_MODE, skey);
-		return new String(desCipher.doFinal(codec.decode(cipher)));
+	public static String decrypt(String cipher) throws Exception {
+		return new String(getState().desDecrypt.doFinal(codec.decode(cipher)), "UTF-8");
 	}
 
 	/**
@@ -128,24 +250,63 @@ public class CryptUtil {
 	 *
 	 */
 	public static String encrypt(String clear) throws Exception {
-		return encrypt(clear, skey);
+		return new String(codec.encode(getState().desEncrypt.doFinal(clear.getBytes("UTF-8"))), "UTF-8");
 	}
 
 	/**
-	 * encrypt the first parameter string with the shared key received as the
-	 * second parameter
+	 * encrypt and authenticate the given bytes with the keys derived from the
+	 * shared key. Unlike {@link #encrypt(String)}, the result is not encoded
+	 * with the codec. Every call uses a new IV.
 	 *
-	 * @param String
-	 *            clear - the string to encrypt
-	 * @param SecretKey
-	 *            skey - the shared key
-	 * @return the encrypted string
+	 * @param clear
+	 *            the bytes to encrypt
+	 * @return the algorithm identifier, the IV, the encrypted bytes and the
+	 *         authentication tag
+	 */
+	public static byte[] encrypt(byte[] clear) throws Exception {
+		CipherState s = getState();
+		int dataLen = 1 + IV_LENGTH + clear.length;
+		byte[] out = new byte[dataLen + TAG_LENGTH];
+		out[0] = AES_CTR_HMAC_SHA256;
+		s.nextIV(out, 1);
+		s.aes.init(Cipher.ENCRYPT_MODE, s.keys.aes, new IvParameterSpec(out, 1, IV_LENGTH));
+		s.aes.doFinal(clear, 0, clear.length, out, 1 + IV_LENGTH);
+		s.mac.update(out, 0, dataLen);
+		System.arraycopy(s.mac.doFinal(), 0, out, dataLen, TAG_LENGTH);
+		return out;
+	}
+
+	/**
+	 * check the authentication tag of the given bytes and decrypt them with the
+	 * keys derived from the shared key
 	 *
+	 * @param cipher
+	 *            the buffer containing the bytes created by
+	 *            {@link #encrypt(byte[])}
+	 * @param off
+	 *            the start of the encrypted bytes in the buffer
+	 * @param len
+	 *            the number of encrypted bytes
+	 * @return the decrypted bytes
+	 * @throws SecurityException
+	 *             if the bytes were not created with the shared key or were
+	 *             modified
 	 */
-	private static String encrypt(String clear, SecretKey skey) throws Exception {
-		Cipher desCipher = Cipher.getInstance(cipherTransformation);
-		desCipher.init(Cipher.ENCRYPT_MODE, skey);
-		return new String(codec.encode(desCipher.doFinal(clear.getBytes())));
+	public static byte[] decrypt(byte[] cipher, int off, int len) throws Exception {
+		if (len < 1 + IV_LENGTH + TAG_LENGTH || cipher[off] != AES_CTR_HMAC_SHA256)
+			throw new SecurityException("Unknown format of the encrypted message");
+		CipherState s = getState();
+		int dataLen = len - TAG_LENGTH;
+		s.mac.update(cipher, off, dataLen);
+		byte[] tag = s.mac.doFinal();
+		// compare in constant time
+		int diff = 0;
+		for (int i = 0; i < TAG_LENGTH; i++)
+			diff |= tag[i] ^ cipher[off + dataLen + i];
+		if (diff != 0)
+			throw new SecurityException("The authentication of the encrypted message failed");
+		s.aes.init(Cipher.DECRYPT_MODE, s.keys.aes, new IvParameterSpec(cipher, off + 1, IV_LENGTH));
+		return s.aes.doFinal(cipher, off + 1 + IV_LENGTH, dataLen - 1 - IV_LENGTH);
 	}
 
 	/**
@@ -153,20 +314,23 @@ public class CryptUtil {
 	 *
 	 * @param File
 	 *            keyFile - the file to write the generated key
-	 * @return SecretKey - the generated key
+	 * @return the raw bytes of the generated key
 	 *
 	 */
-	private static SecretKey generateKey(File keyFile) throws Exception {
+	private static byte[] generateKey(File keyFile) throws Exception {
 		KeyGenerator keyGen = KeyGenerator.getInstance(secretKeyAlgorithm);
-		keyGen.init(SecureRandom.getInstance(randomizationAlgorithm));
+		SecureRandom sr = SecureRandom.getInstance(randomizationAlgorithm);
+		keyGen.init(sr);
 		SecretKey skey = keyGen.generateKey();
 		SecretKeyFactory keyfactory = SecretKeyFactory.getInstance(secretKeyAlgorithm);
 		DESKeySpec keyspec = (DESKeySpec) keyfactory.getKeySpec(skey, DESKeySpec.class);
-		byte[] rawkey = keyspec.getKey();
+		byte[] rawkey = new byte[KEY_FILE_LENGTH];
+		sr.nextBytes(rawkey);
+		System.arraycopy(keyspec.getKey(), 0, rawkey, 0, DESKeySpec.DES_KEY_LEN);
 		FileOutputStream out = new FileOutputStream(keyFile);
 		out.write(rawkey);
 		out.close();
-		return skey;
+		return rawkey;
 	}
 
 	/**
@@ -196,16 +360,16 @@ public class CryptUtil {
 	 *
 	 * @param File
 	 *            keyFile - the file to read the key from
-	 * @return SecretKey - the read key
+	 * @return the raw bytes of the key
 	 *
 	 */
-	private static SecretKey readKey(File keyFile) throws Exception {
+	private static byte[] readKey(File keyFile) throws Exception {
 		DataInputStream in = new DataInputStream(new FileInputStream(keyFile));
 		byte[] rawkey = new byte[(int) keyFile.length()];
 		in.readFully(rawkey);
 		in.close();
-		DESKeySpec keyspec = new DESKeySpec(rawkey);
-		SecretKeyFactory keyfactory = SecretKeyFactory.getInstance(secretKeyAlgorithm);
-		return keyfactory.generateSecret(keyspec);
+		if (rawkey.length < DESKeySpec.DES_KEY_LEN)
+			throw new SecurityException("The key file is too short");
+		return rawkey;
 	}
 }
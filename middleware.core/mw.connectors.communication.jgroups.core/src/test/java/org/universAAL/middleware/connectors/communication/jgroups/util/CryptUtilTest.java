@@ -0,0 +1,138 @@
+package org.universAAL.middleware.connectors.communication.jgroups.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class CryptUtilTest extends TestCase {
+
+	/**
+	 * Hex encoding, CryptUtil accepts only one codec per JVM.
+	 */
+	private static final Codec codec = new Codec() {
+		public byte[] encode(byte[] data) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < data.length; i++)
+				sb.append(Integer.toHexString((data[i] & 0xff) | 0x100).substring(1));
+			return sb.toString().getBytes();
+		}
+
+		public byte[] decode(String data) {
+			byte[] b = new byte[data.length() / 2];
+			for (int i = 0; i < b.length; i++)
+				b[i] = (byte) Integer.parseInt(data.substring(2 * i, 2 * i + 2), 16);
+			return b;
+		}
+	};
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("cryptutil", "");
+		dir.delete();
+		dir.mkdir();
+		CryptUtil.init(dir.getAbsolutePath(), codec);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	private static byte[] range(byte[] b, int from, int to) {
+		byte[] res = new byte[to - from];
+		System.arraycopy(b, from, res, 0, res.length);
+		return res;
+	}
+
+	public void testRoundTrip() throws Exception {
+		assertFalse(CryptUtil.hasShortKey());
+		byte[] clear = "some message".getBytes("UTF-8");
+		byte[] cipher = CryptUtil.encrypt(clear);
+		assertFalse(Arrays.equals(clear, range(cipher, 17, 17 + clear.length)));
+		assertTrue(Arrays.equals(clear, CryptUtil.decrypt(cipher, 0, cipher.length)));
+
+		// in the middle of a buffer
+		byte[] buf = new byte[cipher.length + 10];
+		System.arraycopy(cipher, 0, buf, 5, cipher.length);
+		assertTrue(Arrays.equals(clear, CryptUtil.decrypt(buf, 5, cipher.length)));
+
+		byte[] empty = CryptUtil.encrypt(new byte[0]);
+		assertEquals(0, CryptUtil.decrypt(empty, 0, empty.length).length);
+
+		assertEquals("some message", CryptUtil.decrypt(CryptUtil.encrypt("some message")));
+	}
+
+	public void testFreshIV() throws Exception {
+		byte[] clear = "some message".getBytes("UTF-8");
+		byte[] c1 = CryptUtil.encrypt(clear);
+		byte[] c2 = CryptUtil.encrypt(clear);
+		assertFalse(Arrays.equals(range(c1, 1, 17), range(c2, 1, 17)));
+		assertFalse(Arrays.equals(c1, c2));
+	}
+
+	public void testTampered() throws Exception {
+		byte[] cipher = CryptUtil.encrypt("some message".getBytes("UTF-8"));
+		// the IV, the encrypted bytes and the tag
+		int[] positions = new int[] { 1, 17, cipher.length - 1 };
+		for (int i = 0; i < positions.length; i++) {
+			byte[] tampered = cipher.clone();
+			tampered[positions[i]] ^= 1;
+			try {
+				CryptUtil.decrypt(tampered, 0, tampered.length);
+				fail("tampered byte " + positions[i] + " not detected");
+			} catch (SecurityException e) {
+			}
+		}
+
+		// truncated
+		try {
+			CryptUtil.decrypt(cipher, 0, cipher.length - 1);
+			fail("truncated message not detected");
+		} catch (SecurityException e) {
+		}
+	}
+
+	public void testOtherKey() throws Exception {
+		byte[] cipher = CryptUtil.encrypt("some message".getBytes("UTF-8"));
+		File other = new File(dir, "other");
+		other.mkdir();
+		try {
+			CryptUtil.init(other.getAbsolutePath(), codec);
+			try {
+				CryptUtil.decrypt(cipher, 0, cipher.length);
+				fail("message of another key accepted");
+			} catch (SecurityException e) {
+			}
+		} finally {
+			for (File f : other.listFiles())
+				f.delete();
+			other.delete();
+		}
+	}
+
+	public void testShortKey() throws Exception {
+		// the key file of an older version contains only a DES key
+		File old = new File(dir, "old");
+		old.mkdir();
+		try {
+			FileOutputStream out = new FileOutputStream(new File(old, "sodapop.key"));
+			out.write(new byte[] { 1, 2, 4, 7, 8, 11, 13, 14 });
+			out.close();
+			String msg = CryptUtil.init(old.getAbsolutePath(), codec);
+			assertTrue(CryptUtil.hasShortKey());
+			assertTrue(msg, msg.indexOf("64 bits") > 0);
+			byte[] cipher = CryptUtil.encrypt(new byte[] { 1, 2, 3 });
+			assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, CryptUtil.decrypt(cipher, 0, cipher.length)));
+		} finally {
+			for (File f : old.listFiles())
+				f.delete();
+			old.delete();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.container.utils;
+
+/**
+ * A string that is only created when {@link #toString()} is called for the
+ * first time. It can be passed as part of a log message to {@link LogUtils}
+ * so that expensive strings, like the serialization of a resource, are only
+ * created if the message is really logged.
+ */
+public abstract class DeferredString {
+
+	private volatile String value = null;
+
+	/**
+	 * Create the string. Called the first time {@link #toString()} is called;
+	 * if several threads call {@link #toString()} at the same time, it may be
+	 * called more than once.
+	 *
+	 * @return the string.
+	 */
+	protected abstract String create();
+
+	/**
+	 * @return the string created by {@link #create()}.
+	 */
+	public final String toString() {
+		String s = value;
+		if (s == null) {
+			s = String.valueOf(create());
+			value = s;
+		}
+		return s;
+	}
+}
@@ -33,6 +33,15 @@ import org.universAAL.middleware.container.ModuleContext;
  * Since the log entries are forwarded to <i>custom</i> log listeners, the
  * <code>msgPart</code> should contain only <i>unmodifiable</i> content.
  * </p>
+ * <p>
+ * The elements of <code>msgPart</code> are only converted to strings if the
+ * message is really logged by the container. Expensive parts, like the
+ * serialization of a resource, should therefore be passed as objects whose
+ * <code>toString()</code> creates the string (e.g. a {@link DeferredString})
+ * instead of creating the string before calling this class. If even creating
+ * the parts is expensive, {@link #isLogEnabled(ModuleContext, int)} can be
+ * checked first.
+ * </p>
  *
  * @author mtazari
  * @author Carsten Stockloew
@@ -70,8 +79,59 @@ public class LogUtils {
 		return sb.toString();
 	}
 
+	/**
+	 * Determines if the container-specific logger of the given module is
+	 * enabled for the given level.
+	 *
+	 * @param mc
+	 *            the {@link ModuleContext} of the module
+	 * @param level
+	 *            one of the log levels defined in {@link LogListener}
+	 * @return true, if the container logs messages of this level.
+	 */
+	private static boolean isContainerLogEnabled(ModuleContext mc, int level) {
+		switch (level) {
+		case LogListener.LOG_LEVEL_TRACE:
+			return mc.isLogTraceEnabled();
+		case LogListener.LOG_LEVEL_DEBUG:
+			return mc.isLogDebugEnabled();
+		case LogListener.LOG_LEVEL_INFO:
+			return mc.isLogInfoEnabled();
+		case LogListener.LOG_LEVEL_WARN:
+			return mc.isLogWarnEnabled();
+		default:
+			return mc.isLogErrorEnabled();
+		}
+	}
+
+	/**
+	 * Determines if a message of the given level would be processed, either
+	 * by the container-specific logger or by a registered {@link LogListener}.
+	 * This method can be used to avoid creating expensive log messages that
+	 * would be dropped anyway.
+	 *
+	 * @param mc
+	 *            the {@link ModuleContext} of the module that wants to log
+	 * @param level
+	 *            one of the log levels defined in {@link LogListener}
+	 * @return true, if a message of this level would be processed.
+	 */
+	public static boolean isLogEnabled(ModuleContext mc, int level) {
+		if (mc == null)
+			return false;
+		return isContainerLogEnabled(mc, level) || mc.getContainer().logListeners().hasNext();
+	}
+
 	@edu.umd.cs.findbugs.annotations.SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Private method not called with different parameter.")
 	private static void log(int level, ModuleContext mc, Class<?> claz, String method, Object[] msgPart, Throwable t) {
+		if (mc == null)
+			return;
+
+		boolean containerLog = isContainerLogEnabled(mc, level);
+		Iterator<LogListener> listeners = mc.getContainer().logListeners();
+		if (!containerLog && !listeners.hasNext())
+			return;
+
 		String pkg, cls;
 		if (claz == null)
 			pkg = cls = "null";
@@ -80,10 +140,7 @@ public class LogUtils {
 			cls = claz.getName().substring(pkg.length() + 1);
 		}
 
-		String module;
-		if (mc == null)
-			module = "null";
-		else {
+		if (containerLog) {
 			switch (level) {
 			case LogListener.LOG_LEVEL_TRACE:
 				mc.logTrace(buildTag(cls, method), buildMsg(msgPart), t);
@@ -101,15 +158,15 @@ public class LogUtils {
 				mc.logError(buildTag(cls, method), buildMsg(msgPart), t);
 				break;
 			}
-			module = mc.getID();
-
-			for (Iterator<LogListener> i = mc.getContainer().logListeners(); i.hasNext();)
-				try {
-					i.next().log(level, module, pkg, cls, method, msgPart, t);
-				} catch (Exception e) {
-					mc.logDebug(buildTag("LogUtils", "log"), "One of the LogListeners has thrown an exception.", e);
-				}
 		}
+
+		String module = mc.getID();
+		while (listeners.hasNext())
+			try {
+				listeners.next().log(level, module, pkg, cls, method, msgPart, t);
+			} catch (Exception e) {
+				mc.logDebug(buildTag("LogUtils", "log"), "One of the LogListeners has thrown an exception.", e);
+			}
 	}
 
 	/**
@@ -21,6 +21,7 @@ package org.universAAL.middleware.container.utils;
 
 import java.net.InetAddress;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A set of utility methods for Strings.
@@ -32,7 +33,7 @@ import java.util.Random;
 public class StringUtils {
 
 	/** Internal counter for creating unique IDs. */
-	private static int counter = 0;
+	private static final AtomicInteger counter = new AtomicInteger();
 
 	/** The prefix for creating unique IDs. */
 	private static final String UUID_prefix;
@@ -59,7 +60,7 @@ public class StringUtils {
 
 	/** Create a unique ID. */
 	public static String createUniqueID() {
-		return UUID_prefix + Integer.toHexString(counter++);
+		return UUID_prefix + Integer.toHexString(counter.getAndIncrement());
 	}
 
 	/**
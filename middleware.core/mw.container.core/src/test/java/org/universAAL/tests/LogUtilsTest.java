@@ -0,0 +1,117 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.container.Container;
+import org.universAAL.middleware.container.LogListener;
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.DeferredString;
+import org.universAAL.middleware.container.utils.LogUtils;
+
+/**
+ * Checks that {@link LogUtils} does not create log messages that are not
+ * logged.
+ */
+public class LogUtilsTest extends TestCase {
+
+	private int created;
+	private List<String> logged = new ArrayList<String>();
+	private List<LogListener> listeners = new ArrayList<LogListener>();
+
+	private DeferredString part = new DeferredString() {
+		protected String create() {
+			created++;
+			return "expensive";
+		}
+	};
+
+	/**
+	 * Creates a module context that only logs messages of level INFO and
+	 * above.
+	 */
+	private ModuleContext createContext() {
+		final Container container = (Container) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { Container.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if ("logListeners".equals(method.getName()))
+							return listeners.iterator();
+						return null;
+					}
+				});
+		return (ModuleContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { ModuleContext.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if ("getContainer".equals(name))
+							return container;
+						if ("getID".equals(name))
+							return "test";
+						if (name.startsWith("isLog"))
+							return Boolean.valueOf(!name.equals("isLogDebugEnabled") && !name.equals("isLogTraceEnabled"));
+						if (name.startsWith("log"))
+							logged.add((String) args[1]);
+						return null;
+					}
+				});
+	}
+
+	public void testDisabledLevel() {
+		ModuleContext mc = createContext();
+		assertFalse(LogUtils.isLogEnabled(mc, LogListener.LOG_LEVEL_DEBUG));
+		LogUtils.logDebug(mc, LogUtilsTest.class, "testDisabledLevel", new Object[] { "a ", part, " message" }, null);
+		assertEquals(0, created);
+		assertTrue(logged.isEmpty());
+	}
+
+	public void testEnabledLevel() {
+		ModuleContext mc = createContext();
+		assertTrue(LogUtils.isLogEnabled(mc, LogListener.LOG_LEVEL_INFO));
+		LogUtils.logInfo(mc, LogUtilsTest.class, "testEnabledLevel", new Object[] { "a ", part, " message" }, null);
+		LogUtils.logInfo(mc, LogUtilsTest.class, "testEnabledLevel", new Object[] { part }, null);
+		assertEquals(1, created);
+		assertEquals(2, logged.size());
+		assertEquals("a expensive message", logged.get(0));
+	}
+
+	public void testLogListener() {
+		final List<Object[]> received = new ArrayList<Object[]>();
+		listeners.add(new LogListener() {
+			public void log(int logLevel, String module, String pkg, String cls, String method, Object[] msgPart,
+					Throwable t) {
+				received.add(msgPart);
+			}
+		});
+		ModuleContext mc = createContext();
+		// the level is disabled in the container, but there is a listener
+		assertTrue(LogUtils.isLogEnabled(mc, LogListener.LOG_LEVEL_DEBUG));
+		LogUtils.logDebug(mc, LogUtilsTest.class, "testLogListener", new Object[] { part }, null);
+		assertTrue(logged.isEmpty());
+		assertEquals(1, received.size());
+		assertEquals(0, created);
+	}
+}
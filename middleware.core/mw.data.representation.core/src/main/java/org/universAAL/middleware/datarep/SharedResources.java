@@ -21,6 +21,8 @@ package org.universAAL.middleware.datarep;
 
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.universAAL.middleware.container.Container;
 import org.universAAL.middleware.container.ModuleContext;
@@ -52,7 +54,8 @@ public final class SharedResources {
 	 */
 	public static final String IS_DEBUG_MODE = "org.universAAL.middleware.debugMode";
 
-	private static final Dictionary middlewareProps = new Hashtable(4);
+	// read for every message (e.g. debug mode), so it must not be locked
+	private static final Map middlewareProps = new ConcurrentHashMap(4);
 	private static final Dictionary helpOnMiddlewareProps = new Hashtable(4);
 	public static ModuleContext moduleContext;
 
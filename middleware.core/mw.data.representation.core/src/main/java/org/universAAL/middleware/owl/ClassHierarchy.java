@@ -0,0 +1,195 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.owl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The transitive closure of the named sub class relationships of all
+ * registered classes. For every class, the sets of all its (inherited) sub
+ * classes and super classes are stored, so that sub class tests and queries do
+ * not need to walk the class hierarchy.
+ * <p>
+ * The closure is updated for every added or removed relationship; only the
+ * classes below and above the changed relationship are touched. The stored
+ * sets are never modified after they are published, so they can be read
+ * without locking and returned to callers. Modifications have to be
+ * synchronized by the caller.
+ *
+ * @see OntologyManagement
+ */
+final class ClassHierarchy {
+
+	/** Direct super classes, maps class URI to super class URIs. */
+	private final Map<String, Set<String>> directSuperClasses = new HashMap<String, Set<String>>();
+
+	/** Direct sub classes, maps class URI to sub class URIs. */
+	private final Map<String, Set<String>> directSubClasses = new HashMap<String, Set<String>>();
+
+	/** All super classes, maps class URI to an unmodifiable set of URIs. */
+	private final Map<String, Set<String>> superClasses = new ConcurrentHashMap<String, Set<String>>();
+
+	/** All sub classes, maps class URI to an unmodifiable set of URIs. */
+	private final Map<String, Set<String>> subClasses = new ConcurrentHashMap<String, Set<String>>();
+
+	/**
+	 * Add a named sub class relationship.
+	 *
+	 * @param subClassURI
+	 *            URI of the sub class.
+	 * @param superClassURI
+	 *            URI of the super class.
+	 */
+	void add(String subClassURI, String superClassURI) {
+		Set<String> above = including(superClassURI, getSuperClasses(superClassURI));
+		if (above.contains(subClassURI))
+			// this would create a cycle, the relationship is ignored
+			return;
+		link(directSuperClasses, subClassURI, superClassURI);
+		link(directSubClasses, superClassURI, subClassURI);
+
+		Set<String> below = including(subClassURI, getSubClasses(subClassURI));
+
+		for (String uri : below)
+			superClasses.put(uri, union(getSuperClasses(uri), above));
+		for (String uri : above)
+			subClasses.put(uri, union(getSubClasses(uri), below));
+	}
+
+	/**
+	 * Remove a named sub class relationship.
+	 *
+	 * @param subClassURI
+	 *            URI of the sub class.
+	 * @param superClassURI
+	 *            URI of the super class.
+	 */
+	void remove(String subClassURI, String superClassURI) {
+		unlink(directSuperClasses, subClassURI, superClassURI);
+		unlink(directSubClasses, superClassURI, subClassURI);
+
+		// only the classes that were below or above the relationship change
+		Set<String> below = including(subClassURI, getSubClasses(subClassURI));
+		Set<String> above = including(superClassURI, getSuperClasses(superClassURI));
+
+		for (String uri : below)
+			publish(superClasses, uri, reachable(uri, directSuperClasses));
+		for (String uri : above)
+			publish(subClasses, uri, reachable(uri, directSubClasses));
+	}
+
+	/**
+	 * Determine whether a class is a direct or inherited sub class of another
+	 * class.
+	 *
+	 * @param subClassURI
+	 *            URI of the sub class.
+	 * @param superClassURI
+	 *            URI of the super class.
+	 * @return true, iff the relationship exists.
+	 */
+	boolean isSubClass(String subClassURI, String superClassURI) {
+		Set<String> s = superClasses.get(subClassURI);
+		return s != null && s.contains(superClassURI);
+	}
+
+	/**
+	 * Get all direct and inherited sub classes of a class.
+	 *
+	 * @return an unmodifiable set of URIs, never null.
+	 */
+	Set<String> getSubClasses(String classURI) {
+		Set<String> s = subClasses.get(classURI);
+		return s == null ? Collections.<String> emptySet() : s;
+	}
+
+	/**
+	 * Get all direct and inherited super classes of a class.
+	 *
+	 * @return an unmodifiable set of URIs, never null.
+	 */
+	Set<String> getSuperClasses(String classURI) {
+		Set<String> s = superClasses.get(classURI);
+		return s == null ? Collections.<String> emptySet() : s;
+	}
+
+	private static void link(Map<String, Set<String>> edges, String from, String to) {
+		Set<String> s = edges.get(from);
+		if (s == null) {
+			s = new HashSet<String>();
+			edges.put(from, s);
+		}
+		s.add(to);
+	}
+
+	private static void unlink(Map<String, Set<String>> edges, String from, String to) {
+		Set<String> s = edges.get(from);
+		if (s != null) {
+			s.remove(to);
+			if (s.isEmpty())
+				edges.remove(from);
+		}
+	}
+
+	private static Set<String> including(String uri, Set<String> set) {
+		Set<String> result = new HashSet<String>(set);
+		result.add(uri);
+		return result;
+	}
+
+	private static Set<String> union(Set<String> a, Set<String> b) {
+		Set<String> result = new HashSet<String>(a);
+		result.addAll(b);
+		return Collections.unmodifiableSet(result);
+	}
+
+	private static void publish(Map<String, Set<String>> closure, String uri, Set<String> set) {
+		if (set.isEmpty())
+			closure.remove(uri);
+		else
+			closure.put(uri, Collections.unmodifiableSet(set));
+	}
+
+	/**
+	 * Collect all classes reachable from the given class, excluding the class
+	 * itself.
+	 */
+	private static Set<String> reachable(String uri, Map<String, Set<String>> edges) {
+		Set<String> result = new HashSet<String>();
+		List<String> open = new ArrayList<String>();
+		open.add(uri);
+		while (!open.isEmpty()) {
+			Set<String> next = edges.get(open.remove(open.size() - 1));
+			if (next == null)
+				continue;
+			for (String s : next)
+				if (!s.equals(uri) && result.add(s))
+					open.add(s);
+		}
+		return result;
+	}
+}
@@ -907,9 +907,9 @@ public final class MergedRestriction extends Intersection {
 	 */
 	public MergedRestriction copyOnNewProperty(String onProp) {
 		MergedRestriction r = (MergedRestriction) copy();
-		for (Iterator<TypeExpression> i = types.iterator(); i.hasNext();)
-			((Resource) i.next()).setProperty(PropertyRestriction.PROP_OWL_ON_PROPERTY, onProp);
-		onProperty = onProp;
+		for (Iterator<TypeExpression> i = r.types.iterator(); i.hasNext();)
+			((PropertyRestriction) i.next()).replaceOnProperty(onProp);
+		r.onProperty = onProp;
 		return r;
 	}
 
@@ -20,11 +20,17 @@
 package org.universAAL.middleware.owl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.universAAL.middleware.container.ModuleContext;
 import org.universAAL.middleware.container.utils.LogUtils;
@@ -73,6 +79,12 @@ import org.universAAL.middleware.util.OntologyListener;
  * in only one ontology.
  * </p>
  * <p>
+ * Registering an ontology only processes the classes of that ontology; the
+ * registry itself can be read concurrently without locking. A set of
+ * ontologies can be registered at once with
+ * {@link #register(ModuleContext, Ontology[])}.
+ * </p>
+ * <p>
  * {@link OntologyManagement} implements the <i>Singleton</i> design pattern. To
  * get an instance of this class and be able to call the methods, call
  * {@link #getInstance()}.
@@ -87,11 +99,22 @@ public final class OntologyManagement {
 	 */
 	private static OntologyManagement instance = new OntologyManagement();
 
+	/**
+	 * Lock for all modifications of the registry. Readers do not lock, they
+	 * only access the concurrent maps below.
+	 */
+	private final Object registryLock = new Object();
+
+	/**
+	 * Lock for modifications of the list of pending ontologies.
+	 */
+	private final Object pendingLock = new Object();
+
 	/**
 	 * The set of registered ontologies. It maps the URI of the ontology to an
 	 * instance of {@link Ontology}.
 	 */
-	private volatile HashMap<String, Ontology> ontologies = new HashMap<String, Ontology>();
+	private final Map<String, Ontology> ontologies = new ConcurrentHashMap<String, Ontology>();
 
 	/**
 	 * The set of OWL classes that are defined in the registered ontologies. It
@@ -99,7 +122,7 @@ public final class OntologyManagement {
 	 *
 	 * @see #rdfClassInfoMap
 	 */
-	private volatile HashMap<String, OntClassInfo> ontClassInfoMap = new HashMap<String, OntClassInfo>();
+	private final Map<String, OntClassInfo> ontClassInfoMap = new ConcurrentHashMap<String, OntClassInfo>();
 
 	/**
 	 * The set of RDF classes that are defined in the registered ontologies. It
@@ -107,13 +130,32 @@ public final class OntologyManagement {
 	 *
 	 * @see #ontClassInfoMap
 	 */
-	private volatile HashMap<String, RDFClassInfo> rdfClassInfoMap = new HashMap<String, RDFClassInfo>();
+	private final ConcurrentHashMap<String, RDFClassInfo> rdfClassInfoMap = new ConcurrentHashMap<String, RDFClassInfo>();
 
 	/**
 	 * Repository of sub class relationships. It maps the URI of the super class
 	 * to a list of URIs of all known sub classes.
 	 */
-	private Hashtable<String, ArrayList<String>> namedSubClasses = new Hashtable<String, ArrayList<String>>();
+	private final Map<String, List<String>> namedSubClasses = new ConcurrentHashMap<String, List<String>>();
+
+	/**
+	 * Number of registered {@link OntClassInfo OntClassInfos} that define a
+	 * sub class relationship, the key is the URI of the super class and the
+	 * URI of the sub class separated by a space. Guarded by
+	 * {@link #registryLock}.
+	 */
+	private HashMap<String, Integer> subClassDefinitions = new HashMap<String, Integer>();
+
+	/**
+	 * The transitive closure of {@link #namedSubClasses}.
+	 */
+	private final ClassHierarchy hierarchy = new ClassHierarchy();
+
+	/**
+	 * Cache of all non-abstract sub classes of a class. It is replaced by an
+	 * empty map whenever the set of registered classes changes.
+	 */
+	private volatile Map<String, Set<String>> concreteSubClasses = new ConcurrentHashMap<String, Set<String>>();
 
 	/**
 	 * The set of pending ontologies. When an ontology is registered, it's
@@ -134,7 +176,14 @@ public final class OntologyManagement {
 	 * {@link #getNamedResource(String)} with the URI of the instance.
 	 */
 	// maps URI (of instance) to Resource
-	private volatile HashMap<String, Resource> namedResources = new HashMap<String, Resource>();
+	private final Map<String, Resource> namedResources = new ConcurrentHashMap<String, Resource>();
+
+	/**
+	 * Number of registered {@link OntClassInfo OntClassInfos} that define a
+	 * named instance, the key is the URI of the instance. Guarded by
+	 * {@link #registryLock}.
+	 */
+	private HashMap<String, Integer> instanceDefinitions = new HashMap<String, Integer>();
 
 	// for debugging: store for each Java .class name the URI of the class
 	// maps Java class name -> URI
@@ -167,7 +216,7 @@ public final class OntologyManagement {
 	 * Repository of all factories. It maps the URI of an {@link OntClassInfo}
 	 * to a {@link FactoryEntry}.
 	 */
-	private volatile HashMap<String, FactoryEntry> factories = new HashMap<String, FactoryEntry>();
+	private final Map<String, FactoryEntry> factories = new ConcurrentHashMap<String, FactoryEntry>();
 
 	/**
 	 * Internal security check:
@@ -193,17 +242,39 @@ public final class OntologyManagement {
 	}
 
 	/**
-	 * Remove an ontology from the list of <i>pending</i> ontologies.
+	 * Add ontologies to the list of <i>pending</i> ontologies.
 	 *
-	 * @param ont
-	 *            The ontology to remove.
-	 */
-	private void removePendingOntology(Ontology ont) {
-		synchronized (pendingOntologies) {
-			ArrayList newPendingOntologies = new ArrayList(pendingOntologies.size() - 1);
-			for (int i = 0; i < pendingOntologies.size(); i++) {
-				Object o = pendingOntologies.get(i);
-				if (o != ont)
+	 * @param onts
+	 *            The ontologies to add.
+	 */
+	private void addPendingOntologies(List<Ontology> onts) {
+		synchronized (pendingLock) {
+			ArrayList<Ontology> newPendingOntologies = new ArrayList<Ontology>(
+					pendingOntologies.size() + onts.size());
+			newPendingOntologies.addAll(pendingOntologies);
+			newPendingOntologies.addAll(onts);
+			pendingOntologies = newPendingOntologies;
+		}
+	}
+
+	/**
+	 * Remove ontologies from the list of <i>pending</i> ontologies.
+	 *
+	 * @param onts
+	 *            The ontologies to remove.
+	 */
+	private void removePendingOntologies(List<Ontology> onts) {
+		synchronized (pendingLock) {
+			ArrayList<Ontology> newPendingOntologies = new ArrayList<Ontology>(pendingOntologies.size());
+			for (Ontology o : pendingOntologies) {
+				boolean removed = false;
+				for (Ontology ont : onts) {
+					if (o == ont) {
+						removed = true;
+						break;
+					}
+				}
+				if (!removed)
 					newPendingOntologies.add(o);
 			}
 			pendingOntologies = newPendingOntologies;
@@ -227,54 +298,127 @@ public final class OntologyManagement {
 	public boolean register(ModuleContext mc, Ontology ont) {
 		// System.out.println(" - Register Ont: " + ont.getInfo().getURI());
 		// add to pending
-		synchronized (pendingOntologies) {
-			ArrayList newPendingOntologies = new ArrayList(pendingOntologies.size() + 1);
-			newPendingOntologies.addAll(pendingOntologies);
-			newPendingOntologies.add(ont);
-			pendingOntologies = newPendingOntologies;
-		}
+		List<Ontology> batch = Collections.singletonList(ont);
+		addPendingOntologies(batch);
 
 		// create and lock the ontology
 		ont.create();
 		ont.lock();
 
 		// add ontology to set of ontologies
-		synchronized (ontologies) {
+		List<Ontology> added;
+		synchronized (registryLock) {
+			added = add(mc, batch);
+		}
+
+		// remove from pending
+		removePendingOntologies(batch);
+
+		if (added.isEmpty())
+			return false;
+
+		notifyAdded(added);
+
+		// System.out.println(" - Register Ont END: " + ont.getInfo().getURI());
+		return true;
+	}
+
+	/**
+	 * Register a set of new ontologies. All ontologies are <i>pending</i> while
+	 * any of them is created, so they can refer to each other, and they are
+	 * added to the set of registered ontologies together. This is cheaper than
+	 * registering them one by one, e.g. when a container loads all ontologies
+	 * it finds.
+	 *
+	 * @param onts
+	 *            the ontologies.
+	 * @return for each ontology, false if it is already available or could not
+	 *         be created.
+	 */
+	public boolean[] register(ModuleContext mc, Ontology[] onts) {
+		List<Ontology> batch = Arrays.asList(onts);
+		addPendingOntologies(batch);
+
+		// create and lock the ontologies
+		List<Ontology> created = new ArrayList<Ontology>(onts.length);
+		for (Ontology ont : onts) {
+			try {
+				ont.create();
+				ont.lock();
+				created.add(ont);
+			} catch (RuntimeException e) {
+				LogUtils.logError(SharedResources.moduleContext, OntologyManagement.class, "register",
+						new Object[] { "The ontology ", ont.getInfo() == null ? null : ont.getInfo().getURI(),
+								" could not be created." },
+						e);
+			}
+		}
+
+		// add ontologies to set of ontologies
+		List<Ontology> added;
+		synchronized (registryLock) {
+			added = add(mc, created);
+		}
+
+		// remove from pending
+		removePendingOntologies(batch);
+
+		notifyAdded(added);
+
+		IdentityHashMap<Ontology, Ontology> addedSet = new IdentityHashMap<Ontology, Ontology>();
+		for (Ontology ont : added)
+			addedSet.put(ont, ont);
+		boolean[] result = new boolean[onts.length];
+		for (int i = 0; i < onts.length; i++)
+			result[i] = addedSet.containsKey(onts[i]);
+		return result;
+	}
+
+	private void notifyAdded(List<Ontology> added) {
+		synchronized (listeners) {
+			for (Ontology ont : added)
+				for (OntologyListener l : listeners)
+					l.ontologyAdded(ont.getInfo().getURI());
+		}
+	}
+
+	/**
+	 * Add created ontologies to the registry. The classes and instances of all
+	 * ontologies are added before any of the ontologies is made available with
+	 * {@link #getOntology(String)}. Must be called with {@link #registryLock}.
+	 *
+	 * @param onts
+	 *            the ontologies.
+	 * @return the ontologies that were added, i.e. were not already registered.
+	 */
+	private List<Ontology> add(ModuleContext mc, List<Ontology> onts) {
+		List<Ontology> added = new ArrayList<Ontology>(onts.size());
+		HashSet<String> uris = new HashSet<String>();
+		for (Ontology ont : onts) {
 			// don't add if already existing
-			if (ontologies.containsKey(ont.getInfo().getURI())) {
-				removePendingOntology(ont);
+			String uri = ont.getInfo().getURI();
+			if (ontologies.containsKey(uri) || !uris.add(uri)) {
 				LogUtils.logError(SharedResources.moduleContext, OntologyManagement.class, "register",
-						new Object[] { "The ontology ", ont.getInfo().getURI(),
+						new Object[] { "The ontology ", uri,
 								" is already registered; it can not be registered a second time." },
 						null);
-				return false;
+				continue;
 			}
 
 			// add new ontology
 			LogUtils.logDebug(SharedResources.moduleContext, OntologyManagement.class, "register",
-					new Object[] { "Registering ontology: ", ont.getInfo().getURI(), " (classes: ",
+					new Object[] { "Registering ontology: ", uri, " (classes: ",
 							ont.getOntClassInfo().length + ont.getRDFClassInfo().length, ")" },
 					null);
 
 			// make some sanity tests
 			OntologyTest.testOntology(ont);
+			added.add(ont);
+		}
 
-			// copy all existing ontologies to temp
-			OntClassInfo[] ontClassInfos = ont.getOntClassInfo();
-
-			HashMap<String, Ontology> tempOntologies = new HashMap<String, Ontology>(ontologies.size() + 1);
-			HashMap<String, OntClassInfo> tempOntClassInfoMap = new HashMap<String, OntClassInfo>(
-					ontClassInfoMap.size() + ontClassInfos.length);
-			HashMap tempNamedResources = new HashMap();
-			HashMap<String, FactoryEntry> tempFactories = new HashMap<String, FactoryEntry>();
-
-			tempOntologies.putAll(ontologies);
-			tempOntologies.put(ont.getInfo().getURI(), ont);
-			tempNamedResources.putAll(namedResources);
-			tempOntClassInfoMap.putAll(ontClassInfoMap);
-			tempFactories.putAll(factories);
-
+		for (Ontology ont : added) {
 			// process ontology classes
+			OntClassInfo[] ontClassInfos = ont.getOntClassInfo();
 			if (ontClassInfos != null) {
 				for (int i = 0; i < ontClassInfos.length; i++) {
 					OntClassInfo info = ontClassInfos[i];
@@ -282,31 +426,20 @@ public final class OntologyManagement {
 					// make some sanity tests
 					OntologyTest.testClass(ont, info, dbgClass);
 
-					// add ontology class
-					OntClassInfo combined = (OntClassInfo) ontClassInfoMap.get(info.getURI());
-					if (combined == null) {
-						// combined version does not yet exist, add simple
-						// cloned one
-						OntClassInfo.ManagementOperation mgmtop = getManagementOperation(info);
-						tempOntClassInfoMap.put(info.getURI(), mgmtop.getClone());
-					} else {
-						// combined version exists: add extender
-						OntClassInfo.ManagementOperation mgmtop = getManagementOperation(combined);
-						mgmtop.addExtender(info);
-					}
-
 					// add named instances of this ontology class
 					Resource[] instances = info.getInstances();
-					for (int j = 0; j < instances.length; j++)
-						tempNamedResources.put(instances[j].getURI(), instances[j]);
+					for (int j = 0; j < instances.length; j++) {
+						namedResources.put(instances[j].getURI(), instances[j]);
+						count(instanceDefinitions, instances[j].getURI(), 1);
+					}
 
 					// add factories
 					if (info.getFactory() != null)
-						tempFactories.put(info.getURI(), new FactoryEntry(info.getFactory(), info.getFactoryIndex()));
+						factories.put(info.getURI(), new FactoryEntry(info.getFactory(), info.getFactoryIndex()));
 
 					// process namedSuperClasses -> put in namedSubClasses
 					String namedSuperClasses[] = info.getNamedSuperClasses(false, true);
-					addNamedSubClasses(info.getURI(), namedSuperClasses, namedSubClasses);
+					addNamedSubClasses(info.getURI(), namedSuperClasses);
 				}
 			}
 
@@ -319,25 +452,43 @@ public final class OntologyManagement {
 					// add named instances of this ontology class
 					Resource[] instances = info.getInstances();
 					for (int j = 0; j < instances.length; j++)
-						tempNamedResources.put(instances[j].getURI(), instances[j]);
+						namedResources.put(instances[j].getURI(), instances[j]);
 
 					// add factories
 					if (info.getFactory() != null)
-						tempFactories.put(info.getURI(), new FactoryEntry(info.getFactory(), info.getFactoryIndex()));
+						factories.put(info.getURI(), new FactoryEntry(info.getFactory(), info.getFactoryIndex()));
 
 					// add rdf classes
-					if (!rdfClassInfoMap.containsKey(info.getURI()))
-						rdfClassInfoMap.put(info.getURI(), info);
+					rdfClassInfoMap.putIfAbsent(info.getURI(), info);
 				}
 			}
+		}
 
-			// set temp as new set of ontologies
-			ontologies = tempOntologies;
-			ontClassInfoMap = tempOntClassInfoMap;
-			namedResources = tempNamedResources;
-			factories = tempFactories;
+		for (Ontology ont : added) {
+			OntClassInfo[] ontClassInfos = ont.getOntClassInfo();
+			if (ontClassInfos == null)
+				continue;
+			for (int i = 0; i < ontClassInfos.length; i++) {
+				OntClassInfo info = ontClassInfos[i];
+
+				// add ontology class
+				OntClassInfo combined = ontClassInfoMap.get(info.getURI());
+				if (combined == null) {
+					// combined version does not yet exist, add simple
+					// cloned one
+					OntClassInfo.ManagementOperation mgmtop = getManagementOperation(info);
+					ontClassInfoMap.put(info.getURI(), mgmtop.getClone());
+				} else {
+					// combined version exists: add extender
+					OntClassInfo.ManagementOperation mgmtop = getManagementOperation(combined);
+					mgmtop.addExtender(info);
+				}
+			}
+		}
 
+		for (Ontology ont : added) {
 			// some last tests
+			OntClassInfo[] ontClassInfos = ont.getOntClassInfo();
 			if (ontClassInfos != null) {
 				for (int i = 0; i < ontClassInfos.length; i++) {
 					OntClassInfo info = ontClassInfos[i];
@@ -346,33 +497,57 @@ public final class OntologyManagement {
 				}
 			}
 
+			ontologies.put(ont.getInfo().getURI(), ont);
 			registeringModule.put(ont.getInfo().getURI(), mc);
 		}
+		if (!added.isEmpty())
+			concreteSubClasses = new ConcurrentHashMap<String, Set<String>>();
+		return added;
+	}
 
-		// remove from pending
-		removePendingOntology(ont);
-
-		synchronized (listeners) {
-			for (OntologyListener l : listeners)
-				l.ontologyAdded(ont.getInfo().getURI());
-		}
-
-		// System.out.println(" - Register Ont END: " + ont.getInfo().getURI());
-		return true;
+	/**
+	 * Change the number of definitions of a key.
+	 *
+	 * @return the new number of definitions.
+	 */
+	private static int count(HashMap<String, Integer> definitions, String key, int delta) {
+		Integer old = definitions.get(key);
+		int count = (old == null ? 0 : old.intValue()) + delta;
+		if (count > 0)
+			definitions.put(key, Integer.valueOf(count));
+		else
+			definitions.remove(key);
+		return count;
 	}
 
-	private void addNamedSubClasses(String classURI, String namedSuperClasses[],
-			Hashtable<String, ArrayList<String>> namedSubClasses) {
+	private void addNamedSubClasses(String classURI, String namedSuperClasses[]) {
 		for (int j = 0; j < namedSuperClasses.length; j++) {
-			ArrayList namedSubClassesList = (ArrayList) namedSubClasses.get(namedSuperClasses[j]);
+			if (count(subClassDefinitions, namedSuperClasses[j] + " " + classURI, 1) == 1)
+				hierarchy.add(classURI, namedSuperClasses[j]);
+			List<String> namedSubClassesList = namedSubClasses.get(namedSuperClasses[j]);
 
-			if (namedSubClassesList == null)
-				namedSubClassesList = new ArrayList();
+			if (namedSubClassesList == null) {
+				namedSubClassesList = new CopyOnWriteArrayList<String>();
+				namedSubClasses.put(namedSuperClasses[j], namedSubClassesList);
+			}
 
 			if (!namedSubClassesList.contains(classURI))
 				namedSubClassesList.add(classURI);
+		}
+	}
 
-			namedSubClasses.put(namedSuperClasses[j], namedSubClassesList);
+	private void removeNamedSubClasses(String classURI, String namedSuperClasses[]) {
+		for (int j = 0; j < namedSuperClasses.length; j++) {
+			// the relationship may also be defined by another ontology
+			if (count(subClassDefinitions, namedSuperClasses[j] + " " + classURI, -1) > 0)
+				continue;
+			hierarchy.remove(classURI, namedSuperClasses[j]);
+			List<String> namedSubClassesList = namedSubClasses.get(namedSuperClasses[j]);
+			if (namedSubClassesList == null)
+				continue;
+			namedSubClassesList.remove(classURI);
+			if (namedSubClassesList.isEmpty())
+				namedSubClasses.remove(namedSuperClasses[j]);
 		}
 	}
 
@@ -475,15 +650,38 @@ public final class OntologyManagement {
 	 *            considered.
 	 * @param includeAbstractClasses
 	 *            true, iff abstract classes should be included.
-	 * @return The set of URIs of all sub classes.
+	 * @return The set of URIs of all sub classes. For inherited sub classes,
+	 *         this is a shared set that must not be modified.
 	 */
 	public Set<String> getNamedSubClasses(String superClassURI, boolean inherited, boolean includeAbstractClasses) {
+		if (superClassURI == null)
+			return new HashSet<String>();
+
+		if (inherited) {
+			if (includeAbstractClasses)
+				return hierarchy.getSubClasses(superClassURI);
+
+			Map<String, Set<String>> cache = concreteSubClasses;
+			Set<String> retval = cache.get(superClassURI);
+			if (retval == null) {
+				// add only non-abstract sub classes
+				HashSet<String> concrete = new HashSet<String>();
+				for (String subClassURI : hierarchy.getSubClasses(superClassURI)) {
+					OntClassInfo info = getOntClassInfo(subClassURI);
+					if (info != null && !info.isAbstract())
+						concrete.add(subClassURI);
+				}
+				retval = Collections.unmodifiableSet(concrete);
+				cache.put(superClassURI, retval);
+			}
+			return retval;
+		}
 
 		HashSet retval = new HashSet();
-		ArrayList namedSubClassesList = (ArrayList) namedSubClasses.get(superClassURI);
+		List<String> namedSubClassesList = namedSubClasses.get(superClassURI);
 
 		if (namedSubClassesList == null)
-			namedSubClassesList = new ArrayList();
+			namedSubClassesList = Collections.emptyList();
 
 		if (includeAbstractClasses)
 			retval.addAll(namedSubClassesList);
@@ -499,18 +697,27 @@ public final class OntologyManagement {
 			}
 		}
 
-		if (inherited) {
-			// add child sub classes
-			Iterator it = namedSubClassesList.iterator();
-			while (it.hasNext()) {
-				String subClassURI = (String) it.next();
-				retval.addAll(getNamedSubClasses(subClassURI, inherited, includeAbstractClasses));
-			}
-		}
-
 		return retval;
 	}
 
+	/**
+	 * Determines whether a class is a <i>direct</i> or inherited sub class of
+	 * another class, according to the named super classes of all registered
+	 * OWL classes.
+	 *
+	 * @param subClassURI
+	 *            URI of the sub class.
+	 * @param superClassURI
+	 *            URI of the super class.
+	 * @return true, iff the first class is a sub class of the second class.
+	 *         False, if both URIs are equal.
+	 */
+	public boolean isSubClassOf(String subClassURI, String superClassURI) {
+		if (subClassURI == null || superClassURI == null)
+			return false;
+		return hierarchy.isSubClass(subClassURI, superClassURI);
+	}
+
 	/**
 	 * Unregister an ontology.
 	 *
@@ -528,7 +735,7 @@ public final class OntologyManagement {
 		}
 
 		// remove ontology from set of ontologies
-		synchronized (ontologies) {
+		synchronized (registryLock) {
 			// don't remove if not existing
 			if (!ontologies.containsKey(ont.getInfo().getURI())) {
 				LogUtils.logError(SharedResources.moduleContext, OntologyManagement.class, "unregister",
@@ -544,23 +751,10 @@ public final class OntologyManagement {
 							ont.getOntClassInfo().length + ont.getRDFClassInfo().length, ")" },
 					null);
 
-			// copy all existing ontologies to temp
-			OntClassInfo[] ontClassInfos = ont.getOntClassInfo();
-
-			HashMap<String, Ontology> tempOntologies = new HashMap<String, Ontology>(ontologies.size());
-			HashMap<String, OntClassInfo> tempOntClassInfoMap = new HashMap<String, OntClassInfo>(
-					ontClassInfoMap.size());
-			HashMap tempNamedResources = new HashMap();
-			HashMap<String, FactoryEntry> tempFactories = new HashMap<String, FactoryEntry>();
-			Hashtable<String, ArrayList<String>> tempNamedSubClasses = new Hashtable<String, ArrayList<String>>();
-
-			tempOntologies.putAll(ontologies);
-			tempOntologies.remove(ont.getInfo().getURI());
-			tempNamedResources.putAll(namedResources);
-			tempOntClassInfoMap.putAll(ontClassInfoMap);
-			tempFactories.putAll(factories);
+			ontologies.remove(ont.getInfo().getURI());
 
 			// process ontology classes
+			OntClassInfo[] ontClassInfos = ont.getOntClassInfo();
 			if (ontClassInfos != null) {
 				for (int i = 0; i < ontClassInfos.length; i++) {
 					OntClassInfo info = ontClassInfos[i];
@@ -582,29 +776,25 @@ public final class OntologyManagement {
 
 					if (mgmtop.getNumberOfExtenders() == 0) {
 						// no extenders left: remove this combined class
-						tempOntClassInfoMap.remove(combined.getURI());
+						ontClassInfoMap.remove(combined.getURI());
 					}
 
 					// remove named instances of this ontology class
 					Resource[] instances = info.getInstances();
-					removeNamedInstances(instances, tempOntologies, tempNamedResources);
+					for (int j = 0; j < instances.length; j++)
+						count(instanceDefinitions, instances[j].getURI(), -1);
+					removeNamedInstances(instances);
 
 					// remove factory
 					ResourceFactory fact = combined.getFactory();
 					if (fact != null) {
-						tempFactories.put(info.getURI(), new FactoryEntry(fact, combined.getFactoryIndex()));
+						factories.put(info.getURI(), new FactoryEntry(fact, combined.getFactoryIndex()));
 					} else {
-						tempFactories.remove(info.getURI());
+						factories.remove(info.getURI());
 					}
-				}
-			}
 
-			// process namedSuperClasses -> put in namedSubClasses
-			// simple, inefficient strategy: just recreate this information
-			for (Ontology tmpOnt : tempOntologies.values()) {
-				for (OntClassInfo tmpInfo : tmpOnt.getOntClassInfo()) {
-					String namedSuperClasses[] = tmpInfo.getNamedSuperClasses(false, true);
-					addNamedSubClasses(tmpInfo.getURI(), namedSuperClasses, tempNamedSubClasses);
+					// process namedSuperClasses -> remove from namedSubClasses
+					removeNamedSubClasses(info.getURI(), info.getNamedSuperClasses(false, true));
 				}
 			}
 
@@ -616,80 +806,35 @@ public final class OntologyManagement {
 
 					// remove named instances of this rdf class
 					Resource[] instances = info.getInstances();
-					removeNamedInstances(instances, tempOntologies, tempNamedResources);
+					removeNamedInstances(instances);
 
 					// remove factory
 					if (info.getFactory() != null)
-						tempFactories.remove(info.getURI());
+						factories.remove(info.getURI());
 
 					// remove rdf class
 					rdfClassInfoMap.remove(info.getURI());
 				}
 			}
 
-			// check for orphan ontClassInfos
-			// this should never happen!
-			ArrayList<OntClassInfo> tmp = new ArrayList<OntClassInfo>();
-			tmp.addAll(tempOntClassInfoMap.values());
-			for (OntClassInfo oci : tmp) {
-				boolean found = false;
-				for (Ontology o : tempOntologies.values()) {
-					for (OntClassInfo i : o.getOntClassInfo()) {
-						if (i.getURI().equals(oci.getURI())) {
-							found = true;
-							break;
-						}
-					}
-					if (found)
-						break;
-				}
-				if (!found) {
-					LogUtils.logError(SharedResources.moduleContext, OntologyManagement.class, "unregister",
-							new Object[] { "The class " + oci.getURI() + " is registered, but no ont references it!" },
-							null);
-					tempOntClassInfoMap.remove(oci);
-				}
-			}
-
-			// set temp as new set of ontologies
-			ontologies = tempOntologies;
-			ontClassInfoMap = tempOntClassInfoMap;
-			namedResources = tempNamedResources;
-			factories = tempFactories;
-			namedSubClasses = tempNamedSubClasses;
-
 			registeringModule.remove(ont.getInfo().getURI());
+			concreteSubClasses = new ConcurrentHashMap<String, Set<String>>();
 		}
 	}
 
 	public String getRegisteringModuleID(String ontURI) {
-		synchronized (ontologies) {
+		synchronized (registryLock) {
 			return registeringModule.get(ontURI).getID();
 		}
 	}
 
-	private void removeNamedInstances(Resource[] instances, HashMap<String, Ontology> ontologies,
-			HashMap<String, Resource> namedResources) {
+	private void removeNamedInstances(Resource[] instances) {
 		for (int j = 0; j < instances.length; j++) {
-			Resource instance = instances[j];
-			String instanceURI = instance.getURI();
-
 			// we have to check that this instance is not defined
 			// somewhere else (this should not happen, it depends on
 			// the ontology modelling)
-			boolean found = false;
-			for (Ontology tmpOnt : ontologies.values()) {
-				for (OntClassInfo tmpInfo : tmpOnt.getOntClassInfo()) {
-					for (Resource tmpInstance : tmpInfo.getInstances()) {
-						if (instanceURI.equals(tmpInstance.getURI())) {
-							found = true;
-							break;
-						}
-					}
-				}
-			}
-			if (!found) {
-				namedResources.remove(instance.getURI());
+			if (!instanceDefinitions.containsKey(instances[j].getURI())) {
+				namedResources.remove(instances[j].getURI());
 			}
 		}
 	}
@@ -704,6 +849,8 @@ public final class OntologyManagement {
 	 * @return The ontology.
 	 */
 	public Ontology getOntology(String uri) {
+		if (uri == null)
+			return null;
 		return ontologies.get(uri);
 	}
 
@@ -756,6 +903,9 @@ public final class OntologyManagement {
 	 * @return true, iff the class is registered.
 	 */
 	public boolean isRegisteredClass(String classURI, boolean includePending) {
+		if (classURI == null)
+			return false;
+
 		// test registered classes
 		if (ontClassInfoMap.containsKey(classURI))
 			return true;
@@ -827,6 +977,8 @@ public final class OntologyManagement {
 	 * @return true only if the ontology is registered.
 	 */
 	public boolean isRegisteredOntology(String ontURI) {
+		if (ontURI == null)
+			return false;
 		return ontologies.containsKey(ontURI);
 	}
 
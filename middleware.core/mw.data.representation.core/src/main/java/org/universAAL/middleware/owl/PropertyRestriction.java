@@ -128,6 +128,18 @@ public abstract class PropertyRestriction extends TypeExpression {
 		return (o == null) ? null : o.toString();
 	}
 
+	/**
+	 * Replace the property this restriction is defined for. Only to be used
+	 * on copies that are not yet shared.
+	 *
+	 * @param propURI
+	 *            URI of the new property.
+	 */
+	void replaceOnProperty(String propURI) {
+		props.remove(PROP_OWL_ON_PROPERTY);
+		setProperty(PROP_OWL_ON_PROPERTY, propURI);
+	}
+
 	/**
 	 * Helper method to copy Restrictions.
 	 *
@@ -0,0 +1,534 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.rdf;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact storage for the properties of a {@link Resource}. It is a
+ * {@link Hashtable} to keep the type of {@link Resource#props}, but stores
+ * keys and values in a single array: for up to {@link #LINEAR_LIMIT}
+ * properties as consecutive pairs in insertion order that are searched
+ * linearly, for more properties as open addressing hash table with linear
+ * probing. This avoids the entry objects and the mostly empty bucket array of
+ * a {@link Hashtable}.
+ * <p>
+ * Keys that are Strings (property URIs) are replaced by a canonical instance
+ * from a global registry, so that resources created from serialized data do
+ * not keep their own copies of the property URIs and lookups with the
+ * constants of the ontologies mostly succeed on identity.
+ * <p>
+ * As for a {@link Hashtable}, all methods are synchronized and neither keys
+ * nor values can be null. Enumerations and iterators work on a snapshot and
+ * do not throw a {@link java.util.ConcurrentModificationException}; removal
+ * with an iterator and {@link Map.Entry#setValue(Object)} are written through
+ * to the map.
+ * <p>
+ * The methods of the Java 5 {@link Map} interface are supported. Of the
+ * methods added in Java 8, <tt>getOrDefault</tt>, <tt>putIfAbsent</tt>,
+ * <tt>remove(key, value)</tt> and both <tt>replace</tt> methods are
+ * overridden. The others (<tt>forEach</tt>, <tt>replaceAll</tt>,
+ * <tt>compute</tt>, <tt>computeIfAbsent</tt>, <tt>computeIfPresent</tt> and
+ * <tt>merge</tt>) take parameters of types that do not exist in Java 5 and can
+ * not be overridden here; {@link Hashtable} implements them on its own, always
+ * empty table, so they must not be used.
+ */
+final class PropertyMap extends Hashtable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The maximum number of properties that are stored as pairs and searched
+	 * linearly.
+	 */
+	static final int LINEAR_LIMIT = 8;
+
+	/** The maximum number of property URIs in the registry. */
+	private static final int MAX_INTERNED = 16384;
+
+	/** The registry of canonical property URIs. */
+	private static final ConcurrentHashMap<String, String> uris = new ConcurrentHashMap<String, String>();
+
+	private static final int KEYS = 0;
+	private static final int VALUES = 1;
+	private static final int ENTRIES = 2;
+
+	/**
+	 * Keys and values: key at index 2*i and value at index 2*i+1. If the
+	 * length is at most 2*{@link #LINEAR_LIMIT}, the first {@link #size} pairs
+	 * are used, otherwise the table is a hash table with the slot i at the
+	 * same indices and null keys for free slots.
+	 */
+	private Object[] table = null;
+	private int size = 0;
+
+	PropertyMap() {
+		super(1);
+	}
+
+	/**
+	 * Get the canonical instance of the given property URI.
+	 */
+	static String intern(String uri) {
+		String s = uris.get(uri);
+		if (s != null)
+			return s;
+		if (uris.size() >= MAX_INTERNED)
+			return uri;
+		s = uris.putIfAbsent(uri, uri);
+		return s == null ? uri : s;
+	}
+
+	private boolean isHashed() {
+		return table != null && table.length > 2 * LINEAR_LIMIT;
+	}
+
+	private static int slot(Object key, int slots) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (slots - 1);
+	}
+
+	/**
+	 * @return the index of the key in the table, or -1 if it is not contained.
+	 */
+	private int indexOf(Object key) {
+		Object[] t = table;
+		if (t == null)
+			return -1;
+		if (t.length <= 2 * LINEAR_LIMIT) {
+			for (int i = 0; i < 2 * size; i += 2) {
+				Object k = t[i];
+				if (k == key || k.equals(key))
+					return i;
+			}
+			return -1;
+		}
+		int slots = t.length / 2;
+		for (int i = slot(key, slots);; i = (i + 1) & (slots - 1)) {
+			Object k = t[2 * i];
+			if (k == null)
+				return -1;
+			if (k == key || k.equals(key))
+				return 2 * i;
+		}
+	}
+
+	/** Puts a new key to a hash table, the key must not be contained. */
+	private static void insert(Object[] t, Object key, Object value) {
+		int slots = t.length / 2;
+		int i = slot(key, slots);
+		while (t[2 * i] != null)
+			i = (i + 1) & (slots - 1);
+		t[2 * i] = key;
+		t[2 * i + 1] = value;
+	}
+
+	private void resize(int slots) {
+		Object[] old = table;
+		Object[] t = new Object[2 * slots];
+		for (int i = 0; i < old.length; i += 2)
+			if (old[i] != null)
+				insert(t, old[i], old[i + 1]);
+		table = t;
+	}
+
+	@Override
+	public synchronized int size() {
+		return size;
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public synchronized boolean contains(Object value) {
+		if (value == null)
+			throw new NullPointerException();
+		Object[] t = table;
+		if (t != null)
+			for (int i = 0; i < t.length; i += 2)
+				if (t[i] != null && value.equals(t[i + 1]))
+					return true;
+		return false;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return contains(value);
+	}
+
+	@Override
+	public synchronized Object get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : table[i + 1];
+	}
+
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+		int i = indexOf(key);
+		if (i >= 0) {
+			Object old = table[i + 1];
+			table[i + 1] = value;
+			return old;
+		}
+
+		if (key instanceof String)
+			key = intern((String) key);
+		if (table == null)
+			table = new Object[4];
+		if (!isHashed()) {
+			if (size < LINEAR_LIMIT) {
+				if (2 * size == table.length) {
+					Object[] t = new Object[2 * table.length];
+					System.arraycopy(table, 0, t, 0, table.length);
+					table = t;
+				}
+				table[2 * size] = key;
+				table[2 * size + 1] = value;
+				size++;
+				return null;
+			}
+			// too many properties for a linear search
+			resize(2 * LINEAR_LIMIT);
+		} else if (4 * (size + 1) > 3 * (table.length / 2)) {
+			resize(table.length);
+		}
+		insert(table, key, value);
+		size++;
+		return null;
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		int i = indexOf(key);
+		if (i < 0)
+			return null;
+		Object old = table[i + 1];
+		size--;
+		if (!isHashed()) {
+			// keep the insertion order
+			System.arraycopy(table, i + 2, table, i, 2 * size - i);
+			table[2 * size] = null;
+			table[2 * size + 1] = null;
+			return old;
+		}
+
+		// backward shift deletion
+		int slots = table.length / 2;
+		int free = i / 2;
+		for (int j = (free + 1) & (slots - 1); table[2 * j] != null; j = (j + 1) & (slots - 1)) {
+			int home = slot(table[2 * j], slots);
+			// move the entry if its home slot is not between the free slot
+			// and its current slot (cyclically)
+			if (free <= j ? (home <= free || home > j) : (home <= free && home > j)) {
+				table[2 * free] = table[2 * j];
+				table[2 * free + 1] = table[2 * j + 1];
+				free = j;
+			}
+		}
+		table[2 * free] = null;
+		table[2 * free + 1] = null;
+		return old;
+	}
+
+	// the following methods override the methods added to Hashtable in
+	// Java 8, which would use the table of the Hashtable
+
+	public synchronized Object getOrDefault(Object key, Object defaultValue) {
+		int i = indexOf(key);
+		return i < 0 ? defaultValue : table[i + 1];
+	}
+
+	public synchronized Object putIfAbsent(Object key, Object value) {
+		Object old = get(key);
+		return old == null ? put(key, value) : old;
+	}
+
+	public synchronized boolean remove(Object key, Object value) {
+		Object old = get(key);
+		if (old == null || !old.equals(value))
+			return false;
+		remove(key);
+		return true;
+	}
+
+	public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+		if (newValue == null)
+			throw new NullPointerException();
+		Object old = get(key);
+		if (old == null || !old.equals(oldValue))
+			return false;
+		put(key, newValue);
+		return true;
+	}
+
+	public synchronized Object replace(Object key, Object value) {
+		if (value == null)
+			throw new NullPointerException();
+		int i = indexOf(key);
+		if (i < 0)
+			return null;
+		Object old = table[i + 1];
+		table[i + 1] = value;
+		return old;
+	}
+
+	@Override
+	public synchronized void clear() {
+		table = null;
+		size = 0;
+	}
+
+	@Override
+	public synchronized Object clone() {
+		PropertyMap m = (PropertyMap) super.clone();
+		if (table != null)
+			m.table = table.clone();
+		return m;
+	}
+
+	/**
+	 * @return the keys (or values or entries, depending on the given kind) in
+	 *         a new array.
+	 */
+	private synchronized Object[] snapshot(int kind) {
+		Object[] res = new Object[size];
+		Object[] t = table;
+		int n = 0;
+		if (t != null)
+			for (int i = 0; i < t.length && n < size; i += 2)
+				if (t[i] != null)
+					res[n++] = kind == KEYS ? t[i] : kind == VALUES ? t[i + 1] : new Entry(t[i], t[i + 1]);
+		return res;
+	}
+
+	@Override
+	public Enumeration keys() {
+		return new Snapshot(KEYS);
+	}
+
+	@Override
+	public Enumeration elements() {
+		return new Snapshot(VALUES);
+	}
+
+	@Override
+	public Set keySet() {
+		return new AbstractSet() {
+			public Iterator iterator() {
+				return new Snapshot(KEYS);
+			}
+
+			public int size() {
+				return PropertyMap.this.size();
+			}
+
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+
+			public boolean remove(Object o) {
+				return PropertyMap.this.remove(o) != null;
+			}
+
+			public void clear() {
+				PropertyMap.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Set entrySet() {
+		return new AbstractSet() {
+			public Iterator iterator() {
+				return new Snapshot(ENTRIES);
+			}
+
+			public int size() {
+				return PropertyMap.this.size();
+			}
+
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry))
+					return false;
+				Map.Entry e = (Map.Entry) o;
+				Object value = e.getKey() == null ? null : get(e.getKey());
+				return value != null && value.equals(e.getValue());
+			}
+
+			public boolean remove(Object o) {
+				if (!contains(o))
+					return false;
+				PropertyMap.this.remove(((Map.Entry) o).getKey());
+				return true;
+			}
+
+			public void clear() {
+				PropertyMap.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Collection values() {
+		return new AbstractCollection() {
+			public Iterator iterator() {
+				return new Snapshot(VALUES);
+			}
+
+			public int size() {
+				return PropertyMap.this.size();
+			}
+
+			public boolean contains(Object o) {
+				return containsValue(o);
+			}
+
+			public void clear() {
+				PropertyMap.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public synchronized int hashCode() {
+		int h = 0;
+		Object[] t = table;
+		if (t != null)
+			for (int i = 0; i < t.length; i += 2)
+				if (t[i] != null)
+					h += t[i].hashCode() ^ t[i + 1].hashCode();
+		return h;
+	}
+
+	/**
+	 * Serializes a {@link Hashtable} with the same content instead of this
+	 * map.
+	 */
+	private Object writeReplace() {
+		return new Hashtable(this);
+	}
+
+	/**
+	 * An enumeration and iterator over a snapshot of the keys, values, or
+	 * entries.
+	 */
+	private class Snapshot implements Enumeration, Iterator {
+		private final Object[] elements;
+		private final Object[] keys;
+		private int next = 0;
+
+		Snapshot(int kind) {
+			synchronized (PropertyMap.this) {
+				elements = snapshot(kind);
+				keys = kind == KEYS ? elements : (kind == ENTRIES ? null : snapshot(KEYS));
+			}
+		}
+
+		public boolean hasMoreElements() {
+			return next < elements.length;
+		}
+
+		public Object nextElement() {
+			if (next >= elements.length)
+				throw new NoSuchElementException();
+			return elements[next++];
+		}
+
+		public boolean hasNext() {
+			return hasMoreElements();
+		}
+
+		public Object next() {
+			return nextElement();
+		}
+
+		public void remove() {
+			if (next == 0)
+				throw new IllegalStateException();
+			Object key = keys == null ? ((Entry) elements[next - 1]).getKey() : keys[next - 1];
+			PropertyMap.this.remove(key);
+		}
+	}
+
+	/** An entry that writes a new value through to the map. */
+	private class Entry implements Map.Entry {
+		private final Object key;
+		private Object value;
+
+		Entry(Object key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		public Object getKey() {
+			return key;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+
+		public Object setValue(Object value) {
+			if (value == null)
+				throw new NullPointerException();
+			Object old = this.value;
+			put(key, value);
+			this.value = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry e = (Map.Entry) o;
+			return key.equals(e.getKey()) && value.equals(e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ value.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+}
@@ -360,6 +360,11 @@ public class RDFClassInfo extends FinalizedResource {
 		if (!inherited)
 			return false;
 
+		OntologyManagement om = OntologyManagement.getInstance();
+		if (om.getOntClassInfo(getURI()) == this)
+			// a registered class: the class hierarchy is already known
+			return om.isSubClassOf(getURI(), classURI);
+
 		Iterator it = namedSuperClasses.iterator();
 		while (it.hasNext()) {
 			String superClassURI = (String) it.next();
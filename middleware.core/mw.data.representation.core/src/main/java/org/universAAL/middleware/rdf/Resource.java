@@ -140,8 +140,10 @@ public class Resource {
 	 * Hashtable is the RDF predicate and the value of the Hashtable is the RDF
 	 * object, which can be a literal or another resource. See
 	 * {@link #setProperty(String propURI, Object value)} for more information.
+	 * The Hashtable is a {@link PropertyMap} that stores the few properties of
+	 * a typical resource in a compact way.
 	 */
-	protected final Hashtable props = new Hashtable();
+	protected final Hashtable props = new PropertyMap();
 
 	/**
 	 * A resource can have one or more RDF types which are represented in this
@@ -0,0 +1,60 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.serialization;
+
+/**
+ * Classes implementing <code>BinaryMessageContentSerializer</code> can
+ * serialize and deserialize the content of bus messages to and from a compact
+ * binary representation. In contrast to {@link MessageContentSerializer}, the
+ * result is not meant to be human-readable; it is used as an optional, more
+ * efficient encoding of the content when messages are exchanged between
+ * peers.
+ *
+ */
+public interface BinaryMessageContentSerializer {
+
+	/**
+	 * Deserialize a bus message.
+	 *
+	 * @param serialized
+	 *            buffer containing the serialized object
+	 * @param offset
+	 *            start of the serialized object in the buffer
+	 * @param length
+	 *            length of the serialized object
+	 * @param resourceURI
+	 *            if the serialized data contains multiple resources then this
+	 *            parameter determines which resource is returned as root
+	 *            object; can be null.
+	 * @return deserialized content of the bus message, or null if the data
+	 *         could not be deserialized.
+	 */
+	public Object deserializeFromBytes(byte[] serialized, int offset, int length, String resourceURI);
+
+	/**
+	 * Serialize a bus message.
+	 *
+	 * @param messageContent
+	 *            content to serialize
+	 * @return Serialized representation of the given object, or null if the
+	 *         object can not be represented in the binary format.
+	 */
+	public byte[] serializeToBytes(Object messageContent);
+}
@@ -183,4 +183,29 @@ public class MergedRestrictionTest extends TestCase {
 		assertFalse(ur == null);
 		assertTrue(((Resource) (ur.getProperty(HasValueRestriction.PROP_OWL_HAS_VALUE))).getURI() == myClass3.getURI());
 	}
+
+	public void testCopyOnNewProperty() {
+		String p1 = "urn:test#prop1";
+		String p2 = "urn:test#prop2";
+		Resource val = new Resource("urn:test#value");
+		MergedRestriction m = MergedRestriction.getFixedValueRestriction(p1, val);
+		MergedRestriction copy = m.copyOnNewProperty(p2);
+
+		// the original is not changed
+		assertEquals(p1, m.getOnProperty());
+		assertEquals(p2, copy.getOnProperty());
+
+		// the value of the new property is checked, the old one is ignored
+		Resource r = new Resource();
+		r.setProperty(p1, new Resource("urn:test#otherValue"));
+		r.setProperty(p2, val);
+		assertFalse(m.hasMember(r));
+		assertTrue(copy.hasMember(r));
+
+		r = new Resource();
+		r.setProperty(p1, val);
+		r.setProperty(p2, new Resource("urn:test#otherValue"));
+		assertTrue(m.hasMember(r));
+		assertFalse(copy.hasMember(r));
+	}
 }
@@ -42,6 +42,45 @@ public class OntologiesTest extends TestCase {
 		);
 	}
 
+	public void testBatchRegistration() {
+		logInfo("- unit test - ");
+		OntologyManagement om = OntologyManagement.getInstance();
+		String uri = ont.getInfo().getURI();
+		int classes = ont.getOntClassInfo().length;
+
+		om.unregister(SharedResources.moduleContext, om.getOntology(uri));
+		assertFalse(om.isRegisteredOntology(uri));
+		assertNull(om.getOntClassInfo(MyClass1.MY_URI));
+		assertFalse(om.getNamedSubClasses(ManagedIndividual.MY_URI, true, false).contains(MyClass1.MY_URI));
+
+		// the second ontology has the same URI and is rejected
+		boolean[] res = om.register(SharedResources.moduleContext, new Ontology[] { new MyOntology(),
+				new MyOntology() });
+		assertTrue(res[0]);
+		assertFalse(res[1]);
+		assertTrue(om.isRegisteredOntology(uri));
+		assertNotNull(om.getOntClassInfo(MyClass1.MY_URI));
+		assertEquals(classes, om.getNamedSubClasses(ManagedIndividual.MY_URI, true, false).size());
+	}
+
+	public void testClassHierarchy() {
+		logInfo("- unit test - ");
+		OntologyManagement om = OntologyManagement.getInstance();
+		assertTrue(om.isSubClassOf(MyClass1Sub1.MY_URI, MyClass1.MY_URI));
+		assertTrue(om.isSubClassOf(MyClass1Sub1.MY_URI, ManagedIndividual.MY_URI));
+		assertFalse(om.isSubClassOf(MyClass1.MY_URI, MyClass1Sub1.MY_URI));
+		assertFalse(om.isSubClassOf(MyClass1.MY_URI, MyClass1.MY_URI));
+		assertTrue(om.getNamedSubClasses(MyClass1.MY_URI, true, true).contains(MyClass1Sub1.MY_URI));
+		assertTrue(ManagedIndividual.checkCompatibility(MyClass1.MY_URI, MyClass1Sub1.MY_URI));
+
+		om.unregister(SharedResources.moduleContext, om.getOntology(ont.getInfo().getURI()));
+		assertFalse(om.isSubClassOf(MyClass1Sub1.MY_URI, MyClass1.MY_URI));
+		assertTrue(om.getNamedSubClasses(MyClass1.MY_URI, true, true).isEmpty());
+
+		om.register(SharedResources.moduleContext, new MyOntology());
+		assertTrue(om.isSubClassOf(MyClass1Sub1.MY_URI, ManagedIndividual.MY_URI));
+	}
+
 	public void testSpecialization() {
 		logInfo("- unit test - ");
 		// trying before ontology registration
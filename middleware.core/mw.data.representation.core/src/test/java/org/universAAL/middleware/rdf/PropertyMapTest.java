@@ -0,0 +1,205 @@
+package org.universAAL.middleware.rdf;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PropertyMapTest extends TestCase {
+
+	private static final String NS = "http://ontology.universAAL.org/test.owl#prop";
+
+	private static final int PROPS_PER_RESOURCE = 5;
+	private static final int RESOURCES = 100000;
+
+	private static void assertSameContent(Hashtable expected, PropertyMap m) {
+		assertEquals(expected.size(), m.size());
+		assertEquals(expected.isEmpty(), m.isEmpty());
+		assertEquals(expected, m);
+		assertEquals(m, expected);
+		assertEquals(expected.hashCode(), m.hashCode());
+		HashSet keys = new HashSet();
+		for (Enumeration e = m.keys(); e.hasMoreElements();) {
+			Object key = e.nextElement();
+			assertTrue(keys.add(key));
+			assertEquals(expected.get(key), m.get(key));
+		}
+		assertEquals(expected.keySet(), keys);
+		assertEquals(expected.entrySet(), m.entrySet());
+		assertEquals(expected.size(), m.values().size());
+	}
+
+	public void testRandomOperations() {
+		Random rnd = new Random(42);
+		Hashtable expected = new Hashtable();
+		PropertyMap m = new PropertyMap();
+		for (int i = 0; i < 20000; i++) {
+			// vary the number of keys to use the linear and the hashed mode
+			int bound = i % 4000 < 2000 ? 10 : 100;
+			String key = NS + rnd.nextInt(bound);
+			if (rnd.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), m.remove(key));
+			} else {
+				Integer value = new Integer(i);
+				assertEquals(expected.put(key, value), m.put(key, value));
+			}
+			assertEquals(expected.containsKey(key), m.containsKey(key));
+			if (i % 100 == 0)
+				assertSameContent(expected, m);
+		}
+		assertSameContent(expected, m);
+		m.clear();
+		assertSameContent(new Hashtable(), m);
+	}
+
+	public void testJava8Methods() {
+		// in the linear and in the hashed mode
+		for (int n = 1; n <= 2 * PropertyMap.LINEAR_LIMIT; n += 2 * PropertyMap.LINEAR_LIMIT - 1) {
+			PropertyMap m = new PropertyMap();
+			for (int i = 0; i < n; i++)
+				m.put(NS + i, new Integer(i));
+			String key = NS + 0;
+			String other = NS + "other";
+
+			assertEquals(new Integer(0), m.getOrDefault(key, "default"));
+			assertEquals("default", m.getOrDefault(other, "default"));
+
+			assertEquals(new Integer(0), m.putIfAbsent(key, "new"));
+			assertNull(m.putIfAbsent(other, "new"));
+			assertEquals("new", m.get(other));
+
+			assertFalse(m.remove(other, "old"));
+			assertTrue(m.remove(other, "new"));
+			assertFalse(m.containsKey(other));
+
+			assertFalse(m.replace(key, "old", "new"));
+			assertTrue(m.replace(key, new Integer(0), "new"));
+			assertEquals("new", m.get(key));
+			assertFalse(m.replace(other, null, "new"));
+
+			assertEquals("new", m.replace(key, "newer"));
+			assertEquals("newer", m.get(key));
+			assertNull(m.replace(other, "new"));
+			assertFalse(m.containsKey(other));
+			assertEquals(n, m.size());
+		}
+	}
+
+	public void testInsertionOrder() {
+		PropertyMap m = new PropertyMap();
+		for (int i = 0; i < PropertyMap.LINEAR_LIMIT; i++)
+			m.put(NS + i, new Integer(i));
+		m.remove(NS + 2);
+		List keys = new ArrayList(m.keySet());
+		assertEquals(PropertyMap.LINEAR_LIMIT - 1, keys.size());
+		assertEquals(NS + 1, keys.get(1));
+		assertEquals(NS + 3, keys.get(2));
+	}
+
+	public void testViews() {
+		PropertyMap m = new PropertyMap();
+		for (int i = 0; i < 20; i++)
+			m.put(NS + i, new Integer(i));
+
+		// removal while iterating
+		for (Iterator it = m.keySet().iterator(); it.hasNext();)
+			if (((String) it.next()).endsWith("1"))
+				it.remove();
+		assertEquals(18, m.size());
+		assertFalse(m.containsKey(NS + 11));
+
+		// write through of entries
+		for (Iterator it = m.entrySet().iterator(); it.hasNext();) {
+			Map.Entry e = (Map.Entry) it.next();
+			e.setValue("x" + e.getValue());
+		}
+		assertEquals("x5", m.get(NS + 5));
+		assertTrue(m.contains("x7"));
+
+		// the clone is independent
+		PropertyMap c = (PropertyMap) m.clone();
+		c.remove(NS + 5);
+		assertEquals("x5", m.get(NS + 5));
+		assertEquals(17, c.size());
+
+		try {
+			m.put(NS, null);
+			fail();
+		} catch (NullPointerException e) {
+		}
+	}
+
+	public void testInterning() {
+		PropertyMap m = new PropertyMap();
+		String key = new String(NS + "interned");
+		m.put(key, "1");
+		m = new PropertyMap();
+		m.put(new String(key), "2");
+		assertSame(key, m.keys().nextElement());
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	/**
+	 * Creates the maps and fills them with properties of deserialized
+	 * resources (new String instances as keys).
+	 *
+	 * @return the retained heap per map.
+	 */
+	private static long fill(Map[] maps, boolean compact) throws InterruptedException {
+		long before = usedMemory();
+		for (int i = 0; i < maps.length; i++) {
+			maps[i] = compact ? new PropertyMap() : new Hashtable();
+			for (int j = 0; j < PROPS_PER_RESOURCE; j++)
+				maps[i].put(new String(NS + j), Boolean.TRUE);
+		}
+		return (usedMemory() - before) / maps.length;
+	}
+
+	private static long lookup(Map[] maps) {
+		String[] keys = new String[PROPS_PER_RESOURCE];
+		for (int j = 0; j < keys.length; j++)
+			keys[j] = (NS + j).intern();
+		int found = 0;
+		long time = System.nanoTime();
+		for (int n = 0; n < 5; n++)
+			for (int i = 0; i < maps.length; i++)
+				for (int j = 0; j < keys.length; j++)
+					if (maps[i].get(keys[j]) != null)
+						found++;
+		time = System.nanoTime() - time;
+		assertEquals(5 * maps.length * keys.length, found);
+		return (long) found * 1000000000L / time;
+	}
+
+	/**
+	 * Prints the retained heap and the lookup throughput of property maps of
+	 * typical size, compared to a Hashtable.
+	 */
+	public void testFootprint() throws InterruptedException {
+		Map[] maps = new Map[RESOURCES];
+		long tableBytes = fill(maps, false);
+		long tableLookups = lookup(maps);
+
+		maps = new Map[RESOURCES];
+		long compactBytes = fill(maps, true);
+		long compactLookups = lookup(maps);
+
+		System.out.println("Resource properties (" + PROPS_PER_RESOURCE + " per resource): Hashtable " + tableBytes
+				+ " bytes, " + tableLookups + " lookups/s; PropertyMap " + compactBytes + " bytes, " + compactLookups
+				+ " lookups/s");
+	}
+}
@@ -0,0 +1,299 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.serialization.binary;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.universAAL.middleware.rdf.ClosedCollection;
+import org.universAAL.middleware.rdf.LangString;
+import org.universAAL.middleware.rdf.OpenCollection;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.rdf.TypeMapper;
+import org.universAAL.middleware.util.Specializer;
+
+/**
+ * Reads an RDF graph in the binary format described in {@link BinaryUtil}.
+ * Like the Turtle parser, resources with the same URI are merged, the result
+ * is specialized and a root node that is an rdf:List is returned as
+ * {@link List}.
+ * <p>
+ * An instance is used for one deserialization only and is not thread-safe.
+ */
+final class BinaryParser {
+
+	/**
+	 * The input buffer and the string tables, shared with parsers of embedded
+	 * XML literals.
+	 */
+	private static final class Buffer {
+		final byte[] buf;
+		int pos;
+		final int end;
+		final ArrayList<String> uris = new ArrayList<String>();
+		final ArrayList<String> namespaces = new ArrayList<String>();
+
+		Buffer(byte[] buf, int off, int len) {
+			this.buf = buf;
+			this.pos = off;
+			this.end = off + len;
+		}
+	}
+
+	private final Buffer in;
+
+	/** All nodes in the order in which they were read, for back-references. */
+	private final ArrayList<Resource> nodes = new ArrayList<Resource>();
+
+	/** All named resources, indexed by their URI. */
+	private final HashMap<String, Resource> resources = new HashMap<String, Resource>();
+
+	private BinaryParser(Buffer in) {
+		this.in = in;
+	}
+
+	/**
+	 * Deserialize the given data.
+	 *
+	 * @param data
+	 *            the buffer containing the serialized graph.
+	 * @param off
+	 *            start of the serialized graph in the buffer.
+	 * @param len
+	 *            length of the serialized graph.
+	 * @param resourceURI
+	 *            URI of the resource to return as root, can be null to return
+	 *            the first resource.
+	 * @return the deserialized resource or list.
+	 * @throws IllegalArgumentException
+	 *             if the data is not valid.
+	 */
+	static Object deserialize(byte[] data, int off, int len, String resourceURI) {
+		if (len < 3 || data[off] != BinaryUtil.MAGIC_0 || data[off + 1] != BinaryUtil.MAGIC_1)
+			throw new IllegalArgumentException("Not a binary RDF graph");
+		if (data[off + 2] < 1 || data[off + 2] > BinaryUtil.VERSION)
+			throw new IllegalArgumentException("Unsupported version of binary RDF: " + data[off + 2]);
+
+		Buffer in = new Buffer(data, off + 3, len - 3);
+		BinaryParser p = new BinaryParser(in);
+		Resource root = p.readRoot(resourceURI);
+		if (in.pos != in.end)
+			throw new IllegalArgumentException("Unexpected data after the end of the graph");
+
+		Object parsed = root;
+		if (Resource.TYPE_RDF_LIST.equals(root.getType()))
+			parsed = root.asList();
+
+		if (parsed instanceof Resource)
+			return new Specializer().specialize((Resource) parsed);
+
+		// we simply use the list as a dummy property for specialization
+		Resource r = new Resource();
+		r.setProperty("propURI", parsed);
+		r = new Specializer().specialize(r);
+		return r.getProperty("propURI");
+	}
+
+	private Resource readRoot(String resourceURI) {
+		Resource root = readNode(readVarInt());
+		if (resourceURI != null) {
+			Resource r = resources.get(resourceURI);
+			if (r != null)
+				return r;
+		}
+		return root;
+	}
+
+	// ------------------------------------------------------------------
+	// graph
+	// ------------------------------------------------------------------
+
+	private Resource readNode(int tag) {
+		Resource r;
+		switch (tag) {
+		case BinaryUtil.T_REF:
+			int idx = readVarInt();
+			if (idx < 0 || idx >= nodes.size())
+				throw new IllegalArgumentException("Invalid back-reference: " + idx);
+			return nodes.get(idx);
+		case BinaryUtil.T_ANON:
+			r = new Resource();
+			break;
+		case BinaryUtil.T_NAMED:
+			String uri = readURI();
+			r = resources.get(uri);
+			if (r == null) {
+				r = new Resource(uri);
+				resources.put(uri, r);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unexpected tag, expected a node: " + tag);
+		}
+		nodes.add(r);
+
+		int numProps = readVarInt();
+		for (int i = 0; i < numProps; i++) {
+			String pred = readURI();
+			Object obj = readValue(readVarInt());
+			if (obj == null || (obj instanceof List && ((List) obj).isEmpty()))
+				obj = new Resource(Resource.RDF_EMPTY_LIST);
+			r.setProperty(pred, obj);
+		}
+		return r;
+	}
+
+	private Object readValue(int tag) {
+		switch (tag) {
+		case BinaryUtil.T_REF:
+		case BinaryUtil.T_NAMED:
+		case BinaryUtil.T_ANON:
+			return readNode(tag);
+		case BinaryUtil.T_XML_LITERAL:
+			Resource r = new BinaryParser(in).readRoot(null).copy(true);
+			r.literal();
+			return r;
+		case BinaryUtil.T_RESOURCE_LITERAL:
+			return TypeMapper.getJavaInstance(readURI(), TypeMapper.getDatatypeURI(Resource.class));
+		case BinaryUtil.T_LIST_OPEN:
+		case BinaryUtil.T_LIST_CLOSED:
+			int size = readVarInt();
+			if (size < 0 || size > in.end - in.pos)
+				throw new IllegalArgumentException("Invalid size of list: " + size);
+			List l = tag == BinaryUtil.T_LIST_OPEN ? (List) new OpenCollection() : new ClosedCollection();
+			for (int i = 0; i < size; i++)
+				l.add(readValue(readVarInt()));
+			return l;
+		case BinaryUtil.T_STRING:
+			return readString();
+		case BinaryUtil.T_TRUE:
+			return Boolean.TRUE;
+		case BinaryUtil.T_FALSE:
+			return Boolean.FALSE;
+		case BinaryUtil.T_INT:
+			return new Integer((int) unZigZag(readVarLong()));
+		case BinaryUtil.T_LONG:
+			return new Long(unZigZag(readVarLong()));
+		case BinaryUtil.T_FLOAT:
+			return new Float(Float.intBitsToFloat((int) readFixed(4)));
+		case BinaryUtil.T_DOUBLE:
+			return new Double(Double.longBitsToDouble(readFixed(8)));
+		case BinaryUtil.T_LANG_STRING:
+			String s = readString();
+			return new LangString(s, readURI());
+		case BinaryUtil.T_TYPED:
+			String lexical = readString();
+			return TypeMapper.getJavaInstance(lexical, readURI());
+		default:
+			throw new IllegalArgumentException("Unknown tag: " + tag);
+		}
+	}
+
+	// ------------------------------------------------------------------
+	// low level input
+	// ------------------------------------------------------------------
+
+	private void check(int n) {
+		if (n < 0 || in.pos + n > in.end)
+			throw new IllegalArgumentException("Truncated binary RDF graph");
+	}
+
+	private int readVarInt() {
+		int v = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			check(1);
+			byte b = in.buf[in.pos++];
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IllegalArgumentException("Malformed variable length integer");
+	}
+
+	private long readVarLong() {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			check(1);
+			byte b = in.buf[in.pos++];
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IllegalArgumentException("Malformed variable length integer");
+	}
+
+	private static long unZigZag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private long readFixed(int bytes) {
+		check(bytes);
+		long v = 0;
+		for (int i = 0; i < bytes; i++)
+			v |= (long) (in.buf[in.pos++] & 0xFF) << (i << 3);
+		return v;
+	}
+
+	private String readString() {
+		int len = readVarInt();
+		check(len);
+		try {
+			String s = new String(in.buf, in.pos, len, "UTF-8");
+			in.pos += len;
+			return s;
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new RuntimeException(e);
+		}
+	}
+
+	private String readTableString(ArrayList<String> table) {
+		int code = readVarInt();
+		if (code == BinaryUtil.STR_NULL)
+			return null;
+		if (code == BinaryUtil.STR_NEW) {
+			String s = readString();
+			table.add(s);
+			return s;
+		}
+		code -= BinaryUtil.STR_TABLE_OFFSET;
+		if (code < 0 || code >= table.size())
+			throw new IllegalArgumentException("Invalid index in string table: " + code);
+		return table.get(code);
+	}
+
+	private String readURI() {
+		int code = readVarInt();
+		if (code == BinaryUtil.STR_NULL)
+			return null;
+		if (code == BinaryUtil.STR_NEW) {
+			String ns = readTableString(in.namespaces);
+			String uri = ns == null ? readString() : ns + readString();
+			in.uris.add(uri);
+			return uri;
+		}
+		code -= BinaryUtil.STR_TABLE_OFFSET;
+		if (code < 0 || code >= in.uris.size())
+			throw new IllegalArgumentException("Invalid index in URI table: " + code);
+		return in.uris.get(code);
+	}
+}
@@ -0,0 +1,75 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.serialization.binary;
+
+import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.owl.Ontology;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.serialization.BinaryMessageContentSerializer;
+
+/**
+ * Serializer for the compact binary RDF format described in
+ * {@link BinaryUtil}. It transports the same information as the Turtle
+ * serializer, but avoids the text processing and writes every URI only once.
+ * Ontologies are not supported; for them (and for all objects that are not
+ * resources) <code>null</code> is returned so that the caller can fall back
+ * to the Turtle serializer.
+ * <p>
+ * An instance of this class can be used concurrently: every call creates its
+ * own writer or parser.
+ */
+public class BinarySerializer implements BinaryMessageContentSerializer {
+
+	public BinarySerializer() {
+	}
+
+	/**
+	 * @see org.universAAL.middleware.serialization.BinaryMessageContentSerializer#deserializeFromBytes(byte[],
+	 *      int, int, String)
+	 */
+	public Object deserializeFromBytes(byte[] serialized, int offset, int length, String resourceURI) {
+		if (serialized == null)
+			return null;
+		try {
+			return BinaryParser.deserialize(serialized, offset, length, resourceURI);
+		} catch (Exception ex) {
+			LogUtils.logError(BinaryUtil.moduleContext, BinarySerializer.class, "deserializeFromBytes", null, ex);
+			return null;
+		}
+	}
+
+	/**
+	 * @see org.universAAL.middleware.serialization.BinaryMessageContentSerializer#serializeToBytes(Object)
+	 */
+	public byte[] serializeToBytes(Object messageContent) {
+		if (!(messageContent instanceof Resource) || messageContent instanceof Ontology)
+			return null;
+		try {
+			return BinaryWriter.serialize((Resource) messageContent);
+		} catch (UnsupportedOperationException ex) {
+			LogUtils.logDebug(BinaryUtil.moduleContext, BinarySerializer.class, "serializeToBytes",
+					new Object[] { ex.getMessage() }, null);
+			return null;
+		} catch (Exception ex) {
+			LogUtils.logError(BinaryUtil.moduleContext, BinarySerializer.class, "serializeToBytes", null, ex);
+			return null;
+		}
+	}
+}
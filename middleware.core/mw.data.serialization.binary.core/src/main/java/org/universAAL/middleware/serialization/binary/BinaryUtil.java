@@ -0,0 +1,108 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.serialization.binary;
+
+import org.universAAL.middleware.container.ModuleContext;
+
+/**
+ * Constants of the binary RDF format and shared state of this module.
+ * <p>
+ * A serialized graph starts with the magic bytes 'u', 'B' and the format
+ * version, followed by the root node. Every node and every value starts with
+ * one of the tags defined here:
+ * <ul>
+ * <li>a node is written as {@link #T_NAMED} (followed by its URI) or
+ * {@link #T_ANON}, the number of its properties and the properties as pairs
+ * of predicate URI and value. A node gets an index when it is written for the
+ * first time; every further occurrence is a back-reference {@link #T_REF}
+ * with this index, so shared nodes and cycles are written only once.</li>
+ * <li>URIs are split into a namespace and a local name. Both the URIs and the
+ * namespaces are collected in per-message string tables so that every string
+ * is written only once; further occurrences only write the index in the
+ * table.</li>
+ * <li>literals of the common XSD types are written in their binary form
+ * (integers as variable length zig-zag encoded numbers), all other literals
+ * in the lexical form together with the URI of the datatype as known by
+ * {@link org.universAAL.middleware.rdf.TypeMapper}.</li>
+ * </ul>
+ * All counts and indexes are written as variable length unsigned integers (7
+ * bits per byte, least significant group first).
+ */
+public final class BinaryUtil {
+
+	public static ModuleContext moduleContext;
+
+	static final byte MAGIC_0 = 'u';
+	static final byte MAGIC_1 = 'B';
+	static final byte VERSION = 1;
+
+	/** Back-reference to a node that has already been written. */
+	static final int T_REF = 1;
+	/** A node with a URI. */
+	static final int T_NAMED = 2;
+	/** An anonymous node. */
+	static final int T_ANON = 3;
+	/** A resource that is serialized as XML literal (embedded graph). */
+	static final int T_XML_LITERAL = 4;
+	/** A resource that is a literal of type xsd:anyURI. */
+	static final int T_RESOURCE_LITERAL = 5;
+	/** A list with multiple values of the same property. */
+	static final int T_LIST_OPEN = 6;
+	/** An rdf:List. */
+	static final int T_LIST_CLOSED = 7;
+	static final int T_STRING = 8;
+	static final int T_TRUE = 9;
+	static final int T_FALSE = 10;
+	static final int T_INT = 11;
+	static final int T_LONG = 12;
+	static final int T_FLOAT = 13;
+	static final int T_DOUBLE = 14;
+	static final int T_LANG_STRING = 15;
+	/** Any other literal, written in its lexical form with the datatype. */
+	static final int T_TYPED = 16;
+
+	/** Code for a string that is null. */
+	static final int STR_NULL = 0;
+	/** Code for a string that is not yet in the string table. */
+	static final int STR_NEW = 1;
+	/**
+	 * Offset of the index in the string table for strings that have already
+	 * been written.
+	 */
+	static final int STR_TABLE_OFFSET = 2;
+
+	private BinaryUtil() {
+	}
+
+	/**
+	 * Get the index for splitting the URI into namespace and local name.
+	 *
+	 * @return the index after the last '#', '/' or ':', or 0 if the URI
+	 *         contains none of them.
+	 */
+	static int findURISplitIndex(String uri) {
+		for (int i = uri.length() - 1; i >= 0; i--) {
+			char c = uri.charAt(i);
+			if (c == '#' || c == '/' || c == ':')
+				return i + 1;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,434 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.serialization.binary;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import org.universAAL.middleware.owl.ManagedIndividual;
+import org.universAAL.middleware.owl.Ontology;
+import org.universAAL.middleware.rdf.LangString;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.rdf.TypeMapper;
+
+/**
+ * Writes an RDF graph in the binary format described in {@link BinaryUtil}.
+ * The decision which properties and resources are written follows the same
+ * rules as the Turtle serializer (see
+ * {@link Resource#getPropSerializationType(String)}), so that both
+ * serializers transport the same information.
+ * <p>
+ * An instance is used for one serialization only and is not thread-safe.
+ */
+final class BinaryWriter {
+
+	/**
+	 * The output buffer, shared with writers of embedded XML literals.
+	 */
+	private static final class Buffer {
+		byte[] buf = new byte[1024];
+		int count = 0;
+		final HashMap<String, Integer> uris = new HashMap<String, Integer>();
+		final HashMap<String, Integer> namespaces = new HashMap<String, Integer>();
+	}
+
+	private final Buffer out;
+
+	/**
+	 * The highest serialization type with which a resource is referenced,
+	 * indexed by the URI of the resource.
+	 */
+	private final HashMap<String, int[]> redTypes = new HashMap<String, int[]>();
+
+	/** The resources whose properties have been analyzed. */
+	private final IdentityHashMap<Resource, List> analyzed = new IdentityHashMap<Resource, List>();
+
+	/** The index of all nodes that have already been written. */
+	private final IdentityHashMap<Resource, Integer> nodes = new IdentityHashMap<Resource, Integer>();
+
+	private BinaryWriter(Buffer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Serialize the given resource.
+	 *
+	 * @param root
+	 *            the root of the graph to serialize.
+	 * @return the serialized graph.
+	 * @throws UnsupportedOperationException
+	 *             if the graph contains objects that can not be represented in
+	 *             the binary format (e.g. ontologies).
+	 */
+	static byte[] serialize(Resource root) {
+		Buffer out = new Buffer();
+		BinaryWriter w = new BinaryWriter(out);
+		w.writeByte(BinaryUtil.MAGIC_0);
+		w.writeByte(BinaryUtil.MAGIC_1);
+		w.writeByte(BinaryUtil.VERSION);
+		w.writeRoot(root);
+
+		byte[] result = new byte[out.count];
+		System.arraycopy(out.buf, 0, result, 0, out.count);
+		return result;
+	}
+
+	private void writeRoot(Resource root) {
+		if (Ontology.TYPE_OWL_ONTOLOGY.equals(root.getType()))
+			throw new UnsupportedOperationException("Ontologies are not supported by the binary format");
+		redTypes.put(root.getURI(), new int[] { Resource.PROP_SERIALIZATION_FULL });
+		analyzeResource(root);
+		writeNode(root);
+	}
+
+	// ------------------------------------------------------------------
+	// analysis
+	// ------------------------------------------------------------------
+
+	private int getRedType(Resource r) {
+		int[] d = redTypes.get(r.getURI());
+		return d == null ? Resource.PROP_SERIALIZATION_UNDEFINED : d[0];
+	}
+
+	private void analyzeObject(Object o, int reduction) {
+		if (o instanceof Resource) {
+			Resource r = (Resource) o;
+			if (r.serializesAsXMLLiteral())
+				return;
+			int[] d = redTypes.get(r.getURI());
+			if (d == null)
+				redTypes.put(r.getURI(), new int[] { reduction });
+			else if (d[0] < reduction)
+				d[0] = reduction;
+			if (Resource.PROP_SERIALIZATION_OPTIONAL < reduction)
+				analyzeResource(r);
+		} else if (o instanceof List) {
+			for (Iterator i = ((List) o).iterator(); i.hasNext();)
+				analyzeObject(i.next(), reduction);
+		}
+	}
+
+	private void analyzeResource(Resource r) {
+		if (analyzed.containsKey(r))
+			return;
+		List types = getTypes(r);
+		analyzed.put(r, types);
+
+		for (Enumeration e = r.getPropertyURIs(); e.hasMoreElements();) {
+			String prop = (String) e.nextElement();
+			if (Resource.PROP_RDF_TYPE.equals(prop))
+				analyzeObject(types, Resource.PROP_SERIALIZATION_REDUCED);
+			else
+				analyzeObject(r.getProperty(prop), r.getPropSerializationType(prop));
+		}
+	}
+
+	/**
+	 * Get the types of the given resource together with all their non-abstract
+	 * super classes.
+	 */
+	private static List getTypes(Resource r) {
+		Object o = r.getProperty(Resource.PROP_RDF_TYPE);
+		if (o == null)
+			return null;
+		List types = new ArrayList();
+		if (o instanceof List)
+			types.addAll((List) o);
+		else
+			types.add(o);
+		for (int i = 0, n = types.size(); i < n; i++) {
+			String[] supers = ManagedIndividual.getNonabstractSuperClasses(types.get(i).toString());
+			if (supers != null)
+				for (int j = 0; j < supers.length; j++) {
+					Resource sup = new Resource(supers[j]);
+					if (!types.contains(sup))
+						types.add(sup);
+				}
+		}
+		return types;
+	}
+
+	// ------------------------------------------------------------------
+	// writing
+	// ------------------------------------------------------------------
+
+	private void writeNode(Resource r) {
+		Integer idx = nodes.get(r);
+		if (idx != null) {
+			writeVarInt(BinaryUtil.T_REF);
+			writeVarInt(idx.intValue());
+			return;
+		}
+		nodes.put(r, new Integer(nodes.size()));
+
+		if (r.isAnon()) {
+			writeVarInt(BinaryUtil.T_ANON);
+		} else {
+			writeVarInt(BinaryUtil.T_NAMED);
+			writeURI(r.getURI());
+		}
+
+		int redType = getRedType(r);
+		if (redType < Resource.PROP_SERIALIZATION_REDUCED || !analyzed.containsKey(r)) {
+			// only a reference
+			writeVarInt(0);
+			return;
+		}
+
+		// collect the statements to write
+		boolean force = redType == Resource.PROP_SERIALIZATION_FULL;
+		List types = analyzed.get(r);
+		ArrayList<Object> statements = new ArrayList<Object>(r.numberOfProperties() << 1);
+		for (Enumeration e = r.getPropertyURIs(); e.hasMoreElements();) {
+			String pred = (String) e.nextElement();
+			Object obj = Resource.PROP_RDF_TYPE.equals(pred) ? types : r.getProperty(pred);
+			if (obj instanceof List && ((List) obj).isEmpty())
+				continue;
+			if (!force && getStatementRedType(r, pred, obj) < Resource.PROP_SERIALIZATION_REDUCED)
+				continue;
+			statements.add(pred);
+			statements.add(obj);
+		}
+
+		writeVarInt(statements.size() >> 1);
+		for (int i = 0; i < statements.size(); i += 2) {
+			String pred = (String) statements.get(i);
+			writeURI(pred);
+			writeValue(statements.get(i + 1), r.isClosedCollection(pred));
+		}
+	}
+
+	private int getStatementRedType(Resource subj, String pred, Object obj) {
+		if (obj instanceof List) {
+			int result = subj.getPropSerializationType(pred);
+			for (Iterator i = ((List) obj).iterator(); i.hasNext();) {
+				Object o = i.next();
+				if (o instanceof Resource && !((Resource) o).serializesAsXMLLiteral()) {
+					int red = getRedType((Resource) o);
+					if (red > result)
+						result = red;
+				}
+			}
+			return result;
+		}
+		if (obj instanceof Resource && !((Resource) obj).serializesAsXMLLiteral())
+			return getRedType((Resource) obj);
+		return subj.getPropSerializationType(pred);
+	}
+
+	private void writeValue(Object val, boolean closed) {
+		if (val instanceof Resource) {
+			Resource r = (Resource) val;
+			if (!r.serializesAsXMLLiteral()) {
+				writeNode(r);
+			} else if (r.isAnon() || r.numberOfProperties() > 0) {
+				writeVarInt(BinaryUtil.T_XML_LITERAL);
+				// the embedded graph has its own nodes
+				new BinaryWriter(out).writeRoot(r);
+			} else {
+				writeVarInt(BinaryUtil.T_RESOURCE_LITERAL);
+				writeURI(r.getURI());
+			}
+		} else if (val instanceof List) {
+			List l = (List) val;
+			if (!closed && l.size() == 1) {
+				writeValue(l.get(0), false);
+				return;
+			}
+			writeVarInt(closed ? BinaryUtil.T_LIST_CLOSED : BinaryUtil.T_LIST_OPEN);
+			writeVarInt(l.size());
+			for (Iterator i = l.iterator(); i.hasNext();)
+				writeValue(i.next(), closed);
+		} else if (val instanceof String) {
+			writeVarInt(BinaryUtil.T_STRING);
+			writeString((String) val);
+		} else if (val instanceof Boolean) {
+			writeVarInt(((Boolean) val).booleanValue() ? BinaryUtil.T_TRUE : BinaryUtil.T_FALSE);
+		} else if (val instanceof Integer) {
+			writeVarInt(BinaryUtil.T_INT);
+			writeVarLong(zigZag(((Integer) val).intValue()));
+		} else if (val instanceof Long) {
+			writeVarInt(BinaryUtil.T_LONG);
+			writeVarLong(zigZag(((Long) val).longValue()));
+		} else if (val instanceof Float) {
+			writeVarInt(BinaryUtil.T_FLOAT);
+			writeFixed(Float.floatToIntBits(((Float) val).floatValue()), 4);
+		} else if (val instanceof Double) {
+			writeVarInt(BinaryUtil.T_DOUBLE);
+			writeFixed(Double.doubleToLongBits(((Double) val).doubleValue()), 8);
+		} else if (val instanceof LangString) {
+			LangString ls = (LangString) val;
+			if ("".equals(ls.getLang())) {
+				// as in Turtle, a LangString without language is a String
+				writeVarInt(BinaryUtil.T_STRING);
+				writeString(ls.getString());
+			} else {
+				writeVarInt(BinaryUtil.T_LANG_STRING);
+				writeString(ls.getString());
+				writeURI(ls.getLang());
+			}
+		} else if (val instanceof Ontology) {
+			throw new UnsupportedOperationException("Ontologies are not supported by the binary format");
+		} else {
+			String[] pair = TypeMapper.getXMLInstance(val);
+			writeVarInt(BinaryUtil.T_TYPED);
+			writeString(pair[0]);
+			writeURI(pair[1]);
+		}
+	}
+
+	// ------------------------------------------------------------------
+	// low level output
+	// ------------------------------------------------------------------
+
+	private void ensure(int n) {
+		if (out.count + n > out.buf.length) {
+			byte[] newBuf = new byte[Math.max(out.buf.length << 1, out.count + n)];
+			System.arraycopy(out.buf, 0, newBuf, 0, out.count);
+			out.buf = newBuf;
+		}
+	}
+
+	private void writeByte(int b) {
+		ensure(1);
+		out.buf[out.count++] = (byte) b;
+	}
+
+	private void writeVarInt(int v) {
+		ensure(5);
+		while ((v & ~0x7F) != 0) {
+			out.buf[out.count++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.buf[out.count++] = (byte) v;
+	}
+
+	private void writeVarLong(long v) {
+		ensure(10);
+		while ((v & ~0x7FL) != 0) {
+			out.buf[out.count++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.buf[out.count++] = (byte) v;
+	}
+
+	private static long zigZag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private void writeFixed(long v, int bytes) {
+		ensure(bytes);
+		for (int i = 0; i < bytes; i++) {
+			out.buf[out.count++] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	/**
+	 * Write a string as its UTF-8 length followed by the UTF-8 bytes.
+	 */
+	private void writeString(String s) {
+		int len = s.length();
+		int utfLen = 0;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80)
+				utfLen++;
+			else if (c < 0x800)
+				utfLen += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				utfLen += 4;
+				i++;
+			} else
+				utfLen += 3;
+		}
+
+		writeVarInt(utfLen);
+		ensure(utfLen);
+		byte[] buf = out.buf;
+		int count = out.count;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buf[count++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[count++] = (byte) (0xC0 | (c >> 6));
+				buf[count++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buf[count++] = (byte) (0xF0 | (cp >> 18));
+				buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[count++] = (byte) (0x80 | (cp & 0x3F));
+			} else {
+				buf[count++] = (byte) (0xE0 | (c >> 12));
+				buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[count++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		out.count = count;
+	}
+
+	/**
+	 * Write a string from the string table: the code {@link BinaryUtil#STR_NEW}
+	 * followed by the string itself if it is written for the first time,
+	 * otherwise the index of the string in the table.
+	 */
+	private void writeTableString(String s, HashMap<String, Integer> table) {
+		if (s == null) {
+			writeVarInt(BinaryUtil.STR_NULL);
+			return;
+		}
+		Integer idx = table.get(s);
+		if (idx != null) {
+			writeVarInt(idx.intValue() + BinaryUtil.STR_TABLE_OFFSET);
+		} else {
+			table.put(s, new Integer(table.size()));
+			writeVarInt(BinaryUtil.STR_NEW);
+			writeString(s);
+		}
+	}
+
+	/**
+	 * Write a URI with the help of the string tables: a URI that has been
+	 * written before is only written as index; a new URI is written as
+	 * namespace (from the namespace table) and local name.
+	 */
+	private void writeURI(String uri) {
+		if (uri == null) {
+			writeVarInt(BinaryUtil.STR_NULL);
+			return;
+		}
+		Integer idx = out.uris.get(uri);
+		if (idx != null) {
+			writeVarInt(idx.intValue() + BinaryUtil.STR_TABLE_OFFSET);
+			return;
+		}
+		out.uris.put(uri, new Integer(out.uris.size()));
+		writeVarInt(BinaryUtil.STR_NEW);
+		int split = BinaryUtil.findURISplitIndex(uri);
+		writeTableString(uri.substring(0, split), out.namespaces);
+		writeString(uri.substring(split));
+	}
+}
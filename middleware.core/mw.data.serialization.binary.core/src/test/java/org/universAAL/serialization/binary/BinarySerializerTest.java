@@ -0,0 +1,192 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.serialization.binary;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.owl.Enumeration;
+import org.universAAL.middleware.owl.MergedRestriction;
+import org.universAAL.middleware.rdf.LangString;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.serialization.binary.BinarySerializer;
+import org.universAAL.middleware.serialization.turtle.TurtleSerializer;
+import org.universAAL.middleware.util.ResourceComparator;
+
+public class BinarySerializerTest extends TestCase {
+
+	private static final String NS = "http://ontology.universAAL.org/BinaryTest.owl#";
+
+	private BinarySerializer s = new BinarySerializer();
+
+	private boolean check(Resource r1) {
+		byte[] data = s.serializeToBytes(r1);
+		assertNotNull(data);
+		Object o = s.deserializeFromBytes(data, 0, data.length, null);
+		assertTrue(o instanceof Resource);
+		Resource r2 = (Resource) o;
+
+		ResourceComparator rc = new ResourceComparator();
+		if (!rc.areEqual(r1, r2)) {
+			System.out.println(rc.getDiffsAsString(r1, r2));
+			System.out.println("-- r1:\n" + r1.toStringRecursive());
+			System.out.println("-- r2:\n" + r2.toStringRecursive());
+			return false;
+		}
+		return true;
+	}
+
+	public void testEnumeration() {
+		Enumeration e = new Enumeration(new Object[] { new Resource(NS + "value1"), new Resource(NS + "value2") });
+		Resource r = MergedRestriction.getAllValuesRestriction(NS + "prop", e);
+		assertTrue(check(r));
+	}
+
+	public void testCycle() {
+		Resource r1 = new Resource();
+		Resource r2 = new Resource();
+		r1.setProperty(NS + "prop12", r2);
+		r2.setProperty(NS + "prop21", r1);
+		assertTrue(check(r1));
+	}
+
+	public void testSharedNode() {
+		Resource root = new Resource(NS + "root");
+		Resource shared = new Resource();
+		shared.setProperty(NS + "value", "shared");
+		root.setProperty(NS + "first", shared);
+		root.setProperty(NS + "second", shared);
+		assertTrue(check(root));
+
+		byte[] data = s.serializeToBytes(root);
+		Resource r = (Resource) s.deserializeFromBytes(data, 0, data.length, null);
+		assertSame(r.getProperty(NS + "first"), r.getProperty(NS + "second"));
+	}
+
+	public void testLiterals() {
+		Resource r = new Resource(NS + "literals");
+		r.addType(NS + "LiteralHolder", true);
+		r.setProperty(NS + "int", new Integer(-100));
+		r.setProperty(NS + "long", new Long(Long.MIN_VALUE));
+		r.setProperty(NS + "float", new Float(0.0000001f));
+		r.setProperty(NS + "double", new Double(Double.NEGATIVE_INFINITY));
+		r.setProperty(NS + "nan", new Double(Double.NaN));
+		r.setProperty(NS + "boolean", Boolean.TRUE);
+		r.setProperty(NS + "string", "ä€𝄞 \"quoted\"\n");
+		r.setProperty(NS + "integer", BigInteger.valueOf(200));
+		r.setProperty(NS + "decimal", BigDecimal.valueOf(40000000.00000001));
+		r.setProperty(NS + "uri", new Resource(NS + "someURI", true));
+		assertTrue(check(r));
+	}
+
+	public void testLanguagedLabel() {
+		Resource r = new Resource();
+		r.addMultiLangProp(Resource.PROP_RDFS_LABEL, new LangString("myLabel_en", "en"));
+		r.addMultiLangProp(Resource.PROP_RDFS_LABEL, new LangString("myLabel_de", "de"));
+		assertTrue(check(r));
+	}
+
+	public void testLists() {
+		Resource r = new Resource(NS + "lists");
+		List<Object> l = new ArrayList<Object>();
+		l.add(new Resource(NS + "a"));
+		l.add(new Integer(1));
+		l.add("b");
+		r.setProperty(NS + "open", l);
+		r.setProperty(NS + "closed", Resource.asRDFList(l, false));
+		assertTrue(check(r));
+	}
+
+	public void testXMLLiteral() {
+		Resource embedded = new Resource(NS + "embedded");
+		embedded.setProperty(NS + "value", "embedded value");
+		embedded.literal();
+		Resource r = new Resource(NS + "outer");
+		r.setProperty(NS + "literal", embedded);
+		assertTrue(check(r));
+	}
+
+	public void testRootURI() {
+		Resource root = new Resource(NS + "root");
+		Resource other = new Resource(NS + "other");
+		other.addType(NS + "Other", true);
+		root.setProperty(NS + "hasOther", other);
+		byte[] data = s.serializeToBytes(root);
+		Resource r = (Resource) s.deserializeFromBytes(data, 0, data.length, NS + "other");
+		assertEquals(NS + "other", r.getURI());
+	}
+
+	public void testCorruptData() {
+		byte[] data = s.serializeToBytes(new Resource(NS + "root"));
+		for (int i = 1; i < data.length; i++)
+			assertNull(s.deserializeFromBytes(data, 0, i, null));
+		assertNull(s.deserializeFromBytes(new byte[] { 'u', 'B', 99 }, 0, 3, null));
+		assertNull(s.serializeToBytes("not a resource"));
+	}
+
+	/**
+	 * Compares size and speed with the Turtle serializer for a typical
+	 * message content.
+	 */
+	public void testCompareWithTurtle() {
+		Resource root = new Resource(NS + "event");
+		root.addType(NS + "Event", true);
+		root.setProperty(NS + "timestamp", new Long(System.currentTimeMillis()));
+		root.setProperty(NS + "confidence", new Integer(80));
+		Resource subject = new Resource(NS + "sensor");
+		subject.addType(NS + "Sensor", true);
+		root.setProperty(NS + "subject", subject);
+		List<Resource> locations = new ArrayList<Resource>();
+		for (int i = 0; i < 10; i++) {
+			Resource loc = new Resource(NS + "location" + i);
+			loc.addType(NS + "Location", true);
+			loc.setProperty(NS + "index", new Integer(i));
+			locations.add(loc);
+		}
+		subject.setProperty(NS + "location", locations);
+
+		TurtleSerializer t = new TurtleSerializer();
+		String turtle = t.serialize(root);
+		byte[] binary = s.serializeToBytes(root);
+		assertTrue(new ResourceComparator().areEqual((Resource) t.deserialize(turtle),
+				(Resource) s.deserializeFromBytes(binary, 0, binary.length, null)));
+
+		int n = 2000;
+		long time = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			t.deserialize(t.serialize(root));
+		long turtleTime = System.nanoTime() - time;
+		time = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			byte[] b = s.serializeToBytes(root);
+			s.deserializeFromBytes(b, 0, b.length, null);
+		}
+		long binaryTime = System.nanoTime() - time;
+
+		System.out.println("Turtle: " + turtle.length() + " chars, " + n * 1000000000L / turtleTime
+				+ " round trips/s; binary: " + binary.length + " bytes, " + n * 1000000000L / binaryTime
+				+ " round trips/s");
+		assertTrue(binary.length < turtle.length());
+	}
+}
@@ -28,7 +28,7 @@ import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.List;
 
 import org.universAAL.middleware.container.utils.LogUtils;
@@ -49,6 +49,9 @@ import org.universAAL.middleware.util.Specializer;
  * can be called to translate RDF graphs into <i>Terse RDF Triple Language
  * (Turtle)</i> and vice versa. While this class handles the deserialization,
  * the actual serialization is realized by {@link TurtleWriter}.
+ * <p>
+ * An instance of this class must only be used by one thread to deserialize
+ * exactly one String; it does not need any synchronization.
  *
  * @author mtazari
  * @author Carsten Stockloew
@@ -73,7 +76,7 @@ public class TurtleParser {
 
 	private boolean eofAfterImplicitBlankNodeAsSubject = false;
 
-	private Hashtable namespaceTable = new Hashtable();
+	private HashMap<String, String> namespaceTable = new HashMap<String, String>();
 
 	/**
 	 * The set of resources in the serialized String. This table is used in the
@@ -81,7 +84,7 @@ public class TurtleParser {
 	 * {@link Resource}. In a second step, these resources are specialized as
 	 * objects of subclasses of {@link Resource}.
 	 */
-	private Hashtable resources = new Hashtable();
+	private HashMap<String, Resource> resources = new HashMap<String, Resource>();
 
 	/**
 	 * The set of blank nodes. Blank nodes are serialized with a prefix "_:" (in
@@ -90,7 +93,7 @@ public class TurtleParser {
 	 * multiple references to this node, this table will store a mapping from
 	 * the blank node identifier to the URI of the URI.
 	 */
-	private Hashtable blankNodes = new Hashtable();
+	private HashMap<String, Resource> blankNodes = new HashMap<String, Resource>();
 
 	private static final String stringifiedPosInf = Double.toString(Double.POSITIVE_INFINITY);
 	private static final String stringifiedNegInf = Double.toString(Double.NEGATIVE_INFINITY);
@@ -163,7 +166,7 @@ public class TurtleParser {
 	private Resource finalizeAndGetRoot(String resourceURI) {
 		Resource root = null;
 		if (resourceURI != null)
-			root = (Resource) resources.get(resourceURI);
+			root = resources.get(resourceURI);
 		if (root == null)
 			root = firstResource;
 		return root;
@@ -175,11 +178,11 @@ public class TurtleParser {
 			r = new Resource();
 			resources.put(r.getURI(), r);
 		} else {
-			r = (Resource) resources.get(uri);
+			r = resources.get(uri);
 			if (r == null) {
 				if (uri.startsWith("_:")) {
 					// bNode ID
-					r = (Resource) blankNodes.get(uri);
+					r = blankNodes.get(uri);
 					if (r == null) {
 						r = new Resource();
 						blankNodes.put(uri, r);
@@ -564,7 +567,7 @@ public class TurtleParser {
 		// Read the namespace URI
 		String namespace = parseURI();
 
-		namespaceTable.put(prefixID.toString(), namespace.toString());
+		namespaceTable.put(prefixID.toString(), namespace);
 	}
 
 	private Object parseQNameOrBoolean(boolean parseAsResource) {
@@ -581,7 +584,7 @@ public class TurtleParser {
 
 		if (c == ':') {
 			// qname using default namespace
-			namespace = (String) namespaceTable.get("");
+			namespace = namespaceTable.get("");
 			if (namespace == null) {
 				throw new RuntimeException("Default namespace used but not defined");
 			}
@@ -611,7 +614,7 @@ public class TurtleParser {
 
 			verifyCharacter(c, ":");
 
-			namespace = (String) namespaceTable.get(prefix.toString());
+			namespace = namespaceTable.get(prefix.toString());
 			if (namespace == null) {
 				throw new RuntimeException("Namespace prefix '" + prefix.toString() + "' used but not defined");
 			}
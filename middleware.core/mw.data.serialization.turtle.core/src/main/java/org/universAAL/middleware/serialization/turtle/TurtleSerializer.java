@@ -22,13 +22,20 @@ package org.universAAL.middleware.serialization.turtle;
 import org.universAAL.middleware.container.utils.LogUtils;
 import org.universAAL.middleware.serialization.MessageContentSerializerEx;
 
+/**
+ * Serializer for the Turtle format. An instance of this class can be used
+ * concurrently: every call of a <code>deserialize</code> method creates its own
+ * {@link TurtleParser}, and the shared data (e.g. the ontological information
+ * in {@link org.universAAL.middleware.owl.OntologyManagement}) is only read
+ * without locking.
+ */
 public class TurtleSerializer implements MessageContentSerializerEx {
 
 	public TurtleSerializer() {
 	}
 
 	/** @see org.universAAL.middleware.serialization.MessageContentSerializer#deserialize(String) */
-	public synchronized Object deserialize(String serialized) {
+	public Object deserialize(String serialized) {
 		return deserialize(serialized, null);
 	}
 
@@ -36,7 +43,7 @@ public class TurtleSerializer implements MessageContentSerializerEx {
 	 * @see org.universAAL.middleware.serialization.MessageContentSerializerEx#deserialize(String,
 	 *      String)
 	 */
-	public synchronized Object deserialize(String serialized, String resourceURI) {
+	public Object deserialize(String serialized, String resourceURI) {
 		try {
 			TurtleParser parser = new TurtleParser();
 			return parser.deserialize(serialized, resourceURI);
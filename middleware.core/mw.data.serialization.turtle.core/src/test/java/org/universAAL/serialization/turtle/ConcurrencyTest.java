@@ -0,0 +1,123 @@
+/*
+	Copyright 2007-2014 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.serialization.turtle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.serialization.turtle.TurtleSerializer;
+import org.universAAL.middleware.util.ResourceComparator;
+
+/**
+ * Deserializes the same String from a growing number of threads with one
+ * shared {@link TurtleSerializer}. Checks that all results are correct and
+ * prints the throughput for every number of threads, which should grow with
+ * the number of available cores.
+ */
+public class ConcurrencyTest extends TestCase {
+
+	private static final int PARSES_PER_THREAD = 2000;
+
+	private Resource createGraph() {
+		Resource root = new Resource("urn:test:ConcurrencyTest#event");
+		root.addType("urn:test:ConcurrencyTest#Event", true);
+		root.setProperty("urn:test:ConcurrencyTest#timestamp", new Long(System.currentTimeMillis()));
+		root.setProperty("urn:test:ConcurrencyTest#confidence", new Integer(80));
+		root.setProperty("urn:test:ConcurrencyTest#value", "some value");
+
+		Resource subject = new Resource("urn:test:ConcurrencyTest#sensor");
+		subject.addType("urn:test:ConcurrencyTest#Sensor", true);
+		root.setProperty("urn:test:ConcurrencyTest#subject", subject);
+
+		List<Resource> locations = new ArrayList<Resource>();
+		for (int i = 0; i < 5; i++) {
+			// anonymous resources
+			Resource loc = new Resource();
+			loc.setProperty("urn:test:ConcurrencyTest#index", new Integer(i));
+			locations.add(loc);
+		}
+		subject.setProperty("urn:test:ConcurrencyTest#location", locations);
+		return root;
+	}
+
+	public void testConcurrentDeserialization() throws Exception {
+		final TurtleSerializer s = new TurtleSerializer();
+		final Resource original = createGraph();
+		final String serialized = s.serialize(original);
+
+		// collect all anonymous URIs to check that they are unique
+		final ConcurrentHashMap<String, String> anonURIs = new ConcurrentHashMap<String, String>();
+
+		int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			final CountDownLatch start = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(threads);
+			final AtomicInteger errors = new AtomicInteger();
+			anonURIs.clear();
+
+			for (int t = 0; t < threads; t++) {
+				new Thread("ConcurrencyTest " + t) {
+					public void run() {
+						ResourceComparator rc = new ResourceComparator();
+						try {
+							start.await();
+							for (int i = 0; i < PARSES_PER_THREAD; i++) {
+								Resource r = (Resource) s.deserialize(serialized);
+								if (r == null || (i % 100 == 0 && !rc.areEqual(original, r))) {
+									errors.incrementAndGet();
+									continue;
+								}
+								List<?> locations = (List<?>) ((Resource) r
+										.getProperty("urn:test:ConcurrencyTest#subject"))
+												.getProperty("urn:test:ConcurrencyTest#location");
+								for (Object loc : locations) {
+									String uri = ((Resource) loc).getURI();
+									if (anonURIs.putIfAbsent(uri, uri) != null)
+										errors.incrementAndGet();
+								}
+							}
+						} catch (Exception e) {
+							e.printStackTrace();
+							errors.incrementAndGet();
+						} finally {
+							done.countDown();
+						}
+					}
+				}.start();
+			}
+
+			long time = System.nanoTime();
+			start.countDown();
+			done.await();
+			time = System.nanoTime() - time;
+
+			assertEquals("Errors with " + threads + " threads", 0, errors.get());
+			long parses = (long) threads * PARSES_PER_THREAD;
+			System.out.println("Turtle deserialization with " + threads + " thread(s): " + parses * 1000000000L / time
+					+ " messages/s");
+		}
+	}
+}
@@ -66,6 +66,18 @@ public class PeerCard {
 		this.role = role;
 	}
 
+	/**
+	 * Create a PeerCard with all its fields, e.g. when deserializing a
+	 * PeerCard that was received from another peer.
+	 */
+	public PeerCard(String ID, PeerRole role, String containerUnit, String platformUnit, String os) {
+		this.peerID = ID;
+		this.role = role;
+		this.container = containerUnit;
+		this.platform = platformUnit;
+		this.os = os;
+	}
+
 	/**
 	 *
 	 * @param strSerialization
@@ -121,6 +121,7 @@ public class ConfigurationManagerImpl implements ConfigurationManager, Configura
 			}
 		}
 		entitiesSources.clear();
+		manager.close();
 		manager = null;
 		OntologyManagement.getInstance().unregister(context, ont);
 	}
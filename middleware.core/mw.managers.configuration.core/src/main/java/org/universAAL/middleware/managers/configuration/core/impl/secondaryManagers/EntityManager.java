@@ -17,22 +17,41 @@
 
 package org.universAAL.middleware.managers.configuration.core.impl.secondaryManagers;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.universAAL.middleware.container.ModuleContext;
 import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.interfaces.configuration.scope.AppPartScope;
+import org.universAAL.middleware.interfaces.configuration.scope.ApplicationScope;
+import org.universAAL.middleware.interfaces.configuration.scope.ModuleScope;
 import org.universAAL.middleware.interfaces.configuration.scope.Scope;
 import org.universAAL.middleware.managers.configuration.core.impl.factories.ScopeFactory;
 import org.universAAL.middleware.managers.configuration.core.owl.Entity;
@@ -41,35 +60,107 @@ import org.universAAL.middleware.rdf.Resource;
 
 /**
  * Collection of {@link Entity Entities} managed in a master file.
+ * <p>
+ * The entities are read from the master file once, when the manager is
+ * created, and kept in memory indexed by URI, scope type, application and
+ * module. Every change is appended to a journal next to the master file; once
+ * the journal grows beyond {@link #PROP_JOURNAL_LIMIT} records the master file
+ * is rewritten in the background and the journal is truncated.
  *
  * @author amedrano
  *
  */
 public class EntityManager {
 
+	/**
+	 * Number of journal records after which the master file is rewritten.
+	 */
+	public static final String PROP_JOURNAL_LIMIT = "org.universaal.configuration.journal.limit";
+
 	private static final String PROP_ENTITIES = Resource.VOCABULARY_NAMESPACE + "entries";
 	private static final String UTF_8 = "utf-8";
 	private static final String ROOT_URI = Resource.VOCABULARY_NAMESPACE + "storedEntities";
+	private static final String JOURNAL_SUFFIX = ".journal";
+	private static final String TMP_SUFFIX = ".tmp";
 
 	private File file;
+	private File journalFile;
 	private ModuleContext mc;
 	private SharedObjectConnector hub;
 
+	private Map<String, Entity> entities = new ConcurrentHashMap<String, Entity>();
+	private Map<Class<?>, Set<String>> byScopeType = new HashMap<Class<?>, Set<String>>();
+	private Map<String, Set<String>> byApplication = new HashMap<String, Set<String>>();
+	private Map<String, Set<String>> byModule = new HashMap<String, Set<String>>();
+
+	private DataOutputStream journal;
+	private int journalRecords;
+	private int journalLimit;
+	private boolean compactionScheduled;
+	private ExecutorService compactor;
+
 	/**
 	 * Create and link the manager.
 	 */
 	public EntityManager(SharedObjectConnector connector, File file) {
 		this.file = file;
+		this.journalFile = new File(file.getPath() + JOURNAL_SUFFIX);
 		this.mc = connector.getContext();
 		hub = connector;
+		journalLimit = getIntProperty(PROP_JOURNAL_LIMIT, 64);
+		File tmp = new File(file.getPath() + TMP_SUFFIX);
+		if (!file.exists() && tmp.exists() && tmp.renameTo(file)) {
+			LogUtils.logWarn(mc, getClass(), "Constructor",
+					new Object[] { "Master file recovered from an interrupted compaction." }, null);
+		}
 		if (!file.exists()) {
 			LogUtils.logWarn(mc, getClass(), "Constructor", new Object[] { "File doesn't exist, creating it." }, null);
+			// a journal without its master file belongs to a removed store
+			journalFile.delete();
 			try {
 				file.createNewFile();
 			} catch (IOException e) {
 				LogUtils.logError(mc, getClass(), "Constructor", new Object[] { "Could not create file." }, null);
 			}
 		}
+		compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Configuration Journal Compactor");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		List<Entity> stored;
+		try {
+			stored = load();
+		} catch (FileNotFoundException e) {
+			stored = Collections.emptyList();
+		}
+		for (Entity entity : stored) {
+			put(entity);
+		}
+		if (replay() > 0) {
+			// start with a compact master file and an empty journal
+			compact();
+		}
+	}
+
+	private int getIntProperty(String name, int def) {
+		Object value = mc.getProperty(name);
+		if (value == null) {
+			return def;
+		}
+		try {
+			int i = Integer.parseInt(value.toString().trim());
+			if (i > 0) {
+				return i;
+			}
+		} catch (NumberFormatException e) {
+		}
+		LogUtils.logWarn(mc, getClass(), "getIntProperty",
+				new Object[] { "Invalid value for ", name, ": ", value, ", using ", Integer.valueOf(def) }, null);
+		return def;
 	}
 
 	/**
@@ -78,7 +169,7 @@ public class EntityManager {
 	 * @return
 	 * @throws FileNotFoundException
 	 */
-	@SuppressWarnings({ "unchecked", "resource" })
+	@SuppressWarnings("resource")
 	private List<Entity> load() throws FileNotFoundException {
 		String serialized = "";
 
@@ -91,61 +182,323 @@ public class EntityManager {
 			 */
 		}
 
-		Resource root;
-		try {
-			root = (Resource) hub.getMessageContentSerializer().deserialize(serialized);
-		} catch (Exception e) {
-			LogUtils.logWarn(mc, getClass(), "load",
-					new String[] { "deserializer error. ", "interpreting empty list!" }, e);
-			root = null;
-		}
-		if (serialized.length() > 5 && root != null) {
-			return (List<Entity>) root.getProperty(PROP_ENTITIES);
+		if (serialized.length() > 5) {
+			return deserialize(serialized);
 		} else {
 			return new ArrayList<Entity>();
 		}
 	}
 
 	/**
-	 * Load the master file as a Map.
+	 * Parse a serialized list of entities, as written by
+	 * {@link #serialize(Collection)}.
 	 *
+	 * @param serialized
 	 * @return
 	 */
-	private Map<String, Entity> loadAsMap() {
-		Map<String, Entity> maped = new HashMap<String, Entity>();
-		List<Entity> list;
+	@SuppressWarnings("unchecked")
+	private List<Entity> deserialize(String serialized) {
+		Resource root;
 		try {
-			list = load();
-		} catch (FileNotFoundException e) {
-			list = Collections.emptyList();
+			root = (Resource) hub.getMessageContentSerializer().deserialize(serialized);
+		} catch (Exception e) {
+			LogUtils.logWarn(mc, getClass(), "load",
+					new String[] { "deserializer error. ", "interpreting empty list!" }, e);
+			root = null;
 		}
-		for (Entity entity : list) {
-			maped.put(entity.getURI(), entity);
+		List<Entity> list = new ArrayList<Entity>();
+		Object entries = root == null ? null : root.getProperty(PROP_ENTITIES);
+		if (entries instanceof List) {
+			list.addAll((List<Entity>) entries);
+		} else if (entries instanceof Entity) {
+			list.add((Entity) entries);
 		}
-		return maped;
+		return list;
+	}
+
+	private String serialize(Collection<Entity> entities) {
+		Resource root = new Resource(ROOT_URI);
+		root.setProperty(PROP_ENTITIES, new ArrayList<Entity>(entities));
+		return hub.getMessageContentSerializer().serialize(root);
 	}
 
 	/**
-	 * save the list of entities in the master file.
+	 * save the list of entities in the master file. The file is replaced only
+	 * once the new content is completely written.
 	 *
 	 * @param entities
+	 * @return true if the master file was written.
 	 */
-	private void store(Collection<Entity> entities) {
-		Resource root = new Resource(ROOT_URI);
-		root.setProperty(PROP_ENTITIES, new ArrayList<Entity>(entities));
-		String serialized = hub.getMessageContentSerializer().serialize(root);
+	private boolean store(Collection<Entity> entities) {
+		String serialized = serialize(entities);
+		File tmp = new File(file.getPath() + TMP_SUFFIX);
 		// writing
 		OutputStreamWriter osw;
 		try {
-			osw = new OutputStreamWriter(new FileOutputStream(file), Charset.forName(UTF_8));
+			osw = new OutputStreamWriter(new FileOutputStream(tmp), Charset.forName(UTF_8));
 			osw.write(serialized);
 			osw.close();
 		} catch (FileNotFoundException e) {
 			// Highly improbable.
 			LogUtils.logError(mc, getClass(), "store", new String[] { "File not Found ??!!" }, e);
+			return false;
 		} catch (IOException e) {
 			LogUtils.logError(mc, getClass(), "store", new String[] { "unable to store" }, e);
+			return false;
+		}
+		if (!tmp.renameTo(file)) {
+			// some platforms do not replace existing files on rename
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				LogUtils.logError(mc, getClass(), "store", new String[] { "unable to replace ", file.getPath() },
+						null);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Apply the records of the journal to the entities read from the master
+	 * file.
+	 *
+	 * @return the number of records applied.
+	 */
+	private int replay() {
+		if (!journalFile.exists() || journalFile.length() == 0) {
+			return 0;
+		}
+		int records = 0;
+		long remaining = journalFile.length();
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				remaining -= 4;
+				if (length < 0 || length > remaining) {
+					LogUtils.logWarn(mc, getClass(), "replay", new Object[] { "Ignoring corrupt record of ",
+							journalFile.getPath(), " with length ", Integer.valueOf(length), " and all after it" },
+							null);
+					// the corrupt records have to be dropped from the journal
+					records++;
+					break;
+				}
+				byte[] record = new byte[length];
+				in.readFully(record);
+				remaining -= length;
+				for (Entity entity : deserialize(new String(record, UTF_8))) {
+					put(entity);
+				}
+				records++;
+			}
+		} catch (EOFException e) {
+			LogUtils.logWarn(mc, getClass(), "replay",
+					new Object[] { "Ignoring incomplete last record of ", journalFile.getPath() }, null);
+			// the torn record has to be dropped from the journal
+			records++;
+		} catch (IOException e) {
+			LogUtils.logError(mc, getClass(), "replay", new Object[] { "unable to read ", journalFile.getPath() }, e);
+			records++;
+		} finally {
+			close(in);
+		}
+		return records;
+	}
+
+	/**
+	 * Append a record with the changed entities to the journal, and schedule a
+	 * compaction if the journal is full.
+	 *
+	 * @param changed
+	 */
+	private synchronized void append(Collection<Entity> changed) {
+		try {
+			byte[] record = serialize(changed).getBytes(UTF_8);
+			if (journal == null) {
+				journal = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+			}
+			journal.writeInt(record.length);
+			journal.write(record);
+			journal.flush();
+			journalRecords++;
+		} catch (IOException e) {
+			LogUtils.logError(mc, getClass(), "append", new Object[] { "unable to write journal, rewriting ",
+					file.getPath() }, e);
+			close(journal);
+			journal = null;
+			// the master file rewrite includes the lost change.
+			journalRecords = journalLimit;
+		}
+		if (journalRecords >= journalLimit && !compactionScheduled && !compactor.isShutdown()) {
+			compactionScheduled = true;
+			compactor.execute(new Runnable() {
+				public void run() {
+					compact();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Rewrite the master file with the current entities, and drop the journal
+	 * records it contains.
+	 */
+	private void compact() {
+		List<Entity> snapshot;
+		long mark;
+		int records;
+		synchronized (this) {
+			compactionScheduled = false;
+			snapshot = new ArrayList<Entity>(entities.values());
+			mark = journalFile.length();
+			records = journalRecords;
+		}
+		// serializing and writing happens without blocking readers or writers
+		if (!store(snapshot)) {
+			return;
+		}
+		synchronized (this) {
+			truncateJournal(mark);
+			journalRecords = Math.max(0, journalRecords - records);
+		}
+	}
+
+	/**
+	 * Remove the first bytes of the journal, which are already contained in
+	 * the master file.
+	 *
+	 * @param mark
+	 *            number of bytes to remove.
+	 */
+	private void truncateJournal(long mark) {
+		close(journal);
+		journal = null;
+		long length = journalFile.length();
+		try {
+			if (length <= mark) {
+				new FileOutputStream(journalFile).close();
+				return;
+			}
+			// keep the records appended during the compaction
+			File tmp = new File(journalFile.getPath() + TMP_SUFFIX);
+			InputStream in = new FileInputStream(journalFile);
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				long skipped = 0;
+				while (skipped < mark) {
+					skipped += in.skip(mark - skipped);
+				}
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				close(in);
+				close(out);
+			}
+			if (!tmp.renameTo(journalFile)) {
+				journalFile.delete();
+				tmp.renameTo(journalFile);
+			}
+		} catch (IOException e) {
+			LogUtils.logError(mc, getClass(), "truncateJournal",
+					new Object[] { "unable to truncate ", journalFile.getPath() }, e);
+		}
+	}
+
+	private static void close(Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+		}
+	}
+
+	/**
+	 * Stop the background compaction, and leave the entities in the master
+	 * file.
+	 */
+	public void close() {
+		compactor.shutdown();
+		try {
+			compactor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		boolean pending;
+		synchronized (this) {
+			pending = journalRecords > 0;
+		}
+		if (pending) {
+			compact();
+		}
+		synchronized (this) {
+			close(journal);
+			journal = null;
+		}
+	}
+
+	/**
+	 * Store an entity in memory and in the indexes.
+	 *
+	 * @param ent
+	 *            an entity not shared with any caller.
+	 */
+	private synchronized void put(Entity ent) {
+		if (entities.put(ent.getURI(), ent) != null) {
+			return;
+		}
+		Scope scope = ScopeFactory.getScope(ent.getURI());
+		if (scope == null) {
+			return;
+		}
+		index(byScopeType, scope.getClass(), ent.getURI());
+		if (scope instanceof ApplicationScope) {
+			index(byApplication, ((ApplicationScope) scope).getAppID(), ent.getURI());
+		}
+		if (scope instanceof ModuleScope) {
+			index(byModule, ((ModuleScope) scope).getModuleID(), ent.getURI());
+		}
+	}
+
+	private static <K> void index(Map<K, Set<String>> index, K key, String uri) {
+		Set<String> uris = index.get(key);
+		if (uris == null) {
+			uris = new HashSet<String>();
+			index.put(key, uris);
+		}
+		uris.add(uri);
+	}
+
+	private List<Entity> lookup(Set<String> uris) {
+		List<Entity> result = new ArrayList<Entity>();
+		if (uris != null) {
+			for (String uri : uris) {
+				result.add(copy(entities.get(uri)));
+			}
 		}
+		return result;
+	}
+
+	/**
+	 * Copy an entity, so that the stored version is not modified by callers.
+	 *
+	 * @param ent
+	 * @return
+	 */
+	private static Entity copy(Entity ent) {
+		Entity copy = ent.copyEntity();
+		return copy == null ? ent : copy;
 	}
 
 	/**
@@ -164,14 +517,12 @@ public class EntityManager {
 
 		ent.unliteral();
 
-		Map<String, Entity> emap = loadAsMap();
-
-		toBeAdded = checkAdd(ent, emap);
+		toBeAdded = checkAdd(ent, entities.get(ent.getURI()));
 
 		if (toBeAdded) {
-			emap.remove(ent.getURI());
-			emap.put(ent.getURI(), ent);
-			store(emap.values());
+			Entity stored = copy(ent);
+			put(stored);
+			append(Collections.singletonList(stored));
 		}
 		return toBeAdded;
 	}
@@ -180,12 +531,10 @@ public class EntityManager {
 	 * Check that it is possible to add an entity in the file.
 	 *
 	 * @param newEnt
-	 * @param emap
+	 * @param existing
 	 * @return
 	 */
-	private boolean checkAdd(Entity newEnt, Map<String, Entity> emap) {
-
-		Entity existing = emap.get(newEnt.getURI());
+	private boolean checkAdd(Entity newEnt, Entity existing) {
 
 		return existing == null || newEnt.isNewerThan(existing);
 		// || newEnt.getVersion() == existing.getVersion();
@@ -203,8 +552,7 @@ public class EntityManager {
 	 * @return the list of newer {@link Entity Entities} found.
 	 */
 	public synchronized List<Entity> mergeProbe(List<Entity> news) {
-		Map<String, Entity> emap = loadAsMap();
-		return mergeProbe(news, emap);
+		return mergeProbe(news, new HashMap<String, Entity>());
 	}
 
 	/**
@@ -213,11 +561,11 @@ public class EntityManager {
 	 * counterpart has a smaller version number than the new entity.
 	 *
 	 * @param news The new entities to be added to the list of existing ones.
-	 * @param emap The existing entities in a map.
-	 * @return "Existing winners" as the set of existing entities from "emap" that had a counterpart in "news" but have not been overwritten by the new one
+	 * @param merged Receives the entities from "news" that overwrite the stored ones.
+	 * @return "Existing winners" as the set of existing entities that had a counterpart in "news" but have not been overwritten by the new one
 	 *         because their version number was not smaller than the version number of their counterparts from "news".
 	 */
-	private List<Entity> mergeProbe(List<Entity> news, Map<String, Entity> emap) {
+	private List<Entity> mergeProbe(List<Entity> news, Map<String, Entity> merged) {
 		List<Entity> existingWinners = new ArrayList<Entity>();
 		for (Entity ent : news) {
 			if (ent == null) {
@@ -227,14 +575,18 @@ public class EntityManager {
 			// make sure that "ent" as a "Resource" does not have the flag "Resource#isXMLLiteral" equal to true
 			ent.unliteral();
 
-			if (checkAdd(ent, emap)) {
+			Entity existing = merged.get(ent.getURI());
+			if (existing == null) {
+				existing = entities.get(ent.getURI());
+			}
+			if (checkAdd(ent, existing)) {
 				// either ent does not have any existing counterpart or it is newer than the existing one
 				// --> add it and in this way override any existing one
-				emap.put(ent.getURI(), ent);
+				merged.put(ent.getURI(), ent);
 			} else {
 				// ent has indeed an existing counterpart but its own version number is not higher than the version number of the existing one
 				// --> ent does not overwrite the existing one
-				existingWinners.add(emap.get(ent.getURI()));
+				existingWinners.add(copy(existing));
 			}
 		}
 		return existingWinners;
@@ -250,10 +602,17 @@ public class EntityManager {
 	 * @return the list of newer {@link Entity Entities} found.
 	 */
 	public synchronized List<Entity> mergeAdd(List<Entity> news) {
-		Map<String, Entity> emap = loadAsMap();
-		List<Entity> rejected = mergeProbe(news, emap);
-		List<Entity> newset = new ArrayList<Entity>(emap.values());
-		store(newset);
+		Map<String, Entity> merged = new HashMap<String, Entity>();
+		List<Entity> rejected = mergeProbe(news, merged);
+		if (!merged.isEmpty()) {
+			List<Entity> changed = new ArrayList<Entity>();
+			for (Entity ent : merged.values()) {
+				Entity stored = copy(ent);
+				put(stored);
+				changed.add(stored);
+			}
+			append(changed);
+		}
 		return rejected;
 	}
 
@@ -265,12 +624,12 @@ public class EntityManager {
 	 *            the uri(scope) to be matched.
 	 * @return the entity if found, null otherwise.
 	 */
-	public synchronized Entity find(String uri) {
+	public Entity find(String uri) {
 		if (uri == null || uri.isEmpty() || ScopeFactory.getScope(uri) == null) {
 			return null;
 		}
-		Map<String, Entity> emap = loadAsMap();
-		return emap.get(uri);
+		Entity ent = entities.get(uri);
+		return ent == null ? null : copy(ent);
 	}
 
 	/**
@@ -281,14 +640,48 @@ public class EntityManager {
 	 *            empty list returns all).
 	 * @return the matching entities found.
 	 */
-	public synchronized List<Entity> find(List<TypeExpression> filters) {
-		List<Entity> list;
-		try {
-			list = load();
-		} catch (FileNotFoundException e) {
-			return null;
+	public List<Entity> find(List<TypeExpression> filters) {
+		List<Entity> result = EntityManager.filter(new ArrayList<Entity>(entities.values()), filters);
+		for (int i = 0; i < result.size(); i++) {
+			result.set(i, copy(result.get(i)));
 		}
-		return EntityManager.filter(list, filters);
+		return result;
+	}
+
+	/**
+	 * Find all {@link Entity Entities} whose {@link Scope} is exactly of the
+	 * given type.
+	 *
+	 * @param scopeType
+	 *            the class of the scope, e.g. {@link AppPartScope}.
+	 * @return the matching entities found.
+	 */
+	public synchronized List<Entity> findByScopeType(Class<? extends Scope> scopeType) {
+		return lookup(byScopeType.get(scopeType));
+	}
+
+	/**
+	 * Find all {@link Entity Entities} in the scope of an application,
+	 * including the ones of its parts.
+	 *
+	 * @param appID
+	 *            the id of the application.
+	 * @return the matching entities found.
+	 */
+	public synchronized List<Entity> findByApplication(String appID) {
+		return lookup(byApplication.get(appID));
+	}
+
+	/**
+	 * Find all {@link Entity Entities} in the scope of a module, in any
+	 * instance.
+	 *
+	 * @param moduleID
+	 *            the id of the module.
+	 * @return the matching entities found.
+	 */
+	public synchronized List<Entity> findByModule(String moduleID) {
+		return lookup(byModule.get(moduleID));
 	}
 
 	/**
@@ -171,6 +171,14 @@ public class ConfigurationParameter extends Entity {
 		return true;
 	}
 
+	public Entity copyEntity() {
+		Entity copy = super.copyEntity();
+		if (copy instanceof ConfigurationParameter) {
+			((ConfigurationParameter) copy).isLiteral = isLiteral;
+		}
+		return copy;
+	}
+
 	public MergedRestriction getValueRestriction() {
 		Object o = props.get(PROP_VALUE_RESTRICTION);
 		return (o instanceof MergedRestriction)?  (MergedRestriction) o : null;
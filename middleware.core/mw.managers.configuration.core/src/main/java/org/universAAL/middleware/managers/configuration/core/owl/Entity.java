@@ -15,6 +15,7 @@
  ******************************************************************************/
 package org.universAAL.middleware.managers.configuration.core.owl;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -143,6 +144,30 @@ public class Entity extends ManagedIndividual {
 		return false;
 	}
 	
+	/**
+	 * Create a copy of this entity whose properties can be changed without
+	 * affecting this entity. Lists of values are copied, other values are
+	 * shared.
+	 *
+	 * @return the copy, null if this entity could not be specialized.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Entity copyEntity() {
+		Object copy = copy(false);
+		if (!(copy instanceof Entity)) {
+			return null;
+		}
+		Entity e = (Entity) copy;
+		e.unliteral();
+		for (Object key : new ArrayList(e.props.keySet())) {
+			Object value = e.props.get(key);
+			if (value instanceof List) {
+				e.props.put(key, new ArrayList((List) value));
+			}
+		}
+		return e;
+	}
+
 	@SuppressWarnings("unchecked")
 	public boolean setProperty(String propURI, Object value) {
 		if (PROP_VERSION.equals(propURI))
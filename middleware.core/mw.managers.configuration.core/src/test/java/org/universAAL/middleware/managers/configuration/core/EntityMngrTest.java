@@ -23,7 +23,10 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -32,6 +35,8 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.universAAL.middleware.container.JUnit.JUnitModuleContext;
 import org.universAAL.middleware.interfaces.configuration.configurationDefinitionTypes.DescribedEntity;
+import org.universAAL.middleware.interfaces.configuration.scope.ApplicationScope;
+import org.universAAL.middleware.interfaces.configuration.scope.SpaceScope;
 import org.universAAL.middleware.managers.configuration.core.impl.factories.EntityFactory;
 import org.universAAL.middleware.managers.configuration.core.impl.secondaryManagers.EntityManager;
 import org.universAAL.middleware.managers.configuration.core.impl.secondaryManagers.SharedObjectConnector;
@@ -39,6 +44,7 @@ import org.universAAL.middleware.managers.configuration.core.owl.ConfigurationOn
 import org.universAAL.middleware.managers.configuration.core.owl.Entity;
 import org.universAAL.middleware.owl.DataRepOntology;
 import org.universAAL.middleware.owl.OntologyManagement;
+import org.universAAL.middleware.owl.TypeExpression;
 import org.universAAL.middleware.serialization.MessageContentSerializer;
 import org.universAAL.middleware.serialization.turtle.TurtleSerializer;
 import org.universAAL.middleware.serialization.turtle.TurtleUtil;
@@ -129,6 +135,77 @@ public class EntityMngrTest {
 		// assertEquals(les.get(1), a.get(0));
 	}
 
+	@Test
+	public void persistenceTest() {
+		File f = new File("target/persistenceTest.ttl");
+		EntityManager em = init(f);
+		List<Entity> les = getAListOfEntities();
+		em.mergeAdd(les);
+		les.get(0).incrementVersion();
+		assertTrue(em.addEntity(les.get(0)));
+		int size = em.find(new ArrayList<TypeExpression>()).size();
+
+		// the changes are replayed from the journal
+		EntityManager reopened = new EntityManager(new SharedObjectConnector(mc), f);
+		assertEquals(size, reopened.find(new ArrayList<TypeExpression>()).size());
+		assertEquals(les.get(0).getVersion(), reopened.find(les.get(0).getURI()).getVersion());
+		reopened.close();
+		em.close();
+		assertEquals(0, new File(f.getPath() + ".journal").length());
+
+		// and from the master file once compacted
+		reopened = new EntityManager(new SharedObjectConnector(mc), f);
+		assertEquals(size, reopened.find(new ArrayList<TypeExpression>()).size());
+		assertEquals(les.get(0).getVersion(), reopened.find(les.get(0).getURI()).getVersion());
+		reopened.close();
+	}
+
+	@Test
+	public void corruptJournalTest() throws IOException {
+		corruptJournal(new File("target/corruptJournalTest1.ttl"), -1);
+		corruptJournal(new File("target/corruptJournalTest2.ttl"), Integer.MAX_VALUE);
+	}
+
+	private void corruptJournal(File f, int length) throws IOException {
+		EntityManager em = init(f);
+		List<Entity> les = getAListOfEntities();
+		em.mergeAdd(les);
+		int size = em.find(new ArrayList<TypeExpression>()).size();
+		long version = em.find(les.get(0).getURI()).getVersion();
+
+		// a record with an invalid length, followed by a valid one
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(f.getPath() + ".journal", true));
+		out.writeInt(length);
+		out.close();
+		les.get(0).incrementVersion();
+		assertTrue(em.addEntity(les.get(0)));
+
+		// the replay stops at the invalid record
+		EntityManager reopened = new EntityManager(new SharedObjectConnector(mc), f);
+		assertEquals(size, reopened.find(new ArrayList<TypeExpression>()).size());
+		assertEquals(version, reopened.find(les.get(0).getURI()).getVersion());
+		assertEquals(0, new File(f.getPath() + ".journal").length());
+		reopened.close();
+		em.close();
+	}
+
+	@Test
+	public void indexTest() {
+		EntityManager em = init(new File("target/indexTest.ttl"));
+		em.mergeAdd(getAListOfEntities());
+		assertEquals(1, em.findByApplication("foo.giver").size());
+		assertEquals(1, em.findByScopeType(ApplicationScope.class).size());
+		assertEquals(1, em.findByScopeType(SpaceScope.class).size());
+		assertTrue(em.findByModule("foo.giver").isEmpty());
+
+		// returned entities are copies
+		Entity e = em.findByApplication("foo.giver").get(0);
+		long version = e.getVersion();
+		e.incrementVersion();
+		assertEquals(version, em.find(e.getURI()).getVersion());
+		em.close();
+	}
+
 	private List<Entity> getAListOfEntities() {
 		DescribedEntity[] des = ConfigSample.getConfigurationDescription();
 		List<Entity> les = new ArrayList<Entity>();
@@ -0,0 +1,168 @@
+/*
+Copyright 2007-2015 Fraunhofer IGD, http://www.igd.fraunhofer.de
+Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.universAAL.middleware.managers.distributedmw.api;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Filter for log entries that are sent to a {@link DistributedLogListener}.
+ * Filters are evaluated on the node that issues the log entry, so that
+ * entries not accepted by any listener are not sent over the network. A log
+ * entry is accepted if its level is at least the minimum level, and if its
+ * module and package match the filter.
+ */
+public final class DistributedLogFilter {
+
+	/**
+	 * The filter that accepts all log entries.
+	 */
+	public static final DistributedLogFilter ALL = new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_TRACE,
+			null, null);
+
+	private final int minLevel;
+	private final Set<String> modules;
+	private final String[] packages;
+
+	/**
+	 * Create a new filter.
+	 *
+	 * @param minLevel
+	 *            the minimum log level (see the constants in
+	 *            {@link DistributedLogListener}).
+	 * @param modules
+	 *            the names of the modules whose log entries are accepted,
+	 *            null for all modules.
+	 * @param packages
+	 *            the packages of the classes whose log entries are accepted,
+	 *            including their sub packages, null for all packages.
+	 */
+	public DistributedLogFilter(int minLevel, String[] modules, String[] packages) {
+		this.minLevel = minLevel;
+		this.modules = modules == null ? null : new HashSet<String>(Arrays.asList(modules));
+		if (packages == null) {
+			this.packages = null;
+		} else {
+			Set<String> pkgs = new HashSet<String>(Arrays.asList(packages));
+			this.packages = pkgs.toArray(new String[pkgs.size()]);
+			Arrays.sort(this.packages);
+		}
+	}
+
+	public int getMinLevel() {
+		return minLevel;
+	}
+
+	/**
+	 * @return the accepted modules, null for all modules.
+	 */
+	public String[] getModules() {
+		if (modules == null)
+			return null;
+		String[] res = modules.toArray(new String[modules.size()]);
+		Arrays.sort(res);
+		return res;
+	}
+
+	/**
+	 * @return the accepted package prefixes, null for all packages.
+	 */
+	public String[] getPackages() {
+		return packages == null ? null : packages.clone();
+	}
+
+	/**
+	 * Determines whether a log entry is accepted by this filter.
+	 *
+	 * @param logLevel
+	 *            the log level of the entry.
+	 * @param module
+	 *            the module of the entry.
+	 * @param pkg
+	 *            the package of the class that issued the entry.
+	 * @return true, if the entry is accepted.
+	 */
+	public boolean accepts(int logLevel, String module, String pkg) {
+		if (logLevel < minLevel)
+			return false;
+		if (modules != null && !modules.contains(module))
+			return false;
+		if (packages != null) {
+			if (pkg == null)
+				return false;
+			for (int i = 0; i < packages.length; i++)
+				if (pkg.startsWith(packages[i]) && (pkg.length() == packages[i].length()
+						|| pkg.charAt(packages[i].length()) == '.'))
+					return true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Create a filter that accepts all log entries that are accepted by this
+	 * filter or by the given one.
+	 *
+	 * @param other
+	 *            the other filter.
+	 * @return the combined filter.
+	 */
+	public DistributedLogFilter union(DistributedLogFilter other) {
+		if (other == null || equals(other))
+			return this;
+		String[] mods = null;
+		if (modules != null && other.modules != null) {
+			Set<String> s = new HashSet<String>(modules);
+			s.addAll(other.modules);
+			mods = s.toArray(new String[s.size()]);
+		}
+		String[] pkgs = null;
+		if (packages != null && other.packages != null) {
+			Set<String> s = new HashSet<String>(Arrays.asList(packages));
+			s.addAll(Arrays.asList(other.packages));
+			pkgs = s.toArray(new String[s.size()]);
+		}
+		return new DistributedLogFilter(Math.min(minLevel, other.minLevel), mods, pkgs);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof DistributedLogFilter))
+			return false;
+		DistributedLogFilter other = (DistributedLogFilter) obj;
+		return minLevel == other.minLevel
+				&& (modules == null ? other.modules == null : modules.equals(other.modules))
+				&& Arrays.equals(packages, other.packages);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * minLevel + (modules == null ? 0 : modules.hashCode())) + Arrays.hashCode(packages);
+	}
+
+	@Override
+	public String toString() {
+		return "level >= " + minLevel + ", modules: " + modules + ", packages: "
+				+ (packages == null ? null : Arrays.asList(packages));
+	}
+}
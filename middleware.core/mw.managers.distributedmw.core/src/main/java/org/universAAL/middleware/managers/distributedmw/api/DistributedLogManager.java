@@ -36,5 +36,19 @@ public interface DistributedLogManager extends Manager {
 
 	void addListener(DistributedLogListener listener, List<PeerCard> nodes);
 
+	/**
+	 * Add a listener that is only notified of the log entries accepted by the
+	 * given filter. The filter is evaluated on the nodes issuing the log
+	 * entries.
+	 *
+	 * @param listener
+	 *            the listener.
+	 * @param nodes
+	 *            the nodes to listen to, null for all nodes.
+	 * @param filter
+	 *            the filter, null to accept all log entries.
+	 */
+	void addListener(DistributedLogListener listener, List<PeerCard> nodes, DistributedLogFilter filter);
+
 	void removeListener(DistributedLogListener listener, List<PeerCard> nodes);
 }
@@ -31,6 +31,7 @@ import org.universAAL.middleware.container.utils.LogUtils;
 import org.universAAL.middleware.interfaces.PeerCard;
 import org.universAAL.middleware.managers.api.DistributedMWEventHandler;
 import org.universAAL.middleware.managers.distributedmw.api.DistributedBusMemberListener;
+import org.universAAL.middleware.managers.distributedmw.api.DistributedLogFilter;
 import org.universAAL.middleware.managers.distributedmw.api.DistributedLogListener;
 import org.universAAL.middleware.managers.distributedmw.api.DistributedBusMemberManager;
 import org.universAAL.middleware.managers.distributedmw.api.DistributedLogManager;
@@ -70,6 +71,7 @@ public class DistributedMWManagerImpl implements DistributedBusMemberManager, Di
 			handlers.put(LogListenerHandler.TYPE_REMOVE_LOGLISTENER, logListenerHandler.new RemoveListenerHandler());
 			handlers.put(LogListenerHandler.TYPE_LOGLISTENER_MESSAGE,
 					logListenerHandler.new LogListenerMessageHandler());
+			handlers.put(LogListenerHandler.TYPE_LOGLISTENER_BATCH, logListenerHandler.new LogListenerBatchHandler());
 
 			handlers.put(BusMemberListenerHandler.TYPE_ADD_BUSMEMBER_LISTENER,
 					busMemberListenerHandler.new AddListenerHandler());
@@ -129,6 +131,10 @@ public class DistributedMWManagerImpl implements DistributedBusMemberManager, Di
 		logListenerHandler.addListener(listener, nodes);
 	}
 
+	public void addListener(DistributedLogListener listener, List<PeerCard> nodes, DistributedLogFilter filter) {
+		logListenerHandler.addListener(listener, nodes, filter);
+	}
+
 	public void removeListener(DistributedLogListener listener, List<PeerCard> nodes) {
 		logListenerHandler.removeListener(listener, nodes);
 	}
@@ -154,6 +160,7 @@ public class DistributedMWManagerImpl implements DistributedBusMemberManager, Di
 		context.getContainer().removeSharedObject(context, this, removeParamsBMLMgmt);
 		context.getContainer().removeSharedObject(context, handler, removeParamsEvtH);
 		MySpaceListener.getInstance().stop();
+		logListenerHandler.close();
 	}
 
 	public static void sendMessage(Resource r, Set<PeerCard> receivers) {
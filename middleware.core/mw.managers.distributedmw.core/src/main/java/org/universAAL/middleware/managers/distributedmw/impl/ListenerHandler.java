@@ -83,6 +83,7 @@ public abstract class ListenerHandler<T> implements SpaceListener {
 			synchronized (localListeners) {
 				synchronized (subscribers) {
 					subscribers.add(sender);
+					subscriberAdded(sender, r);
 
 					if (subscribers.size() == 1 && localListeners.size() == 0) {
 						// this is the first remote subscriber and we have no
@@ -101,6 +102,7 @@ public abstract class ListenerHandler<T> implements SpaceListener {
 			synchronized (localListeners) {
 				synchronized (subscribers) {
 					subscribers.remove(sender);
+					subscriberRemoved(sender);
 
 					if (subscribers.size() == 0 && localListeners.size() == 0) {
 						// there is no one left interested in the messages
@@ -232,6 +234,7 @@ public abstract class ListenerHandler<T> implements SpaceListener {
 			return;
 		Resource r = new Resource();
 		r.addType(TYPE_ADD, true);
+		addSubscriptionInfo(r);
 		DistributedMWManagerImpl.sendMessage(r, peers);
 	}
 
@@ -245,6 +248,46 @@ public abstract class ListenerHandler<T> implements SpaceListener {
 		DistributedMWManagerImpl.sendMessage(r, peers);
 	}
 
+	/**
+	 * Send the subscription again to all remote nodes we have subscribed to,
+	 * e.g. because the information added by
+	 * {@link #addSubscriptionInfo(Resource)} has changed.
+	 */
+	protected void resubscribe() {
+		synchronized (listeners) {
+			subscribe(new ArrayList<PeerCard>(listeners.keySet()));
+		}
+	}
+
+	/**
+	 * Add information to a subscription message that is sent to remote nodes.
+	 *
+	 * @param r
+	 *            the subscription message.
+	 */
+	protected void addSubscriptionInfo(Resource r) {
+	}
+
+	/**
+	 * A remote node has subscribed, or renewed its subscription.
+	 *
+	 * @param sender
+	 *            the remote node.
+	 * @param r
+	 *            the subscription message.
+	 */
+	protected void subscriberAdded(PeerCard sender, Resource r) {
+	}
+
+	/**
+	 * A remote node is no longer subscribed.
+	 *
+	 * @param sender
+	 *            the remote node.
+	 */
+	protected void subscriberRemoved(PeerCard sender) {
+	}
+
 	protected abstract void addListenerLocally();
 
 	protected abstract void removeListenerLocally();
@@ -260,6 +303,9 @@ public abstract class ListenerHandler<T> implements SpaceListener {
 			synchronized (localListeners) {
 				synchronized (subscribers) {
 					listeners.clear();
+					for (PeerCard peer : subscribers) {
+						subscriberRemoved(peer);
+					}
 					subscribers.clear();
 					if (localListeners.size() == 0)
 						removeListenerLocally();
@@ -313,6 +359,7 @@ public abstract class ListenerHandler<T> implements SpaceListener {
 		synchronized (localListeners) {
 			synchronized (subscribers) {
 				subscribers.remove(peer);
+				subscriberRemoved(peer);
 
 				if (subscribers.size() == 0 && localListeners.size() == 0) {
 					// there is no one left interested in the messages (local
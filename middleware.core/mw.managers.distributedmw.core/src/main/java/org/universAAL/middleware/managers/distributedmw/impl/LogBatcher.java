@@ -0,0 +1,343 @@
+/*
+	Copyright 2007-2016 Fraunhofer IGD, http://www.igd.fraunhofer.de
+	Fraunhofer-Gesellschaft - Institute for Computer Graphics Research
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.middleware.managers.distributedmw.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.managers.distributedmw.api.DistributedLogFilter;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.xsd.Base64Binary;
+
+/**
+ * Buffer for log entries that are shipped to remote subscribers. Entries are
+ * queued by the logging thread and sent by a background thread in
+ * compressed batches, one batch per group of subscribers with the same
+ * filter. Subscribers of older versions, which can not decode batches,
+ * receive single entries instead. If the buffer is full, the oldest entries
+ * are dropped.
+ */
+class LogBatcher {
+
+	/**
+	 * A log entry, the message parts are already converted to String.
+	 */
+	static class LogEntry {
+		final int level;
+		final String module;
+		final String pkg;
+		final String cls;
+		final String method;
+		final String[] msgPart;
+		final String t;
+
+		LogEntry(int level, String module, String pkg, String cls, String method, String[] msgPart, String t) {
+			this.level = level;
+			this.module = module;
+			this.pkg = pkg;
+			this.cls = cls;
+			this.method = method;
+			this.msgPart = msgPart;
+			this.t = t;
+		}
+	}
+
+	/**
+	 * Provides the subscribers of the log entries.
+	 */
+	interface Subscribers {
+		/**
+		 * @return the current subscribers and their filters.
+		 */
+		Map<PeerCard, DistributedLogFilter> getSubscriberFilters();
+
+		/**
+		 * @param subscriber
+		 *            one of the current subscribers.
+		 * @return true, if the subscriber runs an older version and has to
+		 *         receive single entries.
+		 */
+		boolean isLegacy(PeerCard subscriber);
+
+		/**
+		 * @param e
+		 *            the entry.
+		 * @return the message for a single entry, as sent to subscribers of
+		 *         older versions.
+		 */
+		Resource createSingleMessage(LogEntry e);
+	}
+
+	private final Subscribers subscribers;
+	private final String batchType;
+	private final String batchProp;
+	private final LinkedBlockingQueue<LogEntry> queue;
+	private final int batchSize;
+	private final long flushInterval;
+	private final AtomicLong dropped = new AtomicLong();
+	private ScheduledExecutorService executor = null;
+
+	/**
+	 * @param subscribers
+	 *            the provider of subscribers.
+	 * @param batchType
+	 *            the type of the batch messages.
+	 * @param batchProp
+	 *            the property of the batch messages holding the entries.
+	 * @param capacity
+	 *            the maximum number of buffered entries.
+	 * @param batchSize
+	 *            the maximum number of entries in a message.
+	 * @param flushInterval
+	 *            the time between two flushes, in milliseconds.
+	 */
+	LogBatcher(Subscribers subscribers, String batchType, String batchProp, int capacity, int batchSize,
+			long flushInterval) {
+		this.subscribers = subscribers;
+		this.batchType = batchType;
+		this.batchProp = batchProp;
+		this.queue = new LinkedBlockingQueue<LogEntry>(Math.max(1, capacity));
+		this.batchSize = Math.max(1, batchSize);
+		this.flushInterval = Math.max(1, flushInterval);
+	}
+
+	/**
+	 * Queue a log entry, dropping the oldest entries if the buffer is full.
+	 *
+	 * @param e
+	 *            the entry.
+	 */
+	void add(LogEntry e) {
+		while (!queue.offer(e)) {
+			if (queue.poll() != null) {
+				dropped.incrementAndGet();
+			}
+		}
+		ensureStarted();
+	}
+
+	/**
+	 * @return the number of entries dropped because the buffer was full.
+	 */
+	long getDroppedCount() {
+		return dropped.get();
+	}
+
+	private synchronized void ensureStarted() {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "DistributedMW log shipping");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				flush();
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Send all buffered entries to the subscribers that accept them.
+	 */
+	void flush() {
+		List<LogEntry> entries = new ArrayList<LogEntry>(queue.size());
+		queue.drainTo(entries);
+		if (entries.isEmpty()) {
+			return;
+		}
+
+		// group the subscribers with the same filter
+		Map<DistributedLogFilter, List<PeerCard>> groups = new HashMap<DistributedLogFilter, List<PeerCard>>();
+		Map<DistributedLogFilter, List<PeerCard>> legacyGroups = new HashMap<DistributedLogFilter, List<PeerCard>>();
+		for (Map.Entry<PeerCard, DistributedLogFilter> sub : subscribers.getSubscriberFilters().entrySet()) {
+			Map<DistributedLogFilter, List<PeerCard>> m = subscribers.isLegacy(sub.getKey()) ? legacyGroups
+					: groups;
+			List<PeerCard> peers = m.get(sub.getValue());
+			if (peers == null) {
+				peers = new ArrayList<PeerCard>();
+				m.put(sub.getValue(), peers);
+			}
+			peers.add(sub.getKey());
+		}
+
+		for (Map.Entry<DistributedLogFilter, List<PeerCard>> group : groups.entrySet()) {
+			DistributedLogFilter filter = group.getKey();
+			List<LogEntry> batch = new ArrayList<LogEntry>();
+			for (LogEntry e : entries) {
+				if (filter.accepts(e.level, e.module, e.pkg)) {
+					batch.add(e);
+					if (batch.size() == batchSize) {
+						send(batch, group.getValue());
+						batch.clear();
+					}
+				}
+			}
+			send(batch, group.getValue());
+		}
+
+		for (Map.Entry<DistributedLogFilter, List<PeerCard>> group : legacyGroups.entrySet()) {
+			DistributedLogFilter filter = group.getKey();
+			for (LogEntry e : entries) {
+				if (filter.accepts(e.level, e.module, e.pkg)) {
+					sendSingle(e, group.getValue());
+				}
+			}
+		}
+	}
+
+	private void sendSingle(LogEntry e, List<PeerCard> peers) {
+		try {
+			sendMessage(subscribers.createSingleMessage(e), peers);
+		} catch (Exception ex) {
+			// log entries of this class are not shipped, see LogListenerHandler
+			LogUtils.logWarn(DistributedMWManagerImpl.context, LogBatcher.class, "sendSingle",
+					new Object[] { "Could not send a log entry." }, ex);
+		}
+	}
+
+	private void send(List<LogEntry> batch, List<PeerCard> peers) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			Resource r = new Resource();
+			r.addType(batchType, true);
+			r.setProperty(batchProp, new Base64Binary(encode(batch)));
+			sendMessage(r, peers);
+		} catch (Exception e) {
+			// log entries of this class are not shipped, see LogListenerHandler
+			LogUtils.logWarn(DistributedMWManagerImpl.context, LogBatcher.class, "send",
+					new Object[] { "Could not send ", batch.size(), " log entries." }, e);
+		}
+	}
+
+	/**
+	 * Send a message to the given peers.
+	 */
+	void sendMessage(Resource r, List<PeerCard> peers) {
+		DistributedMWManagerImpl.sendMessage(r, peers);
+	}
+
+	/**
+	 * Flush the buffer and stop the background thread.
+	 */
+	synchronized void close() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		flush();
+	}
+
+	/**
+	 * Encode log entries as gzip compressed binary data.
+	 */
+	static byte[] encode(List<LogEntry> entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes));
+		out.writeInt(entries.size());
+		for (LogEntry e : entries) {
+			out.writeInt(e.level);
+			writeString(out, e.module);
+			writeString(out, e.pkg);
+			writeString(out, e.cls);
+			writeString(out, e.method);
+			out.writeInt(e.msgPart.length);
+			for (int i = 0; i < e.msgPart.length; i++) {
+				writeString(out, e.msgPart[i]);
+			}
+			writeString(out, e.t);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode log entries encoded with {@link #encode(List)}.
+	 */
+	static List<LogEntry> decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
+		try {
+			int n = in.readInt();
+			List<LogEntry> entries = new ArrayList<LogEntry>(n);
+			for (int i = 0; i < n; i++) {
+				int level = in.readInt();
+				String module = readString(in);
+				String pkg = readString(in);
+				String cls = readString(in);
+				String method = readString(in);
+				String[] msgPart = new String[in.readInt()];
+				for (int j = 0; j < msgPart.length; j++) {
+					msgPart[j] = readString(in);
+				}
+				entries.add(new LogEntry(level, module, pkg, cls, method, msgPart, readString(in)));
+			}
+			return entries;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Strings are written as UTF-8 with a length prefix, -1 for null, as
+	 * writeUTF is limited to 64KB.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes("UTF-8");
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] b = new byte[len];
+		in.readFully(b);
+		return new String(b, "UTF-8");
+	}
+}
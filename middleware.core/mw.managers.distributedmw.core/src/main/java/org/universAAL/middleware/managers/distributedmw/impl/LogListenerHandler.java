@@ -19,21 +19,33 @@
  */
 package org.universAAL.middleware.managers.distributedmw.impl;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.universAAL.middleware.container.LogListener;
+import org.universAAL.middleware.container.utils.LogUtils;
 import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.managers.distributedmw.api.DistributedLogFilter;
 import org.universAAL.middleware.managers.distributedmw.api.DistributedLogListener;
 import org.universAAL.middleware.managers.distributedmw.impl.DistributedMWManagerImpl.Handler;
+import org.universAAL.middleware.managers.distributedmw.impl.LogBatcher.LogEntry;
 import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.xsd.Base64Binary;
 
 /**
+ * Handles the {@link DistributedLogListener}s. Log entries are filtered on the
+ * node issuing them, with the {@link DistributedLogFilter}s of the
+ * subscribers, and shipped to remote subscribers in compressed batches by a
+ * {@link LogBatcher}.
  *
  * @author Carsten Stockloew
  *
@@ -42,6 +54,7 @@ public class LogListenerHandler extends ListenerHandler<DistributedLogListener>
 	public static final String TYPE_ADD_LOGLISTENER = DistributedMWManagerImpl.NAMESPACE + "addLogListener";
 	public static final String TYPE_REMOVE_LOGLISTENER = DistributedMWManagerImpl.NAMESPACE + "removeLogListener";
 	public static final String TYPE_LOGLISTENER_MESSAGE = DistributedMWManagerImpl.NAMESPACE + "LogListenerMessage";
+	public static final String TYPE_LOGLISTENER_BATCH = DistributedMWManagerImpl.NAMESPACE + "LogListenerBatch";
 
 	public static final String PROP_LEVEL = DistributedMWManagerImpl.NAMESPACE + "logLevel";
 	public static final String PROP_MODULE = DistributedMWManagerImpl.NAMESPACE + "module";
@@ -50,38 +63,97 @@ public class LogListenerHandler extends ListenerHandler<DistributedLogListener>
 	public static final String PROP_METH = DistributedMWManagerImpl.NAMESPACE + "method";
 	public static final String PROP_MSG = DistributedMWManagerImpl.NAMESPACE + "msgPart";
 	public static final String PROP_T = DistributedMWManagerImpl.NAMESPACE + "t";
+	public static final String PROP_BATCH = DistributedMWManagerImpl.NAMESPACE + "batch";
+
+	public static final String PROP_FILTER_LEVEL = DistributedMWManagerImpl.NAMESPACE + "filterLevel";
+	public static final String PROP_FILTER_MODULES = DistributedMWManagerImpl.NAMESPACE + "filterModules";
+	public static final String PROP_FILTER_PACKAGES = DistributedMWManagerImpl.NAMESPACE + "filterPackages";
+
+	/**
+	 * Property for the interval, in milliseconds, in which buffered log
+	 * entries are sent to remote subscribers. Default is 1000.
+	 */
+	public static final String PROP_FLUSH_INTERVAL = "org.universaal.distributedmw.log.flush.interval";
+
+	/**
+	 * Property for the maximum number of log entries buffered for remote
+	 * subscribers, the oldest entries are dropped if it is exceeded. Default
+	 * is 10000.
+	 */
+	public static final String PROP_BUFFER_SIZE = "org.universaal.distributedmw.log.buffer.size";
+
+	/**
+	 * Property for the maximum number of log entries in one message. Default
+	 * is 500.
+	 */
+	public static final String PROP_BATCH_SIZE = "org.universaal.distributedmw.log.batch.size";
 
 	private Object[] sharingParams;
 	private LocalLogListener localListener = null;
 
+	/**
+	 * The filters of the listeners on this node.
+	 */
+	private final Map<DistributedLogListener, DistributedLogFilter> listenerFilters = new ConcurrentHashMap<DistributedLogListener, DistributedLogFilter>();
+
+	/**
+	 * The filters of the remote peers that have subscribed to this node.
+	 */
+	private final Map<PeerCard, DistributedLogFilter> subscriberFilters = new ConcurrentHashMap<PeerCard, DistributedLogFilter>();
+
+	/**
+	 * The remote peers that have subscribed without a filter, i.e. that run
+	 * an older version and can only receive single log entries.
+	 */
+	private final Map<PeerCard, Boolean> legacySubscribers = new ConcurrentHashMap<PeerCard, Boolean>();
+
+	private LogBatcher batcher = null;
+
 	public class LogListenerMessageHandler implements Handler {
 		public void handle(PeerCard sender, Resource r) {
 			// a remote peer, to which we subscribed, sent us a message
 			// -> notify all listeners
+			// (single log entries are sent by older versions)
 
 			int logLevel = (Integer) r.getProperty(PROP_LEVEL);
 			String module = (String) r.getProperty(PROP_MODULE);
 			String pkg = (String) r.getProperty(PROP_PKG);
 			String cls = (String) r.getProperty(PROP_CLS);
 			String method = (String) r.getProperty(PROP_METH);
-			Object[] msgPart = ((List<?>) r.getProperty(PROP_MSG)).toArray();
+			Object msg = r.getProperty(PROP_MSG);
+			Object[] msgPart = msg instanceof List ? ((List<?>) msg).toArray() : new Object[] { msg };
 			String t = (String) r.getProperty(PROP_T);
 
-			Set<DistributedLogListener> st = null;
-			synchronized (listeners) {
-				st = listeners.get(sender);
-				if (st == null || st.size() == 0) {
-					// TODO: log message?
-					// we received a message from a node to which we did not
-					// subscribe. This can also happen in the short time after
-					// removing the listener until the remote node stops sending
-					// messages
-					return;
-				}
-				// dispatch message
-				for (DistributedLogListener l : st) {
-					l.log(sender, logLevel, module, pkg, cls, method, msgPart, t);
-				}
+			List<DistributedLogListener> st = getListeners(sender);
+			if (st == null) {
+				return;
+			}
+			dispatch(st, sender, logLevel, module, pkg, cls, method, msgPart, t);
+		}
+	}
+
+	public class LogListenerBatchHandler implements Handler {
+		public void handle(PeerCard sender, Resource r) {
+			// a remote peer, to which we subscribed, sent us a batch of log
+			// entries -> notify all listeners
+			Object o = r.getProperty(PROP_BATCH);
+			if (!(o instanceof Base64Binary)) {
+				return;
+			}
+			List<LogEntry> entries;
+			try {
+				entries = LogBatcher.decode(((Base64Binary) o).getVal());
+			} catch (IOException e) {
+				LogUtils.logWarn(DistributedMWManagerImpl.context, LogListenerHandler.class, "handle",
+						new Object[] { "Could not decode log entries from ", sender }, e);
+				return;
+			}
+			List<DistributedLogListener> st = getListeners(sender);
+			if (st == null) {
+				return;
+			}
+			for (LogEntry e : entries) {
+				dispatch(st, sender, e.level, e.module, e.pkg, e.cls, e.method, e.msgPart, e.t);
 			}
 		}
 	}
@@ -89,39 +161,61 @@ public class LogListenerHandler extends ListenerHandler<DistributedLogListener>
 	public class LocalLogListener implements LogListener {
 		public void log(int logLevel, String module, String pkg, String cls, String method, Object[] msgPart,
 				Throwable t) {
+			if (BATCHER_CLS.equals(cls) && BATCHER_PKG.equals(pkg)) {
+				// do not ship the problems of shipping
+				return;
+			}
 
-			// get throwable as string
-			Writer result = new StringWriter();
-			PrintWriter printWriter = new PrintWriter(result);
-			t.printStackTrace(printWriter);
-			String s = result.toString();
-
-			// dispatch message
+			// local subscriptions
+			List<DistributedLogListener> local = new ArrayList<DistributedLogListener>();
 			synchronized (localListeners) {
-				// local subscriptions
 				for (DistributedLogListener l : localListeners) {
-					l.log(DistributedMWManagerImpl.myPeer, logLevel, module, pkg, cls, method, msgPart, s);
+					if (accepts(l, logLevel, module, pkg)) {
+						local.add(l);
+					}
 				}
 			}
 
-			synchronized (subscribers) {
-				// remote subscriptions
-				if (subscribers.size() != 0) {
-					Resource r = new Resource();
-					r.addType(TYPE_LOGLISTENER_MESSAGE, true);
-					r.setProperty(PROP_LEVEL, Integer.valueOf(logLevel));
-					r.setProperty(PROP_MODULE, module);
-					r.setProperty(PROP_PKG, pkg);
-					r.setProperty(PROP_CLS, cls);
-					r.setProperty(PROP_METH, method);
-					r.setProperty(PROP_MSG, new ArrayList<Object>(Arrays.asList(msgPart)));
-					r.setProperty(PROP_T, s);
-					DistributedMWManagerImpl.sendMessage(r, subscribers);
+			// remote subscriptions
+			boolean remote = false;
+			for (DistributedLogFilter f : subscriberFilters.values()) {
+				if (f.accepts(logLevel, module, pkg)) {
+					remote = true;
+					break;
 				}
 			}
+
+			if (local.isEmpty() && !remote) {
+				return;
+			}
+
+			// get throwable as string
+			String s = null;
+			if (t != null) {
+				Writer result = new StringWriter();
+				PrintWriter printWriter = new PrintWriter(result);
+				t.printStackTrace(printWriter);
+				s = result.toString();
+			}
+
+			// dispatch message
+			for (DistributedLogListener l : local) {
+				l.log(DistributedMWManagerImpl.myPeer, logLevel, module, pkg, cls, method, msgPart, s);
+			}
+
+			if (remote) {
+				String[] msg = new String[msgPart == null ? 0 : msgPart.length];
+				for (int i = 0; i < msg.length; i++) {
+					msg[i] = String.valueOf(msgPart[i]);
+				}
+				getBatcher().add(new LogEntry(logLevel, module, pkg, cls, method, msg, s));
+			}
 		}
 	}
 
+	private static final String BATCHER_PKG = LogBatcher.class.getPackage().getName();
+	private static final String BATCHER_CLS = LogBatcher.class.getName().substring(BATCHER_PKG.length() + 1);
+
 	public LogListenerHandler() {
 		super(TYPE_ADD_LOGLISTENER, TYPE_REMOVE_LOGLISTENER);
 	}
@@ -140,6 +234,211 @@ public class LogListenerHandler extends ListenerHandler<DistributedLogListener>
 				objToRemove, sharingParams);
 	}
 
+	/**
+	 * Add a listener with a filter.
+	 *
+	 * @see ListenerHandler#addListener(Object, List)
+	 */
+	public void addListener(DistributedLogListener listener, List<PeerCard> nodes, DistributedLogFilter filter) {
+		DistributedLogFilter before = getCombinedFilter();
+		listenerFilters.put(listener, filter == null ? DistributedLogFilter.ALL : filter);
+		addListener(listener, nodes);
+		if (!getCombinedFilter().equals(before)) {
+			// let the nodes we already subscribed to know about the new filter
+			resubscribe();
+		}
+	}
+
+	@Override
+	public void addListener(DistributedLogListener listener, List<PeerCard> nodes) {
+		if (!listenerFilters.containsKey(listener)) {
+			listenerFilters.put(listener, DistributedLogFilter.ALL);
+		}
+		super.addListener(listener, nodes);
+	}
+
+	@Override
+	public void removeListener(DistributedLogListener listener, List<PeerCard> nodes) {
+		DistributedLogFilter before = getCombinedFilter();
+		super.removeListener(listener, nodes);
+		boolean listening;
+		synchronized (listeners) {
+			synchronized (localListeners) {
+				listening = localListeners.contains(listener);
+				for (Set<DistributedLogListener> st : listeners.values()) {
+					listening = listening || st.contains(listener);
+				}
+			}
+		}
+		if (!listening) {
+			listenerFilters.remove(listener);
+			if (!getCombinedFilter().equals(before)) {
+				resubscribe();
+			}
+		}
+	}
+
+	/**
+	 * @return the filter accepting all entries accepted by any of the
+	 *         listeners on this node.
+	 */
+	private DistributedLogFilter getCombinedFilter() {
+		DistributedLogFilter combined = null;
+		for (DistributedLogFilter f : listenerFilters.values()) {
+			combined = combined == null ? f : combined.union(f);
+		}
+		return combined == null ? DistributedLogFilter.ALL : combined;
+	}
+
+	private boolean accepts(DistributedLogListener l, int logLevel, String module, String pkg) {
+		DistributedLogFilter f = listenerFilters.get(l);
+		return f == null || f.accepts(logLevel, module, pkg);
+	}
+
+	/**
+	 * Get a copy of the listeners subscribed to the given peer, null if there
+	 * is none.
+	 */
+	private List<DistributedLogListener> getListeners(PeerCard sender) {
+		synchronized (listeners) {
+			Set<DistributedLogListener> st = listeners.get(sender);
+			if (st == null || st.size() == 0) {
+				// TODO: log message?
+				// we received a message from a node to which we did not
+				// subscribe. This can also happen in the short time after
+				// removing the listener until the remote node stops sending
+				// messages
+				return null;
+			}
+			return new ArrayList<DistributedLogListener>(st);
+		}
+	}
+
+	private void dispatch(List<DistributedLogListener> st, PeerCard sender, int logLevel, String module, String pkg,
+			String cls, String method, Object[] msgPart, String t) {
+		for (DistributedLogListener l : st) {
+			if (accepts(l, logLevel, module, pkg)) {
+				l.log(sender, logLevel, module, pkg, cls, method, msgPart, t);
+			}
+		}
+	}
+
+	@Override
+	protected void addSubscriptionInfo(Resource r) {
+		DistributedLogFilter f = getCombinedFilter();
+		r.setProperty(PROP_FILTER_LEVEL, Integer.valueOf(f.getMinLevel()));
+		if (f.getModules() != null) {
+			r.setProperty(PROP_FILTER_MODULES, new ArrayList<String>(Arrays.asList(f.getModules())));
+		}
+		if (f.getPackages() != null) {
+			r.setProperty(PROP_FILTER_PACKAGES, new ArrayList<String>(Arrays.asList(f.getPackages())));
+		}
+	}
+
+	@Override
+	protected void subscriberAdded(PeerCard sender, Resource r) {
+		// subscriptions without filter are sent by older versions
+		Object level = r.getProperty(PROP_FILTER_LEVEL);
+		if (level == null) {
+			legacySubscribers.put(sender, Boolean.TRUE);
+		} else {
+			legacySubscribers.remove(sender);
+		}
+		subscriberFilters.put(sender,
+				new DistributedLogFilter(level instanceof Integer ? ((Integer) level).intValue()
+						: DistributedLogListener.LOG_LEVEL_TRACE, toArray(r.getProperty(PROP_FILTER_MODULES)),
+						toArray(r.getProperty(PROP_FILTER_PACKAGES))));
+	}
+
+	@Override
+	protected void subscriberRemoved(PeerCard sender) {
+		subscriberFilters.remove(sender);
+		legacySubscribers.remove(sender);
+	}
+
+	private static String[] toArray(Object o) {
+		if (o == null) {
+			return null;
+		}
+		if (o instanceof List) {
+			List<?> l = (List<?>) o;
+			String[] res = new String[l.size()];
+			for (int i = 0; i < res.length; i++) {
+				res[i] = String.valueOf(l.get(i));
+			}
+			return res;
+		}
+		return new String[] { o.toString() };
+	}
+
+	private synchronized LogBatcher getBatcher() {
+		if (batcher == null) {
+			batcher = new LogBatcher(new LogBatcher.Subscribers() {
+				public Map<PeerCard, DistributedLogFilter> getSubscriberFilters() {
+					return new HashMap<PeerCard, DistributedLogFilter>(subscriberFilters);
+				}
+
+				public boolean isLegacy(PeerCard subscriber) {
+					return legacySubscribers.containsKey(subscriber);
+				}
+
+				public Resource createSingleMessage(LogEntry e) {
+					return LogListenerHandler.createSingleMessage(e);
+				}
+			}, TYPE_LOGLISTENER_BATCH, PROP_BATCH, getIntProperty(PROP_BUFFER_SIZE, 10000),
+					getIntProperty(PROP_BATCH_SIZE, 500), getIntProperty(PROP_FLUSH_INTERVAL, 1000));
+		}
+		return batcher;
+	}
+
+	/**
+	 * Create a message with a single log entry, as sent by older versions.
+	 */
+	static Resource createSingleMessage(LogEntry e) {
+		Resource r = new Resource();
+		r.addType(TYPE_LOGLISTENER_MESSAGE, true);
+		r.setProperty(PROP_LEVEL, Integer.valueOf(e.level));
+		r.setProperty(PROP_MODULE, e.module);
+		r.setProperty(PROP_PKG, e.pkg);
+		r.setProperty(PROP_CLS, e.cls);
+		r.setProperty(PROP_METH, e.method);
+		r.setProperty(PROP_MSG, new ArrayList<Object>(Arrays.asList(e.msgPart)));
+		r.setProperty(PROP_T, e.t);
+		return r;
+	}
+
+	/**
+	 * @return the number of log entries that were dropped because the buffer
+	 *         for remote subscribers was full.
+	 */
+	public synchronized long getDroppedLogCount() {
+		return batcher == null ? 0 : batcher.getDroppedCount();
+	}
+
+	private static int getIntProperty(String name, int def) {
+		Object o = DistributedMWManagerImpl.context == null ? null
+				: DistributedMWManagerImpl.context.getProperty(name);
+		if (o == null)
+			return def;
+		try {
+			return Integer.parseInt(o.toString().trim());
+		} catch (NumberFormatException e) {
+			LogUtils.logWarn(DistributedMWManagerImpl.context, LogListenerHandler.class, "getIntProperty",
+					new Object[] { "Invalid value for ", name, ": ", o, "; using default value ", def }, null);
+			return def;
+		}
+	}
+
+	/**
+	 * Send the buffered log entries and stop the background thread.
+	 */
+	public synchronized void close() {
+		if (batcher != null) {
+			batcher.close();
+			batcher = null;
+		}
+	}
+
 	@Override
 	protected void addListenerLocally() {
 		synchronized (this) {
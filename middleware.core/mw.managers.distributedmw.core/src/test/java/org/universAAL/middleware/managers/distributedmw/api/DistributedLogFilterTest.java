@@ -0,0 +1,56 @@
+package org.universAAL.middleware.managers.distributedmw.api;
+
+import junit.framework.TestCase;
+
+public class DistributedLogFilterTest extends TestCase {
+
+	public void testLevel() {
+		DistributedLogFilter f = new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_WARN, null, null);
+		assertFalse(f.accepts(DistributedLogListener.LOG_LEVEL_DEBUG, "mod", "org.test"));
+		assertTrue(f.accepts(DistributedLogListener.LOG_LEVEL_WARN, "mod", "org.test"));
+		assertTrue(f.accepts(DistributedLogListener.LOG_LEVEL_ERROR, null, null));
+		assertTrue(DistributedLogFilter.ALL.accepts(DistributedLogListener.LOG_LEVEL_TRACE, null, null));
+	}
+
+	public void testModule() {
+		DistributedLogFilter f = new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_TRACE,
+				new String[] { "mod1", "mod2" }, null);
+		assertTrue(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, "mod1", "org.test"));
+		assertTrue(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, "mod2", "org.test"));
+		assertFalse(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, "mod3", "org.test"));
+		assertFalse(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, null, "org.test"));
+	}
+
+	public void testPackage() {
+		DistributedLogFilter f = new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_TRACE, null,
+				new String[] { "org.test" });
+		assertTrue(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, "mod", "org.test"));
+		assertTrue(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, "mod", "org.test.sub"));
+		// a package with the same prefix is not a sub package
+		assertFalse(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, "mod", "org.testing"));
+		assertFalse(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, "mod", "org"));
+		assertFalse(f.accepts(DistributedLogListener.LOG_LEVEL_INFO, "mod", null));
+	}
+
+	public void testUnion() {
+		DistributedLogFilter f1 = new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_WARN,
+				new String[] { "mod1" }, new String[] { "org.a" });
+		DistributedLogFilter f2 = new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_DEBUG,
+				new String[] { "mod2" }, null);
+		DistributedLogFilter u = f1.union(f2);
+		assertEquals(DistributedLogListener.LOG_LEVEL_DEBUG, u.getMinLevel());
+		assertEquals(2, u.getModules().length);
+		assertNull(u.getPackages());
+		assertTrue(u.accepts(DistributedLogListener.LOG_LEVEL_DEBUG, "mod2", "org.b"));
+		assertFalse(u.accepts(DistributedLogListener.LOG_LEVEL_DEBUG, "mod3", "org.a"));
+
+		// equal filters are grouped, independent of the order of the elements
+		DistributedLogFilter f3 = new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_WARN, new String[] {
+				"mod1", "mod2" }, new String[] { "org.b", "org.a" });
+		DistributedLogFilter f4 = new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_WARN, new String[] {
+				"mod2", "mod1" }, new String[] { "org.a", "org.b" });
+		assertEquals(f3, f4);
+		assertEquals(f3.hashCode(), f4.hashCode());
+		assertSame(f3, f3.union(f4));
+	}
+}
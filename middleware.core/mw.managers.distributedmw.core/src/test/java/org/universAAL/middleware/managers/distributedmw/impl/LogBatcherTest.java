@@ -0,0 +1,127 @@
+package org.universAAL.middleware.managers.distributedmw.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.PeerRole;
+import org.universAAL.middleware.managers.distributedmw.api.DistributedLogFilter;
+import org.universAAL.middleware.managers.distributedmw.api.DistributedLogListener;
+import org.universAAL.middleware.managers.distributedmw.impl.LogBatcher.LogEntry;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.xsd.Base64Binary;
+
+public class LogBatcherTest extends TestCase {
+
+	private PeerCard current = new PeerCard(PeerRole.PEER, "", "");
+	private PeerCard legacy = new PeerCard(PeerRole.PEER, "", "");
+
+	/**
+	 * Records the sent messages instead of sending them.
+	 */
+	private class TestBatcher extends LogBatcher {
+		final List<Object[]> sent = new ArrayList<Object[]>();
+
+		TestBatcher(final Map<PeerCard, DistributedLogFilter> filters) {
+			super(new Subscribers() {
+				public Map<PeerCard, DistributedLogFilter> getSubscriberFilters() {
+					return filters;
+				}
+
+				public boolean isLegacy(PeerCard subscriber) {
+					return legacy.equals(subscriber);
+				}
+
+				public Resource createSingleMessage(LogEntry e) {
+					return LogListenerHandler.createSingleMessage(e);
+				}
+			}, LogListenerHandler.TYPE_LOGLISTENER_BATCH, LogListenerHandler.PROP_BATCH, 100, 2, 1000);
+		}
+
+		@Override
+		void sendMessage(Resource r, List<PeerCard> peers) {
+			sent.add(new Object[] { r, peers });
+		}
+	}
+
+	private static LogEntry entry(int level, String msg) {
+		return new LogEntry(level, "mod", "org.test", "Cls", "method", new String[] { msg, "" }, null);
+	}
+
+	public void testEncodeDecode() throws Exception {
+		List<LogEntry> entries = new ArrayList<LogEntry>();
+		entries.add(new LogEntry(DistributedLogListener.LOG_LEVEL_ERROR, "mod", "org.test", "Cls", "method",
+				new String[] { "a \u00e4\u20ac", "", null }, "java.lang.Exception\n\tat Cls.method"));
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 70000; i++)
+			big.append('x');
+		entries.add(new LogEntry(DistributedLogListener.LOG_LEVEL_TRACE, null, null, null, null,
+				new String[] { big.toString() }, null));
+
+		List<LogEntry> decoded = LogBatcher.decode(LogBatcher.encode(entries));
+		assertEquals(2, decoded.size());
+		LogEntry e = decoded.get(0);
+		assertEquals(DistributedLogListener.LOG_LEVEL_ERROR, e.level);
+		assertEquals("mod", e.module);
+		assertEquals("org.test", e.pkg);
+		assertEquals("Cls", e.cls);
+		assertEquals("method", e.method);
+		assertEquals(3, e.msgPart.length);
+		assertEquals("a \u00e4\u20ac", e.msgPart[0]);
+		assertEquals("", e.msgPart[1]);
+		assertNull(e.msgPart[2]);
+		assertEquals("java.lang.Exception\n\tat Cls.method", e.t);
+		e = decoded.get(1);
+		assertNull(e.module);
+		assertNull(e.t);
+		assertEquals(big.toString(), e.msgPart[0]);
+
+		assertTrue(LogBatcher.decode(LogBatcher.encode(new ArrayList<LogEntry>())).isEmpty());
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testLegacySubscriber() throws Exception {
+		Map<PeerCard, DistributedLogFilter> filters = new HashMap<PeerCard, DistributedLogFilter>();
+		filters.put(current, new DistributedLogFilter(DistributedLogListener.LOG_LEVEL_WARN, null, null));
+		filters.put(legacy, DistributedLogFilter.ALL);
+		TestBatcher b = new TestBatcher(filters);
+		b.add(entry(DistributedLogListener.LOG_LEVEL_DEBUG, "0"));
+		b.add(entry(DistributedLogListener.LOG_LEVEL_WARN, "1"));
+		b.add(entry(DistributedLogListener.LOG_LEVEL_ERROR, "2"));
+		b.add(entry(DistributedLogListener.LOG_LEVEL_ERROR, "3"));
+		b.close();
+
+		List<LogEntry> batched = new ArrayList<LogEntry>();
+		List<String> single = new ArrayList<String>();
+		for (Object[] m : b.sent) {
+			Resource r = (Resource) m[0];
+			List<PeerCard> peers = (List<PeerCard>) m[1];
+			assertEquals(1, peers.size());
+			if (LogListenerHandler.TYPE_LOGLISTENER_BATCH.equals(r.getType())) {
+				assertEquals(current, peers.get(0));
+				List<LogEntry> entries = LogBatcher.decode(((Base64Binary) r
+						.getProperty(LogListenerHandler.PROP_BATCH)).getVal());
+				// at most two entries per batch
+				assertTrue(entries.size() <= 2);
+				batched.addAll(entries);
+			} else {
+				assertEquals(LogListenerHandler.TYPE_LOGLISTENER_MESSAGE, r.getType());
+				assertEquals(legacy, peers.get(0));
+				single.add((String) ((List<Object>) r.getProperty(LogListenerHandler.PROP_MSG)).get(0));
+			}
+		}
+
+		// the filter is applied to the batches
+		assertEquals(3, batched.size());
+		for (int i = 0; i < batched.size(); i++)
+			assertEquals(Integer.toString(i + 1), batched.get(i).msgPart[0]);
+		// the legacy subscriber receives every entry on its own
+		assertEquals(4, single.size());
+		for (int i = 0; i < single.size(); i++)
+			assertEquals(Integer.toString(i), single.get(i));
+	}
+}
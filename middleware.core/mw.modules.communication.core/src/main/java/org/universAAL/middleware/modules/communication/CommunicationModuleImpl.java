@@ -53,6 +53,30 @@ import org.universAAL.middleware.modules.listener.MessageListener;
 public class CommunicationModuleImpl implements CommunicationModule, ConfigurableCommunicationModule,
 		SharedObjectListener, RejectedExecutionHandler {
 
+	/**
+	 * Property for the number of threads that send messages. Default is 10.
+	 */
+	public static final String PROP_SENDER_THREADS = "org.universaal.communication.sender.threads";
+
+	/**
+	 * Property for the maximum number of messages waiting to be sent; a value
+	 * &lt;= 0 means unbounded. Default is 10000.
+	 */
+	public static final String PROP_SENDER_QUEUE_SIZE = "org.universaal.communication.sender.queuesize";
+
+	/**
+	 * Property for the maximum number of messages to the same destination that
+	 * are sent in one batch with the binary wire format; a value &lt;= 1
+	 * disables batching. Default is 16.
+	 */
+	public static final String PROP_SENDER_BATCH_SIZE = "org.universaal.communication.sender.batchsize";
+
+	/**
+	 * Property for the maximum content size of a message that can be put into
+	 * a batch. Default is 4096.
+	 */
+	public static final String PROP_SENDER_BATCH_BYTES = "org.universaal.communication.sender.batchbytes";
+
 	// Module properties
 	private String name;
 	private String provider;
@@ -63,12 +87,7 @@ public class CommunicationModuleImpl implements CommunicationModule, Configurabl
 	private SpaceModule spaceModule;
 	private ConcurrentMap<String, List<MessageListener>> messageListeners;
 	private boolean initialized = false;
-
-	// ThreadPoolExecutor executor;
-	// private BlockingQueue<Runnable> messageQueue;
-	// private static final int CORE_POOL_SIZE = 10;
-	// private static final int MAXIMUM_POOL_SIZE = 20;
-	// private static final int KEEP_ALIVE_TIME = 10;
+	private OutboundDispatcher dispatcher;
 
 	/**
 	 * This method configures the CommunicationModule: -to obtain the reference
@@ -78,12 +97,10 @@ public class CommunicationModuleImpl implements CommunicationModule, Configurabl
 
 		if (!initialized) {
 
-			// messageQueue = new LinkedBlockingQueue<Runnable>();
-			// this.executor = new
-			// ThreadPoolExecutor(CORE_POOL_SIZE,MAXIMUM_POOL_SIZE,
-			// KEEP_ALIVE_TIME, TimeUnit.SECONDS,messageQueue, this);
-			// test michele
-			// executor.allowCoreThreadTimeOut(true);
+			if (dispatcher == null)
+				dispatcher = new OutboundDispatcher(this, context, getIntProperty(PROP_SENDER_THREADS, 10),
+						getIntProperty(PROP_SENDER_QUEUE_SIZE, 10000), getIntProperty(PROP_SENDER_BATCH_SIZE, 16),
+						getIntProperty(PROP_SENDER_BATCH_BYTES, 4096));
 
 			messageListeners = new ConcurrentHashMap<String, List<MessageListener>>();
 			LogUtils.logDebug(context, CommunicationModuleImpl.class, "init)",
@@ -138,6 +155,36 @@ public class CommunicationModuleImpl implements CommunicationModule, Configurabl
 
 	public void dispose() {
 		context.getContainer().removeSharedObjectListener(this);
+		if (dispatcher != null)
+			dispatcher.shutdown();
+	}
+
+	private int getIntProperty(String name, int def) {
+		Object o = context.getProperty(name);
+		if (o == null)
+			return def;
+		try {
+			return Integer.parseInt(o.toString().trim());
+		} catch (NumberFormatException e) {
+			LogUtils.logWarn(context, CommunicationModuleImpl.class, "getIntProperty",
+					new Object[] { "Invalid value for ", name, ": ", o, "; using default value ", def }, null);
+			return def;
+		}
+	}
+
+	CommunicationConnector getCommunicationConnector() {
+		return communicationConnector;
+	}
+
+	/**
+	 * Get the dispatcher that sends the messages of this module, which
+	 * provides some statistics about the sending of messages, e.g. the queue
+	 * length, the batch size and the send time.
+	 *
+	 * @return the dispatcher, or null if the module is not initialized.
+	 */
+	public OutboundDispatcher getOutboundDispatcher() {
+		return dispatcher;
 	}
 
 	public CommunicationModuleImpl(ModuleContext context) {
@@ -162,11 +209,25 @@ public class CommunicationModuleImpl implements CommunicationModule, Configurabl
 	}
 
 	public void messageReceived(ChannelMessage channelMessage) {
+		if (channelMessage.isBatch()) {
+			List<ChannelMessage> batch;
+			try {
+				batch = channelMessage.getBatch();
+			} catch (Exception e) {
+				LogUtils.logError(context, CommunicationModuleImpl.class, "messageReceived",
+						new Object[] { "Unable to unpack a batch of messages" }, e);
+				throw new CommunicationModuleException(CommunicationModuleErrorCode.ERROR_MESSAGE_RECEPTION,
+						"Unable to unpack a batch of messages", e);
+			}
+			for (ChannelMessage m : batch)
+				messageReceived(m);
+			return;
+		}
 		try {
 			List<MessageListener> listeners = getMessageListeners(channelMessage.getChannelNames());
 			if (listeners != null && !listeners.isEmpty()) {
 				LogUtils.logDebug(context, CommunicationModuleImpl.class, "CommunicationModuleImpl",
-						new Object[] { "Dispatching the message to the brokers: " + channelMessage.toString() }, null);
+						new Object[] { "Dispatching the message to the brokers: ", channelMessage }, null);
 				ListIterator<MessageListener> iterator = listeners.listIterator();
 				while (iterator.hasNext()) {
 					iterator.next().messageReceived(channelMessage);
@@ -235,6 +296,15 @@ public class CommunicationModuleImpl implements CommunicationModule, Configurabl
 	}
 
 	public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+		if (!executor.isShutdown()) {
+			// backpressure: the thread that hands over the message sends it
+			LogUtils.logWarn(context, CommunicationModuleImpl.class, "rejectedExecution",
+					new Object[] { "The thread bounds and queue capacities are reached, "
+							+ "the message is sent by the calling thread." },
+					null);
+			r.run();
+			return;
+		}
 		LogUtils.logWarn(context, CommunicationModuleImpl.class, "CommunicationModuleImpl",
 				new Object[] {
 						"The message cannot be managed because the thread bounds and queue capacities are reached." },
@@ -256,14 +326,9 @@ public class CommunicationModuleImpl implements CommunicationModule, Configurabl
 	 */
 	public void send(ChannelMessage message, MessageListener listener, PeerCard receiver) {
 		try {
-			/*
-			 * executor.execute(new UnicastExecutor(message,
-			 * communicationConnector, message.getReceiver().get(0), listener));
-			 */
 			List<MessageListener> listeners = new ArrayList<MessageListener>();
 			listeners.add(listener);
-			Thread t = new Thread(new UnicastExecutor(message, communicationConnector, receiver, listeners, context));
-			t.start();
+			dispatcher.unicast(message, receiver, listeners);
 		} catch (Throwable e) {
 			LogUtils.logError(context, CommunicationModuleImpl.class, "send",
 					new Object[] { "Error during message handling: " + message.toString() }, null);
@@ -279,8 +344,7 @@ public class CommunicationModuleImpl implements CommunicationModule, Configurabl
 		try {
 			// fetch the listeners associated to the broker
 			List<MessageListener> listeners = getMessageListeners(message.getChannelNames());
-			Thread t = new Thread(new UnicastExecutor(message, communicationConnector, receiver, listeners, context));
-			t.start();
+			dispatcher.unicast(message, receiver, listeners);
 		} catch (NullPointerException e) {
 			LogUtils.logError(context, CommunicationModuleImpl.class, "send",
 					new Object[] { "Error during message handling: " + message.toString() }, null);
@@ -298,34 +362,48 @@ public class CommunicationModuleImpl implements CommunicationModule, Configurabl
 	 * Multicast
 	 */
 	public void sendAll(ChannelMessage message, List<PeerCard> receivers, MessageListener listener) {
-		// TODO Auto-generated method stub
+		List<MessageListener> listeners = new ArrayList<MessageListener>();
+		listeners.add(listener);
+		sendAll(message, receivers, listeners);
 	}
 
 	/**
 	 * Multicast
 	 */
 	public void sendAll(ChannelMessage message, List<PeerCard> recipients) {
-		// TODO Auto-generated method stub
+		sendAll(message, recipients, getMessageListeners(message.getChannelNames()));
+	}
+
+	private void sendAll(ChannelMessage message, List<PeerCard> receivers, List<MessageListener> listeners) {
+		try {
+			dispatcher.multicast(message, receivers, listeners);
+		} catch (Throwable e) {
+			LogUtils.logError(context, CommunicationModuleImpl.class, "sendAll",
+					new Object[] { "Error during message handling: ", e }, e);
+			throw new CommunicationModuleException(CommunicationModuleErrorCode.ERROR_MESSAGE_FORMAT,
+					"Error during message handling, due to internal excepetion. Message was:" + message.toString(), e);
+		}
 	}
 
 	/**
 	 * Broadcast
 	 */
 	public void sendAll(ChannelMessage message) {
-		// TODO Auto-generated method stub
+		broadcast(message, getMessageListeners(message.getChannelNames()));
 	}
 
 	/**
 	 * Broadcast with message listener
 	 */
 	public void sendAll(ChannelMessage message, MessageListener listener) {
-		/*
-		 * executor.execute(new BroadcastExecutor(message,
-		 * communicationConnector, listener));
-		 */
+		List<MessageListener> listeners = new ArrayList<MessageListener>();
+		listeners.add(listener);
+		broadcast(message, listeners);
+	}
+
+	private void broadcast(ChannelMessage message, List<MessageListener> listeners) {
 		try {
-			Thread t = new Thread(new BroadcastExecutor(message, communicationConnector, listener, context));
-			t.start();
+			dispatcher.broadcast(message, listeners);
 		} catch (Throwable e) {
 			LogUtils.logError(context, CommunicationModuleImpl.class, "sendAll",
 					new Object[] { "Error during message handling: ", e }, e);
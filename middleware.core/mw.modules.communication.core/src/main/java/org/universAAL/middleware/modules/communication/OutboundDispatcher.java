@@ -0,0 +1,530 @@
+/*
+        Coyright 2007-2014 CNR-ISTI, http://isti.cnr.it
+        Institute of Information Science and Technologies
+        of the Italian National Research Council
+
+        See the NOTICE file distributed with this work for additional
+        information regarding copyright ownership
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+          http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+ */
+package org.universAAL.middleware.modules.communication;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.universAAL.middleware.connectors.CommunicationConnector;
+import org.universAAL.middleware.connectors.exception.CommunicationConnectorException;
+import org.universAAL.middleware.connectors.util.BinaryFrame;
+import org.universAAL.middleware.connectors.util.ChannelMessage;
+import org.universAAL.middleware.connectors.util.ExceptionUtils;
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.modules.listener.MessageListener;
+
+/**
+ * Sends the outgoing messages of the {@link CommunicationModuleImpl} with a
+ * bounded pool of threads. Every destination (a peer, a list of peers, or all
+ * peers) gets its own FIFO lane: messages to the same destination are sent in
+ * the order in which they were handed over, messages to different
+ * destinations are sent in parallel.
+ * <p>
+ * With the binary wire format, consecutive small messages of a lane that are
+ * sent over the same channels are put into one batch (see
+ * {@link ChannelMessage#createBatch(List)}), i.e. one call of the
+ * {@link CommunicationConnector}.
+ * <p>
+ * The total number of queued messages is bounded. If the bound is reached,
+ * the thread that hands over a new message is blocked until a message was
+ * sent. If the thread pool can not accept more work, the rejection handler of
+ * the {@link CommunicationModuleImpl} is called.
+ * <p>
+ * After {@link #shutdown()}, new messages are dropped, queued messages are
+ * discarded and threads waiting for a free slot in the queue return without
+ * queuing their message.
+ */
+public final class OutboundDispatcher {
+
+	/**
+	 * Maximum number of connector calls for one lane before giving other lanes
+	 * the chance to be processed.
+	 */
+	private static final int LANE_ROUNDS = 16;
+
+	/**
+	 * Marks the threads of the dispatcher so that they are exempted from
+	 * backpressure.
+	 */
+	private static final ThreadLocal<Boolean> isWorker = new ThreadLocal<Boolean>();
+
+	/**
+	 * A message waiting to be sent.
+	 */
+	private static final class Outgoing {
+		final ChannelMessage message;
+		final List<MessageListener> listeners;
+		final boolean acquired;
+
+		Outgoing(ChannelMessage message, List<MessageListener> listeners, boolean acquired) {
+			this.message = message;
+			this.listeners = listeners;
+			this.acquired = acquired;
+		}
+	}
+
+	/**
+	 * The FIFO queue of messages for one destination.
+	 */
+	private final class Lane implements Runnable {
+		private final String key;
+		// null for unicast and broadcast
+		private final List<PeerCard> receivers;
+		// null for multicast and broadcast
+		private final PeerCard receiver;
+		private final LinkedList<Outgoing> messages = new LinkedList<Outgoing>();
+		private boolean scheduled = false;
+		private boolean retired = false;
+
+		Lane(String key, PeerCard receiver, List<PeerCard> receivers) {
+			this.key = key;
+			this.receiver = receiver;
+			this.receivers = receivers;
+		}
+
+		public void run() {
+			for (int i = 0; i < LANE_ROUNDS; i++) {
+				List<Outgoing> batch;
+				synchronized (this) {
+					if (messages.isEmpty() || stopped) {
+						retire();
+						return;
+					}
+					batch = nextBatch();
+				}
+				send(this, batch);
+			}
+			// give the other lanes a chance
+			synchronized (this) {
+				if (messages.isEmpty() || stopped) {
+					retire();
+					return;
+				}
+			}
+			schedule(this);
+		}
+
+		/**
+		 * Remove this lane; the remaining messages are discarded, which only
+		 * happens after {@link OutboundDispatcher#shutdown()}. Has to be called
+		 * with the lock of this lane.
+		 */
+		private void retire() {
+			for (Outgoing o : messages)
+				discard(o);
+			messages.clear();
+			scheduled = false;
+			retired = true;
+			lanes.remove(key, this);
+		}
+
+		/**
+		 * Removes the first message and the following messages that can be
+		 * sent in the same batch.
+		 */
+		private List<Outgoing> nextBatch() {
+			List<Outgoing> batch = new ArrayList<Outgoing>(Math.min(messages.size(), maxBatchSize));
+			Outgoing first = messages.removeFirst();
+			batch.add(first);
+			if (!BinaryFrame.isBinaryWireFormat() || !isSmall(first.message))
+				return batch;
+			while (batch.size() < maxBatchSize && !messages.isEmpty()) {
+				Outgoing next = messages.getFirst();
+				if (!isSmall(next.message)
+						|| !equals(first.message.getChannelNames(), next.message.getChannelNames()))
+					break;
+				batch.add(messages.removeFirst());
+			}
+			return batch;
+		}
+
+		private boolean equals(Object o1, Object o2) {
+			return o1 == null ? o2 == null : o1.equals(o2);
+		}
+	}
+
+	private final CommunicationModuleImpl module;
+	private final ModuleContext context;
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+	private final Semaphore permits;
+	private volatile boolean stopped = false;
+	private final int maxBatchSize;
+	private final int maxBatchBytes;
+
+	private final AtomicInteger queueLength = new AtomicInteger();
+	private final AtomicInteger peakQueueLength = new AtomicInteger();
+	private final AtomicLong blockedSubmissions = new AtomicLong();
+	private final AtomicLong sentMessages = new AtomicLong();
+	private final AtomicLong connectorCalls = new AtomicLong();
+	private final AtomicInteger maxBatch = new AtomicInteger();
+	private final AtomicLong sendNanos = new AtomicLong();
+	private final AtomicLong maxSendNanos = new AtomicLong();
+	private final AtomicLong sendErrors = new AtomicLong();
+
+	/**
+	 * Create a new dispatcher.
+	 *
+	 * @param module
+	 *            the module that provides the {@link CommunicationConnector}
+	 *            and that handles rejected tasks.
+	 * @param context
+	 *            the module context, used for logging.
+	 * @param threads
+	 *            the maximum number of threads. Threads are created on demand
+	 *            up to this number.
+	 * @param maxQueued
+	 *            the maximum number of messages waiting to be sent. A value
+	 *            &lt;= 0 means unbounded.
+	 * @param maxBatchSize
+	 *            the maximum number of messages in one batch, a value &lt;= 1
+	 *            disables batching.
+	 * @param maxBatchBytes
+	 *            only messages whose content is not larger than this value are
+	 *            put into a batch.
+	 */
+	OutboundDispatcher(CommunicationModuleImpl module, ModuleContext context, int threads, int maxQueued,
+			int maxBatchSize, int maxBatchBytes) {
+		if (threads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive.");
+		this.module = module;
+		this.context = context;
+		this.permits = maxQueued > 0 ? new Semaphore(maxQueued) : null;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.maxBatchBytes = maxBatchBytes;
+		// there is at most one task per destination, so the queue of the pool
+		// only overflows with a huge number of destinations
+		BlockingQueue<Runnable> tasks;
+		if (maxQueued > 0)
+			tasks = new ArrayBlockingQueue<Runnable>(maxQueued);
+		else
+			tasks = new LinkedBlockingQueue<Runnable>();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, tasks, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(final Runnable r) {
+				Thread t = new Thread("CommunicationModule Sender " + count.incrementAndGet()) {
+					@Override
+					public void run() {
+						isWorker.set(Boolean.TRUE);
+						r.run();
+					}
+				};
+				t.setDaemon(true);
+				return t;
+			}
+		}, module);
+	}
+
+	/**
+	 * Queue a message for a single peer.
+	 */
+	void unicast(ChannelMessage message, PeerCard receiver, List<MessageListener> listeners) {
+		queue("u:" + receiver.getPeerID(), receiver, null, message, listeners);
+	}
+
+	/**
+	 * Queue a message for a list of peers.
+	 */
+	void multicast(ChannelMessage message, List<PeerCard> receivers, List<MessageListener> listeners) {
+		StringBuilder key = new StringBuilder("m:");
+		for (PeerCard receiver : receivers)
+			key.append(receiver.getPeerID()).append(',');
+		queue(key.toString(), null, new ArrayList<PeerCard>(receivers), message, listeners);
+	}
+
+	/**
+	 * Queue a message for all peers.
+	 */
+	void broadcast(ChannelMessage message, List<MessageListener> listeners) {
+		queue("b:", null, null, message, listeners);
+	}
+
+	private void queue(String key, PeerCard receiver, List<PeerCard> receivers, ChannelMessage message,
+			List<MessageListener> listeners) {
+		if (stopped)
+			return;
+
+		boolean acquired = false;
+		if (permits != null) {
+			acquired = permits.tryAcquire();
+			// the sender threads may overdraw the queue, otherwise we would
+			// deadlock
+			if (!acquired && isWorker.get() == null) {
+				blockedSubmissions.incrementAndGet();
+				try {
+					permits.acquire();
+					acquired = true;
+				} catch (InterruptedException e) {
+					LogUtils.logWarn(context, OutboundDispatcher.class, "queue",
+							new Object[] { "Interrupted while waiting for a free slot in the queue, the message to ",
+									key, " is dropped." },
+							null);
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (stopped) {
+					// woken up by shutdown, pass the permit on to the next
+					// waiting thread
+					permits.release();
+					return;
+				}
+			}
+		}
+
+		int length = queueLength.incrementAndGet();
+		int peak = peakQueueLength.get();
+		while (length > peak && !peakQueueLength.compareAndSet(peak, length))
+			peak = peakQueueLength.get();
+
+		Outgoing toAdd = new Outgoing(message, listeners, acquired);
+		while (true) {
+			Lane lane = lanes.get(key);
+			if (lane == null) {
+				Lane newLane = new Lane(key, receiver, receivers);
+				lane = lanes.putIfAbsent(key, newLane);
+				if (lane == null)
+					lane = newLane;
+			}
+			synchronized (lane) {
+				if (stopped) {
+					// shutdown has already discarded the queued messages
+					discard(toAdd);
+					return;
+				}
+				if (lane.retired)
+					// the lane was removed in the meantime
+					continue;
+				lane.messages.add(toAdd);
+				if (lane.scheduled)
+					return;
+				lane.scheduled = true;
+			}
+			schedule(lane);
+			return;
+		}
+	}
+
+	private void schedule(Lane lane) {
+		try {
+			executor.execute(lane);
+		} catch (RuntimeException e) {
+			// after shutdown, the rejection handler throws an exception; the
+			// messages of the lane are discarded by shutdown
+			if (!stopped)
+				throw e;
+		}
+	}
+
+	/**
+	 * Forget a message that will not be sent and release its slot in the
+	 * queue.
+	 */
+	private void discard(Outgoing o) {
+		queueLength.decrementAndGet();
+		if (o.acquired)
+			permits.release();
+	}
+
+	private boolean isSmall(ChannelMessage message) {
+		int size;
+		if (message.hasBinaryContent())
+			size = message.getContentBytes().length;
+		else
+			size = message.getContent() == null ? 0 : message.getContent().length();
+		return size <= maxBatchBytes;
+	}
+
+	private void send(Lane lane, List<Outgoing> batch) {
+		ChannelMessage message;
+		if (batch.size() == 1) {
+			message = batch.get(0).message;
+		} else {
+			List<ChannelMessage> messages = new ArrayList<ChannelMessage>(batch.size());
+			for (Outgoing o : batch)
+				messages.add(o.message);
+			message = ChannelMessage.createBatch(messages);
+		}
+		LogUtils.logDebug(context, OutboundDispatcher.class, "send",
+				new Object[] { "Sending ", batch.size(), " message(s) to ", lane.key }, null);
+
+		long start = System.nanoTime();
+		try {
+			CommunicationConnector connector = module.getCommunicationConnector();
+			if (lane.receiver != null)
+				connector.unicast(message, lane.receiver.getPeerID());
+			else if (lane.receivers != null)
+				connector.multicast(message, lane.receivers);
+			else
+				connector.multicast(message);
+		} catch (CommunicationConnectorException e) {
+			handleSendError(batch, e);
+		} catch (Throwable t) {
+			final String msg = ExceptionUtils.stackTraceAsString(t);
+			handleSendError(batch, new CommunicationConnectorException(-1, msg));
+		} finally {
+			long time = System.nanoTime() - start;
+			queueLength.addAndGet(-batch.size());
+			for (Outgoing o : batch)
+				if (o.acquired)
+					permits.release();
+			sentMessages.addAndGet(batch.size());
+			connectorCalls.incrementAndGet();
+			int max = maxBatch.get();
+			while (batch.size() > max && !maxBatch.compareAndSet(max, batch.size()))
+				max = maxBatch.get();
+			sendNanos.addAndGet(time);
+			long maxTime = maxSendNanos.get();
+			while (time > maxTime && !maxSendNanos.compareAndSet(maxTime, time))
+				maxTime = maxSendNanos.get();
+		}
+	}
+
+	private void handleSendError(List<Outgoing> batch, CommunicationConnectorException e) {
+		sendErrors.addAndGet(batch.size());
+		for (Outgoing o : batch) {
+			if (o.listeners == null)
+				continue;
+			for (MessageListener listener : o.listeners) {
+				try {
+					listener.handleSendError(o.message, e);
+				} catch (Throwable t) {
+					LogUtils.logError(context, OutboundDispatcher.class, "handleSendError",
+							new Object[] { "Unhandled exception in a MessageListener" }, t);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop all sender threads. Messages that are still queued are not sent
+	 * anymore. The slots of these messages are released, so that threads
+	 * waiting for a free slot return.
+	 */
+	void shutdown() {
+		stopped = true;
+		executor.shutdownNow();
+		for (Lane lane : lanes.values()) {
+			synchronized (lane) {
+				lane.retire();
+			}
+		}
+		if (permits != null)
+			// wake up the waiting threads, even if no slot was released
+			permits.release();
+	}
+
+	/**
+	 * @return the number of messages that are currently waiting or being sent.
+	 */
+	public int getQueueLength() {
+		return queueLength.get();
+	}
+
+	/**
+	 * @return the highest value of {@link #getQueueLength()} since the
+	 *         creation of this dispatcher.
+	 */
+	public int getPeakQueueLength() {
+		return peakQueueLength.get();
+	}
+
+	/**
+	 * @return the number of destinations with messages currently waiting.
+	 */
+	public int getActiveLanes() {
+		return lanes.size();
+	}
+
+	/**
+	 * @return how often a thread had to wait because the queue was full.
+	 */
+	public long getBlockedSubmissions() {
+		return blockedSubmissions.get();
+	}
+
+	/**
+	 * @return the number of messages handed over to the connector since the
+	 *         creation of this dispatcher, including the failed ones.
+	 */
+	public long getSentMessages() {
+		return sentMessages.get();
+	}
+
+	/**
+	 * @return the number of messages that could not be sent.
+	 */
+	public long getSendErrors() {
+		return sendErrors.get();
+	}
+
+	/**
+	 * @return the number of calls of the connector, which is lower than
+	 *         {@link #getSentMessages()} if messages were batched.
+	 */
+	public long getConnectorCalls() {
+		return connectorCalls.get();
+	}
+
+	/**
+	 * @return the average number of messages per call of the connector.
+	 */
+	public double getAverageBatchSize() {
+		long n = connectorCalls.get();
+		return n == 0 ? 0 : (double) sentMessages.get() / n;
+	}
+
+	/**
+	 * @return the highest number of messages sent in one call of the
+	 *         connector.
+	 */
+	public int getMaxBatchSize() {
+		return maxBatch.get();
+	}
+
+	/**
+	 * @return the average time of a call of the connector in nanoseconds.
+	 */
+	public long getAverageSendTime() {
+		long n = connectorCalls.get();
+		return n == 0 ? 0 : sendNanos.get() / n;
+	}
+
+	/**
+	 * @return the longest time of a call of the connector in nanoseconds.
+	 */
+	public long getMaxSendTime() {
+		return maxSendNanos.get();
+	}
+}
@@ -0,0 +1,236 @@
+package org.universAAL.middleware.modules.communication;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.connectors.CommunicationConnector;
+import org.universAAL.middleware.connectors.exception.CommunicationConnectorException;
+import org.universAAL.middleware.connectors.util.ChannelMessage;
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.JUnit.JUnitModuleContext;
+import org.universAAL.middleware.interfaces.ChannelDescriptor;
+import org.universAAL.middleware.interfaces.PeerCard;
+import org.universAAL.middleware.interfaces.PeerRole;
+
+public class OutboundDispatcherTest extends TestCase {
+
+	private static final ModuleContext mc = new JUnitModuleContext();
+
+	/**
+	 * Records the content of the sent messages per receiver. Every call waits
+	 * for the latch before the message is recorded.
+	 */
+	private static class TestConnector implements CommunicationConnector {
+		final Map<String, List<String>> sent = new HashMap<String, List<String>>();
+		final CountDownLatch latch;
+
+		TestConnector(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		private void record(String receiver, ChannelMessage message) {
+			try {
+				latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (sent) {
+				List<String> l = sent.get(receiver);
+				if (l == null) {
+					l = new ArrayList<String>();
+					sent.put(receiver, l);
+				}
+				l.add(message.getContent());
+			}
+		}
+
+		public void multicast(ChannelMessage message, List<PeerCard> receivers)
+				throws CommunicationConnectorException {
+			record("m", message);
+		}
+
+		public void multicast(ChannelMessage message) throws CommunicationConnectorException {
+			record("b", message);
+		}
+
+		public void unicast(ChannelMessage message, String receiver) {
+			record(receiver, message);
+		}
+
+		public void configureConnector(List<ChannelDescriptor> channels, String peerName)
+				throws CommunicationConnectorException {
+		}
+
+		public void dispose(List<ChannelDescriptor> channels) {
+		}
+
+		public List<String> getGroupMembers(String groupName) {
+			return new ArrayList<String>();
+		}
+
+		public boolean hasChannel(String channelName) {
+			return true;
+		}
+
+		public String getName() {
+			return "TestConnector";
+		}
+
+		public String getVersion() {
+			return "";
+		}
+
+		public String getDescription() {
+			return "";
+		}
+
+		public String getProvider() {
+			return "";
+		}
+
+		public void loadConfigurations(Dictionary configurations) {
+		}
+
+		public boolean init() {
+			return true;
+		}
+
+		public void dispose() {
+		}
+	}
+
+	private static class TestModule extends CommunicationModuleImpl {
+		private final CommunicationConnector connector;
+
+		TestModule(CommunicationConnector connector) {
+			super(mc);
+			this.connector = connector;
+		}
+
+		@Override
+		CommunicationConnector getCommunicationConnector() {
+			return connector;
+		}
+	}
+
+	private static ChannelMessage message(String content) {
+		List<String> channels = new ArrayList<String>();
+		channels.add("test");
+		return new ChannelMessage(null, content, channels);
+	}
+
+	private static void waitFor(OutboundDispatcher d, long sent) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while (d.getSentMessages() < sent && System.currentTimeMillis() < end)
+			Thread.sleep(10);
+		assertEquals(sent, d.getSentMessages());
+	}
+
+	private static Thread unicastInThread(final OutboundDispatcher d, final ChannelMessage m, final PeerCard receiver) {
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				d.unicast(m, receiver, null);
+			}
+		};
+		t.start();
+		return t;
+	}
+
+	public void testPerDestinationOrdering() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TestConnector c = new TestConnector(latch);
+		OutboundDispatcher d = new OutboundDispatcher(new TestModule(c), mc, 4, 0, 1, 4096);
+		PeerCard[] peers = new PeerCard[3];
+		for (int i = 0; i < peers.length; i++)
+			peers[i] = new PeerCard(PeerRole.PEER, "", "");
+
+		for (int i = 0; i < 100; i++) {
+			for (PeerCard peer : peers)
+				d.unicast(message(Integer.toString(i)), peer, null);
+			d.broadcast(message(Integer.toString(i)), null);
+		}
+		latch.countDown();
+		waitFor(d, 4 * 100);
+
+		List<String> keys = new ArrayList<String>();
+		for (PeerCard peer : peers)
+			keys.add(peer.getPeerID());
+		keys.add("b");
+		for (String key : keys) {
+			List<String> l = c.sent.get(key);
+			assertEquals(100, l.size());
+			for (int i = 0; i < l.size(); i++)
+				assertEquals(Integer.toString(i), l.get(i));
+		}
+		assertEquals(0, d.getQueueLength());
+		d.shutdown();
+	}
+
+	public void testBackPressure() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TestConnector c = new TestConnector(latch);
+		OutboundDispatcher d = new OutboundDispatcher(new TestModule(c), mc, 1, 2, 1, 4096);
+		PeerCard peer = new PeerCard(PeerRole.PEER, "", "");
+
+		d.unicast(message("0"), peer, null);
+		d.unicast(message("1"), peer, null);
+		// the queue is full, the third message has to wait
+		Thread t = unicastInThread(d, message("2"), peer);
+		t.join(200);
+		assertTrue(t.isAlive());
+		assertEquals(1, d.getBlockedSubmissions());
+
+		latch.countDown();
+		t.join(5000);
+		assertFalse(t.isAlive());
+		waitFor(d, 3);
+		assertEquals(3, c.sent.get(peer.getPeerID()).size());
+		d.shutdown();
+	}
+
+	public void testShutdown() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TestConnector c = new TestConnector(latch);
+		OutboundDispatcher d = new OutboundDispatcher(new TestModule(c), mc, 1, 2, 1, 4096);
+		PeerCard peer = new PeerCard(PeerRole.PEER, "", "");
+
+		d.unicast(message("0"), peer, null);
+		d.unicast(message("1"), peer, null);
+		Thread t = unicastInThread(d, message("2"), peer);
+		t.join(200);
+		assertTrue(t.isAlive());
+
+		// the waiting thread returns without queuing its message
+		d.shutdown();
+		t.join(5000);
+		assertFalse(t.isAlive());
+
+		// new messages are dropped without an exception
+		d.unicast(message("3"), peer, null);
+		latch.countDown();
+		waitFor(d, 1);
+		Thread.sleep(100);
+		assertEquals(1, d.getSentMessages());
+		assertEquals(0, d.getQueueLength());
+		assertEquals(0, d.getActiveLanes());
+	}
+
+	public void testUnboundedQueue() throws Exception {
+		TestConnector c = new TestConnector(new CountDownLatch(0));
+		OutboundDispatcher d = new OutboundDispatcher(new TestModule(c), mc, 1, 0, 1, 4096);
+		PeerCard peer = new PeerCard(PeerRole.PEER, "", "");
+		for (int i = 0; i < 10; i++)
+			d.unicast(message(Integer.toString(i)), peer, null);
+		waitFor(d, 10);
+		assertEquals(0, d.getBlockedSubmissions());
+		d.shutdown();
+	}
+}
@@ -31,6 +31,7 @@ import org.universAAL.middleware.container.ModuleContext;
 import org.universAAL.middleware.container.osgi.OSGiContainer;
 import org.universAAL.middleware.managers.api.SpaceManager;
 import org.universAAL.middleware.modules.CommunicationModule;
+import org.universAAL.middleware.serialization.BinaryMessageContentSerializer;
 import org.universAAL.middleware.serialization.MessageContentSerializer;
 
 /**
@@ -41,6 +42,22 @@ public class Activator implements BundleActivator, ServiceListener {
 
 	private BundleContext context = null;
 
+	/**
+	 * Tracks the optional serializer for binary message content, which can
+	 * come and go at any time.
+	 */
+	private ServiceListener binarySerializerListener = new ServiceListener() {
+		public void serviceChanged(ServiceEvent se) {
+			if (se.getType() == ServiceEvent.REGISTERED) {
+				Object o = context.getService(se.getServiceReference());
+				if (o instanceof BinaryMessageContentSerializer)
+					BusMessage.setBinaryContentSerializer((BinaryMessageContentSerializer) o);
+			} else if (se.getType() == ServiceEvent.UNREGISTERING) {
+				BusMessage.setBinaryContentSerializer(null);
+			}
+		}
+	};
+
 	public void start(BundleContext context) throws Exception {
 		this.context = context;
 		ModuleContext mc = OSGiContainer.THE_CONTAINER.registerModule(new Object[] { context });
@@ -68,6 +85,15 @@ public class Activator implements BundleActivator, ServiceListener {
 		} else
 			context.addServiceListener(this,
 					"(" + Constants.OBJECTCLASS + "=" + MessageContentSerializer.class.getName() + ")");
+
+		context.addServiceListener(binarySerializerListener,
+				"(" + Constants.OBJECTCLASS + "=" + BinaryMessageContentSerializer.class.getName() + ")");
+		sr = context.getServiceReference(BinaryMessageContentSerializer.class.getName());
+		if (sr != null) {
+			Object o = context.getService(sr);
+			if (o instanceof BinaryMessageContentSerializer)
+				BusMessage.setBinaryContentSerializer((BinaryMessageContentSerializer) o);
+		}
 	}
 
 	public void stop(BundleContext context) throws Exception {